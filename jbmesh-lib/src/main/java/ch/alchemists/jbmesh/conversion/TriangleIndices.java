@@ -11,7 +11,8 @@ import ch.alchemists.jbmesh.data.BMeshData;
 import ch.alchemists.jbmesh.data.Element;
 import ch.alchemists.jbmesh.data.property.ObjectAttribute;
 import ch.alchemists.jbmesh.data.property.Vec3Attribute;
-import ch.alchemists.jbmesh.operator.sweeptriang.SweepTriangulation;
+import ch.alchemists.jbmesh.operator.FaceHoles;
+import ch.alchemists.jbmesh.operator.sweeptriang.BatchTriangulation;
 import ch.alchemists.jbmesh.structure.BMesh;
 import ch.alchemists.jbmesh.structure.Face;
 import ch.alchemists.jbmesh.structure.Loop;
@@ -33,7 +34,7 @@ public class TriangleIndices {
     private static final Logger LOG = Logger.getLogger(TriangleIndices.class.getName());
 
     private final BMesh bmesh;
-    private final SweepTriangulation triangulation;
+    private final BatchTriangulation triangulation;
     private final ObjectAttribute<Loop, Vertex> attrLoopVertex;
 
     private final BMeshData<Triangle> triangleData;
@@ -42,7 +43,7 @@ public class TriangleIndices {
 
     public TriangleIndices(BMesh bmesh, ObjectAttribute<Loop, Vertex> attrLoopVertex) {
         this.bmesh = bmesh;
-        triangulation = new SweepTriangulation();
+        triangulation = new BatchTriangulation(bmesh);
         this.attrLoopVertex = attrLoopVertex;
 
         triangleData = new BMeshData<>(Triangle::new);
@@ -52,20 +53,30 @@ public class TriangleIndices {
 
     /**
      * Updates face triangulation. This needs to be called when the face topology changes.
+     * Polygons and faces with holes are triangulated in parallel. Hole faces are skipped.
      * TODO: Call only for dirty faces?
      */
     public void triangulateFaces() {
         Vec3Attribute<Vertex> attrPosition = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+        FaceHoles holes = FaceHoles.get(bmesh);
 
         triangleData.clear();
         triangleData.ensureCapacity(bmesh.faces().size());
 
         ArrayList<Loop> loops = new ArrayList<>(6);
-        triangulation.setTriangleCallback((v1, v2, v3) -> {
-            addTriangle(loops, v1.index, v2.index, v3.index);
-        });
+        ArrayList<Face> polygons = new ArrayList<>();
 
         for(Face face : bmesh.faces()) {
+            if(holes != null) {
+                if(holes.isHole(face))
+                    continue;
+
+                if(holes.hasHoles(face)) {
+                    polygons.add(face);
+                    continue;
+                }
+            }
+
             loops.clear();
             face.getLoops(loops);
             final int numVertices = loops.size();
@@ -75,12 +86,20 @@ public class TriangleIndices {
             else if(numVertices == 4)
                 triangulateQuad(attrPosition, loops);
             else if(numVertices > 4)
-                triangulatePolygon(attrPosition, loops);
+                polygons.add(face);
             else
                 LOG.warning("Couldn't triangulate face with " + numVertices + " vertices.");
 
             // TODO: Ear clipping for faces with 5-10 vertices?
         }
+
+        Loop[] triangles = triangulation.triangulate(polygons);
+        for(int i=0; i<triangles.length; i+=3) {
+            Triangle tri = triangleData.create();
+            tri.l1 = triangles[i];
+            tri.l2 = triangles[i+1];
+            tri.l3 = triangles[i+2];
+        }
     }
 
 
@@ -142,17 +161,6 @@ public class TriangleIndices {
         }
     }
 
-
-    private void triangulatePolygon(Vec3Attribute<Vertex> attrPosition, ArrayList<Loop> loops) {
-        try {
-            triangulation.addFaceWithLoops(attrPosition, loops);
-            triangulation.triangulate();
-        }
-        catch(Throwable t) {
-            LOG.warning("Couldn't triangulate face with " + loops.size() + " vertices.");
-        }
-    }
-
     
     /**
      * Updates index buffer with existing triangulation and Loop->Vertex mapping.
@@ -53,6 +53,8 @@ public abstract class BMeshAttribute<E extends Element, TArray> {
 
     // Library internal attribute names
     public static final String VertexMap            = "VertexMap";      // Loop, Edge => Vertex
+    public static final String HoleParent           = "HoleParent";     // Face => Face
+    public static final String Holes                = "Holes";          // Face => Face[]
 
 
     public final String name;
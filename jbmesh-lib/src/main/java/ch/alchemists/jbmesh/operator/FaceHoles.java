@@ -0,0 +1,139 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator;
+
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.property.ObjectAttribute;
+import ch.alchemists.jbmesh.structure.BMesh;
+import ch.alchemists.jbmesh.structure.Face;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Links hole faces to an outline face. Holes are ordinary faces in the same plane as their outline,
+ * with either winding. They are cut out when the outline is triangulated and are not triangulated themselves.<br>
+ * The {@link BMeshAttribute#Holes} of an outline list its holes, the {@link BMeshAttribute#HoleParent} of a hole points to the outline.
+ * Links are validated when read, because attribute values of removed faces are not reset and may show up on new faces.
+ * Removed holes are skipped. The lists are never modified in place, since moved attribute values can leave copies in other slots.
+ */
+public class FaceHoles {
+    private final ObjectAttribute<Face, Face> attrParent;
+    private final ObjectAttribute<Face, Face[]> attrHoles;
+
+
+    public FaceHoles(BMesh bmesh) {
+        attrParent = ObjectAttribute.getOrCreate(BMeshAttribute.HoleParent, bmesh.faces(), Face[].class, Face[]::new);
+        attrHoles  = ObjectAttribute.getOrCreate(BMeshAttribute.Holes, bmesh.faces(), Face[][].class, Face[][]::new);
+    }
+
+    private FaceHoles(ObjectAttribute<Face, Face> attrParent, ObjectAttribute<Face, Face[]> attrHoles) {
+        this.attrParent = attrParent;
+        this.attrHoles = attrHoles;
+    }
+
+
+    /**
+     * @return FaceHoles for the BMesh, or null if no holes were added to it. Doesn't create the attributes.
+     */
+    public static FaceHoles get(BMesh bmesh) {
+        ObjectAttribute<Face, Face> attrParent = ObjectAttribute.get(BMeshAttribute.HoleParent, bmesh.faces(), Face[].class);
+        ObjectAttribute<Face, Face[]> attrHoles = ObjectAttribute.get(BMeshAttribute.Holes, bmesh.faces(), Face[][].class);
+        if(attrParent == null || attrHoles == null)
+            return null;
+
+        return new FaceHoles(attrParent, attrHoles);
+    }
+
+
+    public void addHole(Face outline, Face hole) {
+        if(outline == hole)
+            throw new IllegalArgumentException("Face can't be a hole of itself");
+        if(isHole(outline))
+            throw new IllegalArgumentException("Outline is a hole");
+        if(isHole(hole))
+            throw new IllegalArgumentException("Face is already a hole");
+        if(hasHoles(hole))
+            throw new IllegalArgumentException("Hole has holes");
+
+        List<Face> holes = getHoles(outline, new ArrayList<>());
+        holes.add(hole);
+
+        attrParent.set(hole, outline);
+        attrHoles.set(outline, holes.toArray(new Face[0]));
+    }
+
+
+    /**
+     * Unlinks the hole from its outline. The face is not removed.
+     */
+    public void removeHole(Face hole) {
+        if(!isHole(hole))
+            throw new IllegalArgumentException("Face is not a hole");
+
+        Face outline = attrParent.get(hole);
+        List<Face> holes = getHoles(outline, new ArrayList<>());
+        holes.remove(hole);
+
+        attrHoles.set(outline, holes.isEmpty() ? null : holes.toArray(new Face[0]));
+        attrParent.set(hole, null);
+    }
+
+
+    public boolean isHole(Face face) {
+        Face outline = attrParent.get(face);
+        if(outline == null || !outline.isAlive())
+            return false;
+
+        Face[] holes = attrHoles.get(outline);
+        if(holes != null) {
+            for(Face hole : holes) {
+                if(hole == face)
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+    public boolean hasHoles(Face face) {
+        Face[] holes = attrHoles.get(face);
+        if(holes != null) {
+            for(Face hole : holes) {
+                if(isLinked(hole, face))
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * @return The outline face of the hole, or null if the face is not a hole.
+     */
+    public Face getOutline(Face hole) {
+        return isHole(hole) ? attrParent.get(hole) : null;
+    }
+
+
+    public List<Face> getHoles(Face outline, List<Face> store) {
+        Face[] holes = attrHoles.get(outline);
+        if(holes != null) {
+            for(Face hole : holes) {
+                if(isLinked(hole, outline))
+                    store.add(hole);
+            }
+        }
+
+        return store;
+    }
+
+
+    private boolean isLinked(Face hole, Face outline) {
+        return hole.isAlive() && attrParent.get(hole) == outline;
+    }
+}
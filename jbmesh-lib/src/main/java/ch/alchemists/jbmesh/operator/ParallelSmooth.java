@@ -0,0 +1,199 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator;
+
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.BMeshData;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.structure.*;
+import ch.alchemists.jbmesh.util.ParallelRange;
+
+/**
+ * Catmull-Clark Subdivision Surface of all faces, calculated data-parallel.<br>
+ * Same rules as {@link Smooth}, but instead of modifying the mesh in place, the positions of the face points,
+ * edge points and vertex points are calculated in parallel passes and the refined mesh is built in bulk
+ * from index arrays into a new BMesh. Only the Position attribute is carried over.<br>
+ * Vertex points are only moved where all adjacent edges are manifold, regardless of the processNonmanifolds setting.
+ */
+public class ParallelSmooth {
+    private final BMesh bmesh;
+    private boolean processNonmanifolds = false;
+
+
+    public ParallelSmooth(BMesh bmesh) {
+        this.bmesh = bmesh;
+    }
+
+
+    public void setProcessNonmanifolds(boolean enabled) {
+        processNonmanifolds = enabled;
+    }
+
+
+    /**
+     * @return A new BMesh with one level of subdivision.
+     */
+    public BMesh apply() {
+        return subdivide(bmesh);
+    }
+
+
+    /**
+     * @param levels Number of subdivisions.
+     * @return A new BMesh. The source BMesh if levels is 0.
+     */
+    public BMesh apply(int levels) {
+        if(levels < 0)
+            throw new IllegalArgumentException("Number of levels must not be negative");
+
+        BMesh result = bmesh;
+        for(int i=0; i<levels; ++i)
+            result = subdivide(result);
+        return result;
+    }
+
+
+    /**
+     * Records the stencils of the given number of levels for fast re-evaluation when only positions change.
+     * @param levels Number of subdivisions, at least 1.
+     */
+    public SubdivisionStencils createStencils(int levels) {
+        return new SubdivisionStencils(bmesh, levels, processNonmanifolds);
+    }
+
+
+    private BMesh subdivide(BMesh src) {
+        SubdivisionTopology topology = new SubdivisionTopology(src);
+        float[] refined = new float[topology.getNumRefinedVertices() * 3];
+        calcPositions(topology, refined);
+        return topology.build(refined);
+    }
+
+
+    /**
+     * Writes the positions of the refined vertices. Each pass only writes to the points owned by its indices.
+     */
+    private void calcPositions(SubdivisionTopology topology, float[] refined) {
+        final BMesh src = topology.src;
+        final float[] pos = Vec3Attribute.get(BMeshAttribute.Position, src.vertices()).array();
+
+        // Face points: Centroid
+        final BMeshData<Face> faces = src.faces();
+        ParallelRange.forEach(faces.totalSize(), (start, end) -> {
+            for(int f=start; f<end; ++f) {
+                Face face = faces.get(f);
+                float x=0, y=0, z=0;
+                int count = 0;
+
+                Loop loop = face.loop;
+                do {
+                    int v = loop.vertex.getIndex() * 3;
+                    x += pos[v];
+                    y += pos[v+1];
+                    z += pos[v+2];
+                    count++;
+                    loop = loop.nextFaceLoop;
+                } while(loop != face.loop);
+
+                int p = (topology.facePointStart + f) * 3;
+                refined[p]   = x / count;
+                refined[p+1] = y / count;
+                refined[p+2] = z / count;
+            }
+        });
+
+        // Edge points: Average of edge vertices and adjacent face points, center at non-manifold edges
+        final BMeshData<Edge> edges = src.edges();
+        ParallelRange.forEach(edges.totalSize(), (start, end) -> {
+            for(int e=start; e<end; ++e) {
+                int edgePoint = topology.edgePoints[e];
+                if(edgePoint < 0)
+                    continue;
+
+                Edge edge = edges.get(e);
+                int v0 = edge.vertex0.getIndex() * 3;
+                int v1 = edge.vertex1.getIndex() * 3;
+                float x = pos[v0]   + pos[v1];
+                float y = pos[v0+1] + pos[v1+1];
+                float z = pos[v0+2] + pos[v1+2];
+                int count = 2;
+
+                if(processNonmanifolds || SubdivisionTopology.isManifold(edge.loop)) {
+                    Loop loop = edge.loop;
+                    do {
+                        int fp = (topology.facePointStart + loop.face.getIndex()) * 3;
+                        x += refined[fp];
+                        y += refined[fp+1];
+                        z += refined[fp+2];
+                        count++;
+                        loop = loop.nextEdgeLoop;
+                    } while(loop != edge.loop);
+                }
+
+                int p = edgePoint * 3;
+                refined[p]   = x / count;
+                refined[p+1] = y / count;
+                refined[p+2] = z / count;
+            }
+        });
+
+        // Vertex points: (avgFace + 2*avgEdgeCenter + (n-3)*P) / n
+        final BMeshData<Vertex> vertices = src.vertices();
+        ParallelRange.forEach(vertices.totalSize(), (start, end) -> {
+            for(int i=start; i<end; ++i) {
+                int vertexPoint = topology.vertexPoints[i];
+                if(vertexPoint < 0)
+                    continue;
+
+                Vertex vertex = vertices.get(i);
+                int v = i * 3;
+                int p = vertexPoint * 3;
+                refined[p]   = pos[v];
+                refined[p+1] = pos[v+1];
+                refined[p+2] = pos[v+2];
+
+                Loop startLoop = SubdivisionTopology.findOutgoingLoop(vertex);
+                if(startLoop == null)
+                    continue;
+
+                float fx=0, fy=0, fz=0;
+                float ex=0, ey=0, ez=0;
+                int count = 0;
+
+                Loop loop = startLoop;
+                boolean manifold = true;
+                do {
+                    if(!SubdivisionTopology.isManifold(loop)) {
+                        manifold = false;
+                        break;
+                    }
+
+                    int fp = (topology.facePointStart + loop.face.getIndex()) * 3;
+                    fx += refined[fp];
+                    fy += refined[fp+1];
+                    fz += refined[fp+2];
+
+                    int o = loop.nextFaceLoop.vertex.getIndex() * 3;
+                    ex += (pos[v]   + pos[o])   * 0.5f;
+                    ey += (pos[v+1] + pos[o+1]) * 0.5f;
+                    ez += (pos[v+2] + pos[o+2]) * 0.5f;
+
+                    count++;
+                    loop = loop.nextEdgeLoop.nextFaceLoop;
+                } while(loop != startLoop);
+
+                if(!manifold)
+                    continue;
+
+                float own = count - 3;
+                refined[p]   = (fx/count + ex*2.0f/count + pos[v]*own)   / count;
+                refined[p+1] = (fy/count + ey*2.0f/count + pos[v+1]*own) / count;
+                refined[p+2] = (fz/count + ez*2.0f/count + pos[v+2]*own) / count;
+            }
+        });
+    }
+}
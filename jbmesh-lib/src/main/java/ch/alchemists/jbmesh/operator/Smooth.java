@@ -9,9 +9,11 @@ package ch.alchemists.jbmesh.operator;
 import ch.alchemists.jbmesh.data.BMeshAttribute;
 import ch.alchemists.jbmesh.data.property.Vec3Attribute;
 import ch.alchemists.jbmesh.structure.*;
+import ch.alchemists.jbmesh.util.TimeSlicedTask;
 import com.jme3.math.Vector3f;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -58,22 +60,146 @@ public class Smooth {
 
 
     public void apply(List<Face> faces) {
+        applyTask(faces).runToCompletion();
+    }
+
+
+    /**
+     * Creates a resumable version of {@link #apply(List)} that processes one element per step.
+     */
+    public TimeSlicedTask applyTask(List<Face> faces) {
+        return new SmoothTask(faces);
+    }
+
+
+    private class SmoothTask extends TimeSlicedTask {
+        private static final int NUM_PHASES = 6;
+
+        private final List<Face> faces;
+        private int phase = 0;
+        private int index = 0;
+
         // TODO: Keep the info for the next iteration?
+        private final Set<Edge> edges; // TODO: Instead of Set, use pass nr to ensure each edge is only processed once?
+        private final Set<Vertex> vertexPoints; // TODO: Or use pass nr so each edge is added to a list (instead of set) only once.
+        private Iterator<Edge> edgeIterator;
+        private Iterator<Vertex> vertexIterator;
+
+        private List<Vertex> edgePoints;
+        private Vector3f[] edgePointLoc;
 
-        Set<Edge> edges = new HashSet<>(faces.size() * 4); // TODO: Instead of Set, use pass nr to ensure each edge is only processed once?
-        Set<Vertex> vertexPoints = new HashSet<>(faces.size() * 4); // TODO: Or use pass nr so each edge is added to a list (instead of set) only once.
+        private final ArrayList<Vertex> faceVertices = new ArrayList<>(8);
+        private final Vector3f center = new Vector3f();
+        private final Vector3f avgFace = new Vector3f();
+        private final Vector3f avgEdge = new Vector3f();
+
+
+        private SmoothTask(List<Face> faces) {
+            this.faces = faces;
+            edges = new HashSet<>(faces.size() * 4);
+            vertexPoints = new HashSet<>(faces.size() * 4);
+        }
+
+
+        @Override
+        protected boolean step() {
+            switch(phase) {
+                case 0:
+                    if(index < faces.size())
+                        collect(faces.get(index++));
+                    else {
+                        edgeIterator = edges.iterator();
+                        edgePoints = new ArrayList<>(edges.size());
+                        nextPhase();
+                    }
+                    break;
+
+                case 1:
+                    if(edgeIterator.hasNext()) {
+                        splitEdge(edgeIterator.next());
+                        index++;
+                    }
+                    else
+                        nextPhase();
+                    break;
+
+                case 2:
+                    if(index < faces.size())
+                        subdivideFace(faces.get(index++));
+                    else {
+                        edgePointLoc = new Vector3f[edgePoints.size()];
+                        nextPhase();
+                    }
+                    break;
+
+                case 3:
+                    if(index < edgePoints.size()) {
+                        edgePointLoc[index] = calcEdgePoint(edgePoints.get(index));
+                        index++;
+                    }
+                    else {
+                        vertexIterator = vertexPoints.iterator();
+                        nextPhase();
+                    }
+                    break;
+
+                case 4:
+                    if(vertexIterator.hasNext()) {
+                        updateVertexPoint(vertexIterator.next());
+                        index++;
+                    }
+                    else
+                        nextPhase();
+                    break;
+
+                case 5:
+                    // Apply EdgePoint location
+                    if(index < edgePoints.size()) {
+                        positions.set(edgePoints.get(index), edgePointLoc[index]);
+                        index++;
+                    }
+                    else
+                        return true;
+                    break;
+            }
+
+            return false;
+        }
 
-        for(Face face : faces) {
+
+        private void nextPhase() {
+            phase++;
+            index = 0;
+        }
+
+
+        @Override
+        public float getProgress() {
+            int size;
+            switch(phase) {
+                case 0: case 2: size = faces.size();        break;
+                case 1:         size = edges.size();        break;
+                case 4:         size = vertexPoints.size(); break;
+                default:        size = edgePoints.size();
+            }
+
+            float phaseProgress = (size > 0) ? Math.min((float) index / size, 1.0f) : 0.0f;
+            return (phase + phaseProgress) / NUM_PHASES;
+        }
+
+
+        private void collect(Face face) {
             for(Loop loop : face.loops()) {
                 edges.add(loop.edge);
                 vertexPoints.add(loop.vertex);
             }
         }
 
-        // Split edges and remember resulting vertices
-        List<Vertex> edgePoints = new ArrayList<>(edges.size());
-        Vector3f center = new Vector3f();
-        for(Edge edge : edges) {
+
+        /**
+         * Splits edge and remembers resulting vertex.
+         */
+        private void splitEdge(Edge edge) {
             edgeOps.calcCenter(edge, center);
             Vertex edgePoint = bmesh.splitEdge(edge); // << Edge Point
 
@@ -83,9 +209,8 @@ public class Smooth {
             positions.set(edgePoint, center);
         }
 
-        // Subdivide faces
-        ArrayList<Vertex> faceVertices = new ArrayList<>(8);
-        for(Face face : faces) {
+
+        private void subdivideFace(Face face) {
             faceVertices.clear();
             face.getVertices(faceVertices);
             assert (faceVertices.size() & 1) == 0; // Even number
@@ -117,10 +242,11 @@ public class Smooth {
             }
         }
 
-        // Prepare EdgePoint locations
-        Vector3f[] edgePointLoc = new Vector3f[edgePoints.size()];
-        for(int i=0; i<edgePoints.size(); ++i) {
-            Vertex edgePoint = edgePoints.get(i);
+
+        /**
+         * Prepares EdgePoint location.
+         */
+        private Vector3f calcEdgePoint(Vertex edgePoint) {
             Vector3f p = new Vector3f();
 
             int count = 0; // 4 in manifolds, less at borders
@@ -131,15 +257,11 @@ public class Smooth {
             }
 
             assert count <= 4;
-            p.divideLocal(count);
-            edgePointLoc[i] = p;
+            return p.divideLocal(count);
         }
 
-        // Update VertexPoints
-        Vector3f avgFace = new Vector3f();
-        Vector3f avgEdge = new Vector3f();
-        outer:
-        for(Vertex vertexPoint : vertexPoints) {
+
+        private void updateVertexPoint(Vertex vertexPoint) {
             Loop loop = vertexPoint.edge.loop;
             if(loop.vertex != vertexPoint)
                 loop = loop.nextFaceLoop;
@@ -151,7 +273,7 @@ public class Smooth {
 
             do {
                 if(!isManifold(loop))
-                    continue outer;
+                    return;
                 // TODO: In case of non-manifolds we may have to traverse in the other direction
                 // TODO: Make iterator for this
 
@@ -172,12 +294,6 @@ public class Smooth {
 
             positions.set(vertexPoint, p);
         }
-
-        // Apply EdgePoint location
-        for(int i=0; i<edgePoints.size(); ++i) {
-            Vertex edgePoint = edgePoints.get(i);
-            positions.set(edgePoint, edgePointLoc[i]);
-        }
     }
 
 
@@ -0,0 +1,302 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator;
+
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.structure.*;
+import ch.alchemists.jbmesh.util.ParallelRange;
+import java.util.Arrays;
+
+/**
+ * Precomputed Catmull-Clark stencils: The weights of the control vertices for each refined vertex.<br>
+ * The stencils are recorded once for the topology of the control mesh and the number of levels.
+ * When only the positions of the control vertices change, {@link #evaluate()} recalculates the refined positions
+ * as a sparse matrix-vector product. The parallel evaluation allocates a lambda and fork/join tasks per call,
+ * the sequential one (see {@link #setParallel(boolean)}) doesn't allocate.<br>
+ * The topology of the control mesh must not change after recording. Created by {@link ParallelSmooth#createStencils(int)}.
+ */
+public class SubdivisionStencils {
+    private final BMesh control;
+    private final BMesh refined;
+    private final int numRefinedVertices;
+    private boolean parallel = true;
+
+    // Compressed rows: Stencil of refined vertex r is in [offsets[r], offsets[r+1])
+    private int[] offsets;
+    private int[] indices;
+    private float[] weights;
+
+
+    SubdivisionStencils(BMesh control, int levels, boolean processNonmanifolds) {
+        if(levels < 1)
+            throw new IllegalArgumentException("Number of levels must be at least 1");
+
+        this.control = control;
+        final int numControl = control.vertices().totalSize();
+
+        // Level 0: Identity
+        offsets = new int[numControl + 1];
+        indices = new int[numControl];
+        weights = new float[numControl];
+        for(int i=0; i<numControl; ++i) {
+            offsets[i+1] = i+1;
+            indices[i] = i;
+            weights[i] = 1.0f;
+        }
+
+        BMesh src = control;
+        for(int level=0; level<levels; ++level) {
+            SubdivisionTopology topology = new SubdivisionTopology(src);
+            LevelBuilder builder = new LevelBuilder(topology, numControl, processNonmanifolds);
+            builder.build();
+
+            offsets = builder.offsets;
+            indices = Arrays.copyOf(builder.indices, builder.size);
+            weights = Arrays.copyOf(builder.weights, builder.size);
+
+            src = topology.build(new float[topology.getNumRefinedVertices() * 3]);
+        }
+
+        refined = src;
+        numRefinedVertices = refined.vertices().totalSize();
+        evaluate();
+    }
+
+
+    /**
+     * @return The refined mesh. Its positions are updated by {@link #evaluate()}.
+     */
+    public BMesh getRefinedMesh() {
+        return refined;
+    }
+
+
+    public int getNumStencilWeights() {
+        return weights.length;
+    }
+
+
+    /**
+     * Enabled by default. Sequential evaluation doesn't allocate and suits small meshes that are updated every frame.
+     * @param parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+
+    /**
+     * Recalculates the Position attribute of the refined mesh from the Position attribute of the control mesh.
+     */
+    public void evaluate() {
+        float[] src = Vec3Attribute.get(BMeshAttribute.Position, control.vertices()).array();
+        float[] dest = Vec3Attribute.get(BMeshAttribute.Position, refined.vertices()).array();
+        evaluate(src, dest);
+    }
+
+
+    /**
+     * @param controlPositions 3 floats per control vertex, indexed by the vertex index.
+     * @param refinedPositions 3 floats per refined vertex.
+     */
+    public void evaluate(float[] controlPositions, float[] refinedPositions) {
+        if(parallel)
+            ParallelRange.forEach(numRefinedVertices, 512, (start, end) -> evaluate(controlPositions, refinedPositions, start, end));
+        else
+            evaluate(controlPositions, refinedPositions, 0, numRefinedVertices);
+    }
+
+
+    private void evaluate(float[] controlPositions, float[] refinedPositions, int start, int end) {
+        for(int r=start; r<end; ++r) {
+            float x=0, y=0, z=0;
+            for(int k=offsets[r]; k<offsets[r+1]; ++k) {
+                int c = indices[k] * 3;
+                float w = weights[k];
+                x += controlPositions[c]   * w;
+                y += controlPositions[c+1] * w;
+                z += controlPositions[c+2] * w;
+            }
+
+            int p = r * 3;
+            refinedPositions[p]   = x;
+            refinedPositions[p+1] = y;
+            refinedPositions[p+2] = z;
+        }
+    }
+
+
+    /**
+     * Builds the stencils of one level, composed with the stencils of the previous level,
+     * so the result directly references the control vertices.
+     * Uses the same rules as {@link ParallelSmooth}.
+     */
+    private class LevelBuilder {
+        private final SubdivisionTopology topology;
+        private final boolean processNonmanifolds;
+
+        // Dense scratch row over control vertices
+        private final float[] row;
+        private final int[] touched;
+        private int numTouched = 0;
+
+        final int[] offsets;
+        int[] indices;
+        float[] weights;
+        int size = 0;
+
+
+        LevelBuilder(SubdivisionTopology topology, int numControl, boolean processNonmanifolds) {
+            this.topology = topology;
+            this.processNonmanifolds = processNonmanifolds;
+
+            row = new float[numControl];
+            touched = new int[numControl];
+
+            offsets = new int[topology.getNumRefinedVertices() + 1];
+            int capacity = Math.max(16, SubdivisionStencils.this.weights.length * 4);
+            indices = new int[capacity];
+            weights = new float[capacity];
+        }
+
+
+        void build() {
+            BMesh src = topology.src;
+
+            // Same order as refined vertices: Vertex points, edge points, face points
+            for(Vertex vertex : src.vertices()) {
+                addVertexPoint(vertex);
+                endRow(topology.vertexPoints[vertex.getIndex()]);
+            }
+
+            for(Edge edge : src.edges()) {
+                int edgePoint = topology.edgePoints[edge.getIndex()];
+                if(edgePoint >= 0) {
+                    addEdgePoint(edge);
+                    endRow(edgePoint);
+                }
+            }
+
+            for(Face face : src.faces()) {
+                addFacePoint(face, 1.0f);
+                endRow(topology.facePointStart + face.getIndex());
+            }
+        }
+
+
+        /**
+         * Adds the stencil of a source vertex, which is expressed in control vertices.
+         */
+        private void addSource(Vertex vertex, float weight) {
+            int[] prevOffsets = SubdivisionStencils.this.offsets;
+            int[] prevIndices = SubdivisionStencils.this.indices;
+            float[] prevWeights = SubdivisionStencils.this.weights;
+
+            int s = vertex.getIndex();
+            for(int k=prevOffsets[s]; k<prevOffsets[s+1]; ++k) {
+                int c = prevIndices[k];
+                if(row[c] == 0.0f)
+                    touched[numTouched++] = c;
+                row[c] += prevWeights[k] * weight;
+            }
+        }
+
+
+        private void addFacePoint(Face face, float weight) {
+            int count = 0;
+            for(Loop loop : face.loops())
+                count++;
+
+            float w = weight / count;
+            for(Loop loop : face.loops())
+                addSource(loop.vertex, w);
+        }
+
+
+        private void addEdgePoint(Edge edge) {
+            if(!processNonmanifolds && !SubdivisionTopology.isManifold(edge.loop)) {
+                addSource(edge.vertex0, 0.5f);
+                addSource(edge.vertex1, 0.5f);
+                return;
+            }
+
+            int count = 2;
+            for(Loop loop : edge.loops())
+                count++;
+
+            float w = 1.0f / count;
+            addSource(edge.vertex0, w);
+            addSource(edge.vertex1, w);
+            for(Loop loop : edge.loops())
+                addFacePoint(loop.face, w);
+        }
+
+
+        private void addVertexPoint(Vertex vertex) {
+            Loop startLoop = SubdivisionTopology.findOutgoingLoop(vertex);
+            int count = (startLoop != null) ? countManifoldFan(startLoop) : 0;
+            if(count == 0) {
+                addSource(vertex, 1.0f);
+                return;
+            }
+
+            // (avgFace + 2*avgEdgeCenter + (n-3)*P) / n
+            float n2 = 1.0f / (count * count);
+            addSource(vertex, (count - 3.0f) / count);
+
+            Loop loop = startLoop;
+            do {
+                addFacePoint(loop.face, n2);
+                addSource(vertex, n2);
+                addSource(loop.nextFaceLoop.vertex, n2);
+                loop = loop.nextEdgeLoop.nextFaceLoop;
+            } while(loop != startLoop);
+        }
+
+
+        private void endRow(int refinedIndex) {
+            // Rows are emitted in refined order
+            assert offsets[refinedIndex] == size;
+
+            if(size + numTouched > indices.length) {
+                int capacity = Math.max(indices.length * 2, size + numTouched);
+                indices = Arrays.copyOf(indices, capacity);
+                weights = Arrays.copyOf(weights, capacity);
+            }
+
+            Arrays.sort(touched, 0, numTouched);
+            for(int i=0; i<numTouched; ++i) {
+                int c = touched[i];
+                indices[size] = c;
+                weights[size] = row[c];
+                size++;
+                row[c] = 0.0f;
+            }
+
+            numTouched = 0;
+            offsets[refinedIndex+1] = size;
+        }
+    }
+
+
+    /**
+     * @return Number of faces around the vertex, or 0 if the fan isn't closed and manifold.
+     */
+    private static int countManifoldFan(Loop startLoop) {
+        int count = 0;
+        Loop loop = startLoop;
+        do {
+            if(!SubdivisionTopology.isManifold(loop))
+                return 0;
+            count++;
+            loop = loop.nextEdgeLoop.nextFaceLoop;
+        } while(loop != startLoop);
+        return count;
+    }
+
+}
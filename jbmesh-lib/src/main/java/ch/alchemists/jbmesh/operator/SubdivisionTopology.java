@@ -0,0 +1,261 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator;
+
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.BMeshData;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.structure.*;
+import ch.alchemists.jbmesh.util.ParallelRange;
+
+/**
+ * Index layout of one level of Catmull-Clark subdivision of all faces of a BMesh.<br>
+ * Refined vertices are ordered: [vertex points | edge points | face points].<br>
+ * Each corner of a source face becomes one quad: (previous edge point, vertex point, next edge point, face point).
+ * Edges with adjacent faces are split in two, edges without faces are kept.
+ */
+class SubdivisionTopology {
+    final BMesh src;
+
+    final int numVertexPoints;
+    final int numEdgePoints;
+    final int numFacePoints;
+
+    /** Source vertex index -> refined vertex index. -1 for virtual vertices. */
+    final int[] vertexPoints;
+
+    /** Source edge index -> refined vertex index of edge point. -1 for edges without faces. */
+    final int[] edgePoints;
+
+    /** Source face index -> refined vertex index of face point is facePointStart + face index. */
+    final int facePointStart;
+
+    /** Source face index -> index of first quad. Has one more entry than there are faces. */
+    final int[] faceQuadStart;
+
+    /** Source edge index -> index of first refined edge (the half adjacent to vertex0). */
+    final int[] edgeStart;
+    final int interiorEdgeStart;
+
+    final int numRefinedEdges;
+    final int numQuads;
+
+
+    SubdivisionTopology(BMesh src) {
+        this.src = src;
+
+        // Vertex points
+        final BMeshData<Vertex> vertices = src.vertices();
+        vertexPoints = new int[vertices.totalSize()];
+        java.util.Arrays.fill(vertexPoints, -1);
+
+        int numVertexPoints = 0;
+        for(Vertex vertex : vertices)
+            vertexPoints[vertex.getIndex()] = numVertexPoints++;
+        this.numVertexPoints = numVertexPoints;
+
+        // Edge points
+        final BMeshData<Edge> edges = src.edges();
+        final int numEdges = edges.totalSize();
+        edgePoints = new int[numEdges];
+        edgeStart = new int[numEdges];
+
+        int numEdgePoints = 0;
+        int numSplitEdges = 0;
+        for(int i=0; i<numEdges; ++i) {
+            edgeStart[i] = numSplitEdges;
+            if(edges.get(i).loop != null) {
+                edgePoints[i] = numVertexPoints + numEdgePoints;
+                numEdgePoints++;
+                numSplitEdges += 2;
+            }
+            else {
+                edgePoints[i] = -1;
+                numSplitEdges++;
+            }
+        }
+        this.numEdgePoints = numEdgePoints;
+
+        // Face points & quads
+        final BMeshData<Face> faces = src.faces();
+        final int numFaces = faces.totalSize();
+        numFacePoints = numFaces;
+        facePointStart = numVertexPoints + numEdgePoints;
+
+        faceQuadStart = new int[numFaces + 1];
+        ParallelRange.forEach(numFaces, (start, end) -> {
+            for(int i=start; i<end; ++i)
+                faceQuadStart[i+1] = countLoops(faces.get(i));
+        });
+
+        for(int i=0; i<numFaces; ++i)
+            faceQuadStart[i+1] += faceQuadStart[i];
+
+        numQuads = faceQuadStart[numFaces];
+        interiorEdgeStart = numSplitEdges;
+        numRefinedEdges = numSplitEdges + numQuads;
+    }
+
+
+    private static int countLoops(Face face) {
+        int count = 0;
+        Loop loop = face.loop;
+        do {
+            count++;
+            loop = loop.nextFaceLoop;
+        } while(loop != face.loop);
+        return count;
+    }
+
+
+    int getNumRefinedVertices() {
+        return numVertexPoints + numEdgePoints + numFacePoints;
+    }
+
+
+    /**
+     * @return Index of the refined edge that connects the given vertex to the edge point of the given edge.
+     */
+    private int getHalfEdge(Edge edge, Vertex vertex) {
+        int index = edgeStart[edge.getIndex()];
+        return (edge.vertex0 == vertex) ? index : index+1;
+    }
+
+
+    /**
+     * Fills the refined index arrays in parallel.
+     * @param edgeVertices 2 vertex indices per refined edge.
+     * @param quadVertices 4 vertex indices per quad.
+     * @param quadEdges 4 edge indices per quad. The edge at <i>i</i> connects the vertices at <i>i</i> and <i>i+1</i>.
+     */
+    void fillIndices(int[] edgeVertices, int[] quadVertices, int[] quadEdges) {
+        final BMeshData<Edge> edges = src.edges();
+        ParallelRange.forEach(edges.totalSize(), (start, end) -> {
+            for(int i=start; i<end; ++i) {
+                Edge edge = edges.get(i);
+                int v0 = vertexPoints[edge.vertex0.getIndex()];
+                int v1 = vertexPoints[edge.vertex1.getIndex()];
+                int e = edgeStart[i] * 2;
+
+                if(edgePoints[i] < 0) {
+                    edgeVertices[e]   = v0;
+                    edgeVertices[e+1] = v1;
+                }
+                else {
+                    edgeVertices[e]   = v0;
+                    edgeVertices[e+1] = edgePoints[i];
+                    edgeVertices[e+2] = edgePoints[i];
+                    edgeVertices[e+3] = v1;
+                }
+            }
+        });
+
+        final BMeshData<Face> faces = src.faces();
+        ParallelRange.forEach(faces.totalSize(), (start, end) -> {
+            for(int f=start; f<end; ++f) {
+                Face face = faces.get(f);
+                final int facePoint = facePointStart + f;
+                final int quadStart = faceQuadStart[f];
+                final int numCorners = faceQuadStart[f+1] - quadStart;
+
+                Loop loop = face.loop;
+                for(int i=0; i<numCorners; ++i, loop = loop.nextFaceLoop) {
+                    Loop prev = loop.prevFaceLoop;
+                    int q = (quadStart + i) * 4;
+
+                    int prevEdgePoint = edgePoints[prev.edge.getIndex()];
+                    int nextEdgePoint = edgePoints[loop.edge.getIndex()];
+
+                    quadVertices[q]   = prevEdgePoint;
+                    quadVertices[q+1] = vertexPoints[loop.vertex.getIndex()];
+                    quadVertices[q+2] = nextEdgePoint;
+                    quadVertices[q+3] = facePoint;
+
+                    int interiorEdge = interiorEdgeStart + quadStart + i;
+                    int prevInteriorEdge = interiorEdgeStart + quadStart + ((i == 0) ? numCorners-1 : i-1);
+
+                    quadEdges[q]   = getHalfEdge(prev.edge, loop.vertex);
+                    quadEdges[q+1] = getHalfEdge(loop.edge, loop.vertex);
+                    quadEdges[q+2] = interiorEdge;
+                    quadEdges[q+3] = prevInteriorEdge;
+
+                    int e = interiorEdge * 2;
+                    edgeVertices[e]   = nextEdgePoint;
+                    edgeVertices[e+1] = facePoint;
+                }
+            }
+        });
+    }
+
+
+    /**
+     * Builds the refined mesh from index arrays without searching for existing edges.
+     * @param positions 3 floats per refined vertex.
+     * @return A new BMesh.
+     */
+    BMesh build(float[] positions) {
+        final int numVertices = getNumRefinedVertices();
+        int[] edgeVertices = new int[numRefinedEdges * 2];
+        int[] quadVertices = new int[numQuads * 4];
+        int[] quadEdges    = new int[numQuads * 4];
+        fillIndices(edgeVertices, quadVertices, quadEdges);
+
+        BMesh bmesh = new BMesh();
+        bmesh.vertices().ensureCapacity(numVertices);
+        bmesh.edges().ensureCapacity(numRefinedEdges);
+        bmesh.faces().ensureCapacity(numQuads);
+        bmesh.loops().ensureCapacity(numQuads * 4);
+
+        Vertex[] vertices = new Vertex[numVertices];
+        for(int i=0; i<numVertices; ++i)
+            vertices[i] = bmesh.createVertex();
+
+        // Vertices were created in order, their indices match the refined indices
+        Vec3Attribute<Vertex> attrPosition = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+        System.arraycopy(positions, 0, attrPosition.array(), 0, numVertices * 3);
+
+        Edge[] edges = new Edge[numRefinedEdges];
+        for(int i=0, e=0; i<numRefinedEdges; ++i, e+=2)
+            edges[i] = bmesh.createEdge(vertices[edgeVertices[e]], vertices[edgeVertices[e+1]]);
+
+        Vertex[] faceVertices = new Vertex[4];
+        Edge[] faceEdges = new Edge[4];
+        for(int q=0; q<quadVertices.length; q+=4) {
+            for(int k=0; k<4; ++k) {
+                faceVertices[k] = vertices[quadVertices[q+k]];
+                faceEdges[k] = edges[quadEdges[q+k]];
+            }
+
+            bmesh.createFace(faceVertices, faceEdges);
+        }
+
+        return bmesh;
+    }
+
+
+    /**
+     * @return A Loop of the given Vertex, or null if the Vertex has no adjacent faces.
+     */
+    static Loop findOutgoingLoop(Vertex vertex) {
+        if(vertex.edge == null)
+            return null;
+
+        Edge edge = vertex.edge;
+        do {
+            if(edge.loop != null)
+                return (edge.loop.vertex == vertex) ? edge.loop : edge.loop.nextFaceLoop;
+            edge = edge.getNextEdge(vertex);
+        } while(edge != vertex.edge);
+
+        return null;
+    }
+
+
+    static boolean isManifold(Loop loop) {
+        return loop.nextEdgeLoop != loop && loop.nextEdgeLoop.nextEdgeLoop == loop;
+    }
+}
@@ -7,17 +7,21 @@
 package ch.alchemists.jbmesh.operator.bool;
 
 import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.property.FloatAttribute;
 import ch.alchemists.jbmesh.data.property.Vec3Attribute;
 import ch.alchemists.jbmesh.operator.meshgen.DistanceFunction;
 import ch.alchemists.jbmesh.structure.*;
+import ch.alchemists.jbmesh.util.ParallelRange;
 import com.jme3.math.Vector3f;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 // TODO: Create vertices inside intersecting faces when distance function makes a sharp corner? (Box)
 public abstract class Cut {
+    private static final String ATTRIBUTE_VERTEX_DIST = "Cut_VertexDistance";
+    private static final int DIST_BATCH_SIZE = 256;
+
     private static class FaceSplitInfo {
         public Loop start = null;
         public Loop end = null;
@@ -31,6 +35,8 @@ public abstract class Cut {
     protected final Vec3Attribute<Vertex> positions;
 
     protected DistanceFunction dfunc;
+    private FloatAttribute<Vertex> vertexDist;
+    private boolean parallel = true;
 
 
     public Cut(BMesh bmesh, DistanceFunction dfunc) {
@@ -51,40 +57,74 @@ public abstract class Cut {
     protected abstract void processCut();
 
 
+    /**
+     * Enables parallel evaluation of the DistanceFunction at the vertices. Defaults to true.<br>
+     * When enabled, {@link DistanceFunction#dist(float[], float[], float[], float[], int)} is called from multiple threads
+     * and must be thread-safe.
+     * @param parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+
     public void apply(List<Face> faces) {
         prepareCut();
 
-        // Accumulate elements: Inside, Intersecting
-        List<FaceSplitInfo> faceSplits = findEdgeCuts(faces);
+        vertexDist = new FloatAttribute<>(ATTRIBUTE_VERTEX_DIST);
+        vertexDist.setComparable(false);
+        bmesh.vertices().addAttribute(vertexDist);
+
+        try {
+            // Evaluate distance function once per vertex instead of once per adjacent loop
+            calcVertexDistances(faces);
+
+            // Accumulate elements: Inside, Intersecting
+            List<FaceSplitInfo> faceSplits = findEdgeCuts(faces);
+            splitFaces(faceSplits);
+        }
+        finally {
+            bmesh.vertices().removeAttribute(vertexDist);
+            vertexDist = null;
+        }
+
+        processCut();
+    }
+
 
+    private void splitFaces(List<FaceSplitInfo> faceSplits) {
         // Split all edges which are references by FaceSplitInfos, but each edge only once, remember resulting vertex
-        // Split it so all Loops in FaceSplitInfos will be on the inside
-        Map<Edge, Vertex> splitEdges = new HashMap<>();
+        // Split it so all Loops in FaceSplitInfos will be on the inside.
+        // Maps edge index to index of resulting vertex. New edges are never looked up.
+        int[] splitEdges = new int[bmesh.edges().totalSize()];
+        Arrays.fill(splitEdges, -1);
 
         Vector3f p1 = new Vector3f();
         Vector3f p2 = new Vector3f();
 
         for(FaceSplitInfo splitInfo : faceSplits) {
-            Vertex vStart = splitEdges.get(splitInfo.startEdge);
+            Vertex vStart = getSplitVertex(splitEdges, splitInfo.startEdge);
             if(vStart == null) {
+                Vertex inside = splitInfo.start.nextFaceLoop.vertex;
                 positions.get(splitInfo.start.vertex, p1); // Outside
-                positions.get(splitInfo.start.nextFaceLoop.vertex, p2); // Inside
+                positions.get(inside, p2);
 
                 vStart = bmesh.splitEdge(splitInfo.startEdge);
-                moveToBorder(vStart, p2, p1);
-                splitEdges.put(splitInfo.startEdge, vStart);
+                moveToBorder(vStart, p2, p1, vertexDist.get(inside));
+                splitEdges[splitInfo.startEdge.getIndex()] = vStart.getIndex();
 
                 accumulateCutVertex(vStart);
             }
 
-            Vertex vEnd = splitEdges.get(splitInfo.endEdge);
+            Vertex vEnd = getSplitVertex(splitEdges, splitInfo.endEdge);
             if(vEnd == null) {
-                positions.get(splitInfo.end.vertex, p1); // Inside
+                Vertex inside = splitInfo.end.vertex;
+                positions.get(inside, p1);
                 positions.get(splitInfo.end.nextFaceLoop.vertex, p2); // Outside
 
                 vEnd = bmesh.splitEdge(splitInfo.endEdge);
-                moveToBorder(vEnd, p1, p2);
-                splitEdges.put(splitInfo.endEdge, vEnd);
+                moveToBorder(vEnd, p1, p2, vertexDist.get(inside));
+                splitEdges[splitInfo.endEdge.getIndex()] = vEnd.getIndex();
 
                 accumulateCutVertex(vEnd);
             }
@@ -101,15 +141,63 @@ public abstract class Cut {
         }
 
         // TODO: Check for degenerate faces & edges
+    }
 
-        processCut();
+
+    private Vertex getSplitVertex(int[] splitEdges, Edge edge) {
+        int vertexIndex = splitEdges[edge.getIndex()];
+        return (vertexIndex < 0) ? null : bmesh.vertices().get(vertexIndex);
+    }
+
+
+    /**
+     * Stores the distance of the vertices of the given faces in the temporary attribute. The vertices are evaluated in batches
+     * with {@link DistanceFunction#dist(float[], float[], float[], float[], int)}, in parallel if enabled.
+     */
+    private void calcVertexDistances(List<Face> faces) {
+        // Collect each vertex once. The new attribute is zero, collected vertices are marked with NaN until they're evaluated.
+        final List<Vertex> vertices = new ArrayList<>(faces.size());
+        for(Face face : faces) {
+            for(Loop loop : face.loops()) {
+                if(vertexDist.get(loop.vertex) == 0) {
+                    vertexDist.set(loop.vertex, Float.NaN);
+                    vertices.add(loop.vertex);
+                }
+            }
+        }
+
+        final float[] pos = positions.array();
+
+        ParallelRange.RangeFunc distFunc = (start, end) -> {
+            float[] xs = new float[DIST_BATCH_SIZE];
+            float[] ys = new float[DIST_BATCH_SIZE];
+            float[] zs = new float[DIST_BATCH_SIZE];
+            float[] store = new float[DIST_BATCH_SIZE];
+
+            for(int batchStart=start; batchStart<end; batchStart+=DIST_BATCH_SIZE) {
+                int count = Math.min(DIST_BATCH_SIZE, end - batchStart);
+                for(int i=0; i<count; ++i) {
+                    int p = positions.indexOf(vertices.get(batchStart + i));
+                    xs[i] = pos[p];
+                    ys[i] = pos[p+1];
+                    zs[i] = pos[p+2];
+                }
+
+                dfunc.dist(xs, ys, zs, store, count);
+                for(int i=0; i<count; ++i)
+                    vertexDist.set(vertices.get(batchStart + i), store[i]);
+            }
+        };
+
+        if(parallel)
+            ParallelRange.forEach(vertices.size(), distFunc);
+        else
+            distFunc.apply(0, vertices.size());
     }
 
 
     private List<FaceSplitInfo> findEdgeCuts(List<Face> faces) {
         List<FaceSplitInfo> faceSplits = new ArrayList<>();
-        Vector3f p1 = new Vector3f();
-        Vector3f p2 = new Vector3f();
 
         for(Face face : faces) {
             boolean hasInside = false;
@@ -118,14 +206,9 @@ public abstract class Cut {
             FaceSplitInfo splitInfo = null;
             Loop lastEndLoop = null;
             for(Loop loop : face.loops()) {
-                // TODO: Instead of doing intersection test for every loop, do it for each edge once -> save to HashMap?
-
                 // Check for intersection of edge with the border of distance function
-                positions.get(loop.vertex, p1);
-                float dist1 = dfunc.dist(p1);
-
-                positions.get(loop.nextFaceLoop.vertex, p2);
-                float dist2 = dfunc.dist(p2);
+                float dist1 = vertexDist.get(loop.vertex);
+                float dist2 = vertexDist.get(loop.nextFaceLoop.vertex);
 
                 // Loop pointing inwards
                 if(dist1 > 0 && dist2 <= 0) {
@@ -185,7 +268,10 @@ public abstract class Cut {
 
 
     // Move 1D
-    private void moveToBorder(Vertex v, Vector3f inside, Vector3f outside) {
+    /**
+     * @param insideDist Distance at 'inside'.
+     */
+    private void moveToBorder(Vertex v, Vector3f inside, Vector3f outside, float insideDist) {
         final float epsilon = 0.0001f; // 0.001
         final int maxSteps = 200; // 12
         final float stepShrink = 0.5f; // 0.5 0.66f
@@ -193,7 +279,7 @@ public abstract class Cut {
 
         outside.subtractLocal(inside).normalizeLocal().negateLocal(); // Points from out to in, inwards
 
-        float dist = dfunc.dist(inside); // On the inside: dist() <= 0
+        float dist = insideDist; // On the inside: dist() <= 0
         float stepSize = 0.5f;
 
         for(int i=0; Math.abs(dist) > epsilon && i<maxSteps; ++i) {
@@ -0,0 +1,455 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.meshgen;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.FastMath;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+
+/**
+ * Node of a CSG composition tree of DistanceFunctions. The bounds of a node are calculated from its children.<br>
+ * Children whose bounds are farther away than the current result are skipped, since their distance can't be smaller
+ * than the distance to their bounds. Children whose bounds contain the point are always evaluated.
+ * For batches, the children are culled once per batch against the bounds of all points.
+ * The temporary arrays of batch calls are kept per node and thread.<br>
+ * Beyond the interest distance, nodes may return a lower bound of the magnitude instead of the exact distance.
+ * The sign is always correct. For marching cubes, an interest distance of the cell diagonal keeps all values near the surface exact.
+ */
+public abstract class CsgNode implements DistanceFunction {
+    protected final BoundingBox bounds = new BoundingBox();
+    protected float interestDistance = Float.POSITIVE_INFINITY;
+
+    private final ThreadLocal<float[][]> scratchBuffers = ThreadLocal.withInitial(() -> new float[3][0]);
+
+
+    @Override
+    public BoundingBox getBounds() {
+        return (BoundingBox) bounds.clone(null);
+    }
+
+
+    /**
+     * Sets the distance from the surface inside which all results must be exact. Propagates to child nodes.
+     */
+    public void setInterestDistance(float interestDistance) {
+        if(!(interestDistance > 0))
+            throw new IllegalArgumentException("Interest distance must be positive");
+        this.interestDistance = interestDistance;
+    }
+
+
+    /**
+     * @param slot 0-2
+     * @return Buffer of this node for the current thread with at least 'count' elements. Reused by later batch calls.
+     */
+    protected float[] getScratch(int slot, int count) {
+        float[][] buffers = scratchBuffers.get();
+        if(buffers[slot].length < count)
+            buffers[slot] = new float[count];
+        return buffers[slot];
+    }
+
+
+    protected static void setInterestDistance(DistanceFunction dfunc, float interestDistance) {
+        if(dfunc instanceof CsgNode)
+            ((CsgNode) dfunc).setInterestDistance(interestDistance);
+    }
+
+
+    /**
+     * @return Distance from the point to the box. 0 if inside.
+     */
+    protected static float boundsDistance(BoundingBox box, float x, float y, float z) {
+        Vector3f c = box.getCenter();
+        float dx = Math.max(Math.abs(x - c.x) - box.getXExtent(), 0.0f);
+        float dy = Math.max(Math.abs(y - c.y) - box.getYExtent(), 0.0f);
+        float dz = Math.max(Math.abs(z - c.z) - box.getZExtent(), 0.0f);
+        return (float) Math.sqrt(dx*dx + dy*dy + dz*dz);
+    }
+
+
+    /**
+     * Bounds of a batch of points, calculated once per batch.
+     */
+    protected static class BatchBounds {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+
+        BatchBounds(float[] x, float[] y, float[] z, int count) {
+            for(int i=0; i<count; ++i) {
+                minX = Math.min(minX, x[i]); maxX = Math.max(maxX, x[i]);
+                minY = Math.min(minY, y[i]); maxY = Math.max(maxY, y[i]);
+                minZ = Math.min(minZ, z[i]); maxZ = Math.max(maxZ, z[i]);
+            }
+        }
+
+        /**
+         * @return Smallest distance between any point of the batch and the box.
+         */
+        float distance(BoundingBox box) {
+            Vector3f c = box.getCenter();
+            float dx = axisDistance(minX, maxX, c.x, box.getXExtent());
+            float dy = axisDistance(minY, maxY, c.y, box.getYExtent());
+            float dz = axisDistance(minZ, maxZ, c.z, box.getZExtent());
+            return (float) Math.sqrt(dx*dx + dy*dy + dz*dz);
+        }
+
+        private static float axisDistance(float min, float max, float center, float extent) {
+            return Math.max(Math.max(min - (center + extent), (center - extent) - max), 0.0f);
+        }
+    }
+
+
+    private static BoundingBox mergeBounds(DistanceFunction[] children) {
+        BoundingBox merged = children[0].getBounds();
+        for(int i=1; i<children.length; ++i)
+            merged.mergeLocal(children[i].getBounds());
+        return merged;
+    }
+
+
+    private static BoundingBox[] getChildBounds(DistanceFunction[] children) {
+        BoundingBox[] childBounds = new BoundingBox[children.length];
+        for(int i=0; i<children.length; ++i)
+            childBounds[i] = children[i].getBounds();
+        return childBounds;
+    }
+
+
+    private static DistanceFunction[] requireChildren(DistanceFunction[] children) {
+        if(children.length == 0)
+            throw new IllegalArgumentException("Node needs at least one child");
+        return children.clone();
+    }
+
+
+
+    /**
+     * min(a, b, ...)
+     */
+    public static class Union extends CsgNode {
+        private final DistanceFunction[] children;
+        private final BoundingBox[] childBounds;
+
+        public Union(DistanceFunction... children) {
+            this.children = requireChildren(children);
+            childBounds = getChildBounds(this.children);
+            mergeBounds(this.children).clone(bounds);
+        }
+
+        @Override
+        public void setInterestDistance(float interestDistance) {
+            super.setInterestDistance(interestDistance);
+            for(DistanceFunction child : children)
+                setInterestDistance(child, interestDistance);
+        }
+
+        @Override
+        public float dist(Vector3f v) {
+            float best = Float.POSITIVE_INFINITY;
+            for(int i=0; i<children.length; ++i) {
+                // Outside of its bounds, the child is at least as far as the bounds
+                float lowerBound = boundsDistance(childBounds[i], v.x, v.y, v.z);
+                if(lowerBound == 0 || lowerBound < best)
+                    best = Math.min(best, children[i].dist(v));
+            }
+            return best;
+        }
+
+        @Override
+        public void dist(float[] x, float[] y, float[] z, float[] store, int count) {
+            BatchBounds batchBounds = new BatchBounds(x, y, z, count);
+            float[] temp = getScratch(0, count);
+
+            for(int j=0; j<count; ++j)
+                store[j] = Float.POSITIVE_INFINITY;
+
+            for(int i=0; i<children.length; ++i) {
+                // Far away child is at least as far as its bounds
+                if(batchBounds.distance(childBounds[i]) >= interestDistance) {
+                    for(int j=0; j<count; ++j)
+                        store[j] = Math.min(store[j], boundsDistance(childBounds[i], x[j], y[j], z[j]));
+                    continue;
+                }
+
+                children[i].dist(x, y, z, temp, count);
+                for(int j=0; j<count; ++j)
+                    store[j] = Math.min(store[j], temp[j]);
+            }
+        }
+    }
+
+
+
+    /**
+     * max(a, b, ...)
+     */
+    public static class Intersection extends CsgNode {
+        private final DistanceFunction[] children;
+        private final BoundingBox[] childBounds;
+
+        public Intersection(DistanceFunction... children) {
+            this.children = requireChildren(children);
+            childBounds = getChildBounds(this.children);
+
+            Vector3f min = childBounds[0].getMin(null);
+            Vector3f max = childBounds[0].getMax(null);
+            for(int i=1; i<childBounds.length; ++i) {
+                min.maxLocal(childBounds[i].getMin(null));
+                max.minLocal(childBounds[i].getMax(null));
+            }
+
+            // Empty intersection
+            max.maxLocal(min);
+            bounds.setMinMax(min, max);
+        }
+
+        @Override
+        public void setInterestDistance(float interestDistance) {
+            super.setInterestDistance(interestDistance);
+            for(DistanceFunction child : children)
+                setInterestDistance(child, interestDistance);
+        }
+
+        @Override
+        public float dist(Vector3f v) {
+            float result = Float.NEGATIVE_INFINITY;
+            for(int i=0; i<children.length; ++i) {
+                float lowerBound = boundsDistance(childBounds[i], v.x, v.y, v.z);
+                if(lowerBound >= interestDistance)
+                    return lowerBound;
+                result = Math.max(result, children[i].dist(v));
+            }
+            return result;
+        }
+
+        @Override
+        public void dist(float[] x, float[] y, float[] z, float[] store, int count) {
+            BatchBounds batchBounds = new BatchBounds(x, y, z, count);
+
+            // All points are far outside of a child: The result is at least the distance to its bounds
+            for(int i=0; i<children.length; ++i) {
+                if(batchBounds.distance(childBounds[i]) >= interestDistance) {
+                    for(int j=0; j<count; ++j)
+                        store[j] = boundsDistance(childBounds[i], x[j], y[j], z[j]);
+                    return;
+                }
+            }
+
+            children[0].dist(x, y, z, store, count);
+            if(children.length == 1)
+                return;
+
+            float[] temp = getScratch(0, count);
+            for(int i=1; i<children.length; ++i) {
+                children[i].dist(x, y, z, temp, count);
+                for(int j=0; j<count; ++j)
+                    store[j] = Math.max(store[j], temp[j]);
+            }
+        }
+    }
+
+
+
+    /**
+     * max(a, -b): Removes b from a.
+     */
+    public static class Subtraction extends CsgNode {
+        private final DistanceFunction a;
+        private final DistanceFunction b;
+        private final BoundingBox boundsA;
+        private final BoundingBox boundsB;
+
+        public Subtraction(DistanceFunction a, DistanceFunction b) {
+            this.a = a;
+            this.b = b;
+            boundsA = a.getBounds();
+            boundsB = b.getBounds();
+            boundsA.clone(bounds);
+        }
+
+        @Override
+        public void setInterestDistance(float interestDistance) {
+            super.setInterestDistance(interestDistance);
+            setInterestDistance(a, interestDistance);
+            setInterestDistance(b, interestDistance);
+        }
+
+        @Override
+        public float dist(Vector3f v) {
+            float lowerBoundA = boundsDistance(boundsA, v.x, v.y, v.z);
+            if(lowerBoundA >= interestDistance)
+                return lowerBoundA;
+
+            // Outside of the bounds of b, -b can't be larger than -distance to bounds of b
+            float distA = a.dist(v);
+            float lowerBoundB = boundsDistance(boundsB, v.x, v.y, v.z);
+            if(lowerBoundB > 0 && distA >= -lowerBoundB)
+                return distA;
+
+            return Math.max(distA, -b.dist(v));
+        }
+
+        @Override
+        public void dist(float[] x, float[] y, float[] z, float[] store, int count) {
+            BatchBounds batchBounds = new BatchBounds(x, y, z, count);
+            if(batchBounds.distance(boundsA) >= interestDistance) {
+                for(int j=0; j<count; ++j)
+                    store[j] = boundsDistance(boundsA, x[j], y[j], z[j]);
+                return;
+            }
+
+            a.dist(x, y, z, store, count);
+
+            // Far from b: Exact where a >= -interestDistance, otherwise deep inside
+            if(batchBounds.distance(boundsB) >= interestDistance) {
+                for(int j=0; j<count; ++j)
+                    store[j] = Math.max(store[j], -interestDistance);
+                return;
+            }
+
+            float[] temp = getScratch(0, count);
+            b.dist(x, y, z, temp, count);
+            for(int j=0; j<count; ++j)
+                store[j] = Math.max(store[j], -temp[j]);
+        }
+    }
+
+
+
+    /**
+     * Polynomial smooth minimum of a and b. Blends the surfaces where the distances differ by less than the smoothness.
+     */
+    public static class SmoothUnion extends CsgNode {
+        private final DistanceFunction a;
+        private final DistanceFunction b;
+        private final BoundingBox boundsA;
+        private final BoundingBox boundsB;
+        private final float k;
+
+        public SmoothUnion(DistanceFunction a, DistanceFunction b, float smoothness) {
+            if(smoothness <= 0.0f)
+                throw new IllegalArgumentException("Smoothness must be positive");
+
+            this.a = a;
+            this.b = b;
+            this.k = smoothness;
+            boundsA = a.getBounds();
+            boundsB = b.getBounds();
+
+            // Blending grows the surface by up to k/4
+            BoundingBox merged = (BoundingBox) boundsA.clone(null);
+            merged.mergeLocal(boundsB);
+            float grow = k * 0.25f;
+            merged.setXExtent(merged.getXExtent() + grow);
+            merged.setYExtent(merged.getYExtent() + grow);
+            merged.setZExtent(merged.getZExtent() + grow);
+            merged.clone(bounds);
+        }
+
+        @Override
+        public void setInterestDistance(float interestDistance) {
+            super.setInterestDistance(interestDistance);
+            setInterestDistance(a, interestDistance);
+            setInterestDistance(b, interestDistance);
+        }
+
+        private float smin(float da, float db) {
+            float h = Math.max(k - Math.abs(da - db), 0.0f) / k;
+            return Math.min(da, db) - h*h*k*0.25f;
+        }
+
+        @Override
+        public float dist(Vector3f v) {
+            // When the other is farther by more than k, smin is the plain minimum
+            float distA = a.dist(v);
+            float lowerBoundB = boundsDistance(boundsB, v.x, v.y, v.z);
+            if(lowerBoundB > 0 && lowerBoundB >= distA + k)
+                return distA;
+            return smin(distA, b.dist(v));
+        }
+
+        @Override
+        public void dist(float[] x, float[] y, float[] z, float[] store, int count) {
+            BatchBounds batchBounds = new BatchBounds(x, y, z, count);
+            float[] temp = getScratch(0, count);
+            evaluate(a, boundsA, batchBounds, x, y, z, store, count);
+            evaluate(b, boundsB, batchBounds, x, y, z, temp, count);
+
+            for(int j=0; j<count; ++j)
+                store[j] = smin(store[j], temp[j]);
+        }
+
+        /**
+         * Uses the distance to the bounds when far away. Since smin is monotonic, this underestimates the result,
+         * and is exact where the other distance is closer than the interest distance.
+         */
+        private void evaluate(DistanceFunction dfunc, BoundingBox dfuncBounds, BatchBounds batchBounds, float[] x, float[] y, float[] z, float[] store, int count) {
+            if(batchBounds.distance(dfuncBounds) >= interestDistance + k) {
+                for(int j=0; j<count; ++j)
+                    store[j] = boundsDistance(dfuncBounds, x[j], y[j], z[j]);
+            }
+            else
+                dfunc.dist(x, y, z, store, count);
+        }
+    }
+
+
+
+    /**
+     * Moves, rotates and uniformly scales the child.
+     */
+    public static class Transformed extends CsgNode {
+        private final DistanceFunction child;
+        private final Transform inverse;
+        private final float scale;
+
+        public Transformed(DistanceFunction child, Transform transform) {
+            Vector3f s = transform.getScale();
+            if(!FastMath.approximateEquals(s.x, s.y) || !FastMath.approximateEquals(s.x, s.z))
+                throw new IllegalArgumentException("Only uniform scale is supported");
+
+            this.child = child;
+            this.inverse = transform.invert();
+            this.scale = s.x;
+            child.getBounds().transform(transform, bounds);
+        }
+
+        @Override
+        public void setInterestDistance(float interestDistance) {
+            super.setInterestDistance(interestDistance);
+            setInterestDistance(child, interestDistance / scale);
+        }
+
+        @Override
+        public float dist(Vector3f v) {
+            Vector3f local = inverse.transformVector(v, null);
+            return child.dist(local) * scale;
+        }
+
+        @Override
+        public void dist(float[] x, float[] y, float[] z, float[] store, int count) {
+            float[] lx = getScratch(0, count);
+            float[] ly = getScratch(1, count);
+            float[] lz = getScratch(2, count);
+
+            Vector3f v = new Vector3f();
+            for(int j=0; j<count; ++j) {
+                v.set(x[j], y[j], z[j]);
+                inverse.transformVector(v, v);
+                lx[j] = v.x;
+                ly[j] = v.y;
+                lz[j] = v.z;
+            }
+
+            child.dist(lx, ly, lz, store, count);
+            for(int j=0; j<count; ++j)
+                store[j] *= scale;
+        }
+    }
+}
@@ -9,10 +9,29 @@ package ch.alchemists.jbmesh.operator.meshgen;
 import com.jme3.bounding.BoundingBox;
 import com.jme3.math.Vector3f;
 
+/**
+ * Signed distance function. Negative inside, positive outside.<br>
+ * The parallel builders call dist() and normal() from multiple threads. The provided implementations are thread-safe.
+ */
 public interface DistanceFunction {
     float dist(Vector3f v);
 
 
+    /**
+     * Evaluates a batch of points given as separate coordinate arrays.
+     * Implementations can override this with a plain loop over the arrays, which the JIT can vectorize.
+     * @param store Receives the distances.
+     * @param count Number of points.
+     */
+    default void dist(float[] x, float[] y, float[] z, float[] store, int count) {
+        Vector3f v = new Vector3f();
+        for(int i=0; i<count; ++i) {
+            v.set(x[i], y[i], z[i]);
+            store[i] = dist(v);
+        }
+    }
+
+
     default float getEpsilon() {
         return 0.0001f;
     }
@@ -57,7 +76,6 @@ public interface DistanceFunction {
     public static class Plane implements DistanceFunction {
         private final Vector3f p = new Vector3f();
         private final Vector3f n = new Vector3f();
-        private final Vector3f proj = new Vector3f();
 
         public Plane(Vector3f p, Vector3f n) {
             this.p.set(p);
@@ -66,8 +84,16 @@ public interface DistanceFunction {
 
         @Override
         public float dist(Vector3f v) {
-            proj.set(v).subtractLocal(p);
-            return proj.dot(n); // "Outside" is in direction of normal
+            // "Outside" is in direction of normal
+            return (v.x-p.x)*n.x + (v.y-p.y)*n.y + (v.z-p.z)*n.z;
+        }
+
+        @Override
+        public void dist(float[] x, float[] y, float[] z, float[] store, int count) {
+            final float px = p.x, py = p.y, pz = p.z;
+            final float nx = n.x, ny = n.y, nz = n.z;
+            for(int i=0; i<count; ++i)
+                store[i] = (x[i]-px)*nx + (y[i]-py)*ny + (z[i]-pz)*nz;
         }
 
         @Override
@@ -101,6 +127,17 @@ public interface DistanceFunction {
             return center.distance(v) - radius;
         }
 
+        @Override
+        public void dist(float[] x, float[] y, float[] z, float[] store, int count) {
+            final float cx = center.x, cy = center.y, cz = center.z;
+            for(int i=0; i<count; ++i) {
+                float dx = x[i] - cx;
+                float dy = y[i] - cy;
+                float dz = z[i] - cz;
+                store[i] = (float) Math.sqrt(dx*dx + dy*dy + dz*dz) - radius;
+            }
+        }
+
         @Override
         public void normal(Vector3f p, Vector3f store) {
             store.set(p).subtractLocal(center).normalizeLocal();
@@ -124,8 +161,6 @@ public interface DistanceFunction {
         private final Vector3f center = new Vector3f();
         private final Vector3f radius = new Vector3f();
         private final Vector3f radiusSquared = new Vector3f();
-        private final Vector3f tempA = new Vector3f();
-        private final Vector3f tempB = new Vector3f();
 
         public Ellipsoid(Vector3f center, Vector3f radius) {
             this.center.set(center);
@@ -135,13 +170,38 @@ public interface DistanceFunction {
 
         @Override
         public float dist(Vector3f v) {
-            tempA.set(v).subtractLocal(center);
-            tempB.set(tempA);
-            float a = tempA.divideLocal(radius).length();
-            float b = tempB.divideLocal(radiusSquared).length();
+            float x = v.x - center.x;
+            float y = v.y - center.y;
+            float z = v.z - center.z;
+
+            float ax = x / radius.x,        ay = y / radius.y,        az = z / radius.z;
+            float bx = x / radiusSquared.x, by = y / radiusSquared.y, bz = z / radiusSquared.z;
+
+            float a = (float) Math.sqrt(ax*ax + ay*ay + az*az);
+            float b = (float) Math.sqrt(bx*bx + by*by + bz*bz);
             return a * (a-1.0f) / b;
         }
 
+        @Override
+        public void dist(float[] x, float[] y, float[] z, float[] store, int count) {
+            final float cx = center.x, cy = center.y, cz = center.z;
+            final float rx = 1.0f / radius.x,        ry = 1.0f / radius.y,        rz = 1.0f / radius.z;
+            final float sx = 1.0f / radiusSquared.x, sy = 1.0f / radiusSquared.y, sz = 1.0f / radiusSquared.z;
+
+            for(int i=0; i<count; ++i) {
+                float dx = x[i] - cx;
+                float dy = y[i] - cy;
+                float dz = z[i] - cz;
+
+                float ax = dx * rx, ay = dy * ry, az = dz * rz;
+                float bx = dx * sx, by = dy * sy, bz = dz * sz;
+
+                float a = (float) Math.sqrt(ax*ax + ay*ay + az*az);
+                float b = (float) Math.sqrt(bx*bx + by*by + bz*bz);
+                store[i] = a * (a-1.0f) / b;
+            }
+        }
+
         @Override
         public BoundingBox getBounds() {
             return new BoundingBox(center, radius.x, radius.y, radius.z);
@@ -152,7 +212,6 @@ public interface DistanceFunction {
     public static class Box implements DistanceFunction {
         private final Vector3f p = new Vector3f();
         private final Vector3f size = new Vector3f();
-        private final Vector3f temp = new Vector3f();
 
         public Box(Vector3f p, Vector3f size) {
             this.p.set(p);
@@ -162,21 +221,38 @@ public interface DistanceFunction {
 
         @Override
         public float dist(Vector3f v) {
-            temp.set(v).subtractLocal(p);
-            temp.x = Math.abs(temp.x);
-            temp.y = Math.abs(temp.y);
-            temp.z = Math.abs(temp.z);
-            temp.subtractLocal(size);
-
-            float f = Math.max(temp.y, temp.z);
-            f = Math.max(temp.x, f);
+            float x = Math.abs(v.x - p.x) - size.x;
+            float y = Math.abs(v.y - p.y) - size.y;
+            float z = Math.abs(v.z - p.z) - size.z;
+
+            float f = Math.max(y, z);
+            f = Math.max(x, f);
             f = Math.min(f, 0.0f);
 
-            temp.x = Math.max(temp.x, 0.0f);
-            temp.y = Math.max(temp.y, 0.0f);
-            temp.z = Math.max(temp.z, 0.0f);
+            x = Math.max(x, 0.0f);
+            y = Math.max(y, 0.0f);
+            z = Math.max(z, 0.0f);
 
-            return temp.length() + f;
+            return (float) Math.sqrt(x*x + y*y + z*z) + f;
+        }
+
+        @Override
+        public void dist(float[] x, float[] y, float[] z, float[] store, int count) {
+            final float px = p.x, py = p.y, pz = p.z;
+            final float sx = size.x, sy = size.y, sz = size.z;
+
+            for(int i=0; i<count; ++i) {
+                float dx = Math.abs(x[i] - px) - sx;
+                float dy = Math.abs(y[i] - py) - sy;
+                float dz = Math.abs(z[i] - pz) - sz;
+
+                float f = Math.min(Math.max(dx, Math.max(dy, dz)), 0.0f);
+
+                dx = Math.max(dx, 0.0f);
+                dy = Math.max(dy, 0.0f);
+                dz = Math.max(dz, 0.0f);
+                store[i] = (float) Math.sqrt(dx*dx + dy*dy + dz*dz) + f;
+            }
         }
 
         @Override
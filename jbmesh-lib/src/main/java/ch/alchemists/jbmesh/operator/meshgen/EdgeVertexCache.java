@@ -0,0 +1,92 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.meshgen;
+
+import java.util.Arrays;
+
+/**
+ * Maps lattice edges to vertex indices for the cells between two neighbouring x-slices.<br>
+ * Each lattice edge that crosses the surface gets exactly one vertex. A surface that passes exactly through a lattice point
+ * gets one vertex for the point ({@link #POINT}) instead of one for each adjacent edge. When advancing by one slice,
+ * the edges of the shared slice are kept and the others are reset, so memory is bounded to the size of the slices.
+ */
+class EdgeVertexCache {
+    static final int NONE = -1;
+    static final int POINT = 3; // Pseudo axis for vertices on lattice points
+
+    private final int startY, startZ;
+    private final int pointsY, pointsZ;
+
+    // Edges along y and z, and points inside slice x and slice x+1: [point * 3 + (axis-1)]
+    private int[] slice0;
+    private int[] slice1;
+
+    // Edges along x between slice x and x+1: [point]
+    private final int[] between;
+
+    private int sliceX = Integer.MIN_VALUE;
+
+
+    EdgeVertexCache(int startY, int startZ, int numCellsY, int numCellsZ) {
+        this.startY = startY;
+        this.startZ = startZ;
+        this.pointsY = numCellsY + 1;
+        this.pointsZ = numCellsZ + 1;
+
+        int numPoints = pointsY * pointsZ;
+        slice0  = new int[numPoints * 3];
+        slice1  = new int[numPoints * 3];
+        between = new int[numPoints];
+    }
+
+
+    /**
+     * Makes the edges of the cells between slice x and x+1 available.
+     */
+    void setSlice(int x) {
+        if(x == sliceX)
+            return;
+
+        if(x == sliceX+1) {
+            int[] temp = slice0;
+            slice0 = slice1;
+            slice1 = temp;
+        }
+        else
+            Arrays.fill(slice0, NONE);
+
+        Arrays.fill(slice1, NONE);
+        Arrays.fill(between, NONE);
+        sliceX = x;
+    }
+
+
+    /**
+     * @param x Lattice coordinate of the lower point of the edge. Must be the slice or the slice+1.
+     * @param axis 0: x, 1: y, 2: z, {@link #POINT}: the lattice point itself
+     * @return The vertex index or {@link #NONE}.
+     */
+    int get(int x, int y, int z, int axis) {
+        int point = (y - startY) * pointsZ + (z - startZ);
+        if(axis == 0)
+            return between[point];
+
+        int[] slice = (x == sliceX) ? slice0 : slice1;
+        return slice[point*3 + axis-1];
+    }
+
+
+    void set(int x, int y, int z, int axis, int vertexIndex) {
+        int point = (y - startY) * pointsZ + (z - startZ);
+        if(axis == 0)
+            between[point] = vertexIndex;
+        else {
+            int[] slice = (x == sliceX) ? slice0 : slice1;
+            slice[point*3 + axis-1] = vertexIndex;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.meshgen;
+
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.property.IntAttribute;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.structure.BMesh;
+import ch.alchemists.jbmesh.structure.Edge;
+import ch.alchemists.jbmesh.structure.Face;
+import ch.alchemists.jbmesh.structure.Loop;
+import ch.alchemists.jbmesh.structure.Vertex;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Vector3f;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Marching cubes that keeps track of which cell created which face, so the mesh can be updated
+ * when the DistanceFunction changes inside a region.<br>
+ * The lattice is the same as in {@link MarchingCubeBuilder#build(BMesh, DistanceFunction, float)} and is fixed to the bounds
+ * of the DistanceFunction at construction. Each face stores the linear index of its cell in the {@link #ATTRIBUTE_CELL} attribute.<br>
+ * An update removes the faces of the cells touching the changed lattice points and polygonizes only these cells again.
+ * The faces are found through the vertices on the lattice edges of the region and their cell attribute.
+ * Vertices on lattice edges at the border of the region are unchanged and reused, so the new faces connect seamlessly
+ * to the untouched surface. The work is proportional to the number of cells in the region.<br>
+ * The builder owns the faces it created. Other edits of these faces and their vertices are not supported,
+ * except for removing them: Vertices that were removed outside the builder are detected and created again.
+ */
+public class IncrementalMarchingCubeBuilder {
+    public static final String ATTRIBUTE_CELL = "MarchingCubeCell";
+
+    private final BMesh bmesh;
+    private final DistanceFunction dfunc;
+    private final float cellSize;
+    private final boolean setNormals;
+
+    private final Vector3f origin;
+    private final int numCellsX, numCellsY, numCellsZ;
+
+    private final IntAttribute<Face> faceCells;
+    private final Vec3Attribute<Loop> loopNormals;
+
+    // Vertex of each lattice edge or point
+    private final Map<Long, Vertex> edgeVertices = new HashMap<>();
+
+
+    public IncrementalMarchingCubeBuilder(BMesh bmesh, DistanceFunction dfunc, float cellSize, boolean setNormals) {
+        this.bmesh = (bmesh != null) ? bmesh : new BMesh();
+        this.dfunc = dfunc;
+        this.cellSize = cellSize;
+        this.setNormals = setNormals;
+
+        BoundingBox bounds = dfunc.getBounds();
+        origin = bounds.getMin(null);
+        Vector3f size = bounds.getExtent(null).multLocal(2.0f);
+
+        numCellsX = MarchingCubeBuilder.getNumCells(size.x, cellSize);
+        numCellsY = MarchingCubeBuilder.getNumCells(size.y, cellSize);
+        numCellsZ = MarchingCubeBuilder.getNumCells(size.z, cellSize);
+        if((long) numCellsX * numCellsY * numCellsZ > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many cells");
+
+        IntAttribute<Face> cells = IntAttribute.get(ATTRIBUTE_CELL, this.bmesh.faces());
+        if(cells == null) {
+            cells = new IntAttribute<>(ATTRIBUTE_CELL);
+            cells.setComparable(false);
+            this.bmesh.faces().addAttribute(cells);
+        }
+        faceCells = cells;
+
+        loopNormals = setNormals ? Vec3Attribute.getOrCreate(BMeshAttribute.Normal, this.bmesh.loops()) : null;
+    }
+
+
+    public BMesh getMesh() {
+        return bmesh;
+    }
+
+
+    /**
+     * Polygonizes the whole lattice. Removes faces created by previous builds.
+     */
+    public void build() {
+        removeCells(0, 0, 0, numCellsX, numCellsY, numCellsZ);
+        polygonize(0, 0, 0, numCellsX, numCellsY, numCellsZ);
+    }
+
+
+    /**
+     * Updates the faces after the DistanceFunction has changed inside the given region.
+     * @param dirty Contains all positions where the distance has changed.
+     */
+    public void update(BoundingBox dirty) {
+        Vector3f min = dirty.getMin(null).subtractLocal(origin).divideLocal(cellSize);
+        Vector3f max = dirty.getMax(null).subtractLocal(origin).divideLocal(cellSize);
+
+        // Cells that have one of the changed lattice points as a corner
+        int x0 = Math.max((int) Math.ceil(min.x) - 1, 0);
+        int y0 = Math.max((int) Math.ceil(min.y) - 1, 0);
+        int z0 = Math.max((int) Math.ceil(min.z) - 1, 0);
+        int x1 = Math.min((int) Math.floor(max.x) + 1, numCellsX);
+        int y1 = Math.min((int) Math.floor(max.y) + 1, numCellsY);
+        int z1 = Math.min((int) Math.floor(max.z) + 1, numCellsZ);
+
+        if(x0 >= x1 || y0 >= y1 || z0 >= z1)
+            return;
+
+        removeCells(x0, y0, z0, x1, y1, z1);
+        polygonize(x0, y0, z0, x1, y1, z1);
+    }
+
+
+    private void removeCells(int x0, int y0, int z0, int x1, int y1, int z1) {
+        // The faces of a cell only use vertices on the lattice edges and points of the cell
+        Set<Face> faces = new HashSet<>();
+        for(int x=x0; x<=x1; ++x) {
+            for(int y=y0; y<=y1; ++y) {
+                for(int z=z0; z<=z1; ++z) {
+                    for(int axis=0; axis<=EdgeVertexCache.POINT; ++axis) {
+                        Vertex vertex = getVertex(edgeKey(x, y, z, axis));
+                        if(vertex == null)
+                            continue;
+
+                        for(Edge edge : vertex.edges()) {
+                            for(Loop loop : edge.loops()) {
+                                if(isCellInRegion(faceCells.get(loop.face), x0, y0, z0, x1, y1, z1))
+                                    faces.add(loop.face);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        Set<Edge> edges = new HashSet<>();
+        for(Face face : faces) {
+            for(Loop loop : face.loops())
+                edges.add(loop.edge);
+            bmesh.removeFace(face);
+        }
+
+        for(Edge edge : edges) {
+            if(edge.loop == null)
+                bmesh.removeEdge(edge);
+        }
+
+        // Remove vertices on the lattice edges of the region that are not used by other cells anymore
+        for(int x=x0; x<=x1; ++x) {
+            for(int y=y0; y<=y1; ++y) {
+                for(int z=z0; z<=z1; ++z) {
+                    for(int axis=0; axis<=EdgeVertexCache.POINT; ++axis) {
+                        long key = edgeKey(x, y, z, axis);
+                        Vertex vertex = getVertex(key);
+                        if(vertex != null && vertex.edge == null) {
+                            bmesh.removeVertex(vertex);
+                            edgeVertices.remove(key);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @return The vertex on the lattice edge or point. Null if there is none or if it was removed outside of the builder.
+     */
+    private Vertex getVertex(long key) {
+        Vertex vertex = edgeVertices.get(key);
+        if(vertex != null && !vertex.isAlive()) {
+            edgeVertices.remove(key);
+            return null;
+        }
+        return vertex;
+    }
+
+
+    /**
+     * @param cell Linear index of the cell, see {@link MarchingCubeBlock#cellIndex(int, int, int)}.
+     */
+    private boolean isCellInRegion(int cell, int x0, int y0, int z0, int x1, int y1, int z1) {
+        int z = cell % numCellsZ;
+        cell /= numCellsZ;
+        int y = cell % numCellsY;
+        int x = cell / numCellsY;
+        return x >= x0 && x < x1 && y >= y0 && y < y1 && z >= z0 && z < z1;
+    }
+
+
+    private void polygonize(int x0, int y0, int z0, int x1, int y1, int z1) {
+        MarchingCubeBlock block = new MarchingCubeBlock(dfunc, origin, cellSize, setNormals, numCellsY, numCellsZ, x0, y0, z0, x1, y1, z1);
+        block.trackCells();
+        block.process();
+
+        Vertex[] vertices = new Vertex[block.numVertices];
+        float[] pos = block.positions;
+        for(int i=0, p=0; i<block.numVertices; ++i, p+=3) {
+            Vertex vertex = getVertex(block.edgeKeys[i]);
+            if(vertex == null) {
+                vertex = bmesh.createVertex(pos[p], pos[p+1], pos[p+2]);
+                edgeVertices.put(block.edgeKeys[i], vertex);
+            }
+            vertices[i] = vertex;
+        }
+
+        int[] tris = block.triangles;
+        for(int i=0; i<block.numIndices; i+=3) {
+            Face face = bmesh.createFace(vertices[tris[i]], vertices[tris[i+1]], vertices[tris[i+2]]);
+
+            faceCells.set(face, block.triangleCells[i/3]);
+
+            if(loopNormals != null) {
+                Loop loop = face.loop;
+                for(int k=0; k<3; ++k, loop = loop.nextFaceLoop) {
+                    int n = tris[i+k] * 3;
+                    loopNormals.set(loop, block.normals[n], block.normals[n+1], block.normals[n+2]);
+                }
+            }
+        }
+    }
+
+
+    private long edgeKey(int x, int y, int z, int axis) {
+        return MarchingCubeBlock.edgeKey(x, y, z, axis, numCellsY+1, numCellsZ+1);
+    }
+}
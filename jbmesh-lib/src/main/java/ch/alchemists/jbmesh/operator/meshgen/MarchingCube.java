@@ -13,6 +13,7 @@ import ch.alchemists.jbmesh.structure.BMesh;
 import ch.alchemists.jbmesh.structure.Face;
 import ch.alchemists.jbmesh.structure.Loop;
 import ch.alchemists.jbmesh.structure.Vertex;
+import ch.alchemists.jbmesh.util.HashGrid;
 import com.jme3.math.Vector3f;
 
 public class MarchingCube {
@@ -64,10 +65,37 @@ public class MarchingCube {
 
 
     public int process(DistanceFunction dfunc) {
+        for(int i=0; i<corners.length; ++i)
+            dist[i] = dfunc.dist(corners[i]);
+
+        return polygonize(dfunc);
+    }
+
+
+    /**
+     * Takes the corner distances from a cache of lattice points. Missing distances are evaluated and added to the cache.
+     * @param cellIndex Lattice index of the first corner, the one at the position of the cube.
+     */
+    public int process(DistanceFunction dfunc, HashGrid<Float> distanceCache, HashGrid.Index cellIndex) {
+        for(int i=0; i<corners.length; ++i) {
+            int[] offset = MarchingCubeBlock.CORNER_OFFSETS[i];
+            Float cached = distanceCache.getNeighbor(cellIndex, offset[0], offset[1], offset[2]);
+            if(cached != null)
+                dist[i] = cached;
+            else {
+                dist[i] = dfunc.dist(corners[i]);
+                distanceCache.set(cellIndex.walk(offset[0], offset[1], offset[2]), dist[i]);
+            }
+        }
+
+        return polygonize(dfunc);
+    }
+
+
+    private int polygonize(DistanceFunction dfunc) {
         // Check which corners of the cube are inside (bits set = inside = negative distance)
         short cornerMask = 0;
         for(int i=0; i<corners.length; ++i) {
-            dist[i] = dfunc.dist(corners[i]);
             if(dist[i] <= 0.0f)
                 cornerMask |= (1 << i);
         }
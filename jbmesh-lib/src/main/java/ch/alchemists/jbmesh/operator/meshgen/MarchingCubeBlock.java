@@ -0,0 +1,330 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.meshgen;
+
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.structure.BMesh;
+import ch.alchemists.jbmesh.structure.Face;
+import ch.alchemists.jbmesh.structure.Loop;
+import ch.alchemists.jbmesh.structure.Vertex;
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Polygonizes a block of cells of a lattice into block-local arrays.<br>
+ * Vertices are identified by the lattice edge they lie on, or by the lattice point if the distance there is exactly 0.
+ * Inside the block, an {@link EdgeVertexCache} shares them between neighbouring cells. Across blocks, they are stitched exactly by their key.
+ * Each intersection is interpolated from the lower to the upper lattice point, which makes the positions of
+ * shared vertices independent of the block that created them.
+ */
+class MarchingCubeBlock {
+    // Lattice offsets of cube corners, same order as in MarchingCube
+    static final int[][] CORNER_OFFSETS = { // [8][3]
+        {0, 0, 0}, {1, 0, 0}, {1, 0, 1}, {0, 0, 1},
+        {0, 1, 0}, {1, 1, 0}, {1, 1, 1}, {0, 1, 1}
+    };
+
+    private final DistanceFunction dfunc;
+    private final Vector3f origin;
+    private final float cellSize;
+    private final boolean setNormals;
+
+    // Number of lattice points along y and z of the whole lattice
+    private final int pointsY, pointsZ;
+
+    // Cell range of this block: [start, end)
+    final int startX, startY, startZ;
+    final int endX, endY, endZ;
+
+    private final SlabSampler sampler;
+    private final EdgeVertexCache edgeVertices;
+    private final Vector3f p = new Vector3f();
+    private final Vector3f normal = new Vector3f();
+    private final float[] dist = new float[8];
+    private final int[] edgeVertexIndices = new int[12];
+
+    int numVertices = 0;
+    float[] positions = new float[64 * 3];
+    float[] normals;
+    long[] edgeKeys = new long[64];
+
+    int numIndices = 0;
+    int[] triangles = new int[64 * 3];
+
+    // Linear index of the cell that created each triangle, only if tracked
+    int[] triangleCells;
+    private int currentCell;
+
+
+    MarchingCubeBlock(DistanceFunction dfunc, Vector3f origin, float cellSize, boolean setNormals, int numCellsY, int numCellsZ,
+                      int startX, int startY, int startZ, int endX, int endY, int endZ) {
+        this.dfunc = dfunc;
+        this.origin = origin;
+        this.cellSize = cellSize;
+        this.setNormals = setNormals;
+        this.pointsY = numCellsY + 1;
+        this.pointsZ = numCellsZ + 1;
+
+        this.startX = startX;
+        this.startY = startY;
+        this.startZ = startZ;
+        this.endX = endX;
+        this.endY = endY;
+        this.endZ = endZ;
+
+        if(setNormals)
+            normals = new float[positions.length];
+
+        sampler = new SlabSampler(dfunc, origin, cellSize, startY, startZ, endY-startY, endZ-startZ);
+        edgeVertices = new EdgeVertexCache(startY, startZ, endY-startY, endZ-startZ);
+    }
+
+
+    /**
+     * Records the cell of each triangle in {@link #triangleCells}. Must be called before {@link #process()}.
+     */
+    void trackCells() {
+        triangleCells = new int[triangles.length / 3];
+    }
+
+
+    /**
+     * @return Linear index of the cell in the whole lattice.
+     */
+    int cellIndex(int x, int y, int z) {
+        return (x * (pointsY-1) + y) * (pointsZ-1) + z;
+    }
+
+
+    void process() {
+        for(int x=startX; x<endX; ++x) {
+            sampler.setSlice(x);
+            edgeVertices.setSlice(x);
+            for(int y=startY; y<endY; ++y) {
+                for(int z=startZ; z<endZ; ++z)
+                    processCell(x, y, z);
+            }
+        }
+    }
+
+
+    private void processCell(int x, int y, int z) {
+        sampler.getCorners(y, z, dist);
+
+        int cornerMask = 0;
+        for(int i=0; i<8; ++i) {
+            if(dist[i] <= 0.0f)
+                cornerMask |= (1 << i);
+        }
+
+        int intersectingEdges = Tables.MC_edgeTable[cornerMask];
+        if(intersectingEdges == 0)
+            return;
+
+        for(int i=0; i<12; ++i, intersectingEdges >>>= 1) {
+            if((intersectingEdges & 1) != 0)
+                edgeVertexIndices[i] = getOrCreateVertex(x, y, z, i);
+        }
+
+        if(triangleCells != null)
+            currentCell = cellIndex(x, y, z);
+
+        byte[] tris = Tables.MC_triTable[cornerMask];
+        for(int i=0; tris[i] >= 0; i += 3) {
+            int v0 = edgeVertexIndices[tris[i]];
+            int v1 = edgeVertexIndices[tris[i+1]];
+            int v2 = edgeVertexIndices[tris[i+2]];
+            if(v0 != v1 && v1 != v2 && v0 != v2)
+                addTriangle(v0, v1, v2);
+        }
+    }
+
+
+    private int getOrCreateVertex(int x, int y, int z, int edge) {
+        int c0 = Tables.edgeVertexTable[edge][0];
+        int c1 = Tables.edgeVertexTable[edge][1];
+        int[] o0 = CORNER_OFFSETS[c0];
+        int[] o1 = CORNER_OFFSETS[c1];
+
+        // Order from lower to upper lattice point
+        int axis = (o0[0] != o1[0]) ? 0 : (o0[1] != o1[1]) ? 1 : 2;
+        if(o0[axis] > o1[axis]) {
+            int temp = c0; c0 = c1; c1 = temp;
+            o0 = CORNER_OFFSETS[c0];
+        }
+
+        int lx = x + o0[0];
+        int ly = y + o0[1];
+        int lz = z + o0[2];
+
+        float t = FastMath.clamp(dist[c0] / (dist[c0] - dist[c1]), 0, 1);
+
+        // Surface passes through a lattice point: All adjacent edges share the vertex on the point
+        if(t <= 0 || t >= 1) {
+            if(t >= 1) {
+                switch(axis) {
+                    case 0: lx++; break;
+                    case 1: ly++; break;
+                    default: lz++;
+                }
+            }
+            axis = EdgeVertexCache.POINT;
+        }
+
+        int existing = edgeVertices.get(lx, ly, lz, axis);
+        if(existing != EdgeVertexCache.NONE)
+            return existing;
+
+        setLatticePoint(lx, ly, lz);
+        switch(axis) {
+            case 0: p.x += t * cellSize; break;
+            case 1: p.y += t * cellSize; break;
+            case 2: p.z += t * cellSize; break;
+        }
+
+        int index = addVertex(edgeKey(lx, ly, lz, axis));
+        edgeVertices.set(lx, ly, lz, axis, index);
+        return index;
+    }
+
+
+    private void setLatticePoint(int x, int y, int z) {
+        p.x = origin.x + x * cellSize;
+        p.y = origin.y + y * cellSize;
+        p.z = origin.z + z * cellSize;
+    }
+
+
+    long edgeKey(int x, int y, int z, int axis) {
+        return edgeKey(x, y, z, axis, pointsY, pointsZ);
+    }
+
+
+    /**
+     * @param axis 0: x, 1: y, 2: z, {@link EdgeVertexCache#POINT}: the lattice point itself
+     * @return Unique key of a lattice edge or point in the whole lattice.
+     */
+    static long edgeKey(int x, int y, int z, int axis, int pointsY, int pointsZ) {
+        long point = ((long) x * pointsY + y) * pointsZ + z;
+        return point * 4 + axis;
+    }
+
+
+    /**
+     * @return Whether the lattice edge or point of the vertex lies on the boundary of this block and can be shared with neighbouring blocks.
+     */
+    boolean isBoundaryVertex(int index) {
+        long key = edgeKeys[index];
+        int axis = (int) (key % 4);
+        long point = key / 4;
+        int z = (int) (point % pointsZ);
+        point /= pointsZ;
+        int y = (int) (point % pointsY);
+        int x = (int) (point / pointsY);
+
+        return (axis != 0 && (x == startX || x == endX))
+            || (axis != 1 && (y == startY || y == endY))
+            || (axis != 2 && (z == startZ || z == endZ));
+    }
+
+
+    private int addVertex(long key) {
+        if(numVertices == edgeKeys.length) {
+            int capacity = edgeKeys.length * 2;
+            edgeKeys = Arrays.copyOf(edgeKeys, capacity);
+            positions = Arrays.copyOf(positions, capacity * 3);
+            if(setNormals)
+                normals = Arrays.copyOf(normals, capacity * 3);
+        }
+
+        int i = numVertices * 3;
+        positions[i]   = p.x;
+        positions[i+1] = p.y;
+        positions[i+2] = p.z;
+
+        if(setNormals) {
+            dfunc.normal(p, normal);
+            normals[i]   = normal.x;
+            normals[i+1] = normal.y;
+            normals[i+2] = normal.z;
+        }
+
+        edgeKeys[numVertices] = key;
+        return numVertices++;
+    }
+
+
+    private void addTriangle(int v0, int v1, int v2) {
+        if(numIndices + 3 > triangles.length) {
+            triangles = Arrays.copyOf(triangles, triangles.length * 2);
+            if(triangleCells != null)
+                triangleCells = Arrays.copyOf(triangleCells, triangles.length / 3);
+        }
+
+        if(triangleCells != null)
+            triangleCells[numIndices / 3] = currentCell;
+
+        triangles[numIndices++] = v0;
+        triangles[numIndices++] = v1;
+        triangles[numIndices++] = v2;
+    }
+
+
+    /**
+     * Creates the elements of the blocks in the given order. Vertices on block boundaries are shared through their lattice edge.
+     */
+    static void createElements(BMesh bmesh, MarchingCubeBlock[] blocks, boolean setNormals) {
+        int totalVertices = 0;
+        int totalTriangles = 0;
+        for(MarchingCubeBlock block : blocks) {
+            totalVertices += block.numVertices;
+            totalTriangles += block.numIndices / 3;
+        }
+
+        bmesh.vertices().reserveCapacity(totalVertices);
+        bmesh.faces().reserveCapacity(totalTriangles);
+        bmesh.loops().reserveCapacity(totalTriangles * 3);
+
+        Vec3Attribute<Loop> loopNormals = setNormals ? Vec3Attribute.getOrCreate(BMeshAttribute.Normal, bmesh.loops()) : null;
+        Map<Long, Vertex> sharedVertices = new HashMap<>();
+
+        for(MarchingCubeBlock block : blocks) {
+            Vertex[] vertices = new Vertex[block.numVertices];
+            float[] pos = block.positions;
+
+            for(int i=0, p=0; i<block.numVertices; ++i, p+=3) {
+                if(block.isBoundaryVertex(i)) {
+                    Vertex vertex = sharedVertices.get(block.edgeKeys[i]);
+                    if(vertex == null) {
+                        vertex = bmesh.createVertex(pos[p], pos[p+1], pos[p+2]);
+                        sharedVertices.put(block.edgeKeys[i], vertex);
+                    }
+                    vertices[i] = vertex;
+                }
+                else
+                    vertices[i] = bmesh.createVertex(pos[p], pos[p+1], pos[p+2]);
+            }
+
+            int[] tris = block.triangles;
+            for(int i=0; i<block.numIndices; i+=3) {
+                Face face = bmesh.createFace(vertices[tris[i]], vertices[tris[i+1]], vertices[tris[i+2]]);
+
+                if(loopNormals != null) {
+                    Loop loop = face.loop;
+                    for(int k=0; k<3; ++k, loop = loop.nextFaceLoop) {
+                        int n = tris[i+k] * 3;
+                        loopNormals.set(loop, block.normals[n], block.normals[n+1], block.normals[n+2]);
+                    }
+                }
+            }
+        }
+    }
+}
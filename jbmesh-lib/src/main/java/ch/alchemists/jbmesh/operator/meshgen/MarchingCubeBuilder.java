@@ -10,6 +10,7 @@ import ch.alchemists.jbmesh.lookup.HashGridDeduplication;
 import ch.alchemists.jbmesh.lookup.VertexDeduplication;
 import ch.alchemists.jbmesh.structure.BMesh;
 import ch.alchemists.jbmesh.util.HashGrid;
+import ch.alchemists.jbmesh.util.TimeSlicedTask;
 import com.jme3.bounding.BoundingBox;
 import com.jme3.math.Vector3f;
 import java.util.ArrayDeque;
@@ -30,31 +31,41 @@ public class MarchingCubeBuilder {
         if(bmesh == null)
             bmesh = new BMesh();
 
-        VertexDeduplication dedup = new HashGridDeduplication(bmesh, DEDUP_EPSILON);
-        MarchingCube cube = new MarchingCube(bmesh, dedup, cellSize, setNormals);
-
         BoundingBox bounds = dfunc.getBounds();
         Vector3f start = bounds.getMin(null);
-        Vector3f end   = bounds.getMax(null);
-        Vector3f p     = new Vector3f();
+        Vector3f size  = bounds.getExtent(null).multLocal(2.0f);
 
         // Prevent building outside of bounds
-        float boundary = cellSize - BOUND_EPSILON;
-        end.subtractLocal(boundary, boundary, boundary);
+        int numCellsX = getNumCells(size.x, cellSize);
+        int numCellsY = getNumCells(size.y, cellSize);
+        int numCellsZ = getNumCells(size.z, cellSize);
 
-        for(p.x = start.x; p.x <= end.x; p.x += cellSize) {
-            for(p.y = start.y; p.y <= end.y; p.y += cellSize) {
-                for(p.z = start.z; p.z <= end.z; p.z += cellSize) {
-                    cube.setPosition(p);
-                    cube.process(dfunc);
-                }
-            }
-        }
+        // Process whole lattice as one block: Each lattice point is evaluated once and vertices are shared by lattice edge
+        MarchingCubeBlock block = new MarchingCubeBlock(dfunc, start, cellSize, setNormals, numCellsY, numCellsZ,
+                0, 0, 0, numCellsX, numCellsY, numCellsZ);
+        block.process();
+        MarchingCubeBlock.createElements(bmesh, new MarchingCubeBlock[] { block }, setNormals);
 
         return bmesh;
     }
 
 
+    /**
+     * @return Number of cells along an axis so that all cells are completely inside the bounds.
+     */
+    static int getNumCells(float size, float cellSize) {
+        float boundary = cellSize - BOUND_EPSILON;
+        if(size < boundary)
+            return 0;
+        return (int) Math.floor((size - boundary) / cellSize) + 1;
+    }
+
+
+    /**
+     * Seeks the first cell that intersects the surface and walks along the surface from there.
+     * The cells along the surface share the distances at their lattice points. The cells that are checked while seeking
+     * evaluate all their corners, since the positions of the iterator are not necessarily on one lattice.
+     */
     public static BMesh buildFollowSurface(BMesh bmesh, DistanceFunction dfunc, float cellSize) {
         return buildFollowSurface(bmesh, dfunc, cellSize, DEFAULT_SET_NORMALS);
     }
@@ -65,18 +76,93 @@ public class MarchingCubeBuilder {
     }
 
     public static BMesh buildFollowSurface(BMesh bmesh, DistanceFunction dfunc, float cellSize, boolean setNormals, Iterator<Vector3f> cellPosIterator) {
-        if(bmesh == null)
-            bmesh = new BMesh();
+        FollowSurfaceTask task = new FollowSurfaceTask(bmesh, dfunc, cellSize, setNormals, cellPosIterator);
+        task.runToCompletion();
+        return task.getMesh();
+    }
+
+
+    /**
+     * Creates a resumable version of {@link #buildFollowSurface(BMesh, DistanceFunction, float, boolean)} that processes one cell per step.
+     */
+    public static FollowSurfaceTask buildFollowSurfaceTask(BMesh bmesh, DistanceFunction dfunc, float cellSize, boolean setNormals) {
+        Iterator<Vector3f> cellPosIterator = new DefaultCellPosIterator(dfunc.getBounds(), cellSize);
+        return new FollowSurfaceTask(bmesh, dfunc, cellSize, setNormals, cellPosIterator);
+    }
+
+
+    public static class FollowSurfaceTask extends TimeSlicedTask {
+        private final BMesh bmesh;
+        private final DistanceFunction dfunc;
+        private final float cellSize;
+        private final Iterator<Vector3f> cellPosIterator;
+
+        private final HashGrid<Vector3f> visitedCells;
+        private final HashGrid<Float> cornerDistances;
+        private final MarchingCube cube;
+        private final Queue<HashGrid.Index> queue = new ArrayDeque<>();
+        private final BoundingBox bounds;
+
+        private boolean seeking = true;
+        private int numProcessed = 0;
+
+
+        private FollowSurfaceTask(BMesh bmesh, DistanceFunction dfunc, float cellSize, boolean setNormals, Iterator<Vector3f> cellPosIterator) {
+            this.bmesh = (bmesh != null) ? bmesh : new BMesh();
+            this.dfunc = dfunc;
+            this.cellSize = cellSize;
+            this.cellPosIterator = cellPosIterator;
+
+            VertexDeduplication dedup = new HashGridDeduplication(this.bmesh, DEDUP_EPSILON);
+            visitedCells = new HashGrid<>(cellSize);
+            cornerDistances = new HashGrid<>(cellSize);
+            cube = new MarchingCube(this.bmesh, dedup, cellSize, setNormals);
+
+            // Move BoundingBox so we can use it to ensure that the cells are all completely contained inside the bounds
+            BoundingBox dfuncBounds = dfunc.getBounds();
+            float boundary = cellSize - BOUND_EPSILON;
+            Vector3f min = dfuncBounds.getMin(null).subtractLocal(boundary, boundary, boundary);
+            Vector3f max = dfuncBounds.getMax(null).subtractLocal(boundary, boundary, boundary);
+            bounds = new BoundingBox(min, max);
+        }
+
+
+        public BMesh getMesh() {
+            return bmesh;
+        }
+
+
+        @Override
+        protected boolean step() {
+            if(seeking)
+                return seek();
+
+            // Breadth first traversal along surface
+            HashGrid.Index gridIndex = queue.poll();
+            if(gridIndex == null)
+                return true;
+
+            Vector3f p = visitedCells.get(gridIndex);
+            if(bounds.contains(p)) {
+                cube.setPosition(p);
+                int walkDirections = cube.process(dfunc, cornerDistances, gridIndex);
+                if(walkDirections != 0)
+                    putQueue(queue, p, visitedCells, gridIndex, cellSize, walkDirections);
+                numProcessed++;
+            }
+
+            return queue.isEmpty();
+        }
 
-        VertexDeduplication dedup = new HashGridDeduplication(bmesh, DEDUP_EPSILON);
-        HashGrid<Vector3f> visitedCells = new HashGrid<>(cellSize);
-        MarchingCube cube = new MarchingCube(bmesh, dedup, cellSize, setNormals);
-        Queue<HashGrid.Index> queue = new ArrayDeque<>();
-        Vector3f p;
 
-        // Find first intersecting cell
-        while(cellPosIterator.hasNext()) {
-            p = cellPosIterator.next();
+        /**
+         * Checks one cell for being the first intersecting cell.
+         */
+        private boolean seek() {
+            if(!cellPosIterator.hasNext())
+                return true;
+
+            Vector3f p = cellPosIterator.next();
             cube.setPosition(p);
             int walkDirections = cube.process(dfunc);
 
@@ -84,31 +170,25 @@ public class MarchingCubeBuilder {
                 HashGrid.Index gridIndex = visitedCells.getIndexForCoords(p);
                 visitedCells.set(gridIndex, p.clone());
                 putQueue(queue, p, visitedCells, gridIndex, cellSize, walkDirections);
-                break;
+                seeking = false;
+                return queue.isEmpty();
             }
-        }
 
-        // Move BoundingBox so we can use it to ensure that the cells are all completely contained inside the bounds
-        BoundingBox bounds = dfunc.getBounds();
-        float boundary = cellSize - BOUND_EPSILON;
-        Vector3f min = bounds.getMin(null).subtractLocal(boundary, boundary, boundary);
-        Vector3f max = bounds.getMax(null).subtractLocal(boundary, boundary, boundary);
-        bounds = new BoundingBox(min, max);
+            return false;
+        }
 
-        // Breadth first traversal along surface
-        while(!queue.isEmpty()) {
-            HashGrid.Index gridIndex = queue.poll();
-            p = visitedCells.get(gridIndex);
-            if(!bounds.contains(p))
-                continue;
 
-            cube.setPosition(p);
-            int walkDirections = cube.process(dfunc);
-            if(walkDirections != 0)
-                putQueue(queue, p, visitedCells, gridIndex, cellSize, walkDirections);
+        /**
+         * The total number of cells on the surface is unknown. The estimate is based on the number of cells waiting in the queue.
+         */
+        @Override
+        public float getProgress() {
+            if(getState() == State.Finished)
+                return 1.0f;
+            if(seeking)
+                return 0.0f;
+            return (float) numProcessed / (numProcessed + queue.size());
         }
-
-        return bmesh;
     }
 
 
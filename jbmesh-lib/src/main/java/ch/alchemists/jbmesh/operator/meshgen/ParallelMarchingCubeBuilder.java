@@ -0,0 +1,79 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.meshgen;
+
+import ch.alchemists.jbmesh.structure.BMesh;
+import ch.alchemists.jbmesh.util.ParallelRange;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Vector3f;
+
+/**
+ * Marching cubes over the whole bounds of a DistanceFunction, like {@link MarchingCubeBuilder#build(BMesh, DistanceFunction, float)},
+ * but the bounds are split into blocks which are polygonized in parallel into block-local arrays.
+ * The blocks are then stitched in a fixed order, so the result is deterministic.<br>
+ * DistanceFunction.dist() and normal() must be thread-safe.
+ */
+public class ParallelMarchingCubeBuilder {
+    public static final int DEFAULT_BLOCK_SIZE = 32;
+
+    private static final boolean DEFAULT_SET_NORMALS = true;
+
+
+    public static BMesh build(BMesh bmesh, DistanceFunction dfunc, float cellSize) {
+        return build(bmesh, dfunc, cellSize, DEFAULT_SET_NORMALS, DEFAULT_BLOCK_SIZE);
+    }
+
+    public static BMesh build(BMesh bmesh, DistanceFunction dfunc, float cellSize, boolean setNormals) {
+        return build(bmesh, dfunc, cellSize, setNormals, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param blockSize Number of cells along each axis of a block.
+     */
+    public static BMesh build(BMesh bmesh, DistanceFunction dfunc, float cellSize, boolean setNormals, int blockSize) {
+        if(blockSize < 1)
+            throw new IllegalArgumentException("Block size must be at least 1");
+
+        if(bmesh == null)
+            bmesh = new BMesh();
+
+        BoundingBox bounds = dfunc.getBounds();
+        Vector3f origin = bounds.getMin(null);
+        Vector3f size = bounds.getExtent(null).multLocal(2.0f);
+
+        // Same cells as MarchingCubeBuilder: Cells must be completely inside the bounds
+        int numCellsX = MarchingCubeBuilder.getNumCells(size.x, cellSize);
+        int numCellsY = MarchingCubeBuilder.getNumCells(size.y, cellSize);
+        int numCellsZ = MarchingCubeBuilder.getNumCells(size.z, cellSize);
+
+        int numBlocksX = (numCellsX + blockSize - 1) / blockSize;
+        int numBlocksY = (numCellsY + blockSize - 1) / blockSize;
+        int numBlocksZ = (numCellsZ + blockSize - 1) / blockSize;
+        int numBlocks = numBlocksX * numBlocksY * numBlocksZ;
+
+        MarchingCubeBlock[] blocks = new MarchingCubeBlock[numBlocks];
+        for(int bx=0, b=0; bx<numBlocksX; ++bx) {
+            for(int by=0; by<numBlocksY; ++by) {
+                for(int bz=0; bz<numBlocksZ; ++bz, ++b) {
+                    int x = bx * blockSize;
+                    int y = by * blockSize;
+                    int z = bz * blockSize;
+                    blocks[b] = new MarchingCubeBlock(dfunc, origin, cellSize, setNormals, numCellsY, numCellsZ,
+                            x, y, z, Math.min(x+blockSize, numCellsX), Math.min(y+blockSize, numCellsY), Math.min(z+blockSize, numCellsZ));
+                }
+            }
+        }
+
+        ParallelRange.forEach(numBlocks, 1, (start, end) -> {
+            for(int i=start; i<end; ++i)
+                blocks[i].process();
+        });
+
+        MarchingCubeBlock.createElements(bmesh, blocks, setNormals);
+        return bmesh;
+    }
+}
@@ -0,0 +1,308 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.meshgen;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Vector3f;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * DistanceFunction backed by distances sampled on a regular 3D grid, stored in a memory-mapped file.<br>
+ * Values between the grid points are interpolated trilinearly and the normal is the analytical gradient of the interpolation.
+ * The file is mapped in chunks of x-slices, so grids larger than the heap and larger than 2 GiB can be used.
+ * The operating system pages the samples in as needed.<br>
+ * Distances are stored as floats or quantized to shorts within [-range, range]. Quantized values beyond the range are clamped,
+ * which keeps the sign but underestimates the magnitude.<br>
+ * Outside of the grid, the distance to the grid bounds is added to the value at the nearest grid point.<br>
+ * Reading is thread-safe.
+ */
+public class SampledDistanceFunction implements DistanceFunction, Closeable {
+    private static final int MAGIC = 0x4A425344; // "JBSD"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+
+    private static final int FORMAT_FLOAT = 0;
+    private static final int FORMAT_SHORT = 1;
+
+    private static final long MAX_CHUNK_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] chunks;
+    private final int slicesPerChunk;
+
+    private final boolean quantized;
+    private final int elementSize;
+    private final float quantizationScale;
+
+    private final int pointsX, pointsY, pointsZ;
+    private final Vector3f origin = new Vector3f();
+    private final float spacing;
+    private final float invSpacing;
+
+
+    private SampledDistanceFunction(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while(header.hasRemaining()) {
+            if(channel.read(header, header.position()) < 0)
+                throw new IOException("Unexpected end of file");
+        }
+        header.flip();
+
+        if(header.getInt() != MAGIC)
+            throw new IOException("Not a sampled distance file");
+        if(header.getInt() != VERSION)
+            throw new IOException("Unsupported version");
+
+        int format = header.getInt();
+        if(format != FORMAT_FLOAT && format != FORMAT_SHORT)
+            throw new IOException("Unknown format: " + format);
+
+        quantized   = (format == FORMAT_SHORT);
+        elementSize = quantized ? 2 : 4;
+
+        pointsX = header.getInt();
+        pointsY = header.getInt();
+        pointsZ = header.getInt();
+        origin.set(header.getFloat(), header.getFloat(), header.getFloat());
+        spacing = header.getFloat();
+        invSpacing = 1.0f / spacing;
+        quantizationScale = header.getFloat() / Short.MAX_VALUE;
+
+        long sliceSize = (long) pointsY * pointsZ * elementSize;
+        if(channel.size() < HEADER_SIZE + sliceSize * pointsX)
+            throw new IOException("File is truncated");
+
+        slicesPerChunk = (int) Math.max(1, MAX_CHUNK_SIZE / sliceSize);
+        int numChunks = (pointsX + slicesPerChunk - 1) / slicesPerChunk;
+        chunks = new MappedByteBuffer[numChunks];
+
+        for(int i=0; i<numChunks; ++i) {
+            int numSlices = Math.min(slicesPerChunk, pointsX - i*slicesPerChunk);
+            long offset = HEADER_SIZE + sliceSize * i * slicesPerChunk;
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, sliceSize * numSlices);
+            chunks[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+
+    /**
+     * Opens a file written by {@link #create(Path, DistanceFunction, BoundingBox, float, float)}.
+     */
+    public static SampledDistanceFunction open(Path file) throws IOException {
+        return new SampledDistanceFunction(file);
+    }
+
+
+    /**
+     * Samples the DistanceFunction on a grid covering the bounds, writes it to the file and opens it.
+     * The source is evaluated one x-slice at a time, so only one slice is held on the heap.
+     * @param quantizationRange Stores shorts within [-range, range] if positive, floats otherwise.
+     */
+    public static SampledDistanceFunction create(Path file, DistanceFunction source, BoundingBox bounds, float spacing, float quantizationRange) throws IOException {
+        if(spacing <= 0.0f)
+            throw new IllegalArgumentException("Spacing must be positive");
+
+        Vector3f min = bounds.getMin(null);
+        Vector3f size = bounds.getExtent(null).multLocal(2.0f);
+        int pointsX = MarchingCubeBuilder.getNumCells(size.x, spacing) + 1;
+        int pointsY = MarchingCubeBuilder.getNumCells(size.y, spacing) + 1;
+        int pointsZ = MarchingCubeBuilder.getNumCells(size.z, spacing) + 1;
+
+        boolean quantized = quantizationRange > 0.0f;
+        int sliceSize = pointsY * pointsZ;
+        float invQuantizationScale = quantized ? Short.MAX_VALUE / quantizationRange : 0.0f;
+
+        try(FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(quantized ? FORMAT_SHORT : FORMAT_FLOAT);
+            header.putInt(pointsX).putInt(pointsY).putInt(pointsZ);
+            header.putFloat(min.x).putFloat(min.y).putFloat(min.z);
+            header.putFloat(spacing).putFloat(quantized ? quantizationRange : 0.0f);
+            header.position(HEADER_SIZE).flip();
+            writeFully(out, header);
+
+            float[] xs = new float[sliceSize];
+            float[] ys = new float[sliceSize];
+            float[] zs = new float[sliceSize];
+            float[] dists = new float[sliceSize];
+            for(int y=0, i=0; y<pointsY; ++y) {
+                for(int z=0; z<pointsZ; ++z, ++i) {
+                    ys[i] = min.y + y * spacing;
+                    zs[i] = min.z + z * spacing;
+                }
+            }
+
+            ByteBuffer slice = ByteBuffer.allocate(sliceSize * (quantized ? 2 : 4)).order(ByteOrder.LITTLE_ENDIAN);
+            for(int x=0; x<pointsX; ++x) {
+                float px = min.x + x * spacing;
+                for(int i=0; i<sliceSize; ++i)
+                    xs[i] = px;
+
+                source.dist(xs, ys, zs, dists, sliceSize);
+
+                slice.clear();
+                if(quantized) {
+                    for(int i=0; i<sliceSize; ++i) {
+                        float q = Math.max(-Short.MAX_VALUE, Math.min(Short.MAX_VALUE, dists[i] * invQuantizationScale));
+                        slice.putShort((short) Math.round(q));
+                    }
+                }
+                else {
+                    for(int i=0; i<sliceSize; ++i)
+                        slice.putFloat(dists[i]);
+                }
+
+                slice.flip();
+                writeFully(out, slice);
+            }
+        }
+
+        return open(file);
+    }
+
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+
+    /**
+     * Closes the file. Mappings stay valid until they are garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+
+    public boolean isQuantized() {
+        return quantized;
+    }
+
+
+    public float getSpacing() {
+        return spacing;
+    }
+
+
+    private float sample(int x, int y, int z) {
+        int chunk = x / slicesPerChunk;
+        int localX = x - chunk*slicesPerChunk;
+        int index = ((localX * pointsY + y) * pointsZ + z) * elementSize;
+
+        if(quantized)
+            return chunks[chunk].getShort(index) * quantizationScale;
+        return chunks[chunk].getFloat(index);
+    }
+
+
+    @Override
+    public float dist(Vector3f v) {
+        return dist(v.x, v.y, v.z, null);
+    }
+
+
+    @Override
+    public void dist(float[] x, float[] y, float[] z, float[] store, int count) {
+        for(int i=0; i<count; ++i)
+            store[i] = dist(x[i], y[i], z[i], null);
+    }
+
+
+    @Override
+    public void normal(Vector3f p, Vector3f store) {
+        dist(p.x, p.y, p.z, store);
+        store.normalizeLocal();
+    }
+
+
+    /**
+     * Trilinear interpolation of the 8 grid points around the position.
+     * @param gradient Receives the gradient of the interpolation if not null.
+     */
+    private float dist(float px, float py, float pz, Vector3f gradient) {
+        float gx = (px - origin.x) * invSpacing;
+        float gy = (py - origin.y) * invSpacing;
+        float gz = (pz - origin.z) * invSpacing;
+
+        // Clamp to grid and remember how far outside the position is
+        float cx = Math.max(0, Math.min(pointsX-1, gx));
+        float cy = Math.max(0, Math.min(pointsY-1, gy));
+        float cz = Math.max(0, Math.min(pointsZ-1, gz));
+        float ox = (gx - cx) * spacing;
+        float oy = (gy - cy) * spacing;
+        float oz = (gz - cz) * spacing;
+
+        int x0 = Math.min((int) cx, Math.max(pointsX-2, 0));
+        int y0 = Math.min((int) cy, Math.max(pointsY-2, 0));
+        int z0 = Math.min((int) cz, Math.max(pointsZ-2, 0));
+        int x1 = Math.min(x0+1, pointsX-1);
+        int y1 = Math.min(y0+1, pointsY-1);
+        int z1 = Math.min(z0+1, pointsZ-1);
+
+        float tx = cx - x0;
+        float ty = cy - y0;
+        float tz = cz - z0;
+
+        float d000 = sample(x0, y0, z0);
+        float d100 = sample(x1, y0, z0);
+        float d010 = sample(x0, y1, z0);
+        float d110 = sample(x1, y1, z0);
+        float d001 = sample(x0, y0, z1);
+        float d101 = sample(x1, y0, z1);
+        float d011 = sample(x0, y1, z1);
+        float d111 = sample(x1, y1, z1);
+
+        // Interpolate along x
+        float d00 = d000 + (d100 - d000) * tx;
+        float d10 = d010 + (d110 - d010) * tx;
+        float d01 = d001 + (d101 - d001) * tx;
+        float d11 = d011 + (d111 - d011) * tx;
+
+        // Along y
+        float d0 = d00 + (d10 - d00) * ty;
+        float d1 = d01 + (d11 - d01) * ty;
+
+        float outside = (float) Math.sqrt(ox*ox + oy*oy + oz*oz);
+        float result = d0 + (d1 - d0) * tz + outside;
+
+        if(gradient != null) {
+            if(outside > 0.0f) {
+                // Pointing away from the grid
+                gradient.set(ox, oy, oz);
+            }
+            else {
+                float ex0 = (d100 - d000) + ((d110 - d010) - (d100 - d000)) * ty;
+                float ex1 = (d101 - d001) + ((d111 - d011) - (d101 - d001)) * ty;
+                gradient.x = (ex0 + (ex1 - ex0) * tz) * invSpacing;
+                gradient.y = ((d10 - d00) + ((d11 - d01) - (d10 - d00)) * tz) * invSpacing;
+                gradient.z = (d1 - d0) * invSpacing;
+            }
+        }
+
+        return result;
+    }
+
+
+    @Override
+    public BoundingBox getBounds() {
+        Vector3f max = new Vector3f(pointsX-1, pointsY-1, pointsZ-1).multLocal(spacing).addLocal(origin);
+        BoundingBox bounds = new BoundingBox();
+        bounds.setMinMax(origin, max);
+        return bounds;
+    }
+}
@@ -0,0 +1,120 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.meshgen;
+
+import com.jme3.math.Vector3f;
+import java.util.Arrays;
+
+/**
+ * Caches the distances at the lattice points of two neighbouring x-slices.<br>
+ * When the cells are visited in increasing x order, each lattice point of the sampled range is evaluated exactly once,
+ * instead of once for each of the 8 cubes it is a corner of. A whole slice is evaluated with one batch call.
+ * Memory is bounded to a few slices.
+ */
+class SlabSampler {
+    private final DistanceFunction dfunc;
+    private final Vector3f origin;
+    private final float cellSize;
+
+    private final int startY, startZ;
+    private final int pointsY, pointsZ;
+
+    private float[] slice0;
+    private float[] slice1;
+    private int sliceX = Integer.MIN_VALUE; // x of slice0
+
+    // Coordinates of the lattice points of a slice for batch evaluation. Only x changes between slices.
+    private final float[] xs;
+    private final float[] ys;
+    private final float[] zs;
+
+
+    /**
+     * @param startY First lattice point along y.
+     * @param startZ First lattice point along z.
+     * @param numCellsY Number of cells along y. The number of sampled lattice points is one more.
+     * @param numCellsZ Number of cells along z.
+     */
+    SlabSampler(DistanceFunction dfunc, Vector3f origin, float cellSize, int startY, int startZ, int numCellsY, int numCellsZ) {
+        this.dfunc = dfunc;
+        this.origin = origin;
+        this.cellSize = cellSize;
+        this.startY = startY;
+        this.startZ = startZ;
+        this.pointsY = numCellsY + 1;
+        this.pointsZ = numCellsZ + 1;
+
+        int numPoints = pointsY * pointsZ;
+        slice0 = new float[numPoints];
+        slice1 = new float[numPoints];
+
+        xs = new float[numPoints];
+        ys = new float[numPoints];
+        zs = new float[numPoints];
+        for(int y=0, i=0; y<pointsY; ++y) {
+            float py = origin.y + (startY + y) * cellSize;
+            for(int z=0; z<pointsZ; ++z, ++i) {
+                ys[i] = py;
+                zs[i] = origin.z + (startZ + z) * cellSize;
+            }
+        }
+    }
+
+
+    /**
+     * Makes the slices at x and x+1 available. Reuses the previous slice when advancing by one.
+     */
+    void setSlice(int x) {
+        if(x == sliceX)
+            return;
+
+        if(x == sliceX+1) {
+            float[] temp = slice0;
+            slice0 = slice1;
+            slice1 = temp;
+        }
+        else
+            sample(x, slice0);
+
+        sample(x+1, slice1);
+        sliceX = x;
+    }
+
+
+    private void sample(int x, float[] slice) {
+        Arrays.fill(xs, origin.x + x * cellSize);
+        dfunc.dist(xs, ys, zs, slice, slice.length);
+    }
+
+
+    /**
+     * @param x The slice given to {@link #setSlice(int)} or the slice after it.
+     */
+    float get(int x, int y, int z) {
+        float[] slice = (x == sliceX) ? slice0 : slice1;
+        return slice[(y - startY) * pointsZ + (z - startZ)];
+    }
+
+
+    /**
+     * Writes the distances at the corners of the cell at (x, y, z) in the corner order of {@link MarchingCube}.
+     * The x coordinate is the one given to {@link #setSlice(int)}.
+     */
+    void getCorners(int y, int z, float[] store) {
+        int i = (y - startY) * pointsZ + (z - startZ);
+        int up = i + pointsZ;
+
+        store[0] = slice0[i];
+        store[1] = slice1[i];
+        store[2] = slice1[i+1];
+        store[3] = slice0[i+1];
+        store[4] = slice0[up];
+        store[5] = slice1[up];
+        store[6] = slice1[up+1];
+        store[7] = slice0[up+1];
+    }
+}
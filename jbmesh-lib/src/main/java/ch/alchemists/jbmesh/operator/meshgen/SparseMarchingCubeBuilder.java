@@ -0,0 +1,128 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.meshgen;
+
+import ch.alchemists.jbmesh.structure.BMesh;
+import ch.alchemists.jbmesh.util.ParallelRange;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Marching cubes over the bounds of a DistanceFunction that only polygonizes regions near the surface.<br>
+ * The lattice is subdivided like an octree. A region is skipped when the distance at its center is larger than
+ * the distance to its farthest corner, scaled by the Lipschitz bound of the DistanceFunction: Then all lattice points
+ * of the region are on the same side of the surface. The remaining leaf regions are polygonized in parallel at full resolution,
+ * so the result has no cracks and contains the same triangles as {@link MarchingCubeBuilder#build(BMesh, DistanceFunction, float)}.
+ * Unlike buildFollowSurface, no seed cell is needed and disconnected components are found.<br>
+ * DistanceFunction.dist() and normal() must be thread-safe.
+ */
+public class SparseMarchingCubeBuilder {
+    public static final int DEFAULT_LEAF_SIZE = 8;
+    public static final float DEFAULT_LIPSCHITZ = 1.0f;
+
+    private static final boolean DEFAULT_SET_NORMALS = true;
+
+
+    public static BMesh build(BMesh bmesh, DistanceFunction dfunc, float cellSize) {
+        return build(bmesh, dfunc, cellSize, DEFAULT_SET_NORMALS, DEFAULT_LIPSCHITZ);
+    }
+
+    /**
+     * @param lipschitz Upper bound of how fast the distance changes: |dist(a) - dist(b)| &lt;= lipschitz * |a - b|.
+     *                  Exact signed distance functions have a bound of 1. Use larger values for approximations.
+     */
+    public static BMesh build(BMesh bmesh, DistanceFunction dfunc, float cellSize, boolean setNormals, float lipschitz) {
+        if(lipschitz <= 0.0f)
+            throw new IllegalArgumentException("Lipschitz bound must be positive");
+
+        if(bmesh == null)
+            bmesh = new BMesh();
+
+        BoundingBox bounds = dfunc.getBounds();
+        Vector3f origin = bounds.getMin(null);
+        Vector3f size = bounds.getExtent(null).multLocal(2.0f);
+
+        int numCellsX = MarchingCubeBuilder.getNumCells(size.x, cellSize);
+        int numCellsY = MarchingCubeBuilder.getNumCells(size.y, cellSize);
+        int numCellsZ = MarchingCubeBuilder.getNumCells(size.z, cellSize);
+
+        OctreeTraversal traversal = new OctreeTraversal(dfunc, origin, cellSize, setNormals, lipschitz, numCellsY, numCellsZ);
+        traversal.visit(0, 0, 0, numCellsX, numCellsY, numCellsZ);
+
+        MarchingCubeBlock[] blocks = traversal.leaves.toArray(new MarchingCubeBlock[0]);
+        ParallelRange.forEach(blocks.length, 1, (start, end) -> {
+            for(int i=start; i<end; ++i)
+                blocks[i].process();
+        });
+
+        MarchingCubeBlock.createElements(bmesh, blocks, setNormals);
+        return bmesh;
+    }
+
+
+    private static class OctreeTraversal {
+        private final DistanceFunction dfunc;
+        private final Vector3f origin;
+        private final float cellSize;
+        private final boolean setNormals;
+        private final float lipschitz;
+        private final int numCellsY, numCellsZ;
+
+        private final Vector3f center = new Vector3f();
+        private final List<MarchingCubeBlock> leaves = new ArrayList<>();
+
+
+        private OctreeTraversal(DistanceFunction dfunc, Vector3f origin, float cellSize, boolean setNormals, float lipschitz, int numCellsY, int numCellsZ) {
+            this.dfunc = dfunc;
+            this.origin = origin;
+            this.cellSize = cellSize;
+            this.setNormals = setNormals;
+            this.lipschitz = lipschitz;
+            this.numCellsY = numCellsY;
+            this.numCellsZ = numCellsZ;
+        }
+
+
+        /**
+         * Visits the cells in [start, end). Leaves are collected in depth-first order, which is deterministic.
+         */
+        private void visit(int x0, int y0, int z0, int x1, int y1, int z1) {
+            int sx = x1 - x0;
+            int sy = y1 - y0;
+            int sz = z1 - z0;
+            if(sx <= 0 || sy <= 0 || sz <= 0)
+                return;
+
+            // Farthest lattice point of the region is at a corner
+            center.set(x0 + x1, y0 + y1, z0 + z1).multLocal(0.5f * cellSize).addLocal(origin);
+            float halfDiagonal = 0.5f * cellSize * (float) Math.sqrt(sx*sx + sy*sy + sz*sz);
+            if(Math.abs(dfunc.dist(center)) > halfDiagonal * lipschitz)
+                return;
+
+            if(sx <= DEFAULT_LEAF_SIZE && sy <= DEFAULT_LEAF_SIZE && sz <= DEFAULT_LEAF_SIZE) {
+                leaves.add(new MarchingCubeBlock(dfunc, origin, cellSize, setNormals, numCellsY, numCellsZ, x0, y0, z0, x1, y1, z1));
+                return;
+            }
+
+            // Split the axes that are larger than a leaf
+            int mx = (sx > DEFAULT_LEAF_SIZE) ? x0 + sx/2 : x1;
+            int my = (sy > DEFAULT_LEAF_SIZE) ? y0 + sy/2 : y1;
+            int mz = (sz > DEFAULT_LEAF_SIZE) ? z0 + sz/2 : z1;
+
+            visit(x0, y0, z0, mx, my, mz);
+            visit(mx, y0, z0, x1, my, mz);
+            visit(x0, my, z0, mx, y1, mz);
+            visit(mx, my, z0, x1, y1, mz);
+            visit(x0, y0, mz, mx, my, z1);
+            visit(mx, y0, mz, x1, my, z1);
+            visit(x0, my, mz, mx, y1, z1);
+            visit(mx, my, mz, x1, y1, z1);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.meshgen;
+
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.structure.BMesh;
+import ch.alchemists.jbmesh.structure.Face;
+import ch.alchemists.jbmesh.structure.Loop;
+import ch.alchemists.jbmesh.structure.Vertex;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+
+/**
+ * Dual isosurface extraction: Creates one vertex per cell that is intersected by the surface
+ * and one quad per lattice edge that crosses the surface, connecting the 4 cells around that edge.<br>
+ * Naive surface nets place the vertex at the average of the edge intersections.
+ * Dual contouring uses the normals of the DistanceFunction at the intersections to place the vertex on sharp features.<br>
+ * Uses the same lattice as {@link MarchingCubeBuilder#build(BMesh, DistanceFunction, float)}, one x-slab at a time.
+ */
+public class SurfaceNetsBuilder {
+    private static final boolean DEFAULT_SET_NORMALS = true;
+
+    // Pulls the dual contouring solution towards the mass point where the normals don't constrain it
+    private static final float QEF_REGULARIZATION = 0.05f;
+
+
+    public static BMesh build(BMesh bmesh, DistanceFunction dfunc, float cellSize) {
+        return build(bmesh, dfunc, cellSize, DEFAULT_SET_NORMALS, false);
+    }
+
+    /**
+     * @param dualContouring Whether to place vertices with dual contouring instead of naive surface nets.
+     */
+    public static BMesh build(BMesh bmesh, DistanceFunction dfunc, float cellSize, boolean setNormals, boolean dualContouring) {
+        if(bmesh == null)
+            bmesh = new BMesh();
+
+        BoundingBox bounds = dfunc.getBounds();
+        Vector3f origin = bounds.getMin(null);
+        Vector3f size = bounds.getExtent(null).multLocal(2.0f);
+
+        int numCellsX = MarchingCubeBuilder.getNumCells(size.x, cellSize);
+        int numCellsY = MarchingCubeBuilder.getNumCells(size.y, cellSize);
+        int numCellsZ = MarchingCubeBuilder.getNumCells(size.z, cellSize);
+
+        Builder builder = new Builder(bmesh, dfunc, origin, cellSize, setNormals, dualContouring, numCellsY, numCellsZ);
+        for(int x=0; x<numCellsX; ++x)
+            builder.processSlab(x);
+
+        return bmesh;
+    }
+
+
+    private static class Builder {
+        private final BMesh bmesh;
+        private final DistanceFunction dfunc;
+        private final Vector3f origin;
+        private final float cellSize;
+        private final boolean dualContouring;
+        private final Vec3Attribute<Vertex> positions;
+        private final Vec3Attribute<Loop> loopNormals;
+        private final int numCellsY, numCellsZ;
+
+        private final SlabSampler sampler;
+
+        // Cell vertices of the previous and the current slab
+        private Vertex[] prevSlab;
+        private Vertex[] currentSlab;
+
+        private final float[] dist = new float[8];
+        private final Vector3f[] intersections = new Vector3f[12];
+        private final Vector3f[] normals = new Vector3f[12];
+        private final Vector3f mass = new Vector3f();
+        private final Vector3f normal = new Vector3f();
+        private final Vector3f p = new Vector3f();
+        private final Vertex[] quad = new Vertex[4];
+
+
+        private Builder(BMesh bmesh, DistanceFunction dfunc, Vector3f origin, float cellSize, boolean setNormals, boolean dualContouring, int numCellsY, int numCellsZ) {
+            this.bmesh = bmesh;
+            this.dfunc = dfunc;
+            this.origin = origin;
+            this.cellSize = cellSize;
+            this.dualContouring = dualContouring;
+            this.numCellsY = numCellsY;
+            this.numCellsZ = numCellsZ;
+
+            positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+            loopNormals = setNormals ? Vec3Attribute.getOrCreate(BMeshAttribute.Normal, bmesh.loops()) : null;
+            sampler = new SlabSampler(dfunc, origin, cellSize, 0, 0, numCellsY, numCellsZ);
+
+            prevSlab    = new Vertex[numCellsY * numCellsZ];
+            currentSlab = new Vertex[numCellsY * numCellsZ];
+
+            for(int i=0; i<12; ++i) {
+                intersections[i] = new Vector3f();
+                normals[i] = new Vector3f();
+            }
+        }
+
+
+        private void processSlab(int x) {
+            Vertex[] temp = prevSlab;
+            prevSlab = currentSlab;
+            currentSlab = temp;
+
+            sampler.setSlice(x);
+            for(int y=0, i=0; y<numCellsY; ++y) {
+                for(int z=0; z<numCellsZ; ++z, ++i)
+                    currentSlab[i] = createCellVertex(x, y, z);
+            }
+
+            // Edges along x inside this slab
+            for(int y=1; y<numCellsY; ++y) {
+                for(int z=1; z<numCellsZ; ++z) {
+                    quad[0] = currentSlab[cell(y-1, z-1)];
+                    quad[1] = currentSlab[cell(y,   z-1)];
+                    quad[2] = currentSlab[cell(y,   z)];
+                    quad[3] = currentSlab[cell(y-1, z)];
+                    createQuad(sampler.get(x, y, z), sampler.get(x+1, y, z));
+                }
+            }
+
+            if(x == 0)
+                return;
+
+            // Edges along y and z on the slice between previous and this slab
+            for(int y=0; y<numCellsY; ++y) {
+                for(int z=1; z<numCellsZ; ++z) {
+                    quad[0] = prevSlab[cell(y, z-1)];
+                    quad[1] = prevSlab[cell(y, z)];
+                    quad[2] = currentSlab[cell(y, z)];
+                    quad[3] = currentSlab[cell(y, z-1)];
+                    createQuad(sampler.get(x, y, z), sampler.get(x, y+1, z));
+                }
+            }
+
+            for(int y=1; y<numCellsY; ++y) {
+                for(int z=0; z<numCellsZ; ++z) {
+                    quad[0] = prevSlab[cell(y-1, z)];
+                    quad[1] = currentSlab[cell(y-1, z)];
+                    quad[2] = currentSlab[cell(y, z)];
+                    quad[3] = prevSlab[cell(y, z)];
+                    createQuad(sampler.get(x, y, z), sampler.get(x, y, z+1));
+                }
+            }
+        }
+
+
+        private int cell(int y, int z) {
+            return y * numCellsZ + z;
+        }
+
+
+        /**
+         * The quad vertices are ordered so the face points in the positive direction of the edge.
+         * It's flipped if the surface faces the other way.
+         */
+        private void createQuad(float d0, float d1) {
+            boolean inside0 = d0 <= 0.0f;
+            if(inside0 == (d1 <= 0.0f))
+                return;
+
+            Face face = inside0 ? bmesh.createFace(quad[0], quad[1], quad[2], quad[3])
+                                : bmesh.createFace(quad[3], quad[2], quad[1], quad[0]);
+
+            if(loopNormals != null) {
+                for(Loop loop : face.loops()) {
+                    positions.get(loop.vertex, p);
+                    dfunc.normal(p, normal);
+                    loopNormals.set(loop, normal);
+                }
+            }
+        }
+
+
+        private Vertex createCellVertex(int x, int y, int z) {
+            sampler.getCorners(y, z, dist);
+
+            int cornerMask = 0;
+            for(int i=0; i<8; ++i) {
+                if(dist[i] <= 0.0f)
+                    cornerMask |= (1 << i);
+            }
+
+            if(cornerMask == 0 || cornerMask == 0xFF)
+                return null;
+
+            // Intersections on cell edges and their average
+            float cx = origin.x + x * cellSize;
+            float cy = origin.y + y * cellSize;
+            float cz = origin.z + z * cellSize;
+            mass.zero();
+            int count = 0;
+
+            for(int e=0; e<12; ++e) {
+                int c0 = Tables.edgeVertexTable[e][0];
+                int c1 = Tables.edgeVertexTable[e][1];
+                if((dist[c0] <= 0.0f) == (dist[c1] <= 0.0f))
+                    continue;
+
+                float t = dist[c0] / (dist[c0] - dist[c1]);
+                int[] o0 = MarchingCubeBlock.CORNER_OFFSETS[c0];
+                int[] o1 = MarchingCubeBlock.CORNER_OFFSETS[c1];
+
+                Vector3f ip = intersections[count];
+                ip.x = cx + (o0[0] + (o1[0]-o0[0]) * t) * cellSize;
+                ip.y = cy + (o0[1] + (o1[1]-o0[1]) * t) * cellSize;
+                ip.z = cz + (o0[2] + (o1[2]-o0[2]) * t) * cellSize;
+                mass.addLocal(ip);
+
+                if(dualContouring)
+                    dfunc.normal(ip, normals[count]);
+                count++;
+            }
+
+            mass.divideLocal(count);
+            if(dualContouring) {
+                solveQef(count, p);
+
+                // Keep vertex inside its cell
+                p.x = FastMath.clamp(p.x, cx, cx + cellSize);
+                p.y = FastMath.clamp(p.y, cy, cy + cellSize);
+                p.z = FastMath.clamp(p.z, cz, cz + cellSize);
+                return bmesh.createVertex(p);
+            }
+
+            return bmesh.createVertex(mass);
+        }
+
+
+        /**
+         * Minimizes the sum of squared distances to the planes at the intersections, relative to the mass point:
+         * (AᵀA + rI) d = Aᵀb, with rows of A being the normals and b the plane offsets.
+         */
+        private void solveQef(int count, Vector3f store) {
+            float a00 = QEF_REGULARIZATION, a01 = 0, a02 = 0;
+            float a11 = QEF_REGULARIZATION, a12 = 0;
+            float a22 = QEF_REGULARIZATION;
+            float b0 = 0, b1 = 0, b2 = 0;
+
+            for(int i=0; i<count; ++i) {
+                Vector3f n = normals[i];
+                Vector3f ip = intersections[i];
+                float d = n.x * (ip.x - mass.x) + n.y * (ip.y - mass.y) + n.z * (ip.z - mass.z);
+
+                a00 += n.x*n.x; a01 += n.x*n.y; a02 += n.x*n.z;
+                a11 += n.y*n.y; a12 += n.y*n.z;
+                a22 += n.z*n.z;
+
+                b0 += n.x*d;
+                b1 += n.y*d;
+                b2 += n.z*d;
+            }
+
+            // Symmetric 3x3, solve with Cramer's rule. Positive definite because of regularization.
+            float c00 = a11*a22 - a12*a12;
+            float c01 = a02*a12 - a01*a22;
+            float c02 = a01*a12 - a02*a11;
+            float det = a00*c00 + a01*c01 + a02*c02;
+
+            float c11 = a00*a22 - a02*a02;
+            float c12 = a01*a02 - a00*a12;
+            float c22 = a00*a11 - a01*a01;
+
+            float invDet = 1.0f / det;
+            store.x = mass.x + (c00*b0 + c01*b1 + c02*b2) * invDet;
+            store.y = mass.y + (c01*b0 + c11*b1 + c12*b2) * invDet;
+            store.z = mass.z + (c02*b0 + c12*b1 + c22*b2) * invDet;
+        }
+    }
+}
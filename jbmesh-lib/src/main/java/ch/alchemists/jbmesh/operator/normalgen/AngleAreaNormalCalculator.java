@@ -39,6 +39,16 @@ public class AngleAreaNormalCalculator extends AngleNormalCalculator {
         }
     }
 
+    @Override
+    public boolean prepareParallel(BMesh bmesh, float creaseAngle) {
+        return false;
+    }
+
+    @Override
+    public boolean beginPrepare(BMesh bmesh, float creaseAngle) {
+        return false;
+    }
+
     @Override
     public void cleanup(BMesh bmesh) {
         bmesh.faces().removeAttribute(attrFaceArea);
@@ -7,24 +7,34 @@
 package ch.alchemists.jbmesh.operator.normalgen;
 
 import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.BMeshData;
 import ch.alchemists.jbmesh.data.property.BooleanAttribute;
 import ch.alchemists.jbmesh.data.property.Vec3Attribute;
 import ch.alchemists.jbmesh.operator.FaceOps;
 import ch.alchemists.jbmesh.structure.*;
+import ch.alchemists.jbmesh.util.ParallelRange;
+import com.jme3.math.FastMath;
 import com.jme3.math.Vector3f;
+import java.util.Collection;
 
 public class AngleNormalCalculator implements NormalGenerator.NormalCalculator {
     private static final String ATTRIBUTE_EDGE_CREASE = "AngleNormalCalculator_EdgeCrease";
+    private static final String ATTRIBUTE_FACE_NORMAL = "AngleNormalCalculator_FaceNormal";
 
     protected FaceOps faceOps;
 
     protected Vec3Attribute<Vertex> positions;
+    protected Vec3Attribute<Face> faceNormals;
     protected BooleanAttribute<Edge> edgeCrease;
     //protected final Map<Edge, Boolean> edgeCreases = new HashMap<>();
 
     protected final transient Vector3f tempV1 = new Vector3f();
     protected final transient Vector3f tempV2 = new Vector3f();
 
+    // State of last full preparation, required for incremental updates
+    private BMesh preparedMesh = null;
+    private float preparedCreaseAngle = Float.NaN;
+
 
     public AngleNormalCalculator() {
         // TODO: Don't add attributes but use maps when recalculating normals for only a selection?
@@ -49,72 +59,186 @@ public class AngleNormalCalculator implements NormalGenerator.NormalCalculator {
 
     @Override
     public void prepare(BMesh bmesh, float creaseAngle) {
-        edgeCrease = BooleanAttribute.getOrCreate(ATTRIBUTE_EDGE_CREASE, bmesh.edges());
-        positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
-        faceOps = new FaceOps(bmesh);
+        prepare(bmesh, creaseAngle, false);
+    }
 
-        for(Edge edge : bmesh.edges()) {
-            if(edge.loop == null)
-                continue;
+    @Override
+    public boolean prepareParallel(BMesh bmesh, float creaseAngle) {
+        prepare(bmesh, creaseAngle, true);
+        return true;
+    }
 
-            Face face1 = edge.loop.face;
-            Face face2 = edge.loop.nextEdgeLoop.face;
 
-            faceOps.normal(face1, tempV1);
-            faceOps.normal(face2, tempV2);
+    @Override
+    public boolean beginPrepare(BMesh bmesh, float creaseAngle) {
+        setup(bmesh, creaseAngle);
+        return true;
+    }
+
+
+    @Override
+    public boolean prepareFaces(BMesh bmesh, float creaseAngle, Collection<Face> faces) {
+        if(bmesh != preparedMesh || creaseAngle != preparedCreaseAngle || !edgeCrease.isAttached() || !faceNormals.isAttached())
+            return false;
 
-            /*if(tempV1.x == 0 && tempV1.y == 0 && tempV1.z == 0) {
-                attrEdgeCrease.set(edge, true);
-                continue;
+        Vector3f normal = new Vector3f();
+        for(Face face : faces) {
+            faceOps.normal(face, normal);
+            faceNormals.set(face, normal);
+        }
+
+        // Only edges of the given faces can change their crease state
+        for(Face face : faces) {
+            for(Loop loop : face.loops())
+                edgeCrease.set(loop.edge, calcCrease(loop.edge, creaseAngle));
+        }
+
+        return true;
+    }
+
+
+    private void prepare(BMesh bmesh, float creaseAngle, boolean parallel) {
+        setup(bmesh, creaseAngle);
+
+        // Calculate each face normal only once instead of once per adjacent edge
+        final BMeshData<Face> faces = bmesh.faces();
+        ParallelRange.RangeFunc faceFunc = (start, end) -> {
+            Vector3f normal = new Vector3f();
+            for(int i=start; i<end; ++i) {
+                Face face = faces.get(i);
+                faceOps.normal(face, normal);
+                faceNormals.set(face, normal);
             }
-            if(tempV2.x == 0 && tempV2.y == 0 && tempV2.z == 0) {
-                attrEdgeCrease.set(edge, true);
-                continue;
-            }*/
+        };
 
-            boolean crease = tempV1.angleBetween(tempV2) >= creaseAngle;
-            edgeCrease.set(edge, crease);
+        final BMeshData<Edge> edges = bmesh.edges();
+        ParallelRange.RangeFunc edgeFunc = (start, end) -> {
+            for(int i=start; i<end; ++i)
+                edgeCrease.set(edges.get(i), calcCrease(edges.get(i), creaseAngle));
+        };
+
+        if(parallel) {
+            ParallelRange.forEach(faces.totalSize(), faceFunc);
+            ParallelRange.forEach(edges.totalSize(), edgeFunc);
+        }
+        else {
+            faceFunc.apply(0, faces.totalSize());
+            edgeFunc.apply(0, edges.totalSize());
         }
     }
 
+
+    /**
+     * Attaches the attributes without calculating their values.
+     */
+    private void setup(BMesh bmesh, float creaseAngle) {
+        if(bmesh != preparedMesh)
+            release(preparedMesh);
+
+        // The attributes are kept for incremental updates until release() is called.
+        // They are internal data and don't take part in the comparison of elements.
+        edgeCrease = BooleanAttribute.get(ATTRIBUTE_EDGE_CREASE, bmesh.edges());
+        if(edgeCrease == null) {
+            edgeCrease = new BooleanAttribute<>(ATTRIBUTE_EDGE_CREASE);
+            edgeCrease.setComparable(false);
+            bmesh.edges().addAttribute(edgeCrease);
+        }
+
+        faceNormals = Vec3Attribute.get(ATTRIBUTE_FACE_NORMAL, bmesh.faces());
+        if(faceNormals == null) {
+            faceNormals = new Vec3Attribute<>(ATTRIBUTE_FACE_NORMAL);
+            faceNormals.setComparable(false);
+            bmesh.faces().addAttribute(faceNormals);
+        }
+
+        positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+        faceOps = new FaceOps(bmesh);
+
+        preparedMesh = bmesh;
+        preparedCreaseAngle = creaseAngle;
+    }
+
+
+    /**
+     * @param edge
+     * @param creaseAngle
+     * @return Whether the angle between the face normals of the first two adjacent faces is greater or equal than the crease angle.
+     */
+    private boolean calcCrease(Edge edge, float creaseAngle) {
+        if(edge.loop == null)
+            return false;
+
+        Face face1 = edge.loop.face;
+        Face face2 = edge.loop.nextEdgeLoop.face;
+
+        float[] n = faceNormals.array();
+        int i1 = faceNormals.indexOf(face1);
+        int i2 = faceNormals.indexOf(face2);
+        float dot = n[i1]*n[i2] + n[i1+1]*n[i2+1] + n[i1+2]*n[i2+2];
+        // Same test as Vector3f.angleBetween(): acos() returns 0 for rounding errors above 1, so coplanar faces are a crease at angle 0
+        return FastMath.acos(dot) >= creaseAngle;
+    }
+
     @Override
-    public void cleanup(BMesh bmesh) {
-        bmesh.edges().removeAttribute(edgeCrease);
+    public void release(BMesh bmesh) {
+        if(bmesh == null || bmesh != preparedMesh)
+            return;
+
+        if(edgeCrease.isAttached())
+            bmesh.edges().removeAttribute(edgeCrease);
+        if(faceNormals.isAttached())
+            bmesh.faces().removeAttribute(faceNormals);
+
         edgeCrease = null;
+        faceNormals = null;
         positions = null;
         faceOps = null;
+        preparedMesh = null;
+        preparedCreaseAngle = Float.NaN;
         //edgeCreases.clear();
     }
 
 
+    /**
+     * Thread-safe: Only reads attributes and uses no shared temporary objects.
+     */
     @Override
     public void getWeightedNormal(Loop loop, Vector3f store) {
         // Use normal of triangle because faces are not always planar (?). Requires convex polygon. -> This makes ugly normals when faces are not planar.
         // -> TODO: Compare with face normal to make it work for concave (flip normal in this case)? -> Make separate NormalCalculator for that
 
-        Vertex vertex = loop.vertex;
-        Vertex vNext = loop.nextFaceLoop.vertex;
-        Vertex vPrev = loop.prevFaceLoop.vertex;
+        final float[] pos = positions.array();
+        int iv = positions.indexOf(loop.vertex);
+        int iNext = positions.indexOf(loop.nextFaceLoop.vertex);
+        int iPrev = positions.indexOf(loop.prevFaceLoop.vertex);
+
+        // v1 = vertex - vNext, v2 = vertex - vPrev
+        float v1x = pos[iv]   - pos[iNext];
+        float v1y = pos[iv+1] - pos[iNext+1];
+        float v1z = pos[iv+2] - pos[iNext+2];
 
-        positions.get(vertex, tempV1);
-        tempV2.set(tempV1);
-        positions.subtractLocal(tempV1, vNext);
-        positions.subtractLocal(tempV2, vPrev);
+        float v2x = pos[iv]   - pos[iPrev];
+        float v2y = pos[iv+1] - pos[iPrev+1];
+        float v2z = pos[iv+2] - pos[iPrev+2];
 
-        store.set(tempV1).crossLocal(tempV2); // Don't normalize cross product so it includes triangle area
+        // Don't normalize cross product so it includes triangle area
+        store.x = v1y*v2z - v1z*v2y;
+        store.y = v1z*v2x - v1x*v2z;
+        store.z = v1x*v2y - v1y*v2x;
 
         // Degenerate faces? (happens for example after cutting)
         if(store.x == 0 && store.y == 0 && store.z == 0) {
-            faceOps.normal(loop.face, store);
+            faceNormals.get(loop.face, store);
             return;
         }
 
         // Debug
         //faceOps.normal(loop.face, store);
 
-        tempV1.normalizeLocal();
-        tempV2.normalizeLocal();
-        float angle = tempV1.angleBetween(tempV2);
+        float len1 = (float) Math.sqrt(v1x*v1x + v1y*v1y + v1z*v1z);
+        float len2 = (float) Math.sqrt(v2x*v2x + v2y*v2y + v2z*v2z);
+        float dot = (v1x*v2x + v1y*v2y + v1z*v2z) / (len1 * len2);
+        float angle = FastMath.acos(dot);
         store.multLocal(angle);
     }
 
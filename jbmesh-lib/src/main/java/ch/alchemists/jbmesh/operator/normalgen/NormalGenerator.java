@@ -9,8 +9,17 @@ package ch.alchemists.jbmesh.operator.normalgen;
 import ch.alchemists.jbmesh.data.BMeshAttribute;
 import ch.alchemists.jbmesh.data.property.Vec3Attribute;
 import ch.alchemists.jbmesh.structure.*;
+import ch.alchemists.jbmesh.util.ParallelRange;
+import ch.alchemists.jbmesh.util.TimeSlicedTask;
 import com.jme3.math.FastMath;
 import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Requires manifold.
@@ -23,12 +32,52 @@ public class NormalGenerator {
          */
         void prepare(BMesh bmesh, float creaseAngle);
 
+        /**
+         * Called once before processing the vertices in parallel.<br>
+         * Implementations that return true must allow concurrent calls to {@link #getWeightedNormal(Loop, Vector3f)}
+         * and {@link #isCrease(Edge, Face, Face, float)}.
+         * @return Whether parallel processing is supported. If false, {@link #prepare(BMesh, float)} is called instead
+         *         and the vertices are processed sequentially.
+         */
+        default boolean prepareParallel(BMesh bmesh, float creaseAngle) {
+            return false;
+        }
+
+        /**
+         * Called once before preparing all faces in chunks with {@link #prepareFaces(BMesh, float, Collection)},
+         * so the preparation can be spread across the steps of a {@link TimeSlicedTask}.
+         * Implementations that return true must only set up their data here without processing the elements.
+         * @return Whether stepwise preparation is supported. If false, {@link #prepare(BMesh, float)} is called instead.
+         */
+        default boolean beginPrepare(BMesh bmesh, float creaseAngle) {
+            return false;
+        }
+
+        /**
+         * Called before processing only the vertices of the given faces.
+         * Implementations that return true must update their data for the given faces and their edges,
+         * and keep the data of all other elements from the previous call to prepare.
+         * @param bmesh
+         * @param creaseAngle
+         * @param faces Faces whose vertex positions or topology have changed.
+         * @return Whether the data could be updated incrementally. If false, all vertices are processed instead.
+         */
+        default boolean prepareFaces(BMesh bmesh, float creaseAngle, Collection<Face> faces) {
+            return false;
+        }
+
         /**
          * Called once after processing.
          * @param bmesh
          */
         default void cleanup(BMesh bmesh) {}
 
+        /**
+         * Removes data that is kept between calls for incremental updates.
+         * @param bmesh
+         */
+        default void release(BMesh bmesh) {}
+
         /**
          * @param loop
          * @param store
@@ -51,9 +100,10 @@ public class NormalGenerator {
     private NormalCalculator normalCalculator;
 
     private final Vec3Attribute<Loop> loopNormals;
-    private final Vector3f tempNormal = new Vector3f();
 
     private float creaseAngle = 0.0f; // Minimum angle for hard edges
+    private boolean parallel = false;
+    private boolean keepIncrementalData = false;
 
     // TODO: Tip of cone? -> Ignore: Jaimie's tail has a cone and it should be smooth
     // TODO: Support hard edges?
@@ -81,41 +131,193 @@ public class NormalGenerator {
     }
 
 
-    // TODO: Apply to selection (Faces & Vertices)
+    /**
+     * Enables the two-phase parallel mode: The NormalCalculator first prepares face normals and creases in parallel,
+     * then the vertices are processed in parallel over index ranges. Each vertex only writes the normals of its own outgoing Loops.<br>
+     * Falls back to sequential processing if the NormalCalculator doesn't support it.
+     * @param parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+
+    /**
+     * Keeps the data of the NormalCalculator after processing so that {@link #applyVertices(Collection)} and {@link #applyFaces(Collection)}
+     * can do incremental updates. The data stays on the BMesh until {@link #release()} is called.<br>
+     * Disabled by default.
+     * @param keep
+     */
+    public void setKeepIncrementalData(boolean keep) {
+        this.keepIncrementalData = keep;
+        if(!keep)
+            normalCalculator.release(bmesh);
+    }
+
+
     public void apply() {
-        normalCalculator.prepare(bmesh, creaseAngle);
-        NormalAccumulator.Pool accumulators = new NormalAccumulator.Pool();
+        if(parallel && normalCalculator.prepareParallel(bmesh, creaseAngle)) {
+            // Only listed vertices, without virtual elements
+            final List<Vertex> vertices = bmesh.vertices().getAll(new ArrayList<>());
+            ParallelRange.forEach(vertices.size(), (start, end) -> {
+                VertexProcessor processor = new VertexProcessor();
+                for(int i=start; i<end; ++i)
+                    processor.process(vertices.get(i));
+            });
+        }
+        else {
+            normalCalculator.prepare(bmesh, creaseAngle);
 
-        for(Vertex vertex : bmesh.vertices()) {
-            Edge startEdge = getEdgeWithLoop(vertex);
-            if(startEdge == null)
-                continue;
+            VertexProcessor processor = new VertexProcessor();
+            for(Vertex vertex : bmesh.vertices())
+                processor.process(vertex);
+        }
 
-            accumulators.clear();
-            populateAccumulators(vertex, startEdge, accumulators);
+        finish();
+    }
 
-            int lastIndex = accumulators.size()-1;
-            NormalAccumulator last = accumulators.get(lastIndex);
-            if(lastIndex == 0) {
-                // All smooth
-                applyAccumulator(last, last.firstLoop);
-            }
-            else {
-                // Check if last edge was smooth (>1 values accumulated). If it was, combine the last accumulator with the first one.
-                if(last.normal.x != 0 || last.normal.y != 0 || last.normal.z != 0) {
-                    NormalAccumulator first = accumulators.get(0);
-                    first.normal.addLocal(last.normal);
-                    first.firstLoop = last.firstLoop;
-                }
 
-                // Don't process last accumulator. It only serves as a sentinel, so the second last accumulator knows where to stop.
-                for(int i=0; i<lastIndex; ++i) {
-                    applyAccumulator(accumulators.get(i), accumulators.get(i + 1).firstLoop);
+    /**
+     * Creates a resumable version of {@link #apply()} that prepares a few faces or processes one vertex per step.
+     * Always runs sequentially.
+     */
+    public TimeSlicedTask applyTask() {
+        return new NormalTask();
+    }
+
+
+    private class NormalTask extends TimeSlicedTask {
+        private static final int FACES_PER_STEP = 16;
+
+        private Iterator<Face> faceIterator = null;
+        private final ArrayList<Face> faceChunk = new ArrayList<>(FACES_PER_STEP);
+        private boolean prepared = false;
+        private int numPrepared = 0;
+
+        private Iterator<Vertex> vertexIterator = null;
+        private final VertexProcessor processor = new VertexProcessor();
+        private int numProcessed = 0;
+
+
+        @Override
+        protected boolean step() {
+            if(faceIterator == null) {
+                if(normalCalculator.beginPrepare(bmesh, creaseAngle))
+                    faceIterator = bmesh.faces().iterator();
+                else {
+                    normalCalculator.prepare(bmesh, creaseAngle);
+                    faceIterator = Collections.emptyIterator();
                 }
             }
+            else if(faceIterator.hasNext()) {
+                // Edges shared with faces of later chunks are updated again with these faces
+                faceChunk.clear();
+                while(faceIterator.hasNext() && faceChunk.size() < FACES_PER_STEP)
+                    faceChunk.add(faceIterator.next());
+
+                normalCalculator.prepareFaces(bmesh, creaseAngle, faceChunk);
+                numPrepared += faceChunk.size();
+            }
+            else if(!prepared) {
+                prepared = true;
+                vertexIterator = bmesh.vertices().iterator();
+            }
+            else if(vertexIterator.hasNext()) {
+                processor.process(vertexIterator.next());
+                numProcessed++;
+            }
+
+            if(!prepared || vertexIterator.hasNext())
+                return false;
+
+            finish();
+            return true;
         }
 
+
+        @Override
+        protected void cancelled() {
+            if(faceIterator == null)
+                return;
+
+            normalCalculator.cleanup(bmesh);
+
+            // Don't keep partially prepared data for incremental updates
+            if(!prepared || !keepIncrementalData)
+                normalCalculator.release(bmesh);
+        }
+
+
+        @Override
+        public float getProgress() {
+            if(getState() == State.Finished)
+                return 1.0f;
+
+            // Preparation and vertices count as one half each
+            int numFaces = bmesh.faces().size();
+            int numVertices = bmesh.vertices().size();
+            float prepareProgress = prepared ? 1.0f : (numFaces > 0) ? Math.min((float) numPrepared / numFaces, 1.0f) : 0.0f;
+            float vertexProgress  = (numVertices > 0) ? Math.min((float) numProcessed / numVertices, 1.0f) : 0.0f;
+            return (prepareProgress + vertexProgress) * 0.5f;
+        }
+    }
+
+
+    /**
+     * Recalculates the normals in the one-ring of the given vertices.
+     * This includes all vertices that share a face with a given vertex.<br>
+     * The vertices must contain all vertices whose position has changed since the last call to apply, as well as the vertices of newly created faces.
+     * @param vertices
+     */
+    public void applyVertices(Collection<Vertex> vertices) {
+        Set<Face> faces = new HashSet<>(vertices.size() * 4);
+        for(Vertex vertex : vertices) {
+            for(Edge edge : vertex.edges()) {
+                for(Loop loop : edge.loops())
+                    faces.add(loop.face);
+            }
+        }
+
+        applyFaces(faces);
+    }
+
+
+    /**
+     * Recalculates the normals of all Loops that use a vertex of the given faces.<br>
+     * Updates are only incremental with {@link #setKeepIncrementalData(boolean)} enabled. Then the first call does a full update
+     * and subsequent calls reuse data that the NormalCalculator keeps until {@link #release()}. Otherwise every call is a full update.
+     * @param faces
+     */
+    public void applyFaces(Collection<Face> faces) {
+        if(!normalCalculator.prepareFaces(bmesh, creaseAngle, faces)) {
+            apply();
+            return;
+        }
+
+        Set<Vertex> vertices = new HashSet<>(faces.size() * 4);
+        for(Face face : faces)
+            face.getVertices(vertices);
+
+        VertexProcessor processor = new VertexProcessor();
+        for(Vertex vertex : vertices)
+            processor.process(vertex);
+
+        finish();
+    }
+
+
+    private void finish() {
         normalCalculator.cleanup(bmesh);
+        if(!keepIncrementalData)
+            normalCalculator.release(bmesh);
+    }
+
+
+    /**
+     * Removes the data that the NormalCalculator keeps for incremental updates.
+     */
+    public void release() {
+        normalCalculator.release(bmesh);
     }
 
 
@@ -140,95 +342,134 @@ public class NormalGenerator {
     }
 
 
-    private void populateAccumulators(Vertex vertex, Edge startEdge, NormalAccumulator.Pool accumulators) {
-        // Find outgoing loop that uses this vertex
-        Loop loop = startEdge.loop;
-        if(loop.vertex != vertex)
-            loop = loop.nextFaceLoop;
-        assert loop.vertex == vertex;
+    /**
+     * Holds the temporary state for processing vertices. In parallel mode, each thread uses its own instance.
+     */
+    private class VertexProcessor {
+        private final NormalAccumulator.Pool accumulators = new NormalAccumulator.Pool();
+        private final Vector3f tempNormal = new Vector3f();
 
-        final Loop startLoop = loop;
-        NormalAccumulator acc = accumulators.pushBack(startLoop);
 
-        // Iterate faces/edges around this Vertex by traversing the adjacent Loops (not the disk cycle formed by edges).
-        // This gives proper clockwise order, but can only work when each edge only has a maximum of two adjacent faces (no T-structures).
-        do {
-            // Requires manifold (<=2 Loops per radial cycle of Edge)
-            if(loop.nextEdgeLoop.nextEdgeLoop != loop)
-                break;
-            assert loop.vertex == vertex;
+        public void process(Vertex vertex) {
+            Edge startEdge = getEdgeWithLoop(vertex);
+            if(startEdge == null)
+                return;
 
-            addToAccumulator(acc, loop);
+            accumulators.clear();
+            populateAccumulators(vertex, startEdge);
 
-            // If the vertex lies on the border of a hole (equivalent to the border of a surface),
-            // we may have to complete traversal in the other direction.
-            // TODO: Make this work with bowtie structures? -> Remove processed edges from a Set, continue until empty
-            if(loop.nextEdgeLoop == loop) {
-                populateAccumulatorsCounterclockwise(vertex, accumulators);
-                break;
+            int lastIndex = accumulators.size()-1;
+            NormalAccumulator last = accumulators.get(lastIndex);
+            if(lastIndex == 0) {
+                // All smooth
+                applyAccumulator(last, last.firstLoop);
+            }
+            else {
+                // Check if last edge was smooth (>1 values accumulated). If it was, combine the last accumulator with the first one.
+                if(last.normal.x != 0 || last.normal.y != 0 || last.normal.z != 0) {
+                    NormalAccumulator first = accumulators.get(0);
+                    first.normal.addLocal(last.normal);
+                    first.firstLoop = last.firstLoop;
+                }
+
+                // Don't process last accumulator. It only serves as a sentinel, so the second last accumulator knows where to stop.
+                for(int i=0; i<lastIndex; ++i) {
+                    applyAccumulator(accumulators.get(i), accumulators.get(i + 1).firstLoop);
+                }
             }
+        }
 
-            // Skip clockwise to next outgoing loop that uses vertex
-            Edge edge = loop.edge;
-            Face face1 = loop.face;
-            loop = loop.nextEdgeLoop.nextFaceLoop;
 
-            Face face2 = loop.face;
-            if(normalCalculator.isCrease(edge, face1, face2, creaseAngle))
-                acc = accumulators.pushBack(loop);
-        } while(loop != startLoop);
-    }
+        private void populateAccumulators(Vertex vertex, Edge startEdge) {
+            // Find outgoing loop that uses this vertex
+            Loop loop = startEdge.loop;
+            if(loop.vertex != vertex)
+                loop = loop.nextFaceLoop;
+            assert loop.vertex == vertex;
 
+            final Loop startLoop = loop;
+            NormalAccumulator acc = accumulators.pushBack(startLoop);
+
+            // Iterate faces/edges around this Vertex by traversing the adjacent Loops (not the disk cycle formed by edges).
+            // This gives proper clockwise order, but can only work when each edge only has a maximum of two adjacent faces (no T-structures).
+            do {
+                // Requires manifold (<=2 Loops per radial cycle of Edge)
+                if(loop.nextEdgeLoop.nextEdgeLoop != loop)
+                    break;
+                assert loop.vertex == vertex;
+
+                addToAccumulator(acc, loop);
+
+                // If the vertex lies on the border of a hole (equivalent to the border of a surface),
+                // we may have to complete traversal in the other direction.
+                // TODO: Make this work with bowtie structures? -> Remove processed edges from a Set, continue until empty
+                if(loop.nextEdgeLoop == loop) {
+                    populateAccumulatorsCounterclockwise(vertex);
+                    break;
+                }
 
-    private void populateAccumulatorsCounterclockwise(Vertex vertex, NormalAccumulator.Pool accumulators) {
-        // Continue from starting point of first accumulator
-        NormalAccumulator acc = accumulators.get(0);
-        Loop loop = acc.firstLoop;
+                // Skip clockwise to next outgoing loop that uses vertex
+                Edge edge = loop.edge;
+                Face face1 = loop.face;
+                loop = loop.nextEdgeLoop.nextFaceLoop;
 
-        while(loop.prevFaceLoop.nextEdgeLoop != loop.prevFaceLoop) {
-            // Skip counter-clockwise to previous outgoing loop that uses vertex
-            Face face1 = loop.face;
-            loop = loop.prevFaceLoop.nextEdgeLoop;
+                Face face2 = loop.face;
+                if(normalCalculator.isCrease(edge, face1, face2, creaseAngle))
+                    acc = accumulators.pushBack(loop);
+            } while(loop != startLoop);
+        }
 
-            // Requires manifold (<=2 Loops per radial cycle of Edge)
-            if(loop.nextEdgeLoop.nextEdgeLoop != loop)
-                break;
-            assert loop.vertex == vertex;
 
-            Edge edge = loop.edge;
-            Face face2 = loop.face;
-            if(normalCalculator.isCrease(edge, face1, face2, creaseAngle))
-                acc = accumulators.pushFront(loop);
-            else
-                acc.firstLoop = loop;
+        private void populateAccumulatorsCounterclockwise(Vertex vertex) {
+            // Continue from starting point of first accumulator
+            NormalAccumulator acc = accumulators.get(0);
+            Loop loop = acc.firstLoop;
 
-            addToAccumulator(acc, loop);
-        };
+            while(loop.prevFaceLoop.nextEdgeLoop != loop.prevFaceLoop) {
+                // Skip counter-clockwise to previous outgoing loop that uses vertex
+                Face face1 = loop.face;
+                loop = loop.prevFaceLoop.nextEdgeLoop;
 
-        // Sentinel indicates that last edge wasn't smooth
-        accumulators.pushBack(null); // TODO: Can this cause NPE?
-    }
+                // Requires manifold (<=2 Loops per radial cycle of Edge)
+                if(loop.nextEdgeLoop.nextEdgeLoop != loop)
+                    break;
+                assert loop.vertex == vertex;
 
+                Edge edge = loop.edge;
+                Face face2 = loop.face;
+                if(normalCalculator.isCrease(edge, face1, face2, creaseAngle))
+                    acc = accumulators.pushFront(loop);
+                else
+                    acc.firstLoop = loop;
 
-    private void addToAccumulator(NormalAccumulator acc, Loop loop) {
-        normalCalculator.getWeightedNormal(loop, tempNormal);
-        acc.normal.addLocal(tempNormal);
-    }
+                addToAccumulator(acc, loop);
+            };
 
+            // Sentinel indicates that last edge wasn't smooth
+            accumulators.pushBack(null); // TODO: Can this cause NPE?
+        }
 
-    private void applyAccumulator(NormalAccumulator acc, final Loop endLoop) {
-        Loop loop = acc.firstLoop;
-        acc.normal.normalizeLocal();
-        assert normalExists(acc.normal);
 
-        do {
-            loopNormals.set(loop, acc.normal);
+        private void addToAccumulator(NormalAccumulator acc, Loop loop) {
+            normalCalculator.getWeightedNormal(loop, tempNormal);
+            acc.normal.addLocal(tempNormal);
+        }
+
 
-            if(loop.nextEdgeLoop == loop)
-                break;
+        private void applyAccumulator(NormalAccumulator acc, final Loop endLoop) {
+            Loop loop = acc.firstLoop;
+            acc.normal.normalizeLocal();
+            assert normalExists(acc.normal);
 
-            loop = loop.nextEdgeLoop.nextFaceLoop;
-        } while(loop != endLoop);
+            do {
+                loopNormals.set(loop, acc.normal);
+
+                if(loop.nextEdgeLoop == loop)
+                    break;
+
+                loop = loop.nextEdgeLoop.nextFaceLoop;
+            } while(loop != endLoop);
+        }
     }
 
 
@@ -0,0 +1,270 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.normalgen;
+
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.BMeshData;
+import ch.alchemists.jbmesh.data.property.Vec2Attribute;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.data.property.Vec4Attribute;
+import ch.alchemists.jbmesh.structure.*;
+import ch.alchemists.jbmesh.util.ParallelRange;
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+
+/**
+ * Generates tangent space from the TexCoord and Normal attributes of Loops.<br>
+ * The result is stored in the Tangent attribute of Loops (4 components, w = handedness of binormal)
+ * and optionally in the Binormal attribute of Loops.<br><br>
+ * The tangents of Loops with the same Vertex are accumulated per smoothing group. A smoothing group contains the Loops
+ * with equal normals and texture coordinates, which are the Loops that share one vertex after export.
+ * Since the tangents are Loop attributes, the Export maps them like normals and duplicates vertices along UV seams.
+ */
+public class TangentGenerator {
+    private static final String ATTRIBUTE_LOOP_TANGENT  = "TangentGenerator_LoopTangent";
+    private static final String ATTRIBUTE_LOOP_BINORMAL = "TangentGenerator_LoopBinormal";
+
+    private final BMesh bmesh;
+    private final Vec3Attribute<Vertex> positions;
+    private final Vec2Attribute<Loop> texCoords;
+    private final Vec3Attribute<Loop> loopNormals;
+    private final Vec4Attribute<Loop> loopTangents;
+    private Vec3Attribute<Loop> loopBinormals = null;
+
+    private boolean parallel = false;
+
+
+    public TangentGenerator(BMesh bmesh) {
+        this.bmesh = bmesh;
+        positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+
+        texCoords = Vec2Attribute.get(BMeshAttribute.TexCoord, bmesh.loops());
+        if(texCoords == null)
+            throw new IllegalStateException("Loop attribute '" + BMeshAttribute.TexCoord + "' does not exist.");
+
+        loopNormals = Vec3Attribute.get(BMeshAttribute.Normal, bmesh.loops());
+        if(loopNormals == null)
+            throw new IllegalStateException("Loop attribute '" + BMeshAttribute.Normal + "' does not exist.");
+
+        loopTangents = Vec4Attribute.getOrCreate(BMeshAttribute.Tangent, bmesh.loops());
+    }
+
+
+    /**
+     * @param generateBinormals Whether to store the binormals in the Binormal attribute of Loops. Defaults to false.
+     */
+    public void setGenerateBinormals(boolean generateBinormals) {
+        if(generateBinormals)
+            loopBinormals = Vec3Attribute.getOrCreate(BMeshAttribute.Binormal, bmesh.loops());
+        else
+            loopBinormals = null;
+    }
+
+
+    /**
+     * Enables parallel processing: The tangents of the face corners are calculated in parallel over faces,
+     * then they are accumulated in parallel over vertices. Each vertex only writes to its own outgoing Loops.
+     * @param parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+
+    public void apply() {
+        Vec3Attribute<Loop> cornerTangents  = new Vec3Attribute<>(ATTRIBUTE_LOOP_TANGENT);
+        Vec3Attribute<Loop> cornerBinormals = new Vec3Attribute<>(ATTRIBUTE_LOOP_BINORMAL);
+        bmesh.loops().addAttribute(cornerTangents);
+        bmesh.loops().addAttribute(cornerBinormals);
+
+        try {
+            final BMeshData<Face> faces = bmesh.faces();
+            ParallelRange.RangeFunc faceFunc = (start, end) -> {
+                CornerCalculator calc = new CornerCalculator(cornerTangents, cornerBinormals);
+                for(int i=start; i<end; ++i) {
+                    for(Loop loop : faces.get(i).loops())
+                        calc.calcCorner(loop);
+                }
+            };
+
+            final BMeshData<Vertex> vertices = bmesh.vertices();
+            ParallelRange.RangeFunc vertexFunc = (start, end) -> {
+                VertexAccumulator acc = new VertexAccumulator(cornerTangents, cornerBinormals);
+                for(int i=start; i<end; ++i)
+                    acc.process(vertices.get(i));
+            };
+
+            if(parallel) {
+                ParallelRange.forEach(faces.totalSize(), faceFunc);
+                ParallelRange.forEach(vertices.totalSize(), vertexFunc);
+            }
+            else {
+                faceFunc.apply(0, faces.totalSize());
+                vertexFunc.apply(0, vertices.totalSize());
+            }
+        }
+        finally {
+            bmesh.loops().removeAttribute(cornerTangents);
+            bmesh.loops().removeAttribute(cornerBinormals);
+        }
+    }
+
+
+    /**
+     * Calculates angle weighted tangent and binormal of the triangle at a face corner.
+     * Only writes to the given Loop.
+     */
+    private class CornerCalculator {
+        private final Vec3Attribute<Loop> cornerTangents;
+        private final Vec3Attribute<Loop> cornerBinormals;
+
+        private final Vector3f e1 = new Vector3f();
+        private final Vector3f e2 = new Vector3f();
+        private final Vector3f tangent = new Vector3f();
+        private final Vector3f binormal = new Vector3f();
+
+
+        public CornerCalculator(Vec3Attribute<Loop> cornerTangents, Vec3Attribute<Loop> cornerBinormals) {
+            this.cornerTangents = cornerTangents;
+            this.cornerBinormals = cornerBinormals;
+        }
+
+
+        public void calcCorner(Loop loop) {
+            Loop next = loop.nextFaceLoop;
+            Loop prev = loop.prevFaceLoop;
+
+            positions.get(next.vertex, e1);
+            positions.subtractLocal(e1, loop.vertex);
+            positions.get(prev.vertex, e2);
+            positions.subtractLocal(e2, loop.vertex);
+
+            float u0 = texCoords.getX(loop);
+            float v0 = texCoords.getY(loop);
+            float du1 = texCoords.getX(next) - u0;
+            float dv1 = texCoords.getY(next) - v0;
+            float du2 = texCoords.getX(prev) - u0;
+            float dv2 = texCoords.getY(prev) - v0;
+
+            // Degenerate UV mapping: Doesn't contribute. Relative to the UV scale, so that small texture tiles still work.
+            float det = du1*dv2 - du2*dv1;
+            if(Math.abs(det) <= FastMath.FLT_EPSILON * (Math.abs(du1*dv2) + Math.abs(du2*dv1))) {
+                cornerTangents.set(loop, 0, 0, 0);
+                cornerBinormals.set(loop, 0, 0, 0);
+                return;
+            }
+
+            float r = 1.0f / det;
+            tangent.x = (e1.x*dv2 - e2.x*dv1) * r;
+            tangent.y = (e1.y*dv2 - e2.y*dv1) * r;
+            tangent.z = (e1.z*dv2 - e2.z*dv1) * r;
+
+            binormal.x = (e2.x*du1 - e1.x*du2) * r;
+            binormal.y = (e2.y*du1 - e1.y*du2) * r;
+            binormal.z = (e2.z*du1 - e1.z*du2) * r;
+
+            // Weight by corner angle, like AngleNormalCalculator
+            e1.normalizeLocal();
+            e2.normalizeLocal();
+            float angle = FastMath.acos(e1.dot(e2));
+
+            tangent.normalizeLocal().multLocal(angle);
+            binormal.normalizeLocal().multLocal(angle);
+            cornerTangents.set(loop, tangent);
+            cornerBinormals.set(loop, binormal);
+        }
+    }
+
+
+    /**
+     * Accumulates the corner tangents per smoothing group and orthogonalizes them.
+     * Only writes to the outgoing Loops of the processed Vertex.
+     */
+    private class VertexAccumulator {
+        private final Vec3Attribute<Loop> cornerTangents;
+        private final Vec3Attribute<Loop> cornerBinormals;
+
+        private final ArrayList<Loop> loops = new ArrayList<>(6);
+        private final ArrayList<Loop> group = new ArrayList<>(6);
+
+        private final Vector3f normal = new Vector3f();
+        private final Vector3f tangent = new Vector3f();
+        private final Vector3f binormal = new Vector3f();
+        private final Vector3f temp = new Vector3f();
+
+
+        public VertexAccumulator(Vec3Attribute<Loop> cornerTangents, Vec3Attribute<Loop> cornerBinormals) {
+            this.cornerTangents = cornerTangents;
+            this.cornerBinormals = cornerBinormals;
+        }
+
+
+        public void process(Vertex vertex) {
+            loops.clear();
+            for(Edge edge : vertex.edges()) {
+                for(Loop loop : edge.loops()) {
+                    if(loop.vertex == vertex)
+                        loops.add(loop);
+                }
+            }
+
+            // Take first remaining Loop and gather all Loops with same normal and texture coordinates into its group
+            while(!loops.isEmpty()) {
+                Loop first = loops.get(loops.size()-1);
+                loops.remove(loops.size()-1);
+
+                group.clear();
+                group.add(first);
+                tangent.zero();
+                binormal.zero();
+                cornerTangents.addLocal(tangent, first);
+                cornerBinormals.addLocal(binormal, first);
+
+                for(int i=loops.size()-1; i>=0; --i) {
+                    Loop loop = loops.get(i);
+                    if(loopNormals.equals(first, loop) && texCoords.equals(first, loop)) {
+                        group.add(loop);
+                        cornerTangents.addLocal(tangent, loop);
+                        cornerBinormals.addLocal(binormal, loop);
+                        loops.remove(i);
+                    }
+                }
+
+                applyGroup(first);
+            }
+        }
+
+
+        private void applyGroup(Loop first) {
+            loopNormals.get(first, normal);
+
+            // Gram-Schmidt orthogonalization
+            temp.set(normal).multLocal(normal.dot(tangent));
+            tangent.subtractLocal(temp);
+
+            if(tangent.lengthSquared() < FastMath.FLT_EPSILON) {
+                // No UV derivatives available: Use any direction perpendicular to normal
+                temp.set(Math.abs(normal.x) < 0.9f ? Vector3f.UNIT_X : Vector3f.UNIT_Y);
+                tangent.set(normal).crossLocal(temp);
+            }
+
+            tangent.normalizeLocal();
+
+            // Handedness
+            temp.set(normal).crossLocal(tangent);
+            float w = (temp.dot(binormal) < 0.0f) ? -1.0f : 1.0f;
+            temp.multLocal(w);
+
+            for(Loop loop : group) {
+                loopTangents.set(loop, tangent.x, tangent.y, tangent.z, w);
+                if(loopBinormals != null)
+                    loopBinormals.set(loop, temp);
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.skeleton;
+
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.operator.FaceHoles;
+import ch.alchemists.jbmesh.structure.BMesh;
+import ch.alchemists.jbmesh.structure.Face;
+import ch.alchemists.jbmesh.structure.Vertex;
+import ch.alchemists.jbmesh.util.ParallelRange;
+import com.jme3.math.Vector3f;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+/**
+ * Creates hip roofs over many footprints in parallel with {@link StraightSkeleton#createRoof(BMesh, float)}.<br>
+ * Each thread uses its own skeleton and writes the roofs into its own BMesh. The roofs are copied into the target
+ * in the order of the input afterwards. Holes are ignored and hole faces (see {@link FaceHoles}) are skipped.
+ * The BMesh of the footprints must not be modified during processing.
+ */
+public class BatchSkeletonRoof {
+    private static final Logger LOG = Logger.getLogger(BatchSkeletonRoof.class.getName());
+    public static final int DEFAULT_MIN_CHUNK_SIZE = 16;
+
+    private static class Chunk {
+        final int start;
+        final Worker worker;
+        final ArrayList<Face> roofFaces = new ArrayList<>();
+
+        Chunk(int start, Worker worker) {
+            this.start = start;
+            this.worker = worker;
+        }
+    }
+
+
+    private final BMesh bmesh;
+    private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+    private int minChunkSize = DEFAULT_MIN_CHUNK_SIZE;
+    private float slope = 1.0f;
+
+
+    public BatchSkeletonRoof(BMesh bmesh) {
+        this.bmesh = bmesh;
+    }
+
+
+    /**
+     * @param minChunkSize Minimum number of footprints per parallel task.
+     */
+    public void setMinChunkSize(int minChunkSize) {
+        if(minChunkSize < 1)
+            throw new IllegalArgumentException("Minimum chunk size must be at least 1");
+        this.minChunkSize = minChunkSize;
+    }
+
+
+    /**
+     * @param slope Height per distance to the outline. Defaults to 1.
+     */
+    public void setSlope(float slope) {
+        this.slope = slope;
+    }
+
+
+    /**
+     * Footprints whose skeleton can't be computed are skipped with a warning.
+     * @param target Receives the roof faces. Can be the BMesh of the footprints.
+     * @return Roof faces, grouped by footprint in the order of the input.
+     */
+    public List<Face> createRoofs(List<Face> footprints, BMesh target) {
+        final FaceHoles holes = FaceHoles.get(bmesh);
+        final ConcurrentLinkedQueue<Chunk> chunks = new ConcurrentLinkedQueue<>();
+
+        ParallelRange.forEach(footprints.size(), minChunkSize, (start, end) -> {
+            Worker worker = workers.get();
+            Chunk chunk = new Chunk(start, worker);
+            for(int i=start; i<end; ++i)
+                worker.createRoof(footprints.get(i), holes, chunk.roofFaces);
+            chunks.add(chunk);
+        });
+
+        Chunk[] sorted = chunks.toArray(new Chunk[0]);
+        Arrays.sort(sorted, Comparator.comparingInt(chunk -> chunk.start));
+
+        // Copy into target
+        Vec3Attribute<Vertex> targetPositions = Vec3Attribute.get(BMeshAttribute.Position, target.vertices());
+        Map<Vertex, Vertex> vertexMap = new HashMap<>();
+        List<Vertex> faceVertices = new ArrayList<>();
+        Vector3f p = new Vector3f();
+
+        List<Face> result = new ArrayList<>();
+        for(Chunk chunk : sorted) {
+            Vec3Attribute<Vertex> roofPositions = chunk.worker.roofPositions;
+
+            for(Face face : chunk.roofFaces) {
+                faceVertices.clear();
+                for(Vertex vertex : face.vertices()) {
+                    Vertex targetVertex = vertexMap.get(vertex);
+                    if(targetVertex == null) {
+                        roofPositions.get(vertex, p);
+                        targetVertex = target.createVertex();
+                        targetPositions.set(targetVertex, p);
+                        vertexMap.put(vertex, targetVertex);
+                    }
+                    faceVertices.add(targetVertex);
+                }
+
+                result.add(target.createFace(faceVertices));
+            }
+        }
+
+        Set<Worker> usedWorkers = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(Chunk chunk : sorted)
+            usedWorkers.add(chunk.worker);
+        for(Worker worker : usedWorkers)
+            worker.roofMesh.clear();
+
+        return result;
+    }
+
+
+
+    private class Worker {
+        private final StraightSkeleton skeleton = new StraightSkeleton(bmesh);
+        private final BMesh roofMesh = new BMesh();
+        private final Vec3Attribute<Vertex> roofPositions = Vec3Attribute.get(BMeshAttribute.Position, roofMesh.vertices());
+
+
+        public Worker() {
+            skeleton.setRecordHistory(true);
+        }
+
+
+        public void createRoof(Face footprint, FaceHoles holes, ArrayList<Face> store) {
+            if(holes != null && holes.isHole(footprint))
+                return;
+
+            try {
+                skeleton.apply(footprint);
+                store.addAll(skeleton.createRoof(roofMesh, slope));
+            }
+            catch(RuntimeException | AssertionError ex) {
+                LOG.warning("Couldn't create roof for face with " + footprint.getVertices().size() + " vertices: " + ex.getMessage());
+            }
+        }
+    }
+}
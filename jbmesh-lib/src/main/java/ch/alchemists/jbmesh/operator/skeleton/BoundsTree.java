@@ -0,0 +1,359 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.skeleton;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Dynamic bounding volume hierarchy of 2D axis-aligned boxes.
+ * Leaves are inserted at the sibling with the lowest perimeter cost and the tree is kept balanced with rotations.
+ * Insertion and removal are O(log n).
+ */
+class BoundsTree<T> {
+    static final int NULL = -1;
+
+    private float[] minX, minY, maxX, maxY;
+    private int[] parent;   // Also links the free list
+    private int[] child1;   // NULL for leaves
+    private int[] child2;
+    private int[] height;   // Leaves have height 0
+    private Object[] items;
+
+    private int root = NULL;
+    private int freeList = NULL;
+    private int capacity = 0;
+
+    private int[] stack = new int[64];
+
+
+    BoundsTree() {
+        grow(16);
+    }
+
+
+    public void clear() {
+        Arrays.fill(items, null);
+        root = NULL;
+        freeList = NULL;
+
+        for(int i=capacity-1; i>=0; --i)
+            free(i);
+    }
+
+
+    /**
+     * @return Proxy id which is used to remove the box.
+     */
+    public int insert(T item, float minX, float minY, float maxX, float maxY) {
+        int leaf = allocate();
+        this.minX[leaf] = minX;
+        this.minY[leaf] = minY;
+        this.maxX[leaf] = maxX;
+        this.maxY[leaf] = maxY;
+        items[leaf] = item;
+
+        insertLeaf(leaf);
+        return leaf;
+    }
+
+
+    public void remove(int proxy) {
+        assert child1[proxy] == NULL && items[proxy] != null;
+
+        removeLeaf(proxy);
+        items[proxy] = null;
+        free(proxy);
+    }
+
+
+    /**
+     * Adds all items whose boxes overlap the given box.
+     */
+    @SuppressWarnings("unchecked")
+    public void query(float qMinX, float qMinY, float qMaxX, float qMaxY, List<T> store) {
+        if(root == NULL)
+            return;
+
+        int stackSize = 0;
+        stack[stackSize++] = root;
+
+        while(stackSize > 0) {
+            int index = stack[--stackSize];
+            if(minX[index] > qMaxX || maxX[index] < qMinX || minY[index] > qMaxY || maxY[index] < qMinY)
+                continue;
+
+            if(child1[index] == NULL) {
+                store.add((T) items[index]);
+                continue;
+            }
+
+            if(stackSize + 2 > stack.length)
+                stack = Arrays.copyOf(stack, stack.length * 2);
+
+            stack[stackSize++] = child1[index];
+            stack[stackSize++] = child2[index];
+        }
+    }
+
+
+    int getHeight() {
+        return (root == NULL) ? 0 : height[root];
+    }
+
+
+    private int allocate() {
+        if(freeList == NULL)
+            grow(capacity * 2);
+
+        int node = freeList;
+        freeList = parent[node];
+
+        parent[node] = NULL;
+        child1[node] = NULL;
+        child2[node] = NULL;
+        height[node] = 0;
+        return node;
+    }
+
+    private void free(int node) {
+        parent[node] = freeList;
+        height[node] = -1;
+        freeList = node;
+    }
+
+
+    private void grow(int newCapacity) {
+        int oldCapacity = capacity;
+        capacity = newCapacity;
+
+        minX   = (minX == null) ? new float[capacity] : Arrays.copyOf(minX, capacity);
+        minY   = (minY == null) ? new float[capacity] : Arrays.copyOf(minY, capacity);
+        maxX   = (maxX == null) ? new float[capacity] : Arrays.copyOf(maxX, capacity);
+        maxY   = (maxY == null) ? new float[capacity] : Arrays.copyOf(maxY, capacity);
+        parent = (parent == null) ? new int[capacity] : Arrays.copyOf(parent, capacity);
+        child1 = (child1 == null) ? new int[capacity] : Arrays.copyOf(child1, capacity);
+        child2 = (child2 == null) ? new int[capacity] : Arrays.copyOf(child2, capacity);
+        height = (height == null) ? new int[capacity] : Arrays.copyOf(height, capacity);
+        items  = (items == null) ? new Object[capacity] : Arrays.copyOf(items, capacity);
+
+        for(int i=capacity-1; i>=oldCapacity; --i)
+            free(i);
+    }
+
+
+    private float perimeter(int a) {
+        return (maxX[a] - minX[a]) + (maxY[a] - minY[a]);
+    }
+
+    private float unionPerimeter(int a, int b) {
+        float w = Math.max(maxX[a], maxX[b]) - Math.min(minX[a], minX[b]);
+        float h = Math.max(maxY[a], maxY[b]) - Math.min(minY[a], minY[b]);
+        return w + h;
+    }
+
+    private void setUnion(int target, int a, int b) {
+        minX[target] = Math.min(minX[a], minX[b]);
+        minY[target] = Math.min(minY[a], minY[b]);
+        maxX[target] = Math.max(maxX[a], maxX[b]);
+        maxY[target] = Math.max(maxY[a], maxY[b]);
+    }
+
+
+    private void insertLeaf(int leaf) {
+        if(root == NULL) {
+            root = leaf;
+            parent[leaf] = NULL;
+            return;
+        }
+
+        // Find best sibling by descending into the child with the lowest cost
+        int index = root;
+        while(child1[index] != NULL) {
+            int c1 = child1[index];
+            int c2 = child2[index];
+
+            float combined = unionPerimeter(index, leaf);
+            float cost = 2.0f * combined;
+            float inheritanceCost = 2.0f * (combined - perimeter(index));
+
+            float cost1 = unionPerimeter(c1, leaf) + inheritanceCost;
+            if(child1[c1] != NULL)
+                cost1 -= perimeter(c1);
+
+            float cost2 = unionPerimeter(c2, leaf) + inheritanceCost;
+            if(child1[c2] != NULL)
+                cost2 -= perimeter(c2);
+
+            if(cost < cost1 && cost < cost2)
+                break;
+
+            index = (cost1 < cost2) ? c1 : c2;
+        }
+
+        int sibling = index;
+        int oldParent = parent[sibling];
+        int newParent = allocate();
+        parent[newParent] = oldParent;
+        setUnion(newParent, leaf, sibling);
+        height[newParent] = height[sibling] + 1;
+
+        if(oldParent != NULL) {
+            if(child1[oldParent] == sibling)
+                child1[oldParent] = newParent;
+            else
+                child2[oldParent] = newParent;
+        }
+        else
+            root = newParent;
+
+        child1[newParent] = sibling;
+        child2[newParent] = leaf;
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+
+        refit(parent[leaf]);
+    }
+
+
+    private void removeLeaf(int leaf) {
+        if(leaf == root) {
+            root = NULL;
+            return;
+        }
+
+        int p = parent[leaf];
+        int grandParent = parent[p];
+        int sibling = (child1[p] == leaf) ? child2[p] : child1[p];
+
+        if(grandParent != NULL) {
+            if(child1[grandParent] == p)
+                child1[grandParent] = sibling;
+            else
+                child2[grandParent] = sibling;
+
+            parent[sibling] = grandParent;
+            free(p);
+            refit(grandParent);
+        }
+        else {
+            root = sibling;
+            parent[sibling] = NULL;
+            free(p);
+        }
+    }
+
+
+    /**
+     * Walks up the tree, rebalancing and updating heights and boxes.
+     */
+    private void refit(int index) {
+        while(index != NULL) {
+            index = balance(index);
+
+            int c1 = child1[index];
+            int c2 = child2[index];
+            height[index] = 1 + Math.max(height[c1], height[c2]);
+            setUnion(index, c1, c2);
+
+            index = parent[index];
+        }
+    }
+
+
+    /**
+     * Performs a left or right rotation if node A is imbalanced.
+     * @return The new root of the subtree.
+     */
+    private int balance(int a) {
+        if(child1[a] == NULL || height[a] < 2)
+            return a;
+
+        int b = child1[a];
+        int c = child2[a];
+        int balance = height[c] - height[b];
+
+        // Rotate C up
+        if(balance > 1) {
+            int f = child1[c];
+            int g = child2[c];
+
+            child1[c] = a;
+            parent[c] = parent[a];
+            parent[a] = c;
+            replaceChild(parent[c], a, c);
+
+            if(height[f] > height[g]) {
+                child2[c] = f;
+                child2[a] = g;
+                parent[g] = a;
+                setUnion(a, b, g);
+                setUnion(c, a, f);
+                height[a] = 1 + Math.max(height[b], height[g]);
+                height[c] = 1 + Math.max(height[a], height[f]);
+            }
+            else {
+                child2[c] = g;
+                child2[a] = f;
+                parent[f] = a;
+                setUnion(a, b, f);
+                setUnion(c, a, g);
+                height[a] = 1 + Math.max(height[b], height[f]);
+                height[c] = 1 + Math.max(height[a], height[g]);
+            }
+
+            return c;
+        }
+
+        // Rotate B up
+        if(balance < -1) {
+            int d = child1[b];
+            int e = child2[b];
+
+            child1[b] = a;
+            parent[b] = parent[a];
+            parent[a] = b;
+            replaceChild(parent[b], a, b);
+
+            if(height[d] > height[e]) {
+                child2[b] = d;
+                child1[a] = e;
+                parent[e] = a;
+                setUnion(a, c, e);
+                setUnion(b, a, d);
+                height[a] = 1 + Math.max(height[c], height[e]);
+                height[b] = 1 + Math.max(height[a], height[d]);
+            }
+            else {
+                child2[b] = e;
+                child1[a] = d;
+                parent[d] = a;
+                setUnion(a, c, d);
+                setUnion(b, a, e);
+                height[a] = 1 + Math.max(height[c], height[d]);
+                height[b] = 1 + Math.max(height[a], height[e]);
+            }
+
+            return b;
+        }
+
+        return a;
+    }
+
+
+    private void replaceChild(int p, int oldChild, int newChild) {
+        if(p == NULL) {
+            root = newChild;
+            return;
+        }
+
+        if(child1[p] == oldChild)
+            child1[p] = newChild;
+        else
+            child2[p] = newChild;
+    }
+}
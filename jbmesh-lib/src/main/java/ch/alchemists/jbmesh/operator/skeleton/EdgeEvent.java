@@ -21,6 +21,13 @@ class EdgeEvent extends SkeletonEvent {
     }
 
 
+    @Override
+    public boolean endsPath(MovingNode node) {
+        // An aborted EdgeEvent doesn't recheck the split events of its nodes
+        return false;
+    }
+
+
     @Override
     public void onEventQueued() {
         n0.addEvent(this);
@@ -52,6 +59,11 @@ class EdgeEvent extends SkeletonEvent {
         if(n0.isReflex() || n1.isReflex())
             n0.skelNode.setReflex();
 
+        // Removed node ends exactly at the merged position
+        n0.updatePosition(ctx.time);
+        n1.updatePosition(ctx.time);
+        n1.skelNode.p.set(n0.skelNode.p);
+
         n1.skelNode.remapIncoming(n0.skelNode);
         ctx.removeMovingNode(n1);
 
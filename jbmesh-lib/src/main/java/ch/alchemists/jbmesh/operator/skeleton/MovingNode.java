@@ -11,18 +11,29 @@ import java.util.ArrayList;
 
 class MovingNode {
     public final String id;
-    public SkeletonNode skelNode;
+    public SkeletonNode skelNode; // Position is updated lazily, see getPosition()
+    private float positionTime = 0;
 
     public MovingNode next = null;
     public MovingNode prev = null;
 
     final Vector2f edgeDir = new Vector2f();
-    private float edgeCollapseTime = 0;
+    private float edgeCollapseTime = 0; // Absolute time
 
     // Bisector points in move direction which depends on whether we're growing or shrinking. Length determines speed.
     final Vector2f bisector = new Vector2f();
     private boolean reflex = false;
 
+    int nodeIndex = -1;             // Position in SkeletonContext's node list
+    boolean abortedReflex = false;  // Whether this node is registered for a split event recheck
+    boolean staleReflexBounds = false; // Whether this node is registered for an update of its reflex bounds
+
+    SkeletonContext.LoopBounds loop = null; // Nodes in the same loop share the bounds
+    int edgeProxy = BoundsTree.NULL;        // Bounds of the edge to next node, swept over time
+    int reflexProxy = BoundsTree.NULL;      // Bounds of the path of a reflex node
+
+    SkeletonHistory.Track track = null;     // Only used when recording
+
     private final ArrayList<SkeletonEvent> events = new ArrayList<>(); // ArrayList is faster than HashSet. Does its performance scale properly?
 
 
@@ -40,6 +51,43 @@ class MovingNode {
     }
 
 
+    /**
+     * The node moves along its bisector. Its SkeletonNode stores the position at 'positionTime'
+     * which is only updated at events, so advancing the time doesn't touch all nodes.
+     * @return Position at the given time.
+     */
+    public Vector2f getPosition(float time, Vector2f store) {
+        float dt = time - positionTime;
+        store.x = skelNode.p.x + bisector.x * dt;
+        store.y = skelNode.p.y + bisector.y * dt;
+        return store;
+    }
+
+
+    /**
+     * @return Vector from the position of 'other' to the position of this node at the given time.
+     */
+    public Vector2f getRelativePosition(MovingNode other, float time, Vector2f store) {
+        float dt = time - positionTime;
+        float otherDt = time - other.positionTime;
+        store.x = (skelNode.p.x + bisector.x * dt) - (other.skelNode.p.x + other.bisector.x * otherDt);
+        store.y = (skelNode.p.y + bisector.y * dt) - (other.skelNode.p.y + other.bisector.y * otherDt);
+        return store;
+    }
+
+
+    /**
+     * Moves the SkeletonNode to the position at the given time. Must be called before the bisector changes.
+     */
+    public void updatePosition(float time) {
+        if(time != positionTime) {
+            getPosition(time, skelNode.p);
+            positionTime = time;
+            assert !Float.isNaN(skelNode.p.x) && !Float.isInfinite(skelNode.p.x) : "Invalid position: bisector=" + bisector;
+        }
+    }
+
+
     public void addEvent(SkeletonEvent event) {
         events.add(event);
     }
@@ -74,9 +122,16 @@ class MovingNode {
      * @return True if bisector is valid and polygon is not degenerated at this corner.
      */
     public boolean calcBisector(SkeletonContext ctx, boolean init) {
+        updatePosition(ctx.time);
+        ctx.markChanged(this);
         if(next.next == this)
             return false;
 
+        prev.updatePosition(ctx.time);
+        next.updatePosition(ctx.time);
+        ctx.markChanged(prev);
+        ctx.markChanged(next);
+
         // Calc direction to neighbor nodes. Make sure there's enough distance for stable calculation.
         Vector2f vPrev = prev.skelNode.p.subtract(skelNode.p);
         float vPrevLength = vPrev.length();
@@ -137,7 +192,13 @@ class MovingNode {
     }
 
 
-    public void updateEdge() {
+    /**
+     * @param time Current time.
+     */
+    public void updateEdge(float time) {
+        updatePosition(time);
+        next.updatePosition(time);
+
         edgeDir.set(next.skelNode.p).subtractLocal(skelNode.p);
         float edgeLength = edgeDir.length();
         edgeDir.divideLocal(edgeLength); // Normalize
@@ -146,7 +207,7 @@ class MovingNode {
         edgeShrinkSpeed -= next.bisector.dot(edgeDir); // equivalent to: edgeShrinkSpeed += next.bisector.dot(edgeDir.negate());
 
         if(edgeShrinkSpeed > 0)
-            edgeCollapseTime = edgeLength / edgeShrinkSpeed;
+            edgeCollapseTime = time + edgeLength / edgeShrinkSpeed;
         else
             edgeCollapseTime = SkeletonEvent.INVALID_TIME;
     }
@@ -6,17 +6,72 @@
 
 package ch.alchemists.jbmesh.operator.skeleton;
 
+import com.jme3.math.Vector2f;
 import java.util.*;
 
 class SkeletonContext {
+    /**
+     * Swept bounds of the edges and reflex nodes in one loop.
+     */
+    static final class LoopBounds {
+        final BoundsTree<MovingNode> edges = new BoundsTree<>();
+        final BoundsTree<MovingNode> reflexNodes = new BoundsTree<>();
+        int numNodes = 0;
+
+        // Statistics of recent edge queries
+        int queriedEdges = 0;
+        int queriedLoopSize = 0;
+        int numQueries = 0;
+        int skippedQueries = 0;
+
+        private void copyStatistics(LoopBounds other) {
+            queriedEdges = other.queriedEdges;
+            queriedLoopSize = other.queriedLoopSize;
+            numQueries = other.numQueries;
+            skippedQueries = other.skippedQueries;
+        }
+
+        private void clear() {
+            edges.clear();
+            reflexNodes.clear();
+            numNodes = 0;
+            queriedEdges = 0;
+            queriedLoopSize = 0;
+            numQueries = 0;
+            skippedQueries = 0;
+        }
+    }
+
+
+
+    // Edge queries are used while they return less than 1/SELECTIVE_RATIO of a loop's edges
+    private static final int SELECTIVE_RATIO = 8;
+    private static final int SAMPLE_INTERVAL = 128;
+
     private int nextMovingNodeId = 1;
 
-    private final LinkedHashSet<MovingNode> movingNodes = new LinkedHashSet<>();
-    private final TreeSet<SkeletonEvent> eventQueue = new TreeSet<>(); // Must support sorting, fast add & remove, poll lowest
+    private final ArrayList<MovingNode> movingNodes = new ArrayList<>(); // Unordered, removal by swapping with last
+    private final SkeletonEventQueue eventQueue = new SkeletonEventQueue();
 
     // Contains reflex nodes of aborted SplitEvents. Since we only enqueue the nearest SplitEvent to reduce strain on the queue,
     // when a SplitEvent is aborted we must recheck if a reflex node collides with another edge that was originally further away.
-    private final Set<MovingNode> abortedReflex = new HashSet<>();
+    // Duplicates are prevented by the flag MovingNode.abortedReflex.
+    private final ArrayList<MovingNode> abortedReflex = new ArrayList<>();
+
+    // Contains reflex nodes whose bounds must be updated because their events changed. The bounds of a reflex node
+    // only span its path until its earliest event. When the event is aborted, the path continues and the bounds must grow.
+    // Duplicates are prevented by the flag MovingNode.staleReflexBounds.
+    private final ArrayList<MovingNode> staleReflexBounds = new ArrayList<>();
+
+    private SkeletonHistory history = null; // Only set when recording
+
+    // Spatial acceleration for split events: Only reflex nodes and edges of the same loop whose swept bounds overlap can collide
+    private final ArrayList<LoopBounds> loopBounds = new ArrayList<>(); // Pooled
+    private int numLoops = 0;
+    private final ArrayList<MovingNode> candidates = new ArrayList<>();
+    private float boundsMargin = 0;
+    private float minX, minY, maxX, maxY;
+    private final Vector2f pathStart = new Vector2f();
 
     public float distance;
     public float distanceSign;
@@ -35,8 +90,25 @@ class SkeletonContext {
     }
 
 
-    public Set<MovingNode> getNodes() {
-        return Collections.unmodifiableSet(movingNodes);
+    /**
+     * @param history Records changed nodes. Can be null. Is unset by reset().
+     */
+    public void setHistory(SkeletonHistory history) {
+        this.history = history;
+    }
+
+
+    /**
+     * Notifies the history about a changed position, bisector or link.
+     */
+    public void markChanged(MovingNode node) {
+        if(history != null)
+            history.markChanged(node);
+    }
+
+
+    public List<MovingNode> getNodes() {
+        return Collections.unmodifiableList(movingNodes);
     }
 
 
@@ -46,10 +118,29 @@ class SkeletonContext {
         time = 0;
 
         nextMovingNodeId = 1;
+        history = null;
 
+        for(MovingNode node : movingNodes) {
+            node.nodeIndex = -1;
+            node.edgeProxy = BoundsTree.NULL;
+            node.reflexProxy = BoundsTree.NULL;
+            node.loop = null;
+        }
         movingNodes.clear();
+
+        for(int i=0; i<numLoops; ++i)
+            loopBounds.get(i).clear();
+        numLoops = 0;
+
         eventQueue.clear();
+
+        for(MovingNode node : abortedReflex)
+            node.abortedReflex = false;
         abortedReflex.clear();
+
+        for(MovingNode node : staleReflexBounds)
+            node.staleReflexBounds = false;
+        staleReflexBounds.clear();
     }
 
 
@@ -65,15 +156,302 @@ class SkeletonContext {
 
     public MovingNode createMovingNode(String id) {
         MovingNode node = new MovingNode(id);
+        node.nodeIndex = movingNodes.size();
         movingNodes.add(node);
+        markChanged(node);
         return node;
     }
 
     protected void removeMovingNode(MovingNode node) {
+        node.updatePosition(time); // SkeletonNode stays at this place
+        markChanged(node);
         node.next = null;
         node.prev = null;
         abortEvents(node);
-        movingNodes.remove(node);
+        removeBounds(node);
+        if(node.loop != null)
+            node.loop.numNodes--;
+
+        int index = node.nodeIndex;
+        if(index < 0)
+            return;
+
+        MovingNode last = movingNodes.remove(movingNodes.size()-1);
+        if(last != node) {
+            movingNodes.set(index, last);
+            last.nodeIndex = index;
+        }
+
+        node.nodeIndex = -1;
+    }
+
+
+    /**
+     * Adds the new 'node1' to the loop of 'node0' and moves the smaller of the two loops after a split to new bounds.
+     * Both loops are walked simultaneously so the cost is proportional to the smaller loop.
+     */
+    public void splitLoop(MovingNode node0, MovingNode node1) {
+        node1.loop = node0.loop;
+        node1.loop.numNodes++;
+
+        MovingNode current0 = node0.next;
+        MovingNode current1 = node1.next;
+
+        while(current0 != node0 && current1 != node1) {
+            current0 = current0.next;
+            current1 = current1.next;
+        }
+
+        MovingNode start = (current0 == node0) ? node0 : node1;
+        LoopBounds loop = createLoopBounds();
+        loop.copyStatistics(start.loop);
+
+        // Nodes whose bisectors are not updated yet receive new bounds again in SkeletonEvent.handle()
+        MovingNode current = start;
+        do {
+            removeBounds(current);
+            current.loop.numNodes--;
+            current.loop = loop;
+            loop.numNodes++;
+            updateEdgeBounds(current);
+            updateReflexBounds(current);
+            current = current.next;
+        } while(current != start);
+    }
+
+
+    private LoopBounds createLoopBounds() {
+        if(numLoops == loopBounds.size())
+            loopBounds.add(new LoopBounds());
+
+        return loopBounds.get(numLoops++);
+    }
+
+
+    //
+    // Spatial Acceleration
+    //
+
+    /**
+     * Creates the loop of the initial nodes. Their bounds are inserted with {@link #initBounds(MovingNode, LoopBounds)}.
+     * @param size Size of polygon, used for the tolerance of the bounds.
+     */
+    LoopBounds initLoopBounds(float size) {
+        boundsMargin = epsilon + size * 0.0001f;
+        LoopBounds loop = createLoopBounds();
+        loop.numNodes = movingNodes.size();
+        return loop;
+    }
+
+
+    /**
+     * Inserts the bounds of the node's edge and of the node if it's reflex.
+     * Bisectors and edges of all nodes must be initialized.
+     */
+    void initBounds(MovingNode node, LoopBounds loop) {
+        node.loop = loop;
+        updateEdgeBounds(node);
+        updateReflexBounds(node);
+    }
+
+
+    /**
+     * Updates the bounds after the bisector of 'node' and its adjacent edges were recalculated.
+     */
+    public void updateBounds(MovingNode node) {
+        updateEdgeBounds(node.prev);
+        updateEdgeBounds(node);
+        updateReflexBounds(node);
+    }
+
+
+    private void updateEdgeBounds(MovingNode node) {
+        removeEdgeBounds(node);
+
+        calcEdgeBounds(node);
+        node.edgeProxy = node.loop.edges.insert(node, minX, minY, maxX, maxY);
+    }
+
+
+    private void removeEdgeBounds(MovingNode node) {
+        if(node.edgeProxy != BoundsTree.NULL) {
+            node.loop.edges.remove(node.edgeProxy);
+            node.edgeProxy = BoundsTree.NULL;
+        }
+    }
+
+
+    private void updateReflexBounds(MovingNode node) {
+        if(node.reflexProxy != BoundsTree.NULL) {
+            node.loop.reflexNodes.remove(node.reflexProxy);
+            node.reflexProxy = BoundsTree.NULL;
+        }
+
+        if(node.isReflex()) {
+            calcReflexBounds(node, getPathEnd(node) - time);
+            node.reflexProxy = node.loop.reflexNodes.insert(node, minX, minY, maxX, maxY);
+        }
+    }
+
+
+    /**
+     * A reflex node keeps its bisector at least until its own nearest SplitEvent, or until that event is aborted,
+     * which rechecks its split events. Edge collapses don't end the bounds: An aborted EdgeEvent doesn't recheck anything.
+     * @return Absolute time of the earliest queued event that ends the path of 'node', see {@link SkeletonEvent#endsPath(MovingNode)},
+     *         or the distance if there is none.
+     */
+    private float getPathEnd(MovingNode node) {
+        float end = distance;
+        for(SkeletonEvent event : node.events()) {
+            if(event.time < end && event.endsPath(node))
+                end = event.time;
+        }
+        return end;
+    }
+
+
+    /**
+     * Registers 'node' for an update of its reflex bounds after its events changed.
+     */
+    public void invalidateReflexBounds(MovingNode node) {
+        if(!node.staleReflexBounds) {
+            node.staleReflexBounds = true;
+            staleReflexBounds.add(node);
+        }
+    }
+
+
+    private void updateStaleReflexBounds() {
+        for(MovingNode node : staleReflexBounds) {
+            node.staleReflexBounds = false;
+
+            // Removed nodes have no bounds
+            if(node.next != null)
+                updateReflexBounds(node);
+        }
+
+        staleReflexBounds.clear();
+    }
+
+
+    private void removeBounds(MovingNode node) {
+        removeEdgeBounds(node);
+
+        if(node.reflexProxy != BoundsTree.NULL) {
+            node.loop.reflexNodes.remove(node.reflexProxy);
+            node.reflexProxy = BoundsTree.NULL;
+        }
+    }
+
+
+    /**
+     * SplitEvent.calcTime() moves the edge's line with unit speed. A hit is valid if it lies between the lines through
+     * the end nodes along their bisectors. The bounds contain this region until the edge collapses or the distance is reached.
+     * If the bisector lines don't approach the moving edge, the region is unbounded.
+     */
+    private void calcEdgeBounds(MovingNode edgeStart) {
+        float duration = distance - time;
+        float collapseTime = edgeStart.getEdgeCollapseTime() - time;
+        if(collapseTime < duration) // False for NaN
+            duration = collapseTime;
+
+        MovingNode edgeEnd = edgeStart.next;
+        float speed0 = distanceSign * edgeStart.bisector.determinant(edgeStart.edgeDir);
+        float speed1 = distanceSign * edgeEnd.bisector.determinant(edgeStart.edgeDir);
+        if(!(speed0 > epsilon && speed1 > epsilon)) {
+            setPathBounds(edgeStart, Float.POSITIVE_INFINITY);
+            return;
+        }
+
+        // Nodes move with bisector speed, the line moves with unit speed
+        float offset = duration * Math.max(1.0f, speed0);
+        setPathBounds(edgeStart, offset / speed0);
+
+        float tMinX = minX, tMinY = minY, tMaxX = maxX, tMaxY = maxY;
+        setPathBounds(edgeEnd, offset / speed1);
+        minX = Math.min(minX, tMinX);
+        minY = Math.min(minY, tMinY);
+        maxX = Math.max(maxX, tMaxX);
+        maxY = Math.max(maxY, tMaxY);
+    }
+
+
+    private void calcReflexBounds(MovingNode reflexNode, float duration) {
+        setPathBounds(reflexNode, duration);
+    }
+
+
+    private void setPathBounds(MovingNode node, float duration) {
+        if(!(duration < Float.POSITIVE_INFINITY)) {
+            minX = minY = Float.NEGATIVE_INFINITY;
+            maxX = maxY = Float.POSITIVE_INFINITY;
+            return;
+        }
+
+        node.getPosition(time, pathStart);
+        float x = pathStart.x;
+        float y = pathStart.y;
+        float endX = x + node.bisector.x * duration;
+        float endY = y + node.bisector.y * duration;
+
+        minX = Math.min(x, endX) - boundsMargin;
+        minY = Math.min(y, endY) - boundsMargin;
+        maxX = Math.max(x, endX) + boundsMargin;
+        maxY = Math.max(y, endY) + boundsMargin;
+    }
+
+
+    /**
+     * @return Reflex nodes that may collide with the edge from 'edgeStart' to its next node. The list is reused.
+     */
+    public List<MovingNode> queryReflexNodes(MovingNode edgeStart) {
+        updateStaleReflexBounds();
+
+        candidates.clear();
+        calcEdgeBounds(edgeStart);
+        edgeStart.loop.reflexNodes.query(minX, minY, maxX, maxY, candidates);
+        return candidates;
+    }
+
+
+    /**
+     * Edges whose bounds are large or unbounded are returned by many queries. If recent queries in a loop returned
+     * a large part of its edges, walking the loop is faster. Queries are still sampled now and then.
+     * @return Whether queryEdges() is expected to return considerably fewer edges than the loop contains.
+     */
+    public boolean isEdgeQuerySelective(MovingNode reflexNode) {
+        LoopBounds loop = reflexNode.loop;
+        if(loop.queriedEdges * SELECTIVE_RATIO <= loop.queriedLoopSize)
+            return true;
+
+        if(++loop.skippedQueries < SAMPLE_INTERVAL)
+            return false;
+
+        loop.skippedQueries = 0;
+        return true;
+    }
+
+
+    /**
+     * @param duration Time span from now.
+     * @return Start nodes of edges that 'reflexNode' may collide with during the given time span. The list is reused.
+     */
+    public List<MovingNode> queryEdges(MovingNode reflexNode, float duration) {
+        candidates.clear();
+        calcReflexBounds(reflexNode, duration);
+        LoopBounds loop = reflexNode.loop;
+        loop.edges.query(minX, minY, maxX, maxY, candidates);
+
+        // Decay statistics
+        if(++loop.numQueries == SAMPLE_INTERVAL) {
+            loop.numQueries /= 2;
+            loop.queriedEdges /= 2;
+            loop.queriedLoopSize /= 2;
+        }
+
+        loop.queriedEdges += candidates.size();
+        loop.queriedLoopSize += loop.numNodes;
+        return candidates;
     }
 
 
@@ -82,19 +460,21 @@ class SkeletonContext {
     //
 
     public SkeletonEvent pollQueue() {
-        return eventQueue.pollFirst();
+        return eventQueue.poll();
     }
 
     public void enqueue(SkeletonEvent event) {
         assert event.time >= time : "time: " + time + ", event.time: " + event.time + " // " + event;
 
-        boolean added = eventQueue.add(event);
-        assert added;
+        eventQueue.add(event);
         event.onEventQueued();
     }
 
     public void addAbortedReflex(MovingNode reflexNode) {
-        abortedReflex.add(reflexNode);
+        if(!reflexNode.abortedReflex) {
+            reflexNode.abortedReflex = true;
+            abortedReflex.add(reflexNode);
+        }
     }
 
 
@@ -128,7 +508,9 @@ class SkeletonContext {
 
     public void printEvents() {
         System.out.println("Events:");
-        eventQueue.stream().sorted().forEach(event -> {
+        List<SkeletonEvent> events = new ArrayList<>(eventQueue.size());
+        eventQueue.forEach(events::add);
+        events.stream().sorted().forEach(event -> {
             System.out.println(" - " + event + " in " + event.time);
         });
     }
@@ -146,7 +528,7 @@ class SkeletonContext {
     //
 
     public void tryQueueEdgeEvent(MovingNode n0, MovingNode n1) {
-        float eventTime = time + n0.getEdgeCollapseTime();
+        float eventTime = n0.getEdgeCollapseTime();
 
         // In case of an invalid time (=NaN), this condition will be false.
         if(eventTime <= distance)
@@ -157,7 +539,7 @@ class SkeletonContext {
     public void tryQueueSplitEvent(MovingNode reflexNode, MovingNode op0, MovingNode op1) {
         assert reflexNode.isReflex();
 
-        float eventTime = time + SplitEvent.calcTime(reflexNode, op0, distanceSign);
+        float eventTime = SplitEvent.calcTime(reflexNode, op0, this);
 
         // In case of an invalid time (=NaN), this condition will be false.
         if(eventTime <= distance) {
@@ -170,7 +552,7 @@ class SkeletonContext {
     public SplitEvent tryReplaceNearestSplitEvent(MovingNode reflexNode, MovingNode op0, MovingNode op1, SplitEvent nearest) {
         assert reflexNode.isReflex();
 
-        float eventTime = time + SplitEvent.calcTime(reflexNode, op0, distanceSign);
+        float eventTime = SplitEvent.calcTime(reflexNode, op0, this);
 
         if(nearest != null && nearest.time <= eventTime)
             return nearest;
@@ -186,11 +568,18 @@ class SkeletonContext {
 
 
     public void recheckAbortedReflexNodes() {
-        for(MovingNode reflexNode : abortedReflex) {
-            if(reflexNode.next != null && reflexNode.isReflex())
+        // Rechecking doesn't abort events, so no nodes are added during iteration
+        for(int i=0; i<abortedReflex.size(); ++i) {
+            MovingNode reflexNode = abortedReflex.get(i);
+            reflexNode.abortedReflex = false;
+
+            if(reflexNode.next != null && reflexNode.isReflex()) {
                 SkeletonEvent.createSplitEvents(reflexNode, this);
+                invalidateReflexBounds(reflexNode);
+            }
         }
 
         abortedReflex.clear();
+        updateStaleReflexBounds();
     }
 }
@@ -8,7 +8,10 @@ package ch.alchemists.jbmesh.operator.skeleton;
 
 abstract class SkeletonEvent implements Comparable<SkeletonEvent> {
     public static final float INVALID_TIME = Float.NaN;
+    static final int NOT_QUEUED = -1;
+
     public final float time; // Always positive
+    int queueIndex = NOT_QUEUED; // Handle for SkeletonEventQueue
 
 
     protected SkeletonEvent(float time) {
@@ -28,12 +31,17 @@ abstract class SkeletonEvent implements Comparable<SkeletonEvent> {
         if(this instanceof SplitEvent && other instanceof EdgeEvent)
             return 1;
 
-        // A TreeSet as event queue doesn't allow duplicate keys (time values).
-        // Compare the hashes so compareTo() won't return 0 if events happen at the same time.
-        return Integer.compare(hashCode(), other.hashCode());
+        return 0;
     }
 
 
+    /**
+     * The reflex bounds of 'node' may end at such an event. This requires that aborting the event rechecks the split events of 'node',
+     * because edges that were created in the meantime didn't find it with their queries.
+     * @return Whether handling this event recalculates or removes 'node', which ends its current path.
+     */
+    public abstract boolean endsPath(MovingNode node);
+
     public abstract void onEventQueued();
     public abstract void onEventAborted(MovingNode adjacentNode, SkeletonContext ctx);
     public abstract void onEventAborted(MovingNode edgeNode0, MovingNode edgeNode1, SkeletonContext ctx);
@@ -51,8 +59,9 @@ abstract class SkeletonEvent implements Comparable<SkeletonEvent> {
             if(validBisector) {
                 node.leaveSkeletonNode();
 
-                node.updateEdge();
-                node.prev.updateEdge();
+                node.updateEdge(ctx.time);
+                node.prev.updateEdge(ctx.time);
+                ctx.updateBounds(node);
 
                 createEvents(node, ctx);
                 return;
@@ -113,45 +122,32 @@ abstract class SkeletonEvent implements Comparable<SkeletonEvent> {
      *
      * A triangle cannot be concave. A concave quadrilateral (arrowhead) doesn't need split events.
      * Minimum vertices for split events = 5.
+     *
+     * Candidates are found with the swept bounds in SkeletonContext instead of walking the whole loop.
      */
     private static void createAllSplitEvents(MovingNode node, SkeletonContext ctx) {
-        MovingNode current = node.next.next;   // processed in first step before loop
-        final MovingNode end = node.prev.prev; // excluded from loop, but processed in last step after loop
+        final MovingNode current = node.next.next;
+        final MovingNode end = node.prev.prev;
 
         // Ignore triangles and quads
         if(current == end.next || current == end)
             return;
 
-        final boolean nodeIsReflex = node.isReflex();
-        SplitEvent nearestSplit = null;
-
-        // First step: Test 'current' vertex only against first adjacent edge (node.prev->node).
-        //             Test 'node' against current edge.
-        if(current.isReflex())
-            ctx.tryQueueSplitEvent(current, node.prev, node);
-
-        if(nodeIsReflex)
-            nearestSplit = ctx.tryReplaceNearestSplitEvent(node, current, current.next, nearestSplit);
-
-        // Intermediate steps, all tests
-        current = current.next;
-        for(; current != end; current = current.next) {
-            if(current.isReflex()) {
-                ctx.tryQueueSplitEvent(current, node, node.next);
-                ctx.tryQueueSplitEvent(current, node.prev, node);
-            }
-
-            if(nodeIsReflex) // Condition is constant. Manual optimization (loop unswitching) not worth it.
-                nearestSplit = ctx.tryReplaceNearestSplitEvent(node, current, current.next, nearestSplit);
+        final MovingNode prev = node.prev;
+        for(MovingNode reflexNode : ctx.queryReflexNodes(prev)) {
+            if(isEligible(reflexNode, prev))
+                ctx.tryQueueSplitEvent(reflexNode, prev, node);
         }
 
-        // Last step: Test 'current' only against second adjacent edge (node->node.next)
-        //            Don't test "nodeIsReflex" against this last edge.
-        if(current.isReflex())
-            ctx.tryQueueSplitEvent(current, node, node.next);
+        for(MovingNode reflexNode : ctx.queryReflexNodes(node)) {
+            if(isEligible(reflexNode, node))
+                ctx.tryQueueSplitEvent(reflexNode, node, node.next);
+        }
 
-        if(nearestSplit != null)
-            ctx.enqueue(nearestSplit);
+        if(node.isReflex()) {
+            createSplitEvents(node, ctx);
+            ctx.invalidateReflexBounds(node);
+        }
     }
 
 
@@ -159,19 +155,55 @@ abstract class SkeletonEvent implements Comparable<SkeletonEvent> {
         MovingNode current = reflexNode.next.next;
         MovingNode end = reflexNode.prev.prev; // exclusive
 
-        // Ignore triangles, quads will also be ignored by the loop condition below
-        if(current == end.next)
+        // Ignore triangles and quads
+        if(current == end.next || current == end)
+            return;
+
+        if(!ctx.isEdgeQuerySelective(reflexNode)) {
+            SplitEvent nearestSplit = null;
+            for(; current != end; current = current.next)
+                nearestSplit = ctx.tryReplaceNearestSplitEvent(reflexNode, current, current.next, nearestSplit);
+
+            if(nearestSplit != null)
+                ctx.enqueue(nearestSplit);
             return;
+        }
+
+        // Search along the path of the reflex node with growing time windows.
+        // A split found inside the window is the nearest because all edges that can be hit earlier were tested.
+        final float remaining = ctx.distance - ctx.time;
+        float window = remaining / 64f;
 
         SplitEvent nearestSplit = null;
-        for(; current != end; current = current.next)
-            nearestSplit = ctx.tryReplaceNearestSplitEvent(reflexNode, current, current.next, nearestSplit);
+        while(true) {
+            for(MovingNode edgeStart : ctx.queryEdges(reflexNode, window)) {
+                if(isEligible(reflexNode, edgeStart))
+                    nearestSplit = ctx.tryReplaceNearestSplitEvent(reflexNode, edgeStart, edgeStart.next, nearestSplit);
+            }
+
+            if(window >= remaining || (nearestSplit != null && nearestSplit.time - ctx.time <= window))
+                break;
+
+            window = Math.min(window * 4f, remaining);
+        }
 
         if(nearestSplit != null)
             ctx.enqueue(nearestSplit);
     }
 
 
+    /**
+     * @return Whether there are at least 2 edges between 'reflexNode' and the edge starting at 'edgeStart'.
+     */
+    private static boolean isEligible(MovingNode reflexNode, MovingNode edgeStart) {
+        assert reflexNode.loop == edgeStart.loop;
+        return edgeStart != reflexNode
+            && edgeStart != reflexNode.next
+            && edgeStart != reflexNode.prev
+            && edgeStart != reflexNode.prev.prev;
+    }
+
+
     private static MovingNode handleDegenerateAngle(MovingNode node, SkeletonContext ctx) {
         // Remove node, connect node.prev <-> node.next
         MovingNode o1 = node.prev;
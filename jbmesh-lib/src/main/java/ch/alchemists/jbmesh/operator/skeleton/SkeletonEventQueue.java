@@ -0,0 +1,160 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.skeleton;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Indexed 4-ary min-heap. Each queued event stores its position in the heap array,
+ * which allows removal in O(log n) without searching.
+ */
+class SkeletonEventQueue {
+    private static final int ARITY = 4;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private SkeletonEvent[] heap = new SkeletonEvent[INITIAL_CAPACITY];
+    private int size = 0;
+
+
+    SkeletonEventQueue() {}
+
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+
+    public void clear() {
+        for(int i=0; i<size; ++i)
+            heap[i].queueIndex = SkeletonEvent.NOT_QUEUED;
+
+        Arrays.fill(heap, 0, size, null);
+        size = 0;
+    }
+
+
+    public boolean contains(SkeletonEvent event) {
+        int index = event.queueIndex;
+        return index >= 0 && index < size && heap[index] == event;
+    }
+
+
+    public void add(SkeletonEvent event) {
+        if(event.queueIndex != SkeletonEvent.NOT_QUEUED)
+            throw new IllegalArgumentException("Event is already queued");
+
+        if(size == heap.length)
+            heap = Arrays.copyOf(heap, size * 2);
+
+        siftUp(size++, event);
+    }
+
+
+    /**
+     * @return The event with the lowest time, or null if the queue is empty.
+     */
+    public SkeletonEvent poll() {
+        if(size == 0)
+            return null;
+
+        SkeletonEvent first = heap[0];
+        first.queueIndex = SkeletonEvent.NOT_QUEUED;
+
+        SkeletonEvent last = heap[--size];
+        heap[size] = null;
+        if(size > 0)
+            siftDown(0, last);
+
+        return first;
+    }
+
+
+    /**
+     * @return True if the event was queued and is now removed.
+     */
+    public boolean remove(SkeletonEvent event) {
+        if(!contains(event))
+            return false;
+
+        int index = event.queueIndex;
+        event.queueIndex = SkeletonEvent.NOT_QUEUED;
+
+        SkeletonEvent last = heap[--size];
+        heap[size] = null;
+
+        if(index < size) {
+            siftDown(index, last);
+            if(heap[index] == last)
+                siftUp(index, last);
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Visits the queued events in unspecified order.
+     */
+    public void forEach(Consumer<SkeletonEvent> consumer) {
+        for(int i=0; i<size; ++i)
+            consumer.accept(heap[i]);
+    }
+
+
+    private void siftUp(int index, SkeletonEvent event) {
+        while(index > 0) {
+            int parentIndex = (index - 1) / ARITY;
+            SkeletonEvent parent = heap[parentIndex];
+            if(event.compareTo(parent) >= 0)
+                break;
+
+            place(index, parent);
+            index = parentIndex;
+        }
+
+        place(index, event);
+    }
+
+
+    private void siftDown(int index, SkeletonEvent event) {
+        while(true) {
+            int firstChild = index * ARITY + 1;
+            if(firstChild >= size)
+                break;
+
+            // Find smallest child
+            int minIndex = firstChild;
+            SkeletonEvent min = heap[firstChild];
+            int endChild = Math.min(firstChild + ARITY, size);
+            for(int i=firstChild+1; i<endChild; ++i) {
+                if(heap[i].compareTo(min) < 0) {
+                    minIndex = i;
+                    min = heap[i];
+                }
+            }
+
+            if(event.compareTo(min) <= 0)
+                break;
+
+            place(index, min);
+            index = minIndex;
+        }
+
+        place(index, event);
+    }
+
+
+    private void place(int index, SkeletonEvent event) {
+        heap[index] = event;
+        event.queueIndex = index;
+    }
+}
@@ -0,0 +1,280 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.skeleton;
+
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the state of the wavefront over time. After each event, the changed MovingNodes store a keyframe
+ * with their position, bisector and next node. The loops at any time can then be reconstructed
+ * without running the skeleton again.
+ */
+class SkeletonHistory {
+    interface SweptFaceCallback {
+        /**
+         * @param points Positions with the time in the z component, in the winding order of the input polygon. The list is reused.
+         */
+        void face(List<Vector3f> points);
+    }
+
+
+
+    private static final class Keyframe {
+        private final float time;
+        private final Vector2f p;
+        private final Vector2f bisector;
+        private final Track next; // Null if node was removed. Then 'p' is the final position and 'bisector' is null.
+
+        private Keyframe(float time, Vector2f p, Vector2f bisector, Track next) {
+            this.time = time;
+            this.p = p;
+            this.bisector = bisector;
+            this.next = next;
+        }
+
+        private Vector2f getPosition(float t) {
+            return bisector.mult(t - time).addLocal(p);
+        }
+    }
+
+
+
+    static final class Track {
+        private final MovingNode node;
+        private final ArrayList<Keyframe> keyframes = new ArrayList<>(2);
+        private boolean changed = false;
+        private int visited = 0;
+
+        private Track(MovingNode node) {
+            this.node = node;
+        }
+
+        /**
+         * @return The last keyframe at or before the given time, or null.
+         */
+        private Keyframe at(float time) {
+            int index = indexAt(time);
+            return (index < 0) ? null : keyframes.get(index);
+        }
+
+        /**
+         * @return Index of the last keyframe at or before the given time, or -1.
+         */
+        private int indexAt(float time) {
+            int lo = 0;
+            int hi = keyframes.size() - 1;
+            int result = -1;
+
+            while(lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if(keyframes.get(mid).time <= time) {
+                    result = mid;
+                    lo = mid + 1;
+                }
+                else
+                    hi = mid - 1;
+            }
+
+            return result;
+        }
+    }
+
+
+
+    private final ArrayList<Track> tracks = new ArrayList<>();
+    private final ArrayList<Track> changedTracks = new ArrayList<>();
+    private int visitStamp = 0;
+
+    private final ArrayList<Vector3f> facePoints = new ArrayList<>();
+    private int numFacePoints = 0;
+
+
+    SkeletonHistory() {}
+
+
+    /**
+     * Registers the node for a keyframe at the next call to {@link #record(float)}.
+     */
+    public void markChanged(MovingNode node) {
+        Track track = getTrack(node);
+        if(!track.changed) {
+            track.changed = true;
+            changedTracks.add(track);
+        }
+    }
+
+
+    private Track getTrack(MovingNode node) {
+        if(node.track == null) {
+            node.track = new Track(node);
+            tracks.add(node.track);
+        }
+
+        return node.track;
+    }
+
+
+    /**
+     * Stores a keyframe for all changed nodes. The previous nodes are included because their links could have changed.
+     */
+    public void record(float time) {
+        int numChanged = changedTracks.size();
+        for(int i=0; i<numChanged; ++i) {
+            MovingNode prev = changedTracks.get(i).node.prev;
+            if(prev != null)
+                markChanged(prev);
+        }
+
+        for(Track track : changedTracks) {
+            track.changed = false;
+            MovingNode node = track.node;
+
+            Keyframe kf;
+            node.updatePosition(time);
+            if(node.next == null)
+                kf = new Keyframe(time, node.skelNode.p.clone(), null, null);
+            else
+                kf = new Keyframe(time, node.skelNode.p.clone(), node.bisector.clone(), getTrack(node.next));
+
+            // Replace keyframe of an earlier event at the same time
+            List<Keyframe> keyframes = track.keyframes;
+            int last = keyframes.size() - 1;
+            if(last >= 0 && keyframes.get(last).time == time)
+                keyframes.set(last, kf);
+            else
+                keyframes.add(kf);
+        }
+
+        changedTracks.clear();
+    }
+
+
+    /**
+     * @return Loops of positions at the given time.
+     */
+    public List<List<Vector2f>> getLoops(float time) {
+        visitStamp++;
+        List<List<Vector2f>> loops = new ArrayList<>();
+
+        for(Track start : tracks) {
+            if(start.visited == visitStamp)
+                continue;
+
+            Keyframe kf = start.at(time);
+            if(kf == null || kf.next == null)
+                continue;
+
+            List<Vector2f> loop = new ArrayList<>();
+            Track current = start;
+            do {
+                current.visited = visitStamp;
+                loop.add(kf.getPosition(time));
+
+                current = kf.next;
+                kf = current.at(time);
+                assert kf != null && kf.next != null : "Inconsistent history";
+            } while(current.visited != visitStamp);
+
+            assert current == start : "Inconsistent history";
+            loops.add(loop);
+        }
+
+        return loops;
+    }
+
+
+    /**
+     * Reports the regions swept by the edges of the wavefront. An edge sweeps one planar face while its start and end node
+     * stay linked. The sides of the face follow the paths of the nodes, with a point at each of their keyframes.
+     * @param endTime Time of the last event.
+     */
+    public void forEachSweptFace(float endTime, SweptFaceCallback callback) {
+        for(Track a : tracks) {
+            List<Keyframe> keyframes = a.keyframes;
+
+            int i = 0;
+            while(i < keyframes.size()) {
+                Track b = keyframes.get(i).next;
+                if(b == null) {
+                    i++;
+                    continue;
+                }
+
+                // Find end of link
+                int end = i+1;
+                while(end < keyframes.size() && keyframes.get(end).next == b)
+                    end++;
+
+                float startTime = keyframes.get(i).time;
+                float stopTime = (end < keyframes.size()) ? keyframes.get(end).time : endTime;
+                if(stopTime > startTime)
+                    sweepLink(a, i, end, b, startTime, stopTime, callback);
+
+                i = end;
+            }
+        }
+    }
+
+
+    private void sweepLink(Track a, int aStart, int aEnd, Track b, float startTime, float stopTime, SweptFaceCallback callback) {
+        numFacePoints = 0;
+
+        // Edge at start
+        Keyframe kf = a.keyframes.get(aStart);
+        addFacePoint(kf.p, startTime);
+
+        int bIndex = b.indexAt(startTime);
+        kf = b.keyframes.get(bIndex);
+        addFacePoint(kf.getPosition(startTime), startTime);
+
+        // Path of end node
+        for(++bIndex; bIndex < b.keyframes.size(); ++bIndex) {
+            kf = b.keyframes.get(bIndex);
+            if(kf.time >= stopTime)
+                break;
+            addFacePoint(kf.p, kf.time);
+        }
+
+        // Edge at stop
+        addFacePoint(getPosition(b, bIndex, stopTime), stopTime);
+        addFacePoint(getPosition(a, aEnd, stopTime), stopTime);
+
+        // Path of start node backwards
+        for(int i=aEnd-1; i>aStart; --i) {
+            kf = a.keyframes.get(i);
+            addFacePoint(kf.p, kf.time);
+        }
+
+        callback.face(facePoints.subList(0, numFacePoints));
+    }
+
+
+    /**
+     * Prefers the stored position of a keyframe at exactly the given time so that collapsing nodes end at the same point.
+     * @param index Index of the first keyframe after the interval.
+     */
+    private static Vector2f getPosition(Track track, int index, float time) {
+        if(index < track.keyframes.size()) {
+            Keyframe kf = track.keyframes.get(index);
+            if(kf.time == time)
+                return kf.p;
+        }
+
+        return track.keyframes.get(index-1).getPosition(time);
+    }
+
+
+    private void addFacePoint(Vector2f p, float time) {
+        if(numFacePoints == facePoints.size())
+            facePoints.add(new Vector3f());
+
+        facePoints.get(numFacePoints++).set(p.x, p.y, time);
+    }
+}
@@ -107,7 +107,7 @@ public class SkeletonVisualization {
 
         MovingNode current = startNode;
         do {
-            Vertex v = bmesh.createVertex( coordSys.unproject(current.skelNode.p) );
+            Vertex v = bmesh.createVertex( coordSys.unproject(current.getPosition(ctx.time, new Vector2f())) );
             vertices.add(v);
 
             nodesRemaining.remove(current);
@@ -125,7 +125,7 @@ public class SkeletonVisualization {
         List<VisNode> nodes = new ArrayList<>();
         for(MovingNode movingNode : ctx.getNodes()) {
             VisNode node = new VisNode(movingNode.id);
-            coordSys.unproject(movingNode.skelNode.p, node.pos);
+            coordSys.unproject(movingNode.getPosition(ctx.time, new Vector2f()), node.pos);
             nodes.add(node);
         }
         return nodes;
@@ -136,7 +136,7 @@ public class SkeletonVisualization {
         BMesh bmesh = new BMesh();
 
         for(MovingNode movingNode : ctx.getNodes()) {
-            Vector2f p0 = movingNode.skelNode.p;
+            Vector2f p0 = movingNode.getPosition(ctx.time, new Vector2f());
             Vector2f p1 = movingNode.bisector.mult(0.33f).addLocal(p0);
 
             Vertex v0 = bmesh.createVertex( coordSys.unproject(p0) );
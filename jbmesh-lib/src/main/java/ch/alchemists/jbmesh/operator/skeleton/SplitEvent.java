@@ -27,7 +27,12 @@ class SplitEvent extends SkeletonEvent {
     }
 
 
-    public static float calcTime(MovingNode reflexNode, MovingNode edgeStart, float distanceSign) {
+    /**
+     * @return Absolute time of collision, or INVALID_TIME.
+     */
+    public static float calcTime(MovingNode reflexNode, MovingNode edgeStart, SkeletonContext ctx) {
+        final float distanceSign = ctx.distanceSign;
+
         // Calc component of bisector orthogonal to edge (perpendicular dot product)
         float bisectorSpeed = reflexNode.bisector.determinant(edgeStart.edgeDir);
         float edgeSpeed = -distanceSign;
@@ -36,10 +41,10 @@ class SplitEvent extends SkeletonEvent {
         // Check on which side the reflex node lies, relative to directed edge.
         // The determinant's sign indicates the side. Its magnitude is the orthogonal distance of the reflex node to the edge.
         // (Component of 'reflexRelative' orthogonal to edgeDir)
-        Vector2f reflexRelative = reflexNode.skelNode.p.subtract(edgeStart.skelNode.p);
+        Vector2f reflexRelative = reflexNode.getRelativePosition(edgeStart, ctx.time, new Vector2f());
         float sideDistance = reflexRelative.determinant(edgeStart.edgeDir);
         if(sideDistance == 0)
-            return canHit(reflexNode, edgeStart, distanceSign, 0);
+            return canHit(reflexNode, edgeStart, ctx, 0);
 
         // Negative speed means distance between reflex vertex and opposite edge increases with time
         if(correctSpeed(approachSpeed, sideDistance) <= 0)
@@ -47,7 +52,7 @@ class SplitEvent extends SkeletonEvent {
 
         // One of these values will be negative. The resulting time is always positive.
         float time = -sideDistance / approachSpeed;
-        return canHit(reflexNode, edgeStart, distanceSign, time);
+        return canHit(reflexNode, edgeStart, ctx, time);
     }
 
     private static float correctSpeed(float approachSpeed, float sideDistance) {
@@ -61,9 +66,12 @@ class SplitEvent extends SkeletonEvent {
      * Do this before creating the event and not inside of handle() to avoid creating unnecessary events
      * which would slow down the queue and introduce superfluous scaling steps and hence rounding errors.
      */
-    private static float canHit(MovingNode reflexNode, MovingNode edgeStart, float distanceSign, float time) {
+    private static float canHit(MovingNode reflexNode, MovingNode edgeStart, SkeletonContext ctx, float time) {
+        final float distanceSign = ctx.distanceSign;
+
         // Check if edge collapses before split occurs. If edge grows (invalid edgeCollapseTime = NaN), this will evaluate to false.
-        if(time >= edgeStart.getEdgeCollapseTime())
+        float absoluteTime = ctx.time + time;
+        if(absoluteTime >= edgeStart.getEdgeCollapseTime())
             return INVALID_TIME;
 
         // This check is not reliable because there could be another event that prevents the collapse of neighboring edges.
@@ -74,8 +82,9 @@ class SplitEvent extends SkeletonEvent {
             }
             */
 
-        // Check on which side 'reflexFuture' lies relative to the bisectors at start and end of this edge
-        Vector2f reflexFuture = reflexNode.bisector.mult(time).addLocal(reflexNode.skelNode.p);
+        // Check on which side 'reflexFuture' lies relative to the bisectors at start and end of this edge.
+        // The SkeletonNodes of the edge lie on these bisector lines, regardless of when their positions were updated.
+        Vector2f reflexFuture = reflexNode.getPosition(absoluteTime, new Vector2f());
 
         Vector2f reflexRelative = reflexFuture.subtract(edgeStart.skelNode.p);
         float side0 = edgeStart.bisector.determinant(reflexRelative);
@@ -88,7 +97,13 @@ class SplitEvent extends SkeletonEvent {
         if(side1 * distanceSign > 0)
             return INVALID_TIME;
 
-        return time;
+        return absoluteTime;
+    }
+
+
+    @Override
+    public boolean endsPath(MovingNode node) {
+        return node == reflexNode;
     }
 
 
@@ -102,6 +117,7 @@ class SplitEvent extends SkeletonEvent {
     @Override
     public void onEventAborted(MovingNode adjacentNode, SkeletonContext ctx) {
         ctx.addAbortedReflex(reflexNode);
+        ctx.invalidateReflexBounds(reflexNode);
 
         if(adjacentNode == reflexNode) {
             op0.removeEvent(this);
@@ -121,6 +137,7 @@ class SplitEvent extends SkeletonEvent {
     @Override
     public void onEventAborted(MovingNode edgeNode0, MovingNode edgeNode1, SkeletonContext ctx) {
         ctx.addAbortedReflex(reflexNode);
+        ctx.invalidateReflexBounds(reflexNode);
         reflexNode.removeEvent(this);
     }
 
@@ -130,6 +147,7 @@ class SplitEvent extends SkeletonEvent {
         assert op0.next == op1;
         ctx.abortEvents(op0, op1);
 
+        reflexNode.updatePosition(ctx.time);
         reflexNode.skelNode.setReflex();
         MovingNode node0 = reflexNode;
         MovingNode reflexNext = reflexNode.next;
@@ -139,6 +157,7 @@ class SplitEvent extends SkeletonEvent {
         // Both MovingNodes use same SkeletonNode which will stay at this place.
         // If they receive a valid bisector, a new SkeletonNode is made for them later in handle().
         node1.skelNode = node0.skelNode;
+        node1.updatePosition(ctx.time); // Bisector is still zero, only sets the time of the position
 
         // Update node0 links
         assert node0.next == reflexNext;
@@ -154,6 +173,8 @@ class SplitEvent extends SkeletonEvent {
         node1.prev = reflexPrev;
         reflexPrev.next = node1;
 
+        ctx.splitLoop(node0, node1);
+
         handle(node0, ctx); // Aborts events of reflexNode
         handle(node1, ctx);
     }
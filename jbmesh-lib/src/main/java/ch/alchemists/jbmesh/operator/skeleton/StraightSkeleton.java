@@ -8,10 +8,12 @@ package ch.alchemists.jbmesh.operator.skeleton;
 
 import ch.alchemists.jbmesh.data.BMeshAttribute;
 import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.lookup.HashGridDeduplication;
 import ch.alchemists.jbmesh.structure.BMesh;
 import ch.alchemists.jbmesh.structure.Face;
 import ch.alchemists.jbmesh.structure.Vertex;
 import ch.alchemists.jbmesh.util.PlanarCoordinateSystem;
+import ch.alchemists.jbmesh.util.TimeSlicedTask;
 import com.jme3.math.Vector2f;
 import com.jme3.math.Vector3f;
 import java.util.*;
@@ -22,6 +24,10 @@ public class StraightSkeleton {
     private float offsetDistance = Float.POSITIVE_INFINITY; // Absolute value
     private float distanceSign = -1.0f;
 
+    private boolean recordHistory = false;
+    private SkeletonHistory history = null;
+    private float historyDistance = 0; // Signed distance of the recorded run
+
     private PlanarCoordinateSystem coordSys;
     private final ArrayList<SkeletonNode> initialNodes = new ArrayList<>();
     private final SkeletonContext ctx = new SkeletonContext();
@@ -58,151 +64,254 @@ public class StraightSkeleton {
     }
 
 
-    public void apply(Face face) {
-        List<Vertex> vertices = face.getVertices();
-        assert vertices.size() >= 3;
+    /**
+     * Records the wavefront during {@link #apply(Face)} so that offset loops at multiple distances
+     * can be extracted with {@link #getOffsetLoops(float)} without computing the skeleton again.<br>
+     * Defaults to false.
+     * @param record
+     */
+    public void setRecordHistory(boolean record) {
+        recordHistory = record;
+    }
 
-        ctx.reset(offsetDistance, distanceSign);
-        coordSys = new PlanarCoordinateSystem().forFace(face, positions);
 
-        float diagonalSize = createNodes(vertices);
+    public void apply(Face face) {
+        applyTask(face).runToCompletion();
+    }
 
-        // When shrinking to infinity, use polygon's bounding rectangle to determine max distance (less events queued = speed up)
-        if(distanceSign < 0 && offsetDistance == Float.POSITIVE_INFINITY) {
-            ctx.distance = diagonalSize * 0.51f;
-        }
 
-        if(ctx.distance != 0) {
-            initBisectors();
-            initEvents();
-            loop();
-        }
+    /**
+     * Creates a resumable version of {@link #apply(Face)} that handles one event per step.
+     * The results are available after the task has finished.
+     */
+    public TimeSlicedTask applyTask(Face face) {
+        return new SkeletonTask(face);
     }
 
 
-    private void loop() {
-        ctx.time = 0;
+    /**
+     * The initialization is split into steps that each handle one vertex or node.
+     */
+    private class SkeletonTask extends TimeSlicedTask {
+        private static final int PHASE_NODES        = 0;
+        private static final int PHASE_BISECTORS    = 1;
+        private static final int PHASE_DEGENERATES  = 2;
+        private static final int PHASE_EDGES        = 3;
+        private static final int PHASE_BOUNDS       = 4;
+        private static final int PHASE_SPLIT_EVENTS = 5;
+        private static final int PHASE_EVENTS       = 6;
+
+        private final Face face;
+        private int phase = PHASE_NODES;
+        private int index = -1;
+
+        private List<Vertex> vertices;
+        private final Vector3f min = new Vector3f();
+        private final Vector3f max = new Vector3f();
+        private final Vector3f vertexPos = new Vector3f();
+        private float diagonalSize;
+
+        private final List<MovingNode> degenerates = new ArrayList<>();
+        private final List<MovingNode> reflexNodes = new ArrayList<>();
+        private SkeletonContext.LoopBounds loopBounds;
+
+
+        private SkeletonTask(Face face) {
+            this.face = face;
+        }
 
-        while(true) {
-            //ctx.printNodes();
-            //ctx.printEvents();
 
-            SkeletonEvent event = ctx.pollQueue();
-            if(event == null) {
-                scale(ctx.distance - ctx.time);
-                break;
+        @Override
+        protected boolean step() {
+            switch(phase) {
+                case PHASE_NODES:
+                    if(index < 0)
+                        initNodes();
+                    else if(index < vertices.size())
+                        createNode(vertices.get(index++));
+                    else if(!linkNodes())
+                        return true;
+                    break;
+
+                case PHASE_BISECTORS:
+                    if(index < ctx.getNodes().size()) {
+                        MovingNode node = ctx.getNodes().get(index++);
+                        if(!node.calcBisector(ctx, true))
+                            degenerates.add(node);
+                    }
+                    else
+                        nextPhase();
+                    break;
+
+                case PHASE_DEGENERATES:
+                    // Process degenerate nodes after all bisectors have been initialized.
+                    // Check if the node was already removed in previous handleInit() calls.
+                    if(index < degenerates.size()) {
+                        MovingNode node = degenerates.get(index++);
+                        if(node.next != null)
+                            SkeletonEvent.handleInit(node, ctx);
+                    }
+                    else
+                        nextPhase();
+                    break;
+
+                case PHASE_EDGES:
+                    if(index < ctx.getNodes().size())
+                        initEdge(ctx.getNodes().get(index++));
+                    else {
+                        loopBounds = ctx.initLoopBounds(diagonalSize);
+                        nextPhase();
+                    }
+                    break;
+
+                case PHASE_BOUNDS:
+                    if(index < ctx.getNodes().size())
+                        ctx.initBounds(ctx.getNodes().get(index++), loopBounds);
+                    else
+                        nextPhase();
+                    break;
+
+                case PHASE_SPLIT_EVENTS:
+                    // Process the reflex nodes after all edges have been initialized with updateEdge()
+                    if(index < reflexNodes.size()) {
+                        MovingNode reflexNode = reflexNodes.get(index++);
+                        SkeletonEvent.createSplitEvents(reflexNode, ctx);
+                        ctx.invalidateReflexBounds(reflexNode);
+                    }
+                    else {
+                        recordInit();
+                        nextPhase();
+                    }
+                    break;
+
+                case PHASE_EVENTS:
+                    return !handleNextEvent();
             }
 
-            scale(event.time - ctx.time);
-            ctx.time = event.time;
-            event.handle(ctx);
-            ctx.recheckAbortedReflexNodes();
+            return false;
         }
-    }
 
 
-    /**
-     * Creates MovingNodes for all the vertices.
-     * Also calculates bounding rectangle.
-     * @return Diagonal length of bounding rectangle.
-     */
-    private float createNodes(List<Vertex> vertices) {
-        initialNodes.clear();
-        initialNodes.ensureCapacity(vertices.size());
+        private void nextPhase() {
+            phase++;
+            index = 0;
+        }
 
-        Vector3f min = Vector3f.POSITIVE_INFINITY.clone();
-        Vector3f max = Vector3f.NEGATIVE_INFINITY.clone();
 
-        Vector3f vertexPos = new Vector3f();
-        final MovingNode first = createNode(vertices.get(0), vertexPos, min, max);
-        MovingNode last = first;
+        private void initNodes() {
+            vertices = face.getVertices();
+            assert vertices.size() >= 3;
 
-        for(int i=1; i<vertices.size(); ++i) {
-            MovingNode movingNode = createNode(vertices.get(i), vertexPos, min, max);
+            ctx.reset(offsetDistance, distanceSign);
+            coordSys = new PlanarCoordinateSystem().forFace(face, positions);
 
-            // Link nodes
-            movingNode.prev = last;
-            last.next = movingNode;
+            history = recordHistory ? new SkeletonHistory() : null;
+            historyDistance = offsetDistance * distanceSign;
+            ctx.setHistory(history);
 
-            last = movingNode;
+            initialNodes.clear();
+            initialNodes.ensureCapacity(vertices.size());
+            min.set(Vector3f.POSITIVE_INFINITY);
+            max.set(Vector3f.NEGATIVE_INFINITY);
+            index = 0;
         }
 
-        // Link last node with first
-        first.prev = last;
-        last.next = first;
 
-        return max.subtractLocal(min).length();
-    }
+        private void createNode(Vertex vertex) {
+            positions.get(vertex, vertexPos);
+            min.minLocal(vertexPos);
+            max.maxLocal(vertexPos);
 
-    private MovingNode createNode(Vertex vertex, Vector3f vertexPos, Vector3f min, Vector3f max) {
-        positions.get(vertex, vertexPos);
-        min.minLocal(vertexPos);
-        max.maxLocal(vertexPos);
+            SkeletonNode initialNode = new SkeletonNode();
+            coordSys.project(vertexPos, initialNode.p);
+            initialNodes.add(initialNode);
 
-        SkeletonNode initialNode = new SkeletonNode();
-        coordSys.project(vertexPos, initialNode.p);
-        initialNodes.add(initialNode);
+            MovingNode movingNode = ctx.createMovingNode();
+            movingNode.skelNode = initialNode;
+        }
 
-        MovingNode movingNode = ctx.createMovingNode();
-        movingNode.skelNode = initialNode;
-        return movingNode;
-    }
 
+        /**
+         * @return Whether there are events to process.
+         */
+        private boolean linkNodes() {
+            List<MovingNode> nodes = ctx.getNodes();
+            MovingNode last = nodes.get(nodes.size()-1);
+            for(MovingNode node : nodes) {
+                node.prev = last;
+                last.next = node;
+                last = node;
+            }
 
-    private void initBisectors() {
-        List<MovingNode> degenerates = new LinkedList<>();
+            diagonalSize = max.subtractLocal(min).length();
 
-        for(MovingNode node : ctx.getNodes()) {
-            boolean validBisector = node.calcBisector(ctx, true);
-            if(!validBisector)
-                degenerates.add(node);
-        }
+            // When shrinking to infinity, use polygon's bounding rectangle to determine max distance (less events queued = speed up)
+            if(distanceSign < 0 && offsetDistance == Float.POSITIVE_INFINITY) {
+                ctx.distance = diagonalSize * 0.51f;
+            }
 
-        // Process degenerate nodes after all bisectors have been initialized
-        for(MovingNode degenerateNode : degenerates) {
-            // Check if 'degenerateNode' was already removed in previous handleInit() calls
-            if(degenerateNode.next != null)
-                SkeletonEvent.handleInit(degenerateNode, ctx);
-        }
-    }
+            if(ctx.distance == 0) {
+                recordInit();
+                return false;
+            }
 
+            nextPhase();
+            return true;
+        }
 
-    private void initEvents() {
-        List<MovingNode> reflexNodes = new LinkedList<>();
 
-        for(MovingNode current : ctx.getNodes()) {
-            current.leaveSkeletonNode();
+        private void initEdge(MovingNode node) {
+            node.leaveSkeletonNode();
 
-            current.updateEdge();
-            ctx.tryQueueEdgeEvent(current, current.next);
+            node.updateEdge(ctx.time);
+            ctx.tryQueueEdgeEvent(node, node.next);
 
-            if(current.isReflex())
-                reflexNodes.add(current);
+            if(node.isReflex())
+                reflexNodes.add(node);
         }
 
-        // Process the reflex nodes after all edges have been initialized with updateEdge().
-        for(MovingNode reflex : reflexNodes)
-            SkeletonEvent.createSplitEvents(reflex, ctx);
-    }
 
+        private void recordInit() {
+            ctx.time = 0;
+            if(history != null)
+                history.record(ctx.time);
+        }
 
-    private void scale(float dist) {
-        if(dist == 0)
-            return;
 
-        Vector2f dir = new Vector2f();
+        @Override
+        public float getProgress() {
+            if(getState() == State.Finished)
+                return 1.0f;
+            if(phase < PHASE_EVENTS || ctx.distance == 0)
+                return 0.0f;
+            return Math.min(ctx.time / ctx.distance, 1.0f);
+        }
+    }
 
-        for(MovingNode node : ctx.getNodes()) {
-            dir.set(node.bisector).multLocal(dist);
-            node.skelNode.p.addLocal(dir);
 
-            assert !isInvalid(node.skelNode.p) : "Invalid position after scale: bisector=" + node.bisector + ", dir=" + dir;
+    /**
+     * @return Whether there are more events.
+     */
+    private boolean handleNextEvent() {
+        //ctx.printNodes();
+        //ctx.printEvents();
+
+        SkeletonEvent event = ctx.pollQueue();
+        if(event == null) {
+            ctx.time = ctx.distance;
+            for(MovingNode node : ctx.getNodes())
+                node.updatePosition(ctx.time);
+            return false;
         }
-    }
 
+        // Nodes are moved lazily when they take part in an event
+        ctx.time = event.time;
+        event.handle(ctx);
+        ctx.recheckAbortedReflexNodes();
 
-    private boolean isInvalid(Vector2f v) {
-        return Float.isNaN(v.x) || Float.isInfinite(v.x);
+        if(history != null)
+            history.record(ctx.time);
+        return true;
     }
 
 
@@ -215,7 +324,7 @@ public class StraightSkeleton {
     }
 
     public List<SkeletonNode> getEndNodes() {
-        Set<MovingNode> movingNodes = ctx.getNodes();
+        List<MovingNode> movingNodes = ctx.getNodes();
         List<SkeletonNode> skelNodes = new ArrayList<>(movingNodes.size());
 
         for(MovingNode movingNode : movingNodes)
@@ -246,6 +355,80 @@ public class StraightSkeleton {
     }
 
 
+    /**
+     * Extracts the offset loops at the given distance from the recorded history.
+     * Shrinking to infinity once is enough to get the loops at all shrink distances.
+     * @param distance Distance with the same sign as the distance of the last run, and at most its magnitude.
+     * @return Loops of positions.
+     */
+    public List<List<Vector3f>> getOffsetLoops(float distance) {
+        if(history == null)
+            throw new IllegalStateException("No history recorded. Enable it with setRecordHistory(true) before applying.");
+        if(distance * historyDistance < 0)
+            throw new IllegalArgumentException("Distance has a different sign than the recorded distance.");
+
+        float time = Math.abs(distance);
+        if(time > Math.abs(historyDistance))
+            throw new IllegalArgumentException("Distance exceeds the recorded distance of " + historyDistance);
+
+        // When shrinking to infinity, the skeleton was only computed until it collapsed
+        time = Math.min(time, ctx.distance);
+
+        List<List<Vector2f>> loops2d = history.getLoops(time);
+        List<List<Vector3f>> loops = new ArrayList<>(loops2d.size());
+        for(List<Vector2f> loop2d : loops2d) {
+            List<Vector3f> loop = new ArrayList<>(loop2d.size());
+            for(Vector2f p : loop2d)
+                loop.add(coordSys.unproject(p));
+            loops.add(loop);
+        }
+
+        return loops;
+    }
+
+
+    /**
+     * Creates the faces swept by the moving edges from the recorded history. When shrinking, this is a hip roof over the face
+     * where the height of a point is its distance to the outline multiplied with 'slope'.
+     * A moving edge creates a new face when one of its nodes changes, so a roof plane can consist of multiple faces.
+     * @param target Receives the faces. Can be the BMesh of the input face.
+     * @param slope Height per distance.
+     * @return The created faces.
+     */
+    public List<Face> createRoof(BMesh target, float slope) {
+        if(history == null)
+            throw new IllegalStateException("No history recorded. Enable it with setRecordHistory(true) before applying.");
+
+        Vector3f normal = coordSys.x.cross(coordSys.y);
+        HashGridDeduplication dedup = new HashGridDeduplication(target, ctx.epsilon);
+        List<Face> faces = new ArrayList<>();
+        List<Vertex> faceVertices = new ArrayList<>();
+        Vector3f p = new Vector3f();
+
+        history.forEachSweptFace(ctx.time, points -> {
+            faceVertices.clear();
+            for(Vector3f point : points) {
+                coordSys.unproject(point.x, point.y, p);
+                float height = point.z * slope;
+                p.addLocal(normal.x * height, normal.y * height, normal.z * height);
+
+                // Skip collapsed edges. Nodes that degenerate together can end up slightly apart.
+                Vertex vertex = dedup.getOrCreateVertex(p);
+                if(faceVertices.isEmpty() || faceVertices.get(faceVertices.size()-1) != vertex)
+                    faceVertices.add(vertex);
+            }
+
+            if(faceVertices.size() > 1 && faceVertices.get(0) == faceVertices.get(faceVertices.size()-1))
+                faceVertices.remove(faceVertices.size()-1);
+
+            if(faceVertices.size() >= 3)
+                faces.add(target.createFace(faceVertices));
+        });
+
+        return faces;
+    }
+
+
     public Vector3f getPosition(SkeletonNode node) {
         return coordSys.unproject(node.p);
     }
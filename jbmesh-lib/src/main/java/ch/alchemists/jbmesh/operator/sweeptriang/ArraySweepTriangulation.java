@@ -0,0 +1,832 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.sweeptriang;
+
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.operator.normalgen.NewellNormal;
+import ch.alchemists.jbmesh.structure.Face;
+import ch.alchemists.jbmesh.structure.Loop;
+import ch.alchemists.jbmesh.structure.Vertex;
+import ch.alchemists.jbmesh.util.PlanarCoordinateSystem;
+import com.jme3.math.Vector3f;
+import java.util.Arrays;
+
+/**
+ * Same sweep line algorithm as {@link SweepTriangulation}, but all state is kept in primitive arrays that are reused between calls.<br>
+ * Vertices are referenced by their index in the order they were added. The sweep order is a sorted index array,
+ * the active edges are kept in an array sorted by x, and the monotone sweeps use pooled index stacks.
+ * Once the arrays have grown to the largest face, triangulating more faces allocates no memory.<br>
+ * Not thread-safe. Use one instance per thread.
+ */
+public class ArraySweepTriangulation {
+    public interface TriangleCallback {
+        /**
+         * @param v1 Index of vertex in the order they were added since the last triangulation.
+         */
+        void handleTriangle(int v1, int v2, int v3);
+    }
+
+
+    private static final float MIN_VERTEX_DISTANCE = 0.00001f;
+    private static final float MIN_VERTEX_DISTANCE_SQUARED = MIN_VERTEX_DISTANCE * MIN_VERTEX_DISTANCE;
+    private static final float EDGE_X_EPSILON = 0.0001f;
+    private static final String INVALID_FACE = "Face needs at least 3 valid vertices.";
+    private static final int NONE = -1;
+
+    private TriangleCallback cb;
+
+    // Coordinate system is determined by the first face if not set
+    private final PlanarCoordinateSystem coordSys = new PlanarCoordinateSystem();
+    private boolean coordSysValid = false;
+    private boolean coordSysFixed = false;
+    private int nextFaceIndex = 0;
+
+    // Vertices
+    private int numVertices = 0;
+    private float[] px = new float[16], py = new float[16], pz = new float[16]; // 3D input
+    private float[] x = new float[16], y = new float[16];
+    private int[] prev = new int[16], next = new int[16];
+    private boolean[] leftTurn = new boolean[16];
+    private int[] faceOf = new int[16], faceIndex = new int[16];
+    private Vertex[] vertices = new Vertex[16];
+
+    // Valid vertices in sweep order
+    private int numSorted = 0;
+    private int[] sorted = new int[16];
+
+    // Edges, referenced by index
+    private int numEdges = 0;
+    private int[] edgeStart = new int[8], edgeEnd = new int[8];
+    private int[] edgeSweep = new int[8], edgeLastMerge = new int[8];
+    private float[] edgeXLeft = new float[8], edgeXChange = new float[8];
+
+    // Active edges sorted by x at the sweep line
+    private int numActive = 0;
+    private int[] active = new int[8];
+
+    // Monotone sweeps with their vertex stacks. The stacks are kept for reuse.
+    private int numSweeps = 0;
+    private int[][] sweepStack = new int[8][];
+    private int[] sweepSize = new int[8];
+    private boolean[] sweepLastLeft = new boolean[8];
+
+    private final Vector3f tempPos = new Vector3f();
+    private final Vector3f tempFirst = new Vector3f();
+    private final Vector3f tempDir = new Vector3f();
+    private final Vector3f tempNormal = new Vector3f();
+    private final Vector3f tempLast = new Vector3f();
+
+
+    public ArraySweepTriangulation() {}
+
+    public ArraySweepTriangulation(TriangleCallback triangleCallback) {
+        this.cb = triangleCallback;
+    }
+
+
+    public void setTriangleCallback(TriangleCallback triangleCallback) {
+        this.cb = triangleCallback;
+    }
+
+    /**
+     * Sets a fixed coordinate system for all following triangulations. If null, it's calculated from the first face of each triangulation.
+     */
+    public void setCoordinateSystem(PlanarCoordinateSystem coordSys) {
+        if(coordSys != null) {
+            this.coordSys.p.set(coordSys.p);
+            this.coordSys.x.set(coordSys.x);
+            this.coordSys.y.set(coordSys.y);
+        }
+
+        coordSysFixed = (coordSys != null);
+        coordSysValid = coordSysFixed;
+    }
+
+
+    /**
+     * @return The vertex of the face that was added at this index, or null if the face was given as positions.
+     */
+    public Vertex getVertex(int index) {
+        return vertices[index];
+    }
+
+    /**
+     * @return The number of the face this vertex belongs to, in the order the faces were added.
+     */
+    public int getFace(int index) {
+        return faceOf[index];
+    }
+
+    /**
+     * @return The index of the vertex inside its face.
+     */
+    public int getFaceVertexIndex(int index) {
+        return faceIndex[index];
+    }
+
+
+    /**
+     * Adds the outline of a face. Further faces in the same plane are added as holes or additional outlines.
+     */
+    public void addFace(Vec3Attribute<Vertex> positions, Face face) {
+        final int start = numVertices;
+        Loop loop = face.loop;
+        do {
+            positions.get(loop.vertex, tempPos);
+            addInputVertex(loop.vertex, tempPos.x, tempPos.y, tempPos.z);
+            loop = loop.nextFaceLoop;
+        } while(loop != face.loop);
+
+        prepareFace(start);
+    }
+
+
+    /**
+     * @param positions 3D coordinates: x0, y0, z0, x1, y1, ...
+     * @param numPositions Number of 3D positions.
+     */
+    public void addFaceWithPositions(float[] positions, int numPositions) {
+        final int start = numVertices;
+        for(int i=0, p=0; i<numPositions; ++i, p+=3)
+            addInputVertex(null, positions[p], positions[p+1], positions[p+2]);
+
+        prepareFace(start);
+    }
+
+
+    private void addInputVertex(Vertex vertex, float vx, float vy, float vz) {
+        if(numVertices == x.length)
+            growVertices(numVertices * 2);
+
+        int i = numVertices++;
+        vertices[i] = vertex;
+        px[i] = vx;
+        py[i] = vy;
+        pz[i] = vz;
+    }
+
+
+    private void growVertices(int capacity) {
+        px = Arrays.copyOf(px, capacity);
+        py = Arrays.copyOf(py, capacity);
+        pz = Arrays.copyOf(pz, capacity);
+        x  = Arrays.copyOf(x, capacity);
+        y  = Arrays.copyOf(y, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        next = Arrays.copyOf(next, capacity);
+        leftTurn  = Arrays.copyOf(leftTurn, capacity);
+        faceOf    = Arrays.copyOf(faceOf, capacity);
+        faceIndex = Arrays.copyOf(faceIndex, capacity);
+        vertices  = Arrays.copyOf(vertices, capacity);
+        sorted    = Arrays.copyOf(sorted, capacity);
+    }
+
+
+    private void prepareFace(int start) {
+        int end = numVertices;
+        if(end - start < 3) {
+            reset();
+            throw new IllegalArgumentException(INVALID_FACE);
+        }
+
+        if(!coordSysValid) {
+            calcCoordinateSystem(start, end);
+            coordSysValid = true;
+        }
+
+        // Project and link
+        Vector3f o = coordSys.p;
+        Vector3f ax = coordSys.x;
+        Vector3f ay = coordSys.y;
+        for(int i=start; i<end; ++i) {
+            float dx = px[i] - o.x;
+            float dy = py[i] - o.y;
+            float dz = pz[i] - o.z;
+            x[i] = dx*ax.x + dy*ax.y + dz*ax.z;
+            y[i] = dx*ay.x + dy*ay.y + dz*ay.z;
+
+            prev[i] = (i == start) ? end-1 : i-1;
+            next[i] = (i == end-1) ? start : i+1;
+            faceOf[i] = nextFaceIndex;
+            faceIndex[i] = i - start;
+        }
+
+        prepareVertices(start);
+        nextFaceIndex++;
+    }
+
+
+    /**
+     * Same as {@link PlanarCoordinateSystem#forPolygon}, but without allocating.
+     */
+    private void calcCoordinateSystem(int start, int end) {
+        tempFirst.set(px[start], py[start], pz[start]);
+        tempLast.set(tempFirst);
+        tempNormal.zero();
+        tempDir.zero();
+
+        float validX = 0, validY = 0, validZ = 0;
+        int numValid = 1;
+
+        for(int i=start+1; i<end; ++i) {
+            tempPos.set(px[i], py[i], pz[i]);
+            NewellNormal.addToNormal(tempNormal, tempLast, tempPos);
+            tempLast.set(tempPos);
+
+            tempPos.subtractLocal(tempFirst);
+            tempDir.addLocal(tempPos);
+
+            // Count only vertices that are different from 'first'
+            if(tempPos.lengthSquared() > MIN_VERTEX_DISTANCE_SQUARED) {
+                validX = tempPos.x;
+                validY = tempPos.y;
+                validZ = tempPos.z;
+                numValid++;
+            }
+        }
+
+        if(numValid < 3) {
+            reset();
+            throw new IllegalArgumentException(INVALID_FACE);
+        }
+
+        NewellNormal.addToNormal(tempNormal, tempLast, tempFirst);
+        tempNormal.normalizeLocal();
+
+        if(tempDir.distanceSquared(tempFirst) <= MIN_VERTEX_DISTANCE_SQUARED)
+            tempDir.set(validX, validY, validZ).addLocal(tempFirst);
+
+        coordSys.withYDifference(tempFirst, tempDir, tempNormal);
+    }
+
+
+    /**
+     * Checks vertices for degeneracy. Adds at least 3 vertices to the sweep order or none at all.
+     */
+    private void prepareVertices(int first) {
+        int v = first;
+        int added = 0;
+
+        while(true) {
+            if(isValid(v)) {
+                sorted[numSorted++] = v;
+                added++;
+                v = next[v];
+            }
+            else {
+                int vRemoved = v;
+                v = removeLink(v);
+
+                // When the sentinel ('first') was removed, we have to set a new one
+                if(vRemoved == first) {
+                    first = v;
+
+                    // Skip break condition below. But if only one vertex remains, it will break below.
+                    if(v != next[v])
+                        continue;
+                }
+            }
+
+            // Loop condition: Check if first element is reached again
+            if(v == first)
+                break;
+        }
+
+        if(added < 3) {
+            reset();
+            throw new IllegalArgumentException(INVALID_FACE);
+        }
+    }
+
+
+    private boolean isValid(int v) {
+        int p = prev[v];
+        int n = next[v];
+
+        // Degenerate because at same position
+        if(Math.abs(x[v] - x[p]) <= MIN_VERTEX_DISTANCE && Math.abs(y[v] - y[p]) <= MIN_VERTEX_DISTANCE)
+            return false;
+
+        float prevX = x[p] - x[v];
+        float prevY = y[p] - y[v];
+        float nextX = x[n] - x[v];
+        float nextY = y[n] - y[v];
+        float det = prevX*nextY - prevY*nextX;
+
+        // Degenerate because neighbor edges are collinear and point to same side
+        if(Math.abs(det) < 0.000001f && (prevX*nextX + prevY*nextY) > 0)
+            return false;
+
+        leftTurn[v] = (det <= 0);
+        return true;
+    }
+
+
+    private int removeLink(int v) {
+        int p = prev[v];
+        int n = next[v];
+        next[p] = n;
+        prev[n] = p;
+
+        // Recalculate reflex of prev
+        float prevX = x[prev[p]] - x[p];
+        float prevY = y[prev[p]] - y[p];
+        float nextX = x[next[p]] - x[p];
+        float nextY = y[next[p]] - y[p];
+        leftTurn[p] = (prevX*nextY - prevY*nextX <= 0);
+
+        return n;
+    }
+
+
+    public void triangulate() {
+        if(numSorted < 3) {
+            reset();
+            throw new IllegalStateException("Triangulation needs a face with at least 3 valid vertices");
+        }
+
+        if(cb == null) {
+            reset();
+            throw new IllegalStateException("Missing TriangleCallback");
+        }
+
+        try {
+            sort(0, numSorted-1);
+            for(int i=0; i<numSorted; ++i)
+                handleSweepVertex(sorted[i]);
+        }
+        finally {
+            reset();
+        }
+    }
+
+
+    private void reset() {
+        numVertices = 0;
+        numSorted = 0;
+        numEdges = 0;
+        numActive = 0;
+        numSweeps = 0;
+        nextFaceIndex = 0;
+        coordSysValid = coordSysFixed;
+
+        // Release references to mesh elements
+        Arrays.fill(vertices, null);
+    }
+
+
+    //
+    // Sweep order
+    //
+
+    /**
+     * Same order as {@link SweepVertex#compareTo(SweepVertex)}.
+     */
+    private int compareVertices(int a, int b) {
+        if(y[a] > y[b])
+            return 1;
+        if(y[a] < y[b])
+            return -1;
+
+        if(x[a] > x[b])
+            return 1;
+        if(x[a] < x[b])
+            return -1;
+
+        if(a == b)
+            return 0;
+
+        // This sorts vertices at bow-tie positions. Merges must come before splits.
+        return compareVertices(prev[a], prev[b]);
+    }
+
+
+    /**
+     * Quicksort of the sweep order in [lo, hi], with insertion sort for small ranges.
+     */
+    private void sort(int lo, int hi) {
+        while(hi - lo > 12) {
+            // Median of three as pivot
+            int mid = (lo + hi) >>> 1;
+            if(compareVertices(sorted[mid], sorted[lo]) < 0) swap(mid, lo);
+            if(compareVertices(sorted[hi], sorted[lo]) < 0) swap(hi, lo);
+            if(compareVertices(sorted[hi], sorted[mid]) < 0) swap(hi, mid);
+            int pivot = sorted[mid];
+
+            int i = lo, j = hi;
+            while(i <= j) {
+                while(compareVertices(sorted[i], pivot) < 0) i++;
+                while(compareVertices(sorted[j], pivot) > 0) j--;
+                if(i <= j)
+                    swap(i++, j--);
+            }
+
+            // Recurse into smaller part
+            if(j - lo < hi - i) {
+                sort(lo, j);
+                lo = i;
+            }
+            else {
+                sort(i, hi);
+                hi = j;
+            }
+        }
+
+        for(int i=lo+1; i<=hi; ++i) {
+            int v = sorted[i];
+            int j = i-1;
+            while(j >= lo && compareVertices(sorted[j], v) > 0) {
+                sorted[j+1] = sorted[j];
+                j--;
+            }
+            sorted[j+1] = v;
+        }
+    }
+
+
+    private void swap(int i, int j) {
+        int temp = sorted[i];
+        sorted[i] = sorted[j];
+        sorted[j] = temp;
+    }
+
+
+    private boolean isAbove(int a, int b) {
+        if(y[a] > y[b])
+            return true;
+        if(y[a] < y[b])
+            return false;
+
+        return x[a] > x[b];
+    }
+
+
+    //
+    // Sweep
+    //
+
+    private void handleSweepVertex(int v) {
+        boolean prevUp = isAbove(prev[v], v);
+        boolean nextUp = isAbove(next[v], v);
+
+        if(prevUp != nextUp)
+            handleContinuation(v);
+        else if(leftTurn[v]) {
+            if(prevUp)
+                handleStart(v);
+            else
+                handleEnd(v);
+        } else {
+            if(prevUp)
+                handleSplit(v);
+            else
+                handleMerge(v);
+        }
+    }
+
+
+    private void handleStart(int v) {
+        int leftEdge = createEdge(v, prev[v]);
+        edgeSweep[leftEdge] = createSweep(v);
+        addEdge(leftEdge);
+    }
+
+
+    private void handleSplit(int v) {
+        int leftEdge = getEdge(v);
+        assert leftEdge != NONE : "Intersections?";
+
+        int rightEdge = createEdge(v, prev[v]);
+        int lastVertex = getLastVertex(edgeSweep[leftEdge]);
+
+        // Connection to left chain
+        if(lastVertex == edgeStart[leftEdge]) {
+            edgeSweep[rightEdge] = edgeSweep[leftEdge];
+            edgeSweep[leftEdge] = createSweep(lastVertex);
+        }
+        // Connection to mergeVertex
+        else if(edgeLastMerge[leftEdge] != NONE) {
+            edgeSweep[rightEdge] = edgeLastMerge[leftEdge];
+            edgeLastMerge[leftEdge] = NONE;
+        }
+        // Connection to right chain
+        else {
+            edgeSweep[rightEdge] = createSweep(lastVertex);
+        }
+
+        processRight(edgeSweep[leftEdge], v);
+        processLeft(edgeSweep[rightEdge], v);
+        addEdge(rightEdge);
+    }
+
+
+    private void handleMerge(int v) {
+        // Remove and handle edge to the right
+        int rightEdge = removeEdge(v);
+        if(edgeLastMerge[rightEdge] != NONE) {
+            processEnd(edgeSweep[rightEdge], v);
+            edgeSweep[rightEdge] = edgeLastMerge[rightEdge];
+        }
+
+        processLeft(edgeSweep[rightEdge], v);
+
+        int leftEdge = getEdge(v);
+        if(edgeLastMerge[leftEdge] != NONE)
+            processEnd(edgeLastMerge[leftEdge], v);
+
+        processRight(edgeSweep[leftEdge], v);
+        edgeLastMerge[leftEdge] = edgeSweep[rightEdge]; // Left edge will remember this merge
+    }
+
+
+    private void handleEnd(int v) {
+        int removedEdge = removeEdge(v);
+        processEnd(edgeSweep[removedEdge], v);
+
+        if(edgeLastMerge[removedEdge] != NONE)
+            processEnd(edgeLastMerge[removedEdge], v);
+    }
+
+
+    private void handleContinuation(int v) {
+        int edge = getEdge(v);
+        assert edge != NONE : "Intersections?";
+
+        // Left edge continues
+        if(edgeEnd[edge] == v) {
+            int continuation = (prev[v] == edgeStart[edge]) ? next[v] : prev[v];
+            resetEdge(edge, v, continuation);
+
+            if(edgeLastMerge[edge] != NONE) {
+                processEnd(edgeSweep[edge], v);
+                edgeSweep[edge] = edgeLastMerge[edge];
+                edgeLastMerge[edge] = NONE;
+            }
+
+            processLeft(edgeSweep[edge], v);
+        }
+        // Right edge continues
+        else {
+            if(edgeLastMerge[edge] != NONE) {
+                processEnd(edgeLastMerge[edge], v);
+                edgeLastMerge[edge] = NONE;
+            }
+
+            processRight(edgeSweep[edge], v);
+        }
+    }
+
+
+    //
+    // Edges
+    //
+
+    private int createEdge(int start, int end) {
+        if(numEdges == edgeStart.length) {
+            int capacity = numEdges * 2;
+            edgeStart = Arrays.copyOf(edgeStart, capacity);
+            edgeEnd = Arrays.copyOf(edgeEnd, capacity);
+            edgeSweep = Arrays.copyOf(edgeSweep, capacity);
+            edgeLastMerge = Arrays.copyOf(edgeLastMerge, capacity);
+            edgeXLeft = Arrays.copyOf(edgeXLeft, capacity);
+            edgeXChange = Arrays.copyOf(edgeXChange, capacity);
+        }
+
+        int edge = numEdges++;
+        edgeSweep[edge] = NONE;
+        edgeLastMerge[edge] = NONE;
+        resetEdge(edge, start, end);
+        return edge;
+    }
+
+
+    private void resetEdge(int edge, int start, int end) {
+        edgeStart[edge] = start;
+        edgeEnd[edge] = end;
+
+        float dy = y[end] - y[start];
+        assert dy >= 0;
+
+        if(dy >= 0.0001f) {
+            edgeXChange[edge] = (x[end] - x[start]) / dy;
+            edgeXLeft[edge] = x[end];
+        }
+        else {
+            edgeXChange[edge] = 0;
+            edgeXLeft[edge] = Math.min(x[end], x[start]);
+        }
+    }
+
+
+    private float getXAtY(int edge, float atY) {
+        return edgeXLeft[edge] + (atY - y[edgeEnd[edge]]) * edgeXChange[edge];
+    }
+
+
+    /**
+     * Inserts the edge into the active edges at the y of its start. Same order as in {@link EdgeSet}.
+     */
+    private void addEdge(int edge) {
+        if(numActive == active.length)
+            active = Arrays.copyOf(active, numActive * 2);
+
+        float atY = y[edgeStart[edge]];
+        float edgeX = getXAtY(edge, atY);
+
+        int lo = 0, hi = numActive;
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(compareEdges(edge, edgeX, active[mid], atY) > 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+
+        System.arraycopy(active, lo, active, lo+1, numActive-lo);
+        active[lo] = edge;
+        numActive++;
+    }
+
+
+    private int compareEdges(int edge, float edgeX, int other, float atY) {
+        float dx = edgeX - getXAtY(other, atY);
+        if(dx > EDGE_X_EPSILON)
+            return 1;
+        if(dx < -EDGE_X_EPSILON)
+            return -1;
+
+        // Starts must come before splits
+        return compareVertices(edgeStart[edge], edgeStart[other]);
+    }
+
+
+    /**
+     * @return Position in active edges of the last edge that is left of the vertex or at the same x, or NONE.
+     */
+    private int floorEdge(int v) {
+        float vx = x[v];
+        float vy = y[v];
+
+        int lo = 0, hi = numActive;
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(vx - getXAtY(active[mid], vy) >= -EDGE_X_EPSILON)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+
+        return lo - 1;
+    }
+
+
+    private int getEdge(int v) {
+        int pos = floorEdge(v);
+        return (pos < 0) ? NONE : active[pos];
+    }
+
+
+    private int removeEdge(int v) {
+        int pos = floorEdge(v);
+        assert pos >= 0 && edgeEnd[active[pos]] == v;
+
+        int edge = active[pos];
+        numActive--;
+        System.arraycopy(active, pos+1, active, pos, numActive-pos);
+        return edge;
+    }
+
+
+    //
+    // Monotone sweeps, same as MonotoneSweep
+    //
+
+    private int createSweep(int v) {
+        if(numSweeps == sweepSize.length) {
+            int capacity = numSweeps * 2;
+            sweepStack = Arrays.copyOf(sweepStack, capacity);
+            sweepSize = Arrays.copyOf(sweepSize, capacity);
+            sweepLastLeft = Arrays.copyOf(sweepLastLeft, capacity);
+        }
+
+        int sweep = numSweeps++;
+        if(sweepStack[sweep] == null)
+            sweepStack[sweep] = new int[8];
+
+        sweepStack[sweep][0] = v;
+        sweepSize[sweep] = 1;
+        sweepLastLeft[sweep] = false;
+        return sweep;
+    }
+
+
+    private void push(int sweep, int v) {
+        int[] stack = sweepStack[sweep];
+        if(sweepSize[sweep] == stack.length)
+            stack = sweepStack[sweep] = Arrays.copyOf(stack, stack.length * 2);
+
+        stack[sweepSize[sweep]++] = v;
+    }
+
+
+    private int pop(int sweep) {
+        return sweepStack[sweep][--sweepSize[sweep]];
+    }
+
+
+    private int getLastVertex(int sweep) {
+        return sweepStack[sweep][sweepSize[sweep]-1];
+    }
+
+
+    private void processLeft(int sweep, int v) {
+        if(sweepSize[sweep] < 2)
+            push(sweep, v);
+        else if(sweepLastLeft[sweep])
+            processSameSide(sweep, v);
+        else
+            processOtherSide(sweep, v);
+
+        sweepLastLeft[sweep] = true;
+    }
+
+
+    private void processRight(int sweep, int v) {
+        if(sweepSize[sweep] < 2)
+            push(sweep, v);
+        else if(sweepLastLeft[sweep])
+            processOtherSide(sweep, v);
+        else
+            processSameSide(sweep, v);
+
+        sweepLastLeft[sweep] = false;
+    }
+
+
+    private void processEnd(int sweep, int v) {
+        assert sweepSize[sweep] >= 2;
+
+        int last = pop(sweep);
+        while(sweepSize[sweep] > 0) {
+            int o = pop(sweep);
+            handleTriangle(sweep, v, last, o);
+            last = o;
+        }
+    }
+
+
+    private void processSameSide(int sweep, int v) {
+        int keep = pop(sweep);
+
+        float baseX = x[keep] - x[v];
+        float baseY = y[keep] - y[v];
+        float side = sweepLastLeft[sweep] ? 1 : -1;
+
+        while(sweepSize[sweep] > 0) {
+            int o = getLastVertex(sweep);
+            float dirX = x[o] - x[v];
+            float dirY = y[o] - y[v];
+
+            // Ensure that we can see 'o' from 'v'
+            float det = baseX*dirY - baseY*dirX;
+            if(det * side <= 0)
+                break;
+
+            handleTriangle(sweep, v, keep, o);
+
+            baseX = dirX;
+            baseY = dirY;
+            keep = pop(sweep);
+        }
+
+        push(sweep, keep);
+        push(sweep, v);
+    }
+
+
+    private void processOtherSide(int sweep, int v) {
+        int keep = pop(sweep);
+        int last = keep;
+
+        while(sweepSize[sweep] > 0) {
+            int o = pop(sweep);
+            handleTriangle(sweep, v, last, o);
+            last = o;
+        }
+
+        push(sweep, keep);
+        push(sweep, v);
+    }
+
+
+    private void handleTriangle(int sweep, int v1, int v2, int v3) {
+        if(sweepLastLeft[sweep])
+            cb.handleTriangle(v1, v2, v3);
+        else
+            cb.handleTriangle(v1, v3, v2);
+    }
+}
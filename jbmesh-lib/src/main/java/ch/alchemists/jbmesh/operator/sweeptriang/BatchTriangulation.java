@@ -0,0 +1,192 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.sweeptriang;
+
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.operator.FaceHoles;
+import ch.alchemists.jbmesh.operator.FaceOps;
+import ch.alchemists.jbmesh.structure.BMesh;
+import ch.alchemists.jbmesh.structure.Face;
+import ch.alchemists.jbmesh.structure.Loop;
+import ch.alchemists.jbmesh.structure.Vertex;
+import ch.alchemists.jbmesh.util.ParallelRange;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+/**
+ * Triangulates many faces in parallel with {@link ArraySweepTriangulation}.<br>
+ * Faces with holes (see {@link FaceHoles}) are triangulated together with their holes. Hole faces are skipped.
+ * Holes can have either winding. Each thread uses its own triangulation instance.
+ * The BMesh must not be modified during triangulation.
+ */
+public class BatchTriangulation {
+    private static final Logger LOG = Logger.getLogger(BatchTriangulation.class.getName());
+    public static final int DEFAULT_MIN_CHUNK_SIZE = 64;
+
+    private static class Chunk {
+        final int start;
+        final ArrayList<Loop> triangles = new ArrayList<>();
+
+        Chunk(int start) {
+            this.start = start;
+        }
+    }
+
+
+    private final BMesh bmesh;
+    private final Vec3Attribute<Vertex> positions;
+    private final FaceOps faceOps;
+    private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+    private int minChunkSize = DEFAULT_MIN_CHUNK_SIZE;
+
+
+    public BatchTriangulation(BMesh bmesh) {
+        this.bmesh = bmesh;
+        positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+        faceOps = new FaceOps(bmesh);
+    }
+
+
+    /**
+     * @param minChunkSize Minimum number of faces per parallel task.
+     */
+    public void setMinChunkSize(int minChunkSize) {
+        if(minChunkSize < 1)
+            throw new IllegalArgumentException("Minimum chunk size must be at least 1");
+        this.minChunkSize = minChunkSize;
+    }
+
+
+    /**
+     * Faces that can't be triangulated are skipped with a warning.
+     * @return Loops of the triangles, 3 per triangle, grouped by face in the order of the input.
+     */
+    public Loop[] triangulate(List<Face> faces) {
+        final FaceHoles holes = FaceHoles.get(bmesh);
+        final ConcurrentLinkedQueue<Chunk> chunks = new ConcurrentLinkedQueue<>();
+
+        ParallelRange.forEach(faces.size(), minChunkSize, (start, end) -> {
+            Worker worker = workers.get();
+            Chunk chunk = new Chunk(start);
+            for(int i=start; i<end; ++i)
+                worker.triangulate(faces.get(i), holes, chunk.triangles);
+            chunks.add(chunk);
+        });
+
+        Chunk[] sorted = chunks.toArray(new Chunk[0]);
+        Arrays.sort(sorted, Comparator.comparingInt(chunk -> chunk.start));
+
+        int size = 0;
+        for(Chunk chunk : sorted)
+            size += chunk.triangles.size();
+
+        Loop[] result = new Loop[size];
+        int i = 0;
+        for(Chunk chunk : sorted) {
+            for(Loop loop : chunk.triangles)
+                result[i++] = loop;
+        }
+
+        return result;
+    }
+
+
+
+    private class Worker {
+        private final ArraySweepTriangulation sweep = new ArraySweepTriangulation();
+        private final ArrayList<Loop> loops = new ArrayList<>();     // By vertex index of sweep
+        private final ArrayList<Loop> faceLoops = new ArrayList<>();
+        private final ArrayList<Face> faceHoles = new ArrayList<>();
+        private float[] buffer = new float[48];
+        private ArrayList<Loop> store;
+
+        private final Vector3f tempPos = new Vector3f();
+        private final Vector3f outlineNormal = new Vector3f();
+        private final Vector3f holeNormal = new Vector3f();
+
+
+        public Worker() {
+            sweep.setTriangleCallback((v1, v2, v3) -> {
+                store.add(loops.get(v1));
+                store.add(loops.get(v2));
+                store.add(loops.get(v3));
+            });
+        }
+
+
+        public void triangulate(Face face, FaceHoles holes, ArrayList<Loop> store) {
+            faceHoles.clear();
+            if(holes != null) {
+                if(holes.isHole(face))
+                    return;
+                holes.getHoles(face, faceHoles);
+            }
+
+            faceLoops.clear();
+            face.getLoops(faceLoops);
+
+            if(faceHoles.isEmpty() && faceLoops.size() == 3) {
+                store.addAll(faceLoops);
+                return;
+            }
+
+            final int storeSize = store.size();
+            try {
+                loops.clear();
+                addLoops(false);
+
+                if(!faceHoles.isEmpty()) {
+                    faceOps.normal(face, outlineNormal);
+                    for(Face hole : faceHoles) {
+                        faceLoops.clear();
+                        hole.getLoops(faceLoops);
+
+                        // Holes need opposite winding
+                        faceOps.normal(hole, holeNormal);
+                        addLoops(holeNormal.dot(outlineNormal) > 0);
+                    }
+                }
+
+                this.store = store;
+                sweep.triangulate();
+            }
+            catch(RuntimeException | AssertionError ex) {
+                LOG.warning("Couldn't triangulate face with " + loops.size() + " vertices: " + ex.getMessage());
+                while(store.size() > storeSize)
+                    store.remove(store.size()-1);
+            }
+            finally {
+                this.store = null;
+            }
+        }
+
+
+        private void addLoops(boolean reverse) {
+            final int size = faceLoops.size();
+            if(buffer.length < size*3)
+                buffer = new float[size*3];
+
+            for(int i=0; i<size; ++i) {
+                Loop loop = faceLoops.get(reverse ? size-1-i : i);
+                loops.add(loop);
+
+                positions.get(loop.vertex, tempPos);
+                buffer[i*3]   = tempPos.x;
+                buffer[i*3+1] = tempPos.y;
+                buffer[i*3+2] = tempPos.z;
+            }
+
+            sweep.addFaceWithPositions(buffer, size);
+        }
+    }
+}
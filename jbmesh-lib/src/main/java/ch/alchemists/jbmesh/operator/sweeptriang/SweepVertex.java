@@ -20,7 +20,7 @@ public class SweepVertex implements Comparable<SweepVertex> {
     SweepVertex next, prev;
 
 
-    SweepVertex(Vertex vertex, int index, int face) {
+    public SweepVertex(Vertex vertex, int index, int face) {
         this.vertex = vertex;
         this.index = index;
         this.face = face;
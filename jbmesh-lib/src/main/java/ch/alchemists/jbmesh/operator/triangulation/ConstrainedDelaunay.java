@@ -0,0 +1,1059 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.triangulation;
+
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.operator.sweeptriang.ArraySweepTriangulation;
+import ch.alchemists.jbmesh.structure.BMesh;
+import ch.alchemists.jbmesh.structure.Edge;
+import ch.alchemists.jbmesh.structure.Face;
+import ch.alchemists.jbmesh.structure.Loop;
+import ch.alchemists.jbmesh.structure.Vertex;
+import ch.alchemists.jbmesh.util.PlanarCoordinateSystem;
+import com.jme3.math.Vector3f;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Constrained Delaunay triangulation with optional quality refinement (Ruppert's algorithm).<br>
+ * The faces are triangulated with {@link ArraySweepTriangulation}, then edges are flipped until all triangles are Delaunay.
+ * The boundary of the faces is kept as constraint. The first face is the outline, further faces with opposite winding are holes.<br>
+ * If a minimum angle or a maximum area is set, Steiner points are inserted at the circumcenters of bad triangles
+ * and on boundary segments whose diametral circle is encroached. Boundary segments that are BMesh edges are split
+ * with {@link BMesh#splitEdge(Edge)}, so adjacent faces stay connected. The input faces are not removed.<br>
+ * All state is kept in primitive arrays that are reused. Not thread-safe.
+ */
+public class ConstrainedDelaunay {
+    private static final int NONE = -1;
+    private static final float MAX_MIN_ANGLE = 33.0f; // Refinement may not terminate above
+    private static final double ON_EDGE_EPSILON = 0.000001;
+    private static final double INCIRCLE_EPSILON = 0.000000001;
+    private static final double MIN_EDGE_LENGTH = 0.00001; // Relative to extent, stays well above float precision
+
+    // Point location results
+    private static final int INSIDE  = 0;
+    private static final int ON_EDGE = 1;
+    private static final int ON_VERTEX = 2;
+    private static final int OUTSIDE = 3;
+
+    private final BMesh bmesh;
+    private final Vec3Attribute<Vertex> positions;
+    private final ArraySweepTriangulation sweep = new ArraySweepTriangulation(this::addSweepTriangle);
+
+    private final PlanarCoordinateSystem coordSys = new PlanarCoordinateSystem();
+    private PlanarCoordinateSystem fixedCoordSys;
+    private boolean coordSysValid = false;
+
+    private float minAngle = 0;
+    private double sinMinAngleSquared = 0;
+    private float maxArea = 0;
+    private int maxSteinerPoints = 1_000_000;
+    private double minEdgeLengthSquared = 0;
+
+    // Vertices
+    private int numVertices = 0;
+    private int numInputVertices = 0;
+    private float[] px = new float[16], py = new float[16], pz = new float[16]; // 3D
+    private float[] x = new float[16], y = new float[16];
+    private Vertex[] vertices = new Vertex[16];
+    private int[] vertexEdge = new int[16];     // Any half-edge that starts at the vertex
+    private int[] segStart = new int[16];       // Input segment for vertices on the boundary, or NONE
+    private int[] segEnd = new int[16];
+    private int[] faceStart = new int[4];
+    private int numFaces = 0;
+    private float[] sweepInput = new float[48];
+
+    // Triangles: Half-edge e goes from tv[e] to tv[next(e)]. Boundary edges have no twin.
+    private int numTriangles = 0;
+    private int[] tv = new int[48];
+    private int[] twin = new int[48];
+    private boolean[] queued = new boolean[16];
+    private int[] visited = new int[16];
+    private int visitStamp = 0;
+
+    private boolean refining = false;
+    private int numQueued = 0;
+    private int[] queue = new int[16];
+    private int stackSize = 0;
+    private int[] stack = new int[16];
+    private int[] cavity = new int[16];
+    private int[] bucketStart = new int[17];
+    private int[] bucket = new int[48];
+
+    // Segment splits as triples (start, end, new vertex), replayed on the BMesh in order
+    private int numSplits = 0;
+    private int[] splits = new int[24];
+
+    private int locateResult;
+    private final Vector3f tempPos = new Vector3f();
+
+
+    public ConstrainedDelaunay(BMesh bmesh) {
+        this.bmesh = bmesh;
+        positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+        sweep.setCoordinateSystem(PlanarCoordinateSystem.XY());
+    }
+
+
+    /**
+     * Sets a fixed coordinate system. If null, it's calculated from the first face of each triangulation.
+     * The outline must be counterclockwise in this coordinate system.
+     */
+    public void setCoordinateSystem(PlanarCoordinateSystem coordSys) {
+        this.fixedCoordSys = coordSys;
+    }
+
+
+    /**
+     * Refines triangles until no angle is smaller than this. 0 disables the angle bound.
+     * Values up to about 20 degrees are guaranteed to terminate if the input has no small angles.
+     * Near sharp input corners, refinement can insert many vertices, which is limited by {@link #setMaxSteinerPoints(int)}.
+     * @param degrees Minimum angle in degrees, at most 33.
+     */
+    public void setMinAngle(float degrees) {
+        if(degrees < 0 || degrees > MAX_MIN_ANGLE)
+            throw new IllegalArgumentException("Minimum angle must be in range [0, " + MAX_MIN_ANGLE + "]");
+
+        minAngle = degrees;
+        double sin = Math.sin(Math.toRadians(degrees));
+        sinMinAngleSquared = sin * sin;
+    }
+
+    public float getMinAngle() {
+        return minAngle;
+    }
+
+
+    /**
+     * Refines triangles until their area in the plane is not larger than this. 0 disables the area bound.
+     */
+    public void setMaxArea(float maxArea) {
+        if(maxArea < 0)
+            throw new IllegalArgumentException("Maximum area must not be negative");
+        this.maxArea = maxArea;
+    }
+
+    public float getMaxArea() {
+        return maxArea;
+    }
+
+
+    /**
+     * Limits the number of inserted vertices per triangulation. Refinement stops when the limit is reached.
+     */
+    public void setMaxSteinerPoints(int maxSteinerPoints) {
+        if(maxSteinerPoints < 0)
+            throw new IllegalArgumentException("Maximum number of Steiner points must not be negative");
+        this.maxSteinerPoints = maxSteinerPoints;
+    }
+
+
+    public void addFace(Face face) {
+        final int start = numVertices;
+        Loop loop = face.loop;
+        do {
+            positions.get(loop.vertex, tempPos);
+            addInputVertex(loop.vertex, tempPos.x, tempPos.y, tempPos.z);
+            loop = loop.nextFaceLoop;
+        } while(loop != face.loop);
+
+        prepareFace(start);
+    }
+
+
+    /**
+     * Vertices for these positions are created in the BMesh.
+     * @param positions 3D coordinates: x0, y0, z0, x1, y1, ...
+     * @param numPositions Number of 3D positions.
+     */
+    public void addFaceWithPositions(float[] positions, int numPositions) {
+        final int start = numVertices;
+        for(int i=0, p=0; i<numPositions; ++i, p+=3)
+            addInputVertex(null, positions[p], positions[p+1], positions[p+2]);
+
+        prepareFace(start);
+    }
+
+
+    private void addInputVertex(Vertex vertex, float vx, float vy, float vz) {
+        int i = createVertex();
+        vertices[i] = vertex;
+        px[i] = vx;
+        py[i] = vy;
+        pz[i] = vz;
+    }
+
+
+    private int createVertex() {
+        if(numVertices == x.length) {
+            int capacity = numVertices * 2;
+            px = Arrays.copyOf(px, capacity);
+            py = Arrays.copyOf(py, capacity);
+            pz = Arrays.copyOf(pz, capacity);
+            x  = Arrays.copyOf(x, capacity);
+            y  = Arrays.copyOf(y, capacity);
+            vertices   = Arrays.copyOf(vertices, capacity);
+            vertexEdge = Arrays.copyOf(vertexEdge, capacity);
+            segStart   = Arrays.copyOf(segStart, capacity);
+            segEnd     = Arrays.copyOf(segEnd, capacity);
+        }
+
+        int v = numVertices++;
+        vertices[v] = null;
+        vertexEdge[v] = NONE;
+        segStart[v] = NONE;
+        segEnd[v] = NONE;
+        return v;
+    }
+
+
+    private void prepareFace(int start) {
+        final int end = numVertices;
+        if(end - start < 3) {
+            reset();
+            throw new IllegalArgumentException("Face needs at least 3 vertices.");
+        }
+
+        if(!coordSysValid) {
+            if(fixedCoordSys != null) {
+                coordSys.p.set(fixedCoordSys.p);
+                coordSys.x.set(fixedCoordSys.x);
+                coordSys.y.set(fixedCoordSys.y);
+            }
+            else {
+                try {
+                    coordSys.forPolygon(() -> IntStream.range(start, end).iterator(), (Integer i, Vector3f store) -> store.set(px[i], py[i], pz[i]));
+                }
+                catch(IllegalArgumentException ex) {
+                    reset();
+                    throw ex;
+                }
+            }
+
+            coordSysValid = true;
+        }
+
+        int numFaceVertices = end - start;
+        if(sweepInput.length < numFaceVertices*3)
+            sweepInput = new float[numFaceVertices*3];
+
+        // Project and pass 2D coordinates to sweep, which uses the same vertex indices
+        Vector3f o = coordSys.p;
+        Vector3f ax = coordSys.x;
+        Vector3f ay = coordSys.y;
+        for(int i=start, p=0; i<end; ++i, p+=3) {
+            float dx = px[i] - o.x;
+            float dy = py[i] - o.y;
+            float dz = pz[i] - o.z;
+            x[i] = dx*ax.x + dy*ax.y + dz*ax.z;
+            y[i] = dx*ay.x + dy*ay.y + dz*ay.z;
+
+            sweepInput[p]   = x[i];
+            sweepInput[p+1] = y[i];
+            sweepInput[p+2] = 0;
+        }
+
+        try {
+            sweep.addFaceWithPositions(sweepInput, numFaceVertices);
+        }
+        catch(IllegalArgumentException ex) {
+            reset();
+            throw ex;
+        }
+
+        if(numFaces == faceStart.length)
+            faceStart = Arrays.copyOf(faceStart, numFaces * 2);
+        faceStart[numFaces++] = start;
+    }
+
+
+    /**
+     * Triangulates the added faces and creates the triangles in the BMesh.
+     * @param store Receives the created faces. Can be null.
+     */
+    public void triangulate(List<Face> store) {
+        if(numFaces == 0)
+            throw new IllegalStateException("No faces added");
+
+        try {
+            numInputVertices = numVertices;
+            sweep.triangulate();
+
+            buildAdjacency();
+            insertCollinearVertices();
+
+            for(int e=0; e<numTriangles*3; ++e) {
+                if(twin[e] > e)
+                    push(e);
+            }
+            legalize();
+
+            if(minAngle > 0 || maxArea > 0)
+                refine();
+
+            createFaces(store);
+        }
+        finally {
+            reset();
+        }
+    }
+
+
+    private void reset() {
+        coordSysValid = false;
+        refining = false;
+        numVertices = 0;
+        numFaces = 0;
+        numTriangles = 0;
+        numSplits = 0;
+        numQueued = 0;
+        stackSize = 0;
+        Arrays.fill(vertices, null);
+    }
+
+
+    //
+    // Triangles
+    //
+
+    private static int next(int e) {
+        return (e % 3 == 2) ? e-2 : e+1;
+    }
+
+    private static int prev(int e) {
+        return (e % 3 == 0) ? e+2 : e-1;
+    }
+
+
+    private int createTriangle() {
+        if(numTriangles*3 == tv.length) {
+            int capacity = numTriangles * 2;
+            tv = Arrays.copyOf(tv, capacity*3);
+            twin = Arrays.copyOf(twin, capacity*3);
+            queued = Arrays.copyOf(queued, capacity);
+            visited = Arrays.copyOf(visited, capacity);
+        }
+
+        int t = numTriangles++;
+        queued[t] = false;
+        visited[t] = 0;
+        return t;
+    }
+
+
+    private void setTriangle(int t, int a, int b, int c) {
+        int e = t*3;
+        tv[e]   = a;
+        tv[e+1] = b;
+        tv[e+2] = c;
+        vertexEdge[a] = e;
+        vertexEdge[b] = e+1;
+        vertexEdge[c] = e+2;
+
+        if(refining)
+            enqueue(t);
+    }
+
+
+    private void link(int e, int f) {
+        twin[e] = f;
+        if(f != NONE)
+            twin[f] = e;
+    }
+
+
+    private void addSweepTriangle(int v1, int v2, int v3) {
+        int t = createTriangle();
+        setTriangle(t, v1, v2, v3);
+    }
+
+
+    /**
+     * Finds twins of half-edges by bucketing them by their start vertex.
+     */
+    private void buildAdjacency() {
+        final int numEdges = numTriangles * 3;
+        if(bucketStart.length < numVertices+1)
+            bucketStart = new int[numVertices+1];
+        if(bucket.length < numEdges)
+            bucket = new int[numEdges];
+
+        // Count per vertex and accumulate: bucketStart[v+1] is the end of v's bucket
+        Arrays.fill(bucketStart, 0, numVertices+1, 0);
+        for(int e=0; e<numEdges; ++e)
+            bucketStart[tv[e]+1]++;
+        for(int v=0; v<numVertices; ++v)
+            bucketStart[v+1] += bucketStart[v];
+
+        // Fill backwards: Afterwards bucketStart[v+1] is the start of v's bucket
+        for(int e=0; e<numEdges; ++e)
+            bucket[--bucketStart[tv[e]+1]] = e;
+
+        System.arraycopy(bucketStart, 1, bucketStart, 0, numVertices);
+        bucketStart[numVertices] = numEdges;
+
+        for(int e=0; e<numEdges; ++e) {
+            int a = tv[e];
+            int b = tv[next(e)];
+            twin[e] = NONE;
+
+            for(int i=bucketStart[b]; i<bucketStart[b+1]; ++i) {
+                int f = bucket[i];
+                if(tv[next(f)] == a) {
+                    twin[e] = f;
+                    break;
+                }
+            }
+        }
+
+        // Input vertices on the boundary mark their own segments
+        for(int v=0; v<numVertices; ++v) {
+            if(vertexEdge[v] != NONE) {
+                segStart[v] = v;
+                segEnd[v] = v;
+            }
+        }
+    }
+
+
+    /**
+     * The sweep removes vertices that lie on a straight boundary. They are inserted again so the BMesh faces stay connected.
+     * Duplicate vertices and spikes can't be represented and are left out.
+     */
+    private void insertCollinearVertices() {
+        for(int f=0; f<numFaces; ++f) {
+            int start = faceStart[f];
+            int end = (f+1 < numFaces) ? faceStart[f+1] : numInputVertices;
+
+            // Begin after a vertex that is part of the triangulation
+            int first = start;
+            while(first < end && vertexEdge[first] == NONE)
+                first++;
+            if(first == end)
+                continue;
+
+            int prevValid = first;
+            for(int k=1; k<end-start; ++k) {
+                int v = start + (first - start + k) % (end - start);
+                if(vertexEdge[v] != NONE) {
+                    prevValid = v;
+                    continue;
+                }
+
+                int e = getBoundaryEdge(prevValid);
+                if(e != NONE && isInsideSegment(e, x[v], y[v])) {
+                    splitEdge(e, v);
+                    segStart[v] = v;
+                    segEnd[v] = v;
+                    prevValid = v;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @return The boundary half-edge that starts at v, or NONE.
+     */
+    private int getBoundaryEdge(int v) {
+        final int startEdge = vertexEdge[v];
+        int e = startEdge;
+        do {
+            int f = twin[e];
+            if(f == NONE)
+                return e;
+            e = next(f);
+        } while(e != startEdge);
+
+        return NONE;
+    }
+
+
+    private boolean isInsideSegment(int e, double vx, double vy) {
+        int a = tv[e];
+        int b = tv[next(e)];
+        double abx = x[b] - x[a];
+        double aby = y[b] - y[a];
+        double len2 = abx*abx + aby*aby;
+        double dot = abx*(vx - x[a]) + aby*(vy - y[a]);
+        double cross = abx*(vy - y[a]) - aby*(vx - x[a]);
+        return dot > 0 && dot < len2 && Math.abs(cross) <= ON_EDGE_EPSILON * len2;
+    }
+
+
+    //
+    // Predicates
+    //
+
+    private double orient(int a, int b, double vx, double vy) {
+        return ((double)x[b] - x[a]) * (vy - y[a]) - ((double)y[b] - y[a]) * (vx - x[a]);
+    }
+
+
+    /**
+     * @return Whether point v is inside the circumcircle of the counterclockwise triangle abc.
+     */
+    private boolean inCircle(int a, int b, int c, double vx, double vy) {
+        double adx = x[a] - vx, ady = y[a] - vy;
+        double bdx = x[b] - vx, bdy = y[b] - vy;
+        double cdx = x[c] - vx, cdy = y[c] - vy;
+
+        double ad = adx*adx + ady*ady;
+        double bd = bdx*bdx + bdy*bdy;
+        double cd = cdx*cdx + cdy*cdy;
+
+        double det = adx * (bdy*cd - bd*cdy)
+                   - ady * (bdx*cd - bd*cdx)
+                   + ad  * (bdx*cdy - bdy*cdx);
+
+        double scale = (Math.abs(adx) + Math.abs(ady)) * (Math.abs(bdx) + Math.abs(bdy)) * (Math.abs(cdx) + Math.abs(cdy))
+                     * (ad + bd + cd);
+        return det > INCIRCLE_EPSILON * scale;
+    }
+
+
+    //
+    // Modifications
+    //
+
+    private void push(int e) {
+        if(stackSize == stack.length)
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        stack[stackSize++] = e;
+    }
+
+
+    /**
+     * Flips edges on the stack until they are all locally Delaunay.
+     */
+    private void legalize() {
+        while(stackSize > 0) {
+            int e = stack[--stackSize];
+            int f = twin[e];
+            if(f == NONE)
+                continue;
+
+            int a = tv[e];
+            int b = tv[next(e)];
+            int c = tv[prev(e)];
+            int d = tv[prev(f)];
+
+            if(!inCircle(a, b, c, x[d], y[d]))
+                continue;
+
+            // New triangles must be valid
+            if(orient(c, a, x[d], y[d]) <= 0 || orient(d, b, x[c], y[c]) <= 0)
+                continue;
+
+            flip(e);
+        }
+    }
+
+
+    /**
+     * <pre>
+     * Flips edge (a, b) of triangles (a, b, c) and (b, a, d) to the triangles (c, a, d) and (d, b, c).
+     * </pre>
+     */
+    private void flip(int e) {
+        int f = twin[e];
+        int a = tv[e];
+        int b = tv[next(e)];
+        int c = tv[prev(e)];
+        int d = tv[prev(f)];
+
+        int twinBC = twin[next(e)];
+        int twinCA = twin[prev(e)];
+        int twinAD = twin[next(f)];
+        int twinDB = twin[prev(f)];
+
+        int t0 = e / 3;
+        int t1 = f / 3;
+        int e0 = t0 * 3;
+        int e1 = t1 * 3;
+
+        setTriangle(t0, c, a, d);
+        setTriangle(t1, d, b, c);
+
+        link(e0, twinCA);
+        link(e0+1, twinAD);
+        link(e0+2, e1+2);
+        link(e1, twinDB);
+        link(e1+1, twinBC);
+
+        push(e0);
+        push(e0+1);
+        push(e1);
+        push(e1+1);
+    }
+
+
+    /**
+     * Splits triangle (a, b, c) into (a, b, v), (b, c, v) and (c, a, v).
+     */
+    private void splitTriangle(int t, int v) {
+        int e = t * 3;
+        int a = tv[e], b = tv[e+1], c = tv[e+2];
+        int twinAB = twin[e], twinBC = twin[e+1], twinCA = twin[e+2];
+
+        int t1 = createTriangle();
+        int t2 = createTriangle();
+        int e1 = t1 * 3;
+        int e2 = t2 * 3;
+
+        setTriangle(t, a, b, v);
+        setTriangle(t1, b, c, v);
+        setTriangle(t2, c, a, v);
+
+        link(e, twinAB);
+        link(e+1, e1+2);
+        link(e+2, e2+1);
+        link(e1, twinBC);
+        link(e1+1, e2+2);
+        link(e2, twinCA);
+
+        push(e);
+        push(e1);
+        push(e2);
+    }
+
+
+    /**
+     * <pre>
+     * Splits edge (a, b) of triangle (a, b, c) and of its twin (b, a, d) if there is one.
+     * Results in (c, a, v), (v, b, c) and (d, b, v), (v, a, d).
+     * </pre>
+     */
+    private void splitEdge(int e, int v) {
+        int f = twin[e];
+        int a = tv[e];
+        int b = tv[next(e)];
+        int c = tv[prev(e)];
+        int twinBC = twin[next(e)];
+        int twinCA = twin[prev(e)];
+
+        int t0 = e / 3;
+        int t1 = createTriangle();
+        int e0 = t0 * 3;
+        int e1 = t1 * 3;
+
+        setTriangle(t0, c, a, v);
+        setTriangle(t1, v, b, c);
+        link(e0, twinCA);
+        link(e0+2, e1+2);
+        link(e1+1, twinBC);
+        push(e0);
+        push(e1+1);
+
+        if(f == NONE) {
+            twin[e0+1] = NONE;
+            twin[e1] = NONE;
+            return;
+        }
+
+        int d = tv[prev(f)];
+        int twinAD = twin[next(f)];
+        int twinDB = twin[prev(f)];
+
+        int t2 = f / 3;
+        int t3 = createTriangle();
+        int e2 = t2 * 3;
+        int e3 = t3 * 3;
+
+        setTriangle(t2, d, b, v);
+        setTriangle(t3, v, a, d);
+        link(e2, twinDB);
+        link(e2+1, e1);
+        link(e2+2, e3+2);
+        link(e3, e0+1);
+        link(e3+1, twinAD);
+        push(e2);
+        push(e3+1);
+    }
+
+
+    //
+    // Refinement
+    //
+
+    private void enqueue(int t) {
+        if(queued[t])
+            return;
+
+        if(numQueued == queue.length)
+            queue = Arrays.copyOf(queue, numQueued * 2);
+
+        queue[numQueued++] = t;
+        queued[t] = true;
+    }
+
+
+    private void refine() {
+        float extent = 0;
+        for(int v=0; v<numVertices; ++v)
+            extent = Math.max(extent, Math.max(Math.abs(x[v]), Math.abs(y[v])));
+
+        double minEdgeLength = extent * MIN_EDGE_LENGTH;
+        minEdgeLengthSquared = minEdgeLength * minEdgeLength;
+
+        refining = true;
+        for(int t=0; t<numTriangles; ++t)
+            enqueue(t);
+
+        while(numQueued > 0 && numVertices - numInputVertices < maxSteinerPoints) {
+            int t = queue[--numQueued];
+            queued[t] = false;
+
+            // Segments encroached by a vertex of the triangle are split first
+            int segment = getEncroachedSegment(t);
+            if(segment != NONE) {
+                splitSegment(segment);
+                continue;
+            }
+
+            if(!isBad(t))
+                continue;
+
+            int e = t * 3;
+            int a = tv[e], b = tv[e+1], c = tv[e+2];
+
+            // Circumcenter relative to a
+            double bx = x[b] - x[a], by = y[b] - y[a];
+            double cx = x[c] - x[a], cy = y[c] - y[a];
+            double d = 2.0 * (bx*cy - by*cx);
+            double b2 = bx*bx + by*by;
+            double c2 = cx*cx + cy*cy;
+            double centerX = x[a] + (cy*b2 - by*c2) / d;
+            double centerY = y[a] + (bx*c2 - cx*b2) / d;
+
+            int loc = locate(t, centerX, centerY);
+            if(locateResult == ON_VERTEX)
+                continue;
+
+            // Circumcenter outside of domain or encroaches a segment: Split the segment instead and try again later
+            if(locateResult == OUTSIDE)
+                segment = loc;
+            else
+                segment = getEncroachedSegment(loc / 3, centerX, centerY);
+
+            if(segment != NONE) {
+                splitSegment(segment);
+                enqueue(t);
+                continue;
+            }
+
+            int v = createVertex();
+            x[v] = (float) centerX;
+            y[v] = (float) centerY;
+
+            if(locateResult == ON_EDGE) {
+                interpolate(v, tv[loc], tv[next(loc)], centerX, centerY);
+                splitEdge(loc, v);
+            }
+            else {
+                interpolate(v, loc / 3, centerX, centerY);
+                splitTriangle(loc / 3, v);
+            }
+
+            legalize();
+        }
+
+        numQueued = 0;
+        refining = false;
+    }
+
+
+    private boolean isBad(int t) {
+        int e = t * 3;
+        int a = tv[e], b = tv[e+1], c = tv[e+2];
+
+        double abx = x[b] - x[a], aby = y[b] - y[a];
+        double bcx = x[c] - x[b], bcy = y[c] - y[b];
+        double cax = x[a] - x[c], cay = y[a] - y[c];
+        double cross = abx*(-cay) - aby*(-cax);
+        if(cross <= 0)
+            return false;
+
+        if(maxArea > 0 && cross * 0.5 > maxArea)
+            return true;
+
+        if(minAngle <= 0)
+            return false;
+
+        double ab = abx*abx + aby*aby;
+        double bc = bcx*bcx + bcy*bcy;
+        double ca = cax*cax + cay*cay;
+
+        // Skinny triangles between two segments that meet at a small input angle can't be improved
+        double shortest;
+        if(ab <= bc && ab <= ca) {
+            shortest = ab;
+            if(isBetweenSegments(a, b)) return false;
+        }
+        else if(bc <= ca) {
+            shortest = bc;
+            if(isBetweenSegments(b, c)) return false;
+        }
+        else {
+            shortest = ca;
+            if(isBetweenSegments(c, a)) return false;
+        }
+
+        // Stop before coordinates get too close for float precision
+        if(shortest < minEdgeLengthSquared)
+            return false;
+
+        // sin(minAngle) = shortest / (2 * circumradius), circumradius = |ab| |bc| |ca| / (2 cross)
+        return ab * bc * ca / shortest * sinMinAngleSquared > cross * cross;
+    }
+
+
+    private boolean isBetweenSegments(int u, int w) {
+        if(segStart[u] == NONE || segStart[w] == NONE)
+            return false;
+        if(segStart[u] == u || segStart[w] == w)
+            return false;
+        if(segStart[u] == segStart[w])
+            return false;
+
+        // Different segments that share an input vertex
+        return segStart[u] == segEnd[w] || segEnd[u] == segStart[w] || segEnd[u] == segEnd[w];
+    }
+
+
+    /**
+     * @return A boundary half-edge of the triangle whose diametral circle contains the opposite vertex, or NONE.
+     */
+    private int getEncroachedSegment(int t) {
+        for(int e=t*3; e<t*3+3; ++e) {
+            if(twin[e] == NONE) {
+                int apex = tv[prev(e)];
+                if(isEncroached(e, x[apex], y[apex]))
+                    return e;
+            }
+        }
+
+        return NONE;
+    }
+
+
+    /**
+     * Searches the boundary of the triangles whose circumcircle contains the point.
+     * These are the segments that would become visible from the point after insertion.
+     * @return A boundary half-edge whose diametral circle contains the point, or NONE.
+     */
+    private int getEncroachedSegment(int t, double vx, double vy) {
+        visitStamp++;
+        int size = 0;
+        cavity[size++] = t;
+        visited[t] = visitStamp;
+
+        while(size > 0) {
+            int current = cavity[--size];
+            for(int e=current*3; e<current*3+3; ++e) {
+                int f = twin[e];
+                if(f == NONE) {
+                    if(isEncroached(e, vx, vy))
+                        return e;
+                    continue;
+                }
+
+                int n = f / 3;
+                if(visited[n] == visitStamp)
+                    continue;
+
+                visited[n] = visitStamp;
+                if(inCircle(tv[n*3], tv[n*3+1], tv[n*3+2], vx, vy)) {
+                    if(size == cavity.length)
+                        cavity = Arrays.copyOf(cavity, size * 2);
+                    cavity[size++] = n;
+                }
+            }
+        }
+
+        return NONE;
+    }
+
+
+    private boolean isEncroached(int e, double vx, double vy) {
+        int a = tv[e];
+        int b = tv[next(e)];
+        return (x[a] - vx) * (x[b] - vx) + (y[a] - vy) * (y[b] - vy) < 0;
+    }
+
+
+    /**
+     * Splits a boundary segment in the middle. If only one end is an input vertex, the split is at a power of two
+     * distance from it (concentric shells), which prevents endless splitting near small input angles.
+     */
+    private void splitSegment(int e) {
+        int a = tv[e];
+        int b = tv[next(e)];
+
+        double dx = x[b] - x[a];
+        double dy = y[b] - y[a];
+        double t = 0.5;
+
+        boolean inputA = (segStart[a] == a);
+        boolean inputB = (segStart[b] == b);
+        if(inputA != inputB) {
+            double length = Math.sqrt(dx*dx + dy*dy);
+            double shell = Math.pow(2, Math.round(Math.log(length * 0.5) / Math.log(2)));
+            t = inputA ? shell / length : 1.0 - shell / length;
+        }
+
+        int v = createVertex();
+        x[v] = (float) (x[a] + dx*t);
+        y[v] = (float) (y[a] + dy*t);
+        interpolate(v, a, b, x[v], y[v]);
+
+        // Remember original segment
+        if(inputA && inputB) {
+            segStart[v] = a;
+            segEnd[v] = b;
+        }
+        else {
+            int s = inputA ? b : a;
+            segStart[v] = segStart[s];
+            segEnd[v] = segEnd[s];
+        }
+
+        if(numSplits*3 == splits.length)
+            splits = Arrays.copyOf(splits, splits.length * 2);
+        splits[numSplits*3]   = a;
+        splits[numSplits*3+1] = b;
+        splits[numSplits*3+2] = v;
+        numSplits++;
+
+        splitEdge(e, v);
+        legalize();
+    }
+
+
+    /**
+     * Finds the location of a point by walking from triangle t. Sets {@link #locateResult}.
+     * @return The triangle's first half-edge if inside, the edge if on an edge, or the crossed boundary edge if outside.
+     */
+    private int locate(int t, double vx, double vy) {
+        final int maxSteps = numTriangles + 3;
+
+        for(int step=0; step<maxSteps; ++step) {
+            int onEdge = NONE;
+            int numOnEdge = 0;
+            int exit = NONE;
+
+            // Vary first edge to prevent cycles
+            for(int k=0; k<3 && exit == NONE; ++k) {
+                int e = t*3 + (k + step) % 3;
+                int a = tv[e];
+                int b = tv[next(e)];
+
+                double o = orient(a, b, vx, vy);
+                double abx = x[b] - x[a];
+                double aby = y[b] - y[a];
+                double tolerance = ON_EDGE_EPSILON * (abx*abx + aby*aby);
+
+                if(o < -tolerance)
+                    exit = e;
+                else if(o <= tolerance) {
+                    onEdge = e;
+                    numOnEdge++;
+                }
+            }
+
+            if(exit != NONE) {
+                int f = twin[exit];
+                if(f == NONE) {
+                    locateResult = OUTSIDE;
+                    return exit;
+                }
+
+                t = f / 3;
+                continue;
+            }
+
+            if(numOnEdge == 0) {
+                locateResult = INSIDE;
+                return t*3;
+            }
+
+            locateResult = (numOnEdge == 1) ? ON_EDGE : ON_VERTEX;
+            return onEdge;
+        }
+
+        locateResult = ON_VERTEX;
+        return NONE;
+    }
+
+
+    /**
+     * Interpolates the 3D position on segment (a, b).
+     */
+    private void interpolate(int v, int a, int b, double vx, double vy) {
+        double dx = x[b] - x[a];
+        double dy = y[b] - y[a];
+        float t = (float) (((vx - x[a])*dx + (vy - y[a])*dy) / (dx*dx + dy*dy));
+
+        px[v] = px[a] + (px[b] - px[a]) * t;
+        py[v] = py[a] + (py[b] - py[a]) * t;
+        pz[v] = pz[a] + (pz[b] - pz[a]) * t;
+    }
+
+
+    /**
+     * Interpolates the 3D position inside triangle t using barycentric coordinates.
+     */
+    private void interpolate(int v, int t, double vx, double vy) {
+        int a = tv[t*3], b = tv[t*3+1], c = tv[t*3+2];
+        double area = orient(a, b, x[c], y[c]);
+        float wa = (float) (orient(b, c, vx, vy) / area);
+        float wb = (float) (orient(c, a, vx, vy) / area);
+        float wc = 1.0f - wa - wb;
+
+        px[v] = px[a]*wa + px[b]*wb + px[c]*wc;
+        py[v] = py[a]*wa + py[b]*wb + py[c]*wc;
+        pz[v] = pz[a]*wa + pz[b]*wb + pz[c]*wc;
+    }
+
+
+    //
+    // Output
+    //
+
+    private void createFaces(List<Face> store) {
+        // Create input vertices that were given as positions
+        for(int v=0; v<numInputVertices; ++v) {
+            if(vertices[v] == null && vertexEdge[v] != NONE)
+                vertices[v] = bmesh.createVertex(px[v], py[v], pz[v]);
+        }
+
+        // Split segments that are edges in the BMesh so adjacent faces receive the new vertices
+        for(int i=0; i<numSplits; ++i) {
+            Vertex a = vertices[splits[i*3]];
+            Vertex b = vertices[splits[i*3+1]];
+            int v = splits[i*3+2];
+
+            Edge edge = a.getEdgeTo(b);
+            vertices[v] = (edge != null) ? bmesh.splitEdge(edge) : bmesh.createVertex();
+            positions.set(vertices[v], px[v], py[v], pz[v]);
+        }
+
+        for(int v=numInputVertices; v<numVertices; ++v) {
+            if(vertices[v] == null)
+                vertices[v] = bmesh.createVertex(px[v], py[v], pz[v]);
+        }
+
+        for(int t=0; t<numTriangles; ++t) {
+            int e = t * 3;
+            Face face = bmesh.createFace(vertices[tv[e]], vertices[tv[e+1]], vertices[tv[e+2]]);
+            if(store != null)
+                store.add(face);
+        }
+    }
+}
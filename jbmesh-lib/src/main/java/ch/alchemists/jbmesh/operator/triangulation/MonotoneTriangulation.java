@@ -0,0 +1,325 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.triangulation;
+
+import java.util.Arrays;
+
+/**
+ * Splits polygons into monotone pieces along diagonals and triangulates the pieces.<br>
+ * Polygons are counterclockwise (holes clockwise) and linked by 'next'. Monotonicity is with respect
+ * to the same lexicographic order as in {@link TrapezoidTree}.
+ */
+class MonotoneTriangulation {
+    interface TriangleCallback {
+        void handleTriangle(int v1, int v2, int v3);
+    }
+
+
+    private static final double TWO_PI = 2.0 * Math.PI;
+
+    private float[] x, y;
+    private int[] next;
+    private TriangleCallback cb;
+
+    // Diagonals per vertex (compressed rows): Targets of vertex v are in [diagonalStart[v], diagonalStart[v+1])
+    private int[] diagonalStart = new int[1];
+    private int[] diagonalTarget = new int[0];
+    private boolean[] diagonalUsed = new boolean[0];
+    private boolean[] boundaryUsed = new boolean[0];
+
+    // Current monotone piece
+    private int[] face = new int[16];
+    private int[] sorted = new int[16];
+    private boolean[] leftChain = new boolean[16];
+    private int[] stack = new int[16];
+
+
+    MonotoneTriangulation() {}
+
+
+    /**
+     * @param vertices Indices of vertices that are part of the polygons.
+     * @param diagonals Pairs of vertex indices.
+     */
+    void triangulate(float[] x, float[] y, int[] next, int numVertices, int[] vertices, int numPolygonVertices,
+                     int[] diagonals, int numDiagonals, TriangleCallback cb) {
+        this.x = x;
+        this.y = y;
+        this.next = next;
+        this.cb = cb;
+
+        try {
+            buildDiagonals(numVertices, diagonals, numDiagonals);
+
+            for(int i=0; i<numPolygonVertices; ++i) {
+                int v = vertices[i];
+                if(!boundaryUsed[v])
+                    walkFace(v, -1);
+
+                for(int k=diagonalStart[v]; k<diagonalStart[v+1]; ++k) {
+                    if(!diagonalUsed[k])
+                        walkFace(v, k);
+                }
+            }
+        }
+        finally {
+            this.x = null;
+            this.y = null;
+            this.next = null;
+            this.cb = null;
+        }
+    }
+
+
+    private void buildDiagonals(int numVertices, int[] diagonals, int numDiagonals) {
+        if(diagonalStart.length < numVertices+1) {
+            diagonalStart = new int[numVertices+1];
+            boundaryUsed = new boolean[numVertices];
+        }
+
+        if(diagonalTarget.length < numDiagonals*2) {
+            diagonalTarget = new int[numDiagonals*2];
+            diagonalUsed = new boolean[numDiagonals*2];
+        }
+
+        Arrays.fill(diagonalStart, 0, numVertices+1, 0);
+        Arrays.fill(boundaryUsed, 0, numVertices, false);
+        Arrays.fill(diagonalUsed, 0, numDiagonals*2, false);
+
+        // Count per vertex and accumulate: diagonalStart[v+1] is the end of v's row
+        for(int i=0; i<numDiagonals*2; ++i)
+            diagonalStart[diagonals[i]+1]++;
+        for(int v=0; v<numVertices; ++v)
+            diagonalStart[v+1] += diagonalStart[v];
+
+        // Fill rows backwards: Afterwards diagonalStart[v+1] is the start of v's row
+        for(int i=0; i<numDiagonals; ++i) {
+            int a = diagonals[i*2];
+            int b = diagonals[i*2+1];
+            diagonalTarget[--diagonalStart[a+1]] = b;
+            diagonalTarget[--diagonalStart[b+1]] = a;
+        }
+
+        System.arraycopy(diagonalStart, 1, diagonalStart, 0, numVertices);
+        diagonalStart[numVertices] = numDiagonals*2;
+    }
+
+
+    /**
+     * @param diagonal Index of diagonal that starts the walk, or -1 for the boundary edge.
+     */
+    private void walkFace(int start, int diagonal) {
+        int size = 0;
+        int v = start;
+        int edge = diagonal;
+
+        do {
+            if(size == face.length)
+                face = Arrays.copyOf(face, size*2);
+            face[size++] = v;
+
+            int target;
+            if(edge < 0) {
+                boundaryUsed[v] = true;
+                target = next[v];
+            }
+            else {
+                diagonalUsed[edge] = true;
+                target = diagonalTarget[edge];
+            }
+
+            edge = nextEdge(target, v);
+            v = target;
+        } while(v != start || edge != diagonal);
+
+        triangulateMonotone(size);
+    }
+
+
+    /**
+     * @return Outgoing edge at v that follows the edge from 'from' to v with the face on the left side.
+     *         This is the first edge clockwise from the direction back to 'from'.
+     */
+    private int nextEdge(int v, int from) {
+        int first = diagonalStart[v];
+        int end = diagonalStart[v+1];
+        if(first == end)
+            return -1;
+
+        double refAngle = Math.atan2(y[from] - y[v], x[from] - x[v]);
+
+        int bestEdge = -1;
+        double bestDelta = clockwiseDelta(refAngle, next[v], v);
+
+        for(int k=first; k<end; ++k) {
+            double delta = clockwiseDelta(refAngle, diagonalTarget[k], v);
+            if(delta < bestDelta) {
+                bestDelta = delta;
+                bestEdge = k;
+            }
+        }
+
+        return bestEdge;
+    }
+
+
+    private double clockwiseDelta(double refAngle, int target, int v) {
+        double angle = Math.atan2(y[target] - y[v], x[target] - x[v]);
+        double delta = refAngle - angle;
+        if(delta <= 0)
+            delta += TWO_PI;
+        return delta;
+    }
+
+
+    private boolean isAbove(int a, int b) {
+        return TrapezoidTree.isAbove(x, y, a, b);
+    }
+
+
+    private void triangulateMonotone(int size) {
+        if(size < 3)
+            return;
+
+        if(size == 3) {
+            cb.handleTriangle(face[0], face[1], face[2]);
+            return;
+        }
+
+        if(sorted.length < size) {
+            sorted = new int[size];
+            leftChain = new boolean[size];
+            stack = new int[size];
+        }
+
+        // Find top and bottom
+        int top = 0, bottom = 0;
+        for(int i=1; i<size; ++i) {
+            if(isAbove(face[i], face[top]))
+                top = i;
+            if(isAbove(face[bottom], face[i]))
+                bottom = i;
+        }
+
+        // Merge chains: Going forward from top is the left chain of a counterclockwise polygon
+        int l = (top + 1) % size;
+        int r = (top + size - 1) % size;
+        sorted[0] = face[top];
+        leftChain[0] = false;
+
+        for(int i=1; i<size-1; ++i) {
+            boolean takeLeft;
+            if(l == bottom)
+                takeLeft = false;
+            else if(r == bottom)
+                takeLeft = true;
+            else
+                takeLeft = isAbove(face[l], face[r]);
+
+            if(takeLeft) {
+                sorted[i] = face[l];
+                leftChain[i] = true;
+                l = (l + 1) % size;
+            }
+            else {
+                sorted[i] = face[r];
+                leftChain[i] = false;
+                r = (r + size - 1) % size;
+            }
+        }
+
+        sorted[size-1] = face[bottom];
+
+        // Stack algorithm
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        stack[stackSize++] = 1;
+
+        for(int i=2; i<size-1; ++i) {
+            int v = sorted[i];
+            boolean left = leftChain[i];
+
+            if(left != leftChain[stack[stackSize-1]]) {
+                // Other chain: Fan to all vertices on stack
+                while(stackSize > 1) {
+                    int a = sorted[stack[--stackSize]];
+                    int b = sorted[stack[stackSize-1]];
+                    emitFan(v, a, b, left);
+                }
+
+                stackSize = 0;
+                stack[stackSize++] = i-1;
+                stack[stackSize++] = i;
+            }
+            else {
+                // Same chain: Cut off convex corners
+                int last = stack[--stackSize];
+                while(stackSize > 0) {
+                    int o = stack[stackSize-1];
+                    if(!emitIfConvex(sorted[o], sorted[last], v, left))
+                        break;
+                    last = stack[--stackSize];
+                }
+
+                stack[stackSize++] = last;
+                stack[stackSize++] = i;
+            }
+        }
+
+        // Bottom vertex connects to all remaining vertices on stack
+        int v = sorted[size-1];
+        boolean left = !leftChain[stack[stackSize-1]];
+        while(stackSize > 1) {
+            int a = sorted[stack[--stackSize]];
+            int b = sorted[stack[stackSize-1]];
+            emitFan(v, a, b, left);
+        }
+    }
+
+
+    /**
+     * @param a Lower vertex on the opposite chain.
+     * @param b Higher vertex on the opposite chain.
+     */
+    private void emitFan(int v, int a, int b, boolean left) {
+        if(left)
+            cb.handleTriangle(v, a, b);
+        else
+            cb.handleTriangle(v, b, a);
+    }
+
+
+    /**
+     * @param o Higher vertex on stack.
+     * @param last Lower vertex on stack.
+     */
+    private boolean emitIfConvex(int o, int last, int v, boolean left) {
+        if(left) {
+            // Going down the left chain: o -> last -> v must turn left
+            if(cross(o, last, v) <= 0)
+                return false;
+            cb.handleTriangle(o, last, v);
+        }
+        else {
+            // Going up the right chain: v -> last -> o must turn left
+            if(cross(v, last, o) <= 0)
+                return false;
+            cb.handleTriangle(v, last, o);
+        }
+
+        return true;
+    }
+
+
+    private double cross(int a, int b, int c) {
+        double abX = x[b] - x[a];
+        double abY = y[b] - y[a];
+        double bcX = x[c] - x[b];
+        double bcY = y[c] - y[b];
+        return abX*bcY - abY*bcX;
+    }
+}
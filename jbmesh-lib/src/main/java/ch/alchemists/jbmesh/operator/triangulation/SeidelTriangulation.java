@@ -1,70 +1,336 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
 package ch.alchemists.jbmesh.operator.triangulation;
 
 import ch.alchemists.jbmesh.data.BMeshAttribute;
 import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.operator.sweeptriang.SweepTriangulation;
+import ch.alchemists.jbmesh.operator.sweeptriang.SweepVertex;
 import ch.alchemists.jbmesh.structure.BMesh;
 import ch.alchemists.jbmesh.structure.Face;
 import ch.alchemists.jbmesh.structure.Loop;
 import ch.alchemists.jbmesh.structure.Vertex;
-import ch.alchemists.jbmesh.util.DebugVisual;
+import ch.alchemists.jbmesh.util.Func;
 import ch.alchemists.jbmesh.util.PlanarCoordinateSystem;
 import com.jme3.math.Vector2f;
 import com.jme3.math.Vector3f;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
 
+/**
+ * Seidel's randomized incremental triangulation. Runs in expected O(n log* n) time.<br>
+ * The segments are inserted into a trapezoidal decomposition in random order. Endpoints of the remaining segments
+ * are located again after each of log* n phases, so point location starts close to the result.
+ * Diagonals between the top and bottom vertex of inside trapezoids split the polygon into monotone pieces,
+ * which are then triangulated in linear time.<br>
+ * Usage is the same as {@link SweepTriangulation}: The first face is the outline, further faces with opposite winding are holes.
+ */
 public class SeidelTriangulation {
-    private final BMesh bmesh;
-    private final Vec3Attribute<Vertex> positions;
+    private static final float MIN_VERTEX_DISTANCE = 0.00001f;
+    private static final String INVALID_FACE = "Face needs at least 3 valid vertices.";
+    private static final long DEFAULT_SEED = 1234;
+
+    private SweepTriangulation.TriangleCallback cb;
+    private PlanarCoordinateSystem coordSys;
+    private PlanarCoordinateSystem fixedCoordSys;
+    private final Random random = new Random(DEFAULT_SEED);
+    private int nextFaceIndex = 0;
+
+    private int numVertices = 0;
+    private float[] x = new float[16], y = new float[16];
+    private int[] next = new int[16], prev = new int[16];
+    private SweepVertex[] sweepVertices = new SweepVertex[16];
+
+    private int numValid = 0;
+    private int[] valid = new int[16];
+
+    private int numDiagonals = 0;
+    private int[] diagonals = new int[16];
+
+    private final TrapezoidTree tree = new TrapezoidTree();
+    private final MonotoneTriangulation monotone = new MonotoneTriangulation();
+
+
+    public SeidelTriangulation() {}
+
+    public SeidelTriangulation(SweepTriangulation.TriangleCallback triangleCallback) {
+        this.cb = triangleCallback;
+    }
+
+
+    public void setTriangleCallback(SweepTriangulation.TriangleCallback triangleCallback) {
+        this.cb = triangleCallback;
+    }
+
+    public void setCoordinateSystem(PlanarCoordinateSystem coordSys) {
+        this.fixedCoordSys = coordSys;
+    }
+
+    /**
+     * Sets the seed for the random insertion order. The result only depends on the seed and the input.
+     */
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+    }
+
+
+    public void addFace(BMesh bmesh, Face face) {
+        addFaceWithLoops(bmesh, face.loops());
+    }
+
+    public void addFace(Vec3Attribute<Vertex> positions, Face face) {
+        addFaceWithLoops(positions, face.loops());
+    }
 
+    public void addFaceWithLoops(BMesh bmesh, Iterable<Loop> face) {
+        Vec3Attribute<Vertex> positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+        addFaceWithLoops(positions, face);
+    }
 
-    public SeidelTriangulation(BMesh bmesh) {
-        this.bmesh = bmesh;
-        this.positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+    public void addFaceWithLoops(Vec3Attribute<Vertex> positions, Iterable<Loop> face) {
+        addFace(face, (Loop loop, Vector3f store) -> positions.get(loop.vertex, store), loop -> loop.vertex);
     }
 
+    public void addFaceWithPositions(Iterable<Vector3f> face) {
+        addFace(face, (Vector3f v, Vector3f store) -> store.set(v), v -> null);
+    }
 
-    public void apply(Face face) {
-        System.out.println("SeidelTriangulation.apply ----------------------------------------------------");
 
-        PlanarCoordinateSystem coordSys = new PlanarCoordinateSystem().forFace(face, positions);
+    private <T> void addFace(Iterable<T> face, Func.MapVec3<T> positionMap, Func.MapVertex<T> vertexMap) {
+        if(coordSys == null)
+            coordSys = (fixedCoordSys != null) ? fixedCoordSys : new PlanarCoordinateSystem().forPolygon(face, positionMap);
 
-        ArrayList<Loop> loops = new ArrayList<>();
-        face.getLoops(loops);
+        final int start = numVertices;
+        Vector3f p = new Vector3f();
+        Vector2f projected = new Vector2f();
 
-        Random rnd = new Random(1234);
-        Collections.shuffle(loops, rnd);
+        Iterator<T> it = face.iterator();
+        while(it.hasNext()) {
+            T ele = it.next();
+            if(numVertices == x.length)
+                grow(numVertices * 2);
 
-        DebugVisual.clear("Seidel");
-        DebugVisual.setPointTransformation("Seidel", p -> {
-            return coordSys.unproject(new Vector2f(p.x, p.y));
-        });
+            int i = numVertices++;
+            coordSys.project(positionMap.get(ele, p), projected);
+            x[i] = projected.x;
+            y[i] = projected.y;
+            prev[i] = i-1;
+            next[i] = i+1;
+            sweepVertices[i] = new SweepVertex(vertexMap.get(ele), i-start, nextFaceIndex);
+        }
 
-        TrapezoidTree tree = new TrapezoidTree();
-        tree.printTree();
+        if(numVertices - start < 3) {
+            reset();
+            throw new IllegalArgumentException(INVALID_FACE);
+        }
 
-        Vector3f p0 = new Vector3f();
-        Vector3f p1 = new Vector3f();
+        prev[start] = numVertices-1;
+        next[numVertices-1] = start;
 
-        for(Loop l : loops) {
-            DebugVisual.next("Seidel");
+        prepareVertices(start);
+        nextFaceIndex++;
+    }
 
-            positions.get(l.edge.vertex0, p0);
-            Vector2f v0 = coordSys.project(p0);
 
-            positions.get(l.edge.vertex1, p1);
-            Vector2f v1 = coordSys.project(p1);
+    private void grow(int capacity) {
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        next = Arrays.copyOf(next, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        sweepVertices = Arrays.copyOf(sweepVertices, capacity);
+        valid = Arrays.copyOf(valid, capacity);
+    }
+
+
+    /**
+     * Removes degenerate vertices, same as in SweepTriangulation. Adds at least 3 vertices or none at all.
+     */
+    private void prepareVertices(int first) {
+        int v = first;
+        int added = 0;
 
-            System.out.println("Adding Edge " + p0 + " -> " + p1 + " (" + v0 + " -> " + v1 + ")");
-            tree.addEdge(v0, v1);
+        while(true) {
+            if(isValid(v)) {
+                valid[numValid++] = v;
+                added++;
+                v = next[v];
+            }
+            else {
+                int vRemoved = v;
+                v = removeLink(v);
 
-            tree.printTree();
+                // When the sentinel ('first') was removed, we have to set a new one
+                if(vRemoved == first) {
+                    first = v;
 
-            //break;
+                    // Skip break condition below. But if only one vertex remains, it will break below.
+                    if(v != next[v])
+                        continue;
+                }
+            }
+
+            // Loop condition: Check if first element is reached again
+            if(v == first)
+                break;
         }
 
-        //System.out.println("=== Finish ===");
-        //tree.printTree();
+        if(added < 3) {
+            reset();
+            throw new IllegalArgumentException(INVALID_FACE);
+        }
+    }
+
+
+    private boolean isValid(int v) {
+        int p = prev[v];
+        int n = next[v];
+
+        // Degenerate because at same position
+        if(Math.abs(x[v] - x[p]) <= MIN_VERTEX_DISTANCE && Math.abs(y[v] - y[p]) <= MIN_VERTEX_DISTANCE)
+            return false;
+
+        float prevX = x[p] - x[v];
+        float prevY = y[p] - y[v];
+        float nextX = x[n] - x[v];
+        float nextY = y[n] - y[v];
+        float det = prevX*nextY - prevY*nextX;
+
+        // Degenerate because neighbor edges are collinear and point to same side
+        return Math.abs(det) >= 0.000001f || (prevX*nextX + prevY*nextY) <= 0;
+    }
+
+
+    private int removeLink(int v) {
+        next[prev[v]] = next[v];
+        prev[next[v]] = prev[v];
+        return next[v];
+    }
+
+
+    public void triangulate() {
+        if(numValid < 3) {
+            reset();
+            throw new IllegalStateException("Triangulation needs a face with at least 3 valid vertices");
+        }
+
+        if(cb == null) {
+            reset();
+            throw new IllegalStateException("Missing TriangleCallback");
+        }
+
+        try {
+            buildTrapezoids();
+            collectDiagonals();
+            monotone.triangulate(x, y, next, numVertices, valid, numValid, diagonals, numDiagonals,
+                    (v1, v2, v3) -> cb.handleTriangle(sweepVertices[v1], sweepVertices[v2], sweepVertices[v3]));
+        }
+        finally {
+            tree.clear();
+            reset();
+        }
+    }
+
+
+    private void reset() {
+        coordSys = null;
+        nextFaceIndex = 0;
+        numVertices = 0;
+        numValid = 0;
+        numDiagonals = 0;
+        Arrays.fill(sweepVertices, null);
+    }
+
+
+    private void buildTrapezoids() {
+        tree.init(x, y, next, numVertices);
+
+        // Random insertion order. Segment i goes from valid vertex i to next[i].
+        int[] segments = Arrays.copyOf(valid, numValid);
+        for(int i=segments.length-1; i>0; --i) {
+            int k = random.nextInt(i+1);
+            int temp = segments[i];
+            segments[i] = segments[k];
+            segments[k] = temp;
+        }
+
+        final int n = segments.length;
+        final int phases = logStar(n);
+        int i = 0;
+
+        for(int h=1; h<=phases; ++h) {
+            int end = Math.min(phaseEnd(n, h), n);
+            for(; i<end; ++i)
+                tree.addSegment(segments[i]);
+
+            tree.updateRoots(segments, i, n);
+        }
+
+        for(; i<n; ++i)
+            tree.addSegment(segments[i]);
+    }
+
+
+    /**
+     * @return Number of times log2 must be applied to n until the result is 1 or less.
+     */
+    static int logStar(int n) {
+        double v = n;
+        int i = 0;
+        while(v >= 1) {
+            v = Math.log(v) / Math.log(2);
+            i++;
+        }
+
+        return i-1;
+    }
+
+
+    /**
+     * @return Number of segments inserted after phase h: ceil(n / log^(h) n)
+     */
+    static int phaseEnd(int n, int h) {
+        double v = n;
+        for(int i=0; i<h; ++i)
+            v = Math.log(v) / Math.log(2);
+
+        return (int) Math.ceil(n / v);
+    }
+
+
+    /**
+     * Adds a diagonal between top and bottom of each inside trapezoid, unless they are connected by a polygon edge.
+     */
+    private void collectDiagonals() {
+        List<Trapezoid> trapezoids = tree.getTrapezoids();
+        for(int i=0; i<trapezoids.size(); ++i) {
+            Trapezoid t = trapezoids.get(i);
+            if(!t.active || t.left == Trapezoid.NONE || t.right == Trapezoid.NONE)
+                continue;
+
+            // Inside of counterclockwise polygons is on the right of downwards segments
+            if(!tree.isDownwards(t.left))
+                continue;
+
+            if(isEdge(t.left, t.top, t.bottom) || isEdge(t.right, t.top, t.bottom))
+                continue;
+
+            if(numDiagonals*2 == diagonals.length)
+                diagonals = Arrays.copyOf(diagonals, diagonals.length * 2);
+
+            diagonals[numDiagonals*2]   = t.top;
+            diagonals[numDiagonals*2+1] = t.bottom;
+            numDiagonals++;
+        }
+    }
+
+
+    private boolean isEdge(int segment, int top, int bottom) {
+        return tree.high(segment) == top && tree.low(segment) == bottom;
     }
 }
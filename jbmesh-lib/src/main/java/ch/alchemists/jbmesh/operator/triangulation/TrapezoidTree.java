@@ -1,320 +1,440 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
 package ch.alchemists.jbmesh.operator.triangulation;
 
-import ch.alchemists.jbmesh.util.DebugVisual;
-import com.jme3.math.Vector2f;
-import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+/**
+ * Trapezoidal decomposition with a search structure (DAG) for point location.<br>
+ * Vertices are ordered lexicographically by y, then x. This is equivalent to a tiny rotation
+ * and removes the special cases for vertices at the same height and for horizontal segments.
+ * The segments must form simple polygons and are inserted in random order.
+ */
 class TrapezoidTree {
-    private static final float EPSILON = 0.0001f;
+    private static final int NONE = Trapezoid.NONE;
+
+    static class Node {
+        enum Type { Sink, VertexSplit, SegmentSplit }
+
+        Type type = Type.Sink;
+        int key = NONE;         // Vertex or segment
+        Node aboveLeft;         // Above the vertex or left of the segment
+        Node belowRight;        // Below the vertex or right of the segment
+        Trapezoid trapezoid;    // Only for sinks
 
-    interface Node {
-        Node addVertex(Vector2f v);
-        void addEdge(Vector2f higher, Vector2f lower);
+        // Copy of coordinates for faster point location: Vertex position, or higher endpoint and direction of segment
+        int high, low;
+        float px, py;
+        float dx, dy;
 
-        default void print(int level) {
-            TrapezoidTree.print(level, getClass().getSimpleName());
+        Node(Trapezoid trapezoid) {
+            this.trapezoid = trapezoid;
+            trapezoid.sink = this;
         }
     }
 
-    private static abstract class SplitNode implements Node {
-        public Node rightHigh; // above
-        public Node leftLow;  // below
 
-        protected SplitNode() {}
 
-        public final void changeChild(RegionNode from, SplitNode to) {
-            if(from == leftLow)
-                leftLow = to;
-            else {
-                assert from == rightHigh;
-                rightHigh = to;
-            }
-        }
+    private float[] x, y;
+    private int[] next;
+    private int[] segmentHigh = new int[0];
+    private int[] segmentLow  = new int[0];
 
-        @Override
-        public void print(int level) {
-            TrapezoidTree.print(level, getClass().getSimpleName());
-            leftLow.print(level + 1);
-            rightHigh.print(level + 1);
-        }
-    }
+    private Node root;
+    private final List<Trapezoid> trapezoids = new ArrayList<>();
 
-    static class VertexSplitNode extends SplitNode {
-        final Vector2f vertex = new Vector2f();
+    private boolean[] inserted = new boolean[0];
+    private Node[] rootHigh = new Node[0]; // Per segment: Location of the higher endpoint
+    private Node[] rootLow  = new Node[0]; // Per segment: Location of the lower endpoint
 
-        public VertexSplitNode(Vector2f v) {
-            vertex.set(v);
-        }
 
-        @Override
-        public Node addVertex(Vector2f v) {
-            /*if(v.isSimilar(vertex, EPSILON))
-                return this;*/
+    TrapezoidTree() {}
 
-            /*if(v.y > vertex.y)
-                return rightHigh.addVertex(v);
-            else
-                return leftLow.addVertex(v);*/
 
-            if(v.y > vertex.y)
-                return rightHigh.addVertex(v);
-            if(v.y < vertex.y)
-                return leftLow.addVertex(v);
+    /**
+     * @param next Polygon links. Segment i goes from vertex i to vertex next[i].
+     */
+    void init(float[] x, float[] y, int[] next, int numVertices) {
+        this.x = x;
+        this.y = y;
+        this.next = next;
 
-            if(v.x > vertex.x)
-                return rightHigh.addVertex(v);
-            else if(v.x < vertex.x)
-                return leftLow.addVertex(v);
+        trapezoids.clear();
+        root = createTrapezoid().sink;
 
-            return this;
+        if(inserted.length < numVertices) {
+            inserted = new boolean[numVertices];
+            rootHigh = new Node[numVertices];
+            rootLow  = new Node[numVertices];
+            segmentHigh = new int[numVertices];
+            segmentLow  = new int[numVertices];
         }
 
-        @Override
-        public void addEdge(Vector2f higher, Vector2f lower) {
-            if(higher.y > vertex.y)
-                rightHigh.addEdge(higher, lower);
-            if(lower.y < vertex.y)
-                leftLow.addEdge(higher, lower);
+        for(int i=0; i<numVertices; ++i) {
+            int end = next[i];
+            boolean down = isAbove(i, end);
+            segmentHigh[i] = down ? i : end;
+            segmentLow[i]  = down ? end : i;
         }
 
-        @Override
-        public void print(int level) {
-            super.print(level);
-            DebugVisual.get("Seidel").addLine(new Vector3f(-100, vertex.y, 0), new Vector3f(100, vertex.y, 0));
-        }
+        Arrays.fill(inserted, 0, numVertices, false);
+        Arrays.fill(rootHigh, 0, numVertices, root);
+        Arrays.fill(rootLow, 0, numVertices, root);
     }
 
-    static class EdgeSplitNode extends SplitNode {
-        final Vector2f higher = new Vector2f(); // Start
-        final Vector2f lower  = new Vector2f(); // End
 
-        public EdgeSplitNode(Vector2f higher, Vector2f lower) {
-            this.higher.set(higher);
-            this.lower.set(lower);
-        }
+    void clear() {
+        x = null;
+        y = null;
+        next = null;
+        root = null;
+        trapezoids.clear();
+        Arrays.fill(rootHigh, null);
+        Arrays.fill(rootLow, null);
+    }
 
-        @Override
-        public Node addVertex(Vector2f v) {
-            Vector2f dir = lower.subtract(higher);
-            Vector2f rel = v.subtract(higher);
 
-            float det = dir.determinant(rel);
-            /*if(det <= 0)
-                return leftLow.addVertex(v);
-            else
-                return rightHigh.addVertex(v);*/
+    /**
+     * @return All trapezoids, including replaced ones that are no longer active.
+     */
+    List<Trapezoid> getTrapezoids() {
+        return trapezoids;
+    }
 
-            if(det < 0)
-                return leftLow.addVertex(v);
-            else if(det > 0)
-                return rightHigh.addVertex(v);
 
-            return null; // TODO: null?
-        }
+    private Trapezoid createTrapezoid() {
+        Trapezoid trapezoid = new Trapezoid();
+        new Node(trapezoid);
+        trapezoids.add(trapezoid);
+        return trapezoid;
+    }
 
-        @Override
-        public void addEdge(Vector2f higher, Vector2f lower) {
-            /*Vector2f nodeDir   = this.lower.subtract(this.higher);
-            Vector2f relHigher = higher.subtract(this.higher);
-            Vector2f relLower  = lower.subtract(this.higher);
 
-            float detHigher = nodeDir.determinant(relHigher);
-            float detLower  = nodeDir.determinant(relLower);
+    boolean isAbove(int a, int b) {
+        return isAbove(x, y, a, b);
+    }
 
-            //if(detHigher <= 0 || detLower <= 0)
-            if(detHigher < 0 || detLower < 0)
-                leftLow.addEdge(higher, lower);
-            if(detHigher > 0 || detLower > 0)
-                rightHigh.addEdge(higher, lower);*/
+    /**
+     * Lexicographic order by y, then x.
+     */
+    static boolean isAbove(float[] x, float[] y, int a, int b) {
+        if(y[a] > y[b])
+            return true;
+        if(y[a] < y[b])
+            return false;
+
+        if(x[a] > x[b])
+            return true;
+        if(x[a] < x[b])
+            return false;
+
+        // Vertices at the same position
+        return a > b;
+    }
 
-            Vector2f highCut = new Vector2f();
-            highCut.y = Math.min(higher.y, this.higher.y);
-            highCut.x = xCoordsAt(highCut.y, higher, lower);
 
-            Vector2f lowCut = new Vector2f();
-            lowCut.y = Math.max(lower.y, this.lower.y);
-            lowCut.x = xCoordsAt(lowCut.y, higher, lower);
+    int high(int segment) {
+        return segmentHigh[segment];
+    }
 
-            Vector2f nodeDir   = this.lower.subtract(this.higher);
-            Vector2f relHigher = highCut.subtract(this.higher);
-            Vector2f relLower  = lowCut.subtract(this.higher);
+    int low(int segment) {
+        return segmentLow[segment];
+    }
 
-            float detHigher = nodeDir.determinant(relHigher);
-            float detLower  = nodeDir.determinant(relLower);
+    /**
+     * @return Whether the segment goes downwards. The inside of a counterclockwise polygon is on the right of such segments.
+     */
+    boolean isDownwards(int segment) {
+        return segmentHigh[segment] == segment;
+    }
 
-            if(detHigher < 0 || detLower < 0)
-                leftLow.addEdge(higher, lower);
-            if(detHigher > 0 || detLower > 0)
-                rightHigh.addEdge(higher, lower);
-        }
 
-        public boolean pointIsLeft(Vector2f p) {
-            Vector2f nodeDir = lower.subtract(higher);
-            Vector2f rel = p.subtract(higher);
-            float det = nodeDir.determinant(rel);
-            return det <= 0; // Left = smaller x coords
-        }
+    /**
+     * @return Whether vertex v is on the right side of the segment.
+     */
+    boolean isRightOf(int v, int segment) {
+        int h = high(segment);
+        int l = low(segment);
 
-        public float xCoordsAt(float y) {
-            return xCoordsAt(y, higher, lower);
-        }
+        double dirX = x[l] - x[h];
+        double dirY = y[l] - y[h];
+        double relX = x[v] - x[h];
+        double relY = y[v] - y[h];
+        return dirX*relY - dirY*relX > 0;
+    }
 
-        public static float xCoordsAt(float y, Vector2f higher, Vector2f lower) {
-            Vector2f segDiff = lower.subtract(higher);
-            if(Math.abs(segDiff.y) < 0.0001f) {
-                return higher.x;
-            }
 
-            float xChange = segDiff.x / -segDiff.y;
-            float yDiff = higher.y - y;
-            float x = higher.x + yDiff*xChange;
-            return x;
-        }
+    /**
+     * Finds the trapezoid that contains vertex v. If v was already inserted,
+     * finds the trapezoid that contains the start of the segment from v downwards to vertex 'other'.
+     */
+    private Trapezoid locate(Node node, int v, int other) {
+        final float vx = x[v];
+        final float vy = y[v];
 
-        @Override
-        public void print(int level) {
-            super.print(level);
-            DebugVisual.get("Seidel").addLine(new Vector3f(higher.x, higher.y, 0), new Vector3f(lower.x, lower.y, 0));
-        }
+        while(node.type != Node.Type.Sink) {
+            if(node.type == Node.Type.VertexSplit) {
+                boolean above = (vy > node.py) || (vy == node.py && (vx > node.px || (vx == node.px && v > node.key)));
+                node = above ? node.aboveLeft : node.belowRight;
+            }
+            else {
+                double cross;
+                if(v == node.high || v == node.low)
+                    cross = (double)node.dx * (y[other] - node.py) - (double)node.dy * (x[other] - node.px);
+                else
+                    cross = (double)node.dx * (vy - node.py) - (double)node.dy * (vx - node.px);
 
-        @Override
-        public String toString() {
-            return "EdgeSplitNode[" + higher + " -> " + lower + "]";
+                node = (cross > 0) ? node.belowRight : node.aboveLeft;
+            }
         }
-    }
 
-    class RegionNode implements Node {
-        private final int regionNr;
-        private SplitNode parent = null;
+        return node.trapezoid;
+    }
 
-        private final Trapezoid trapezoid;
 
+    /**
+     * Locates the endpoints of segments that are not inserted yet, starting at the previous location.
+     * Later queries start from there, which makes point location faster.
+     */
+    void updateRoots(int[] segments, int start, int end) {
+        for(int i=start; i<end; ++i) {
+            int segment = segments[i];
+            int h = high(segment);
+            int l = low(segment);
 
-        public RegionNode(SplitNode parent, Trapezoid trapezoid) {
-            regionNr = nextRegionNr++;
-            this.parent = parent;
-            this.trapezoid = trapezoid;
+            rootHigh[segment] = locate(rootHigh[segment], h, l).sink;
+            if(!inserted[l])
+                rootLow[segment] = locate(rootLow[segment], l, h).sink;
         }
+    }
 
-        @Override
-        public Node addVertex(Vector2f v) {
-            if(trapezoid.vertexExists(v))
-                return this;
-
-            Vector3f trans = DebugVisual.get("Seidel").transform(new Vector3f(v.x, v.y, 0));
-            System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>> Add Vertex " + trans + " to " + this);
-
-            VertexSplitNode split = new VertexSplitNode(v);
-            Trapezoid newTrapez = trapezoid.splitByVertex(v);
 
-            split.leftLow = new RegionNode(split, newTrapez); // below
-            split.rightHigh = this; // above
+    void addSegment(int segment) {
+        final int h = high(segment);
+        final int l = low(segment);
 
-            if(parent == null)
-                root = split;
-            else
-                parent.changeChild(this, split);
+        if(!inserted[h]) {
+            splitByVertex(locate(rootHigh[segment], h, l), h);
+            inserted[h] = true;
+        }
 
-            parent = split;
-            return split.leftLow; // Return new region
+        if(!inserted[l]) {
+            splitByVertex(locate(rootLow[segment], l, h), l);
+            inserted[l] = true;
         }
 
-        @Override
-        public void addEdge(Vector2f higher, Vector2f lower) {
-            Vector3f highTrans = DebugVisual.get("Seidel").transform(new Vector3f(higher.x, higher.y, 0));
-            Vector3f lowTrans  = DebugVisual.get("Seidel").transform(new Vector3f(lower.x, lower.y, 0));
-            System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>> Add Edge " + highTrans + " -> " + lowTrans + " to " + this);
+        Trapezoid t = locate(rootHigh[segment], h, l);
+        Trapezoid prev = null;
+        Trapezoid prevLeft = null, prevRight = null;
 
-            EdgeSplitNode split = new EdgeSplitNode(higher, lower);
-            Trapezoid newTrapez = trapezoid.splitByEdge(split);
+        // Thread segment from top to bottom through the trapezoids it intersects
+        while(true) {
+            Trapezoid left, right;
 
-            split.leftLow = this;
-            split.rightHigh = new RegionNode(split, newTrapez);
+            if(prev == null) {
+                left = createTrapezoid();
+                left.top = h;
+                left.left = t.left;
+                left.right = segment;
 
-            if(trapezoid.mergeUp()) {
-                System.out.println("........................................................................ merged 1");
+                right = createTrapezoid();
+                right.top = h;
+                right.left = segment;
+                right.right = t.right;
+
+                connectTop(t, left, right, h);
+            }
+            else if(isRightOf(t.top, segment)) {
+                // Wall through t.top is cut on the left: Left side continues
+                left = prevLeft;
+                right = createTrapezoid();
+                right.top = t.top;
+                right.left = segment;
+                right.right = t.right;
+
+                // Lower neighbors of previous: [right, prev.lr]
+                prevRight.bottom = t.top;
+                prevRight.ll = right;
+                prevRight.lr = prev.lr;
+                if(prev.lr != null)
+                    prev.lr.replaceUpper(prev, prevRight);
+
+                // Upper neighbors of new: [prevRight, t.ur]
+                right.ul = prevRight;
+                right.ur = t.ur;
+                if(t.ur != null)
+                    t.ur.replaceLower(t, right);
             }
-            if(newTrapez.mergeUp()) {
-                System.out.println("........................................................................ merged 2");
+            else {
+                // Wall through t.top is cut on the right: Right side continues
+                right = prevRight;
+                left = createTrapezoid();
+                left.top = t.top;
+                left.left = t.left;
+                left.right = segment;
+
+                // Lower neighbors of previous: [prev.ll, left]
+                prevLeft.bottom = t.top;
+                if(prev.lr != null) {
+                    prevLeft.ll = prev.ll;
+                    prevLeft.lr = left;
+                    prev.ll.replaceUpper(prev, prevLeft);
+                }
+                else
+                    prevLeft.ll = left;
+
+                // Upper neighbors of new: [t.ul, prevLeft]
+                if(t.ur != null) {
+                    left.ul = t.ul;
+                    left.ur = prevLeft;
+                    t.ul.replaceLower(t, left);
+                }
+                else
+                    left.ul = prevLeft;
+            }
+
+            // Replace t in search structure
+            Node node = t.sink;
+            node.type = Node.Type.SegmentSplit;
+            node.key = segment;
+            node.high = h;
+            node.low = l;
+            node.px = x[h];
+            node.py = y[h];
+            node.dx = x[l] - x[h];
+            node.dy = y[l] - y[h];
+            node.aboveLeft = left.sink;
+            node.belowRight = right.sink;
+            node.trapezoid = null;
+            t.active = false;
+
+            if(t.bottom == l) {
+                left.bottom = l;
+                right.bottom = l;
+                connectBottom(t, left, right, l);
+                break;
             }
 
-            if(parent == null)
-                root = split;
+            // Continue below
+            Trapezoid below;
+            if(t.lr == null)
+                below = t.ll;
             else
-                parent.changeChild(this, split);
+                below = isRightOf(t.bottom, segment) ? t.ll : t.lr;
 
-            parent = split;
-        }
+            if(below == null)
+                throw new IllegalArgumentException("Polygon is not simple");
 
-        @Override
-        public void print(int level) {
-            TrapezoidTree.print(level, "RegionNode[" + regionNr + "]");
-            trapezoid.addDebugVis(regionNr);
-        }
-
-        @Override
-        public String toString() {
-            return "RegionNode[" + regionNr + "]";
+            prev = t;
+            prevLeft = left;
+            prevRight = right;
+            t = below;
         }
     }
 
 
-
-    private Node root;
-    private int nextRegionNr = 1;
-
-    public TrapezoidTree() {
-        Trapezoid trapezoid = new Trapezoid();
-        trapezoid.makeInfinite();
-
-        this.root = new RegionNode(null, trapezoid);
+    private void splitByVertex(Trapezoid t, int v) {
+        Trapezoid below = createTrapezoid();
+        below.top = v;
+        below.bottom = t.bottom;
+        below.left = t.left;
+        below.right = t.right;
+
+        below.ll = t.ll;
+        below.lr = t.lr;
+        if(t.ll != null)
+            t.ll.replaceUpper(t, below);
+        if(t.lr != null)
+            t.lr.replaceUpper(t, below);
+
+        below.ul = t;
+
+        // Replace sink of t with split node and keep t as the part above
+        Node node = t.sink;
+        node.type = Node.Type.VertexSplit;
+        node.key = v;
+        node.px = x[v];
+        node.py = y[v];
+        node.belowRight = below.sink;
+        node.trapezoid = null;
+        node.aboveLeft = new Node(t);
+
+        t.bottom = v;
+        t.ll = below;
+        t.lr = null;
     }
 
-    public void addEdge(Vector2f v1, Vector2f v2) {
-        System.out.println("TrapezoidTree.addEdge() ---------------------------------------------------------------------------");
 
-        if(v1.y == v2.y) {
-            System.out.println("Ignoring edge: Equal Y values");
+    private void connectTop(Trapezoid t, Trapezoid left, Trapezoid right, int h) {
+        // Vertex lies inside the upper wall, segments end there from above
+        if(t.ur != null) {
+            left.ul = t.ul;
+            right.ul = t.ur;
+            t.ul.replaceLower(t, left);
+            t.ur.replaceLower(t, right);
             return;
         }
 
-        if(v1.y > v2.y)
-            addEdgeInternal(v1, v2);
-        else if(v1.y < v2.y)
-            addEdgeInternal(v2, v1);
+        Trapezoid above = t.ul;
+        assert above != null;
+
+        // Segment starts at left corner: New left trapezoid has no upper neighbor
+        if(t.left != NONE && high(t.left) == h) {
+            right.ul = above;
+            above.replaceLower(t, right);
+        }
+        // Segment starts at right corner
+        else if(t.right != NONE && high(t.right) == h) {
+            left.ul = above;
+            above.replaceLower(t, left);
+        }
+        // New vertex without other segments: Upper wall is split
         else {
-            if(v1.x > v2.x)
-                addEdgeInternal(v1, v2);
-            else
-                addEdgeInternal(v2, v1);
+            assert above.ll == t && above.lr == null;
+            left.ul = above;
+            right.ul = above;
+            above.ll = left;
+            above.lr = right;
         }
     }
 
-    private void addEdgeInternal(Vector2f higher, Vector2f lower) {
-        Node upperBound = root.addVertex(higher);
-        //System.out.println("=== Added higher: " + higher);
-        //printTree();
-
-        Node lowerBound = root.addVertex(lower);
-        //System.out.println("=== Added lower: " + lower);
-        //printTree();
-
-        root.addEdge(higher, lower);
-        //System.out.println("=== Added edge");
-        //printTree();
-    }
 
+    private void connectBottom(Trapezoid t, Trapezoid left, Trapezoid right, int l) {
+        // Vertex lies inside the lower wall, segments start there going down
+        if(t.lr != null) {
+            left.ll = t.ll;
+            right.ll = t.lr;
+            t.ll.replaceUpper(t, left);
+            t.lr.replaceUpper(t, right);
+            return;
+        }
 
-    public void printTree() {
-        root.print(0);
-    }
-
-    private static void print(int level, String name) {
-        String str = "";
-        for(int i=0; i<level; ++i)
-            str = "·   " + str;
-        str += name;
+        Trapezoid below = t.ll;
+        assert below != null;
 
-        System.out.println(str);
+        // Segment ends at left corner: New left trapezoid has no lower neighbor
+        if(t.left != NONE && low(t.left) == l) {
+            right.ll = below;
+            below.replaceUpper(t, right);
+        }
+        // Segment ends at right corner
+        else if(t.right != NONE && low(t.right) == l) {
+            left.ll = below;
+            below.replaceUpper(t, left);
+        }
+        // New vertex without other segments: Lower wall is split
+        else {
+            assert below.ul == t && below.ur == null;
+            left.ll = below;
+            right.ll = below;
+            below.ul = left;
+            below.ur = right;
+        }
     }
 }
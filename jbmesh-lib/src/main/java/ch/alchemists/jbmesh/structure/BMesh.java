@@ -239,6 +239,60 @@ public class BMesh {
     }
 
 
+    /**
+     * Creates a new face from the given vertices and existing edges. The order of the vertices define the winding order of the face.<br>
+     * Unlike {@link #createFace(List<Vertex>)}, this doesn't search the disk cycles for existing edges,
+     * which makes it suitable for building large meshes from precomputed index arrays.
+     * The arrays are not modified and can be reused for the next call.
+     * @param faceVertices
+     * @param faceEdges The edge at index <i>i</i> must connect the vertices at index <i>i</i> and <i>i+1</i>.
+     * @return A new Face.
+     */
+    public Face createFace(Vertex[] faceVertices, Edge[] faceEdges) {
+        final int numVertices = faceVertices.length;
+        if(numVertices < 3)
+            throw new IllegalArgumentException("A face needs at least 3 vertices");
+        if(faceEdges.length != numVertices)
+            throw new IllegalArgumentException("Number of edges does not match number of vertices");
+
+        try {
+            assert tempLoops.isEmpty();
+            for(int i=0; i<numVertices; ++i) {
+                Objects.requireNonNull(faceVertices[i]);
+                if(!faceEdges[i].connects(faceVertices[i], faceVertices[(i+1) % numVertices]))
+                    throw new IllegalArgumentException("Edge at index " + i + " does not connect the vertices");
+                tempLoops.add(loopData.create());
+            }
+
+            Face face = faceData.create();
+            face.loop = tempLoops.get(0);
+
+            Loop prevLoop = tempLoops.get(numVertices-1);
+            for(int i=0; i<numVertices; ++i) {
+                Loop loop = tempLoops.get(i);
+                loop.face = face;
+                loop.edge = faceEdges[i];
+                loop.vertex = faceVertices[i];
+                loop.nextFaceLoop = tempLoops.get((i+1) % numVertices);
+                loop.prevFaceLoop = prevLoop;
+                faceEdges[i].addLoop(loop);
+
+                prevLoop = loop;
+            }
+
+            return face;
+        }
+        catch(Throwable t) {
+            for(Loop loop : tempLoops)
+                loopData.destroy(loop);
+            throw t;
+        }
+        finally {
+            tempLoops.clear();
+        }
+    }
+
+
     /**
      * Removes the given face from the structure.
      * @param face
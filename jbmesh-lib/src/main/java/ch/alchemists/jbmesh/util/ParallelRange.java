@@ -0,0 +1,77 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits an index range into chunks and processes them on the common ForkJoinPool.<br>
+ * The function must only write to data that is exclusively owned by the indices of its chunk.
+ */
+public final class ParallelRange {
+    public static final int DEFAULT_MIN_CHUNK_SIZE = 2048;
+
+    @FunctionalInterface
+    public interface RangeFunc {
+        /**
+         * @param start First index (inclusive).
+         * @param end Last index (exclusive).
+         */
+        void apply(int start, int end);
+    }
+
+
+    private ParallelRange() {}
+
+
+    public static void forEach(int size, RangeFunc func) {
+        forEach(size, DEFAULT_MIN_CHUNK_SIZE, func);
+    }
+
+    public static void forEach(int size, int minChunkSize, RangeFunc func) {
+        if(size <= 0)
+            return;
+
+        minChunkSize = Math.max(minChunkSize, 1);
+        if(size <= minChunkSize || ForkJoinPool.getCommonPoolParallelism() <= 1) {
+            func.apply(0, size);
+            return;
+        }
+
+        // Aim for a few chunks per thread so work stealing can balance uneven chunks
+        int numChunks = ForkJoinPool.getCommonPoolParallelism() * 4;
+        int chunkSize = Math.max(minChunkSize, (size + numChunks - 1) / numChunks);
+        ForkJoinPool.commonPool().invoke(new RangeAction(func, 0, size, chunkSize));
+    }
+
+
+    private static class RangeAction extends RecursiveAction {
+        private final RangeFunc func;
+        private final int start;
+        private final int end;
+        private final int chunkSize;
+
+        private RangeAction(RangeFunc func, int start, int end, int chunkSize) {
+            this.func = func;
+            this.start = start;
+            this.end = end;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            if(end - start <= chunkSize) {
+                func.apply(start, end);
+                return;
+            }
+
+            int mid = (start + end) >>> 1;
+            invokeAll(new RangeAction(func, start, mid, chunkSize), new RangeAction(func, mid, end, chunkSize));
+        }
+    }
+}
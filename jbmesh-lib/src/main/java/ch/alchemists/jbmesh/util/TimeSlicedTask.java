@@ -0,0 +1,97 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.util;
+
+/**
+ * Resumable operation that is executed in small steps, so it can be spread across frames.<br>
+ * Call {@link #run(float)} once per frame with the time budget for that frame until it returns true.
+ * The mesh must not be modified by others while the task is unfinished.<br>
+ * A cancelled task leaves the mesh in a valid, but only partially processed state.
+ */
+public abstract class TimeSlicedTask {
+    public enum State {
+        Running, Finished, Cancelled
+    }
+
+    private State state = State.Running;
+    private volatile boolean cancelRequested = false;
+
+
+    /**
+     * Does a small amount of work.
+     * @return Whether the task is finished.
+     */
+    protected abstract boolean step();
+
+
+    /**
+     * Called once when the task is cancelled before it finished.
+     */
+    protected void cancelled() {}
+
+
+    /**
+     * @return Estimated progress in [0, 1].
+     */
+    public abstract float getProgress();
+
+
+    /**
+     * Executes steps until the task is done or the time budget is used up.
+     * The budget is checked after each step, so it may be exceeded by the duration of one step.
+     * @param budgetMillis Time budget in milliseconds.
+     * @return Whether the task is done, either finished or cancelled.
+     */
+    public final boolean run(float budgetMillis) {
+        long start = System.nanoTime();
+        long budget = (long) (budgetMillis * 1_000_000.0);
+
+        while(state == State.Running) {
+            if(cancelRequested) {
+                state = State.Cancelled;
+                cancelled();
+                break;
+            }
+
+            if(step()) {
+                state = State.Finished;
+                break;
+            }
+
+            if(System.nanoTime() - start >= budget)
+                break;
+        }
+
+        return state != State.Running;
+    }
+
+
+    /**
+     * Executes all remaining steps.
+     */
+    public final void runToCompletion() {
+        run(Float.POSITIVE_INFINITY);
+    }
+
+
+    /**
+     * Requests cancellation. The task stops at the next step. Can be called from any thread.
+     */
+    public void cancel() {
+        cancelRequested = true;
+    }
+
+
+    public State getState() {
+        return state;
+    }
+
+
+    public boolean isDone() {
+        return state != State.Running;
+    }
+}
@@ -0,0 +1,151 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator;
+
+import ch.alchemists.jbmesh.TestUtil;
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.structure.*;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import org.junit.jupiter.api.Test;
+
+public class ParallelSmoothTest {
+    private static BMesh createCube() {
+        BMesh bmesh = new BMesh();
+        Vertex[] v = new Vertex[8];
+        for(int i=0; i<8; ++i)
+            v[i] = bmesh.createVertex(i & 1, (i >> 1) & 1, (i >> 2) & 1);
+
+        bmesh.createFace(v[0], v[2], v[3], v[1]);
+        bmesh.createFace(v[4], v[5], v[7], v[6]);
+        bmesh.createFace(v[0], v[1], v[5], v[4]);
+        bmesh.createFace(v[2], v[6], v[7], v[3]);
+        bmesh.createFace(v[0], v[4], v[6], v[2]);
+        bmesh.createFace(v[1], v[3], v[7], v[5]);
+        return bmesh;
+    }
+
+
+    private static BMesh createGrid(int size) {
+        BMesh bmesh = new BMesh();
+        Vertex[][] v = new Vertex[size+1][size+1];
+        for(int y=0; y<=size; ++y) {
+            for(int x=0; x<=size; ++x)
+                v[y][x] = bmesh.createVertex(x, y, (x*y) % 3);
+        }
+
+        for(int y=0; y<size; ++y) {
+            for(int x=0; x<size; ++x)
+                bmesh.createFace(v[y][x], v[y][x+1], v[y+1][x+1], v[y+1][x]);
+        }
+
+        return bmesh;
+    }
+
+
+    @Test
+    public void testCube() {
+        BMesh result = new ParallelSmooth(createCube()).apply();
+        assertEquals(8 + 12 + 6, result.vertices().size());
+        assertEquals(48, result.edges().size());
+        assertEquals(24, result.faces().size());
+
+        for(Face face : result.faces())
+            TestUtil.assertFace(face, face.getVertices().toArray(new Vertex[0]));
+
+        // Closed manifold
+        for(Edge edge : result.edges()) {
+            assertNotEquals(edge.loop, edge.loop.nextEdgeLoop);
+            assertEquals(edge.loop, edge.loop.nextEdgeLoop.nextEdgeLoop);
+        }
+
+        BMesh expected = createCube();
+        new Smooth(expected).apply(expected.faces().getAll());
+        assertSamePositions(expected, result);
+    }
+
+
+    @Test
+    public void testGridWithBorder() {
+        BMesh result = new ParallelSmooth(createGrid(5)).apply(2);
+
+        BMesh expected = createGrid(5);
+        new Smooth(expected).apply(expected.faces().getAll());
+        new Smooth(expected).apply(expected.faces().getAll());
+
+        assertEquals(expected.faces().size(), result.faces().size());
+        assertEquals(expected.edges().size(), result.edges().size());
+        assertSamePositions(expected, result);
+    }
+
+
+    @Test
+    public void testStencils() {
+        BMesh control = createGrid(4);
+        SubdivisionStencils stencils = new ParallelSmooth(control).createStencils(2);
+        assertSameIndexedPositions(new ParallelSmooth(control).apply(2), stencils.getRefinedMesh());
+
+        // Move control vertices and re-evaluate
+        Vec3Attribute<Vertex> positions = Vec3Attribute.get(BMeshAttribute.Position, control.vertices());
+        for(Vertex vertex : control.vertices()) {
+            Vector3f p = positions.get(vertex);
+            positions.set(vertex, p.x, p.y, p.z + p.x * 0.5f);
+        }
+
+        stencils.evaluate();
+        assertSameIndexedPositions(new ParallelSmooth(control).apply(2), stencils.getRefinedMesh());
+
+        for(Vertex vertex : control.vertices()) {
+            Vector3f p = positions.get(vertex);
+            positions.set(vertex, p.x, p.y + p.z, p.z);
+        }
+
+        stencils.setParallel(false);
+        stencils.evaluate();
+        assertSameIndexedPositions(new ParallelSmooth(control).apply(2), stencils.getRefinedMesh());
+    }
+
+
+    private static void assertSameIndexedPositions(BMesh expected, BMesh actual) {
+        Vec3Attribute<Vertex> expectedPositions = Vec3Attribute.get(BMeshAttribute.Position, expected.vertices());
+        Vec3Attribute<Vertex> actualPositions = Vec3Attribute.get(BMeshAttribute.Position, actual.vertices());
+        assertEquals(expected.vertices().size(), actual.vertices().size());
+
+        for(int i=0; i<expected.vertices().totalSize(); ++i)
+            TestUtil.assertVec3Similar(expectedPositions.get(expected.vertices().get(i)), actualPositions.get(actual.vertices().get(i)));
+    }
+
+
+    private static void assertSamePositions(BMesh expected, BMesh actual) {
+        List<Vector3f> expectedPositions = getSortedPositions(expected);
+        List<Vector3f> actualPositions = getSortedPositions(actual);
+        assertEquals(expectedPositions.size(), actualPositions.size());
+
+        for(int i=0; i<expectedPositions.size(); ++i)
+            TestUtil.assertVec3Similar(expectedPositions.get(i), actualPositions.get(i));
+    }
+
+
+    private static List<Vector3f> getSortedPositions(BMesh bmesh) {
+        Vec3Attribute<Vertex> positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+        List<Vector3f> list = new ArrayList<>();
+        for(Vertex vertex : bmesh.vertices())
+            list.add(positions.get(vertex));
+
+        // Round to avoid ordering differences from floating point noise
+        Comparator<Vector3f> comparator = Comparator.comparingInt((Vector3f p) -> Math.round(p.x * 1000))
+                .thenComparingInt(p -> Math.round(p.y * 1000))
+                .thenComparingInt(p -> Math.round(p.z * 1000));
+        list.sort(comparator);
+        return list;
+    }
+}
@@ -0,0 +1,174 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.meshgen;
+
+import ch.alchemists.jbmesh.TestUtil;
+import ch.alchemists.jbmesh.structure.BMesh;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+import java.util.Random;
+import java.util.function.Function;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class CsgNodeTest {
+    private static final int COUNT = 500;
+
+    private final DistanceFunction sphere = new DistanceFunction.Sphere(new Vector3f(-1.5f, 0, 0), 0.6f);
+    private final DistanceFunction box    = new DistanceFunction.Box(new Vector3f(1.0f, 0, 0), new Vector3f(0.5f, 0.5f, 0.5f));
+    private final DistanceFunction hole   = new DistanceFunction.Sphere(new Vector3f(1.0f, 0.5f, 0), 0.3f);
+    private final DistanceFunction moved  = new DistanceFunction.Sphere(new Vector3f(0, 0, 0), 0.25f);
+    private final Transform transform = new Transform(new Vector3f(0, 1.5f, 0.2f), new Quaternion().fromAngles(0.3f, 0.5f, 0), new Vector3f(2, 2, 2));
+
+
+    private CsgNode createTree() {
+        return new CsgNode.Union(
+            sphere,
+            new CsgNode.Subtraction(box, hole),
+            new CsgNode.Transformed(moved, transform)
+        );
+    }
+
+
+    private float expected(Vector3f v) {
+        float movedDist = moved.dist(transform.transformInverseVector(v, null)) * 2.0f;
+        float subtraction = Math.max(box.dist(v), -hole.dist(v));
+        return Math.min(sphere.dist(v), Math.min(subtraction, movedDist));
+    }
+
+
+    @Test
+    public void testExact() {
+        CsgNode tree = createTree();
+        float[][] points = createPoints();
+        float[] dists = new float[COUNT];
+        tree.dist(points[0], points[1], points[2], dists, COUNT);
+
+        for(int i=0; i<COUNT; ++i) {
+            Vector3f v = new Vector3f(points[0][i], points[1][i], points[2][i]);
+            TestUtil.assertFloat(expected(v), tree.dist(v));
+            TestUtil.assertFloat(expected(v), dists[i]);
+        }
+    }
+
+
+    @Test
+    public void testInterestDistance() {
+        final float interest = 0.2f;
+        CsgNode tree = createTree();
+        tree.setInterestDistance(interest);
+
+        float[][] points = createPoints();
+        float[] dists = new float[COUNT];
+        tree.dist(points[0], points[1], points[2], dists, COUNT);
+
+        for(int i=0; i<COUNT; ++i) {
+            Vector3f v = new Vector3f(points[0][i], points[1][i], points[2][i]);
+            float exact = expected(v);
+
+            if(Math.abs(exact) < interest)
+                TestUtil.assertFloat(exact, dists[i]);
+            else {
+                // Far values have the correct sign and never overestimate
+                assertEquals(exact <= 0, dists[i] <= 0);
+                assertTrue(Math.abs(dists[i]) <= Math.abs(exact) + 0.0001f);
+            }
+        }
+    }
+
+
+    @Test
+    public void testInsideBounds() {
+        // Overlapping children: All points lie inside the bounds of every child
+        DistanceFunction a = new DistanceFunction.Sphere(new Vector3f(-0.2f, 0, 0), 1.0f);
+        DistanceFunction b = new DistanceFunction.Sphere(new Vector3f(0.2f, 0.1f, 0), 0.9f);
+        float[][] points = createPoints(0.7f);
+
+        assertInsideBounds(new CsgNode.Union(a, b), points, v -> Math.min(a.dist(v), b.dist(v)));
+        assertInsideBounds(new CsgNode.Union(b, a), points, v -> Math.min(a.dist(v), b.dist(v)));
+        assertInsideBounds(new CsgNode.Intersection(a, b), points, v -> Math.max(a.dist(v), b.dist(v)));
+        assertInsideBounds(new CsgNode.Subtraction(a, b), points, v -> Math.max(a.dist(v), -b.dist(v)));
+
+        CsgNode smooth = new CsgNode.SmoothUnion(a, b, 0.1f);
+        assertInsideBounds(smooth, points, v -> {
+            float da = a.dist(v);
+            float db = b.dist(v);
+            float h = Math.max(0.1f - Math.abs(da - db), 0.0f) / 0.1f;
+            return Math.min(da, db) - h*h*0.1f*0.25f;
+        });
+
+        assertThrows(IllegalArgumentException.class, () -> smooth.setInterestDistance(0));
+    }
+
+
+    private static void assertInsideBounds(CsgNode node, float[][] points, Function<Vector3f, Float> expected) {
+        float[] dists = new float[COUNT];
+        node.dist(points[0], points[1], points[2], dists, COUNT);
+
+        for(int i=0; i<COUNT; ++i) {
+            Vector3f v = new Vector3f(points[0][i], points[1][i], points[2][i]);
+            TestUtil.assertFloat(expected.apply(v), node.dist(v));
+            TestUtil.assertFloat(expected.apply(v), dists[i]);
+        }
+    }
+
+
+    @Test
+    public void testSmoothUnion() {
+        DistanceFunction a = new DistanceFunction.Sphere(new Vector3f(-0.5f, 0, 0), 0.5f);
+        DistanceFunction b = new DistanceFunction.Sphere(new Vector3f(0.5f, 0, 0), 0.5f);
+        CsgNode smooth = new CsgNode.SmoothUnion(a, b, 0.4f);
+
+        // Blended between the spheres, plain minimum far away
+        Vector3f between = new Vector3f(0, 0.3f, 0);
+        assertTrue(smooth.dist(between) < Math.min(a.dist(between), b.dist(between)));
+
+        Vector3f far = new Vector3f(-1.5f, 0, 0);
+        TestUtil.assertFloat(a.dist(far), smooth.dist(far));
+
+        // Bounds contain the blended surface
+        assertTrue(smooth.getBounds().getYExtent() >= 0.5f + 0.1f - 0.0001f);
+    }
+
+
+    @Test
+    public void testMarchingCubes() {
+        final float cellSize = 0.1f;
+        BMesh exact = MarchingCubeBuilder.build(null, createTree(), cellSize);
+
+        CsgNode pruned = createTree();
+        pruned.setInterestDistance(cellSize * FastMath.sqrt(3.0f));
+        BMesh result = MarchingCubeBuilder.build(null, pruned, cellSize);
+
+        assertEquals(exact.vertices().size(), result.vertices().size());
+        assertEquals(exact.faces().size(), result.faces().size());
+    }
+
+
+    private float[][] createPoints() {
+        return createPoints(3.0f);
+    }
+
+
+    /**
+     * @return Random points inside a cube with the given half size around the origin.
+     */
+    private float[][] createPoints(float halfSize) {
+        Random rand = new Random(1);
+        float[][] points = new float[3][COUNT];
+        for(int i=0; i<COUNT; ++i) {
+            points[0][i] = (rand.nextFloat() * 2.0f - 1.0f) * halfSize;
+            points[1][i] = (rand.nextFloat() * 2.0f - 1.0f) * halfSize;
+            points[2][i] = (rand.nextFloat() * 2.0f - 1.0f) * halfSize;
+        }
+        return points;
+    }
+}
@@ -0,0 +1,44 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.meshgen;
+
+import ch.alchemists.jbmesh.TestUtil;
+import com.jme3.math.Vector3f;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class DistanceFunctionTest {
+    private static final int COUNT = 100;
+
+
+    @Test
+    public void testBatchEqualsSingle() {
+        assertBatch(new DistanceFunction.Plane(new Vector3f(0.1f, 0.2f, 0.3f), new Vector3f(1, 0.8f, 0.3f)));
+        assertBatch(new DistanceFunction.Sphere(new Vector3f(0.1f, 0.2f, 0.3f), 0.7f));
+        assertBatch(new DistanceFunction.Ellipsoid(new Vector3f(0.1f, 0.2f, 0.3f), new Vector3f(0.5f, 0.3f, 0.8f)));
+        assertBatch(new DistanceFunction.Box(new Vector3f(0.1f, 0.2f, 0.3f), new Vector3f(0.5f, 0.3f, 0.8f)));
+    }
+
+
+    private static void assertBatch(DistanceFunction dfunc) {
+        Random rand = new Random(1);
+        float[] x = new float[COUNT];
+        float[] y = new float[COUNT];
+        float[] z = new float[COUNT];
+        for(int i=0; i<COUNT; ++i) {
+            x[i] = rand.nextFloat() * 2.0f - 1.0f;
+            y[i] = rand.nextFloat() * 2.0f - 1.0f;
+            z[i] = rand.nextFloat() * 2.0f - 1.0f;
+        }
+
+        float[] dists = new float[COUNT];
+        dfunc.dist(x, y, z, dists, COUNT);
+
+        for(int i=0; i<COUNT; ++i)
+            TestUtil.assertFloat(dfunc.dist(new Vector3f(x[i], y[i], z[i])), dists[i]);
+    }
+}
@@ -0,0 +1,138 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.meshgen;
+
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.property.IntAttribute;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.structure.BMesh;
+import ch.alchemists.jbmesh.structure.Edge;
+import ch.alchemists.jbmesh.structure.Face;
+import ch.alchemists.jbmesh.structure.Vertex;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Vector3f;
+import java.util.HashSet;
+import java.util.Set;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class IncrementalMarchingCubeBuilderTest {
+    private static final float CELL_SIZE = 0.1f;
+
+
+    // Big sphere with a small sphere that can be moved
+    private static class EditableField implements DistanceFunction {
+        private final DistanceFunction big = new DistanceFunction.Sphere(new Vector3f(0.013f, 0.021f, 0.034f), 1.0f);
+        private DistanceFunction small;
+
+        public void setSmall(Vector3f center) {
+            small = new DistanceFunction.Sphere(center, 0.25f);
+        }
+
+        @Override
+        public float dist(Vector3f v) {
+            return Math.min(big.dist(v), small.dist(v));
+        }
+
+        @Override
+        public BoundingBox getBounds() {
+            return new BoundingBox(Vector3f.ZERO, 1.5f, 1.5f, 1.5f);
+        }
+    }
+
+
+    @Test
+    public void testUpdate() {
+        EditableField field = new EditableField();
+        field.setSmall(new Vector3f(1.0f, 0.1f, 0.05f));
+
+        IncrementalMarchingCubeBuilder builder = new IncrementalMarchingCubeBuilder(null, field, CELL_SIZE, true);
+        builder.build();
+        BMesh bmesh = builder.getMesh();
+
+        Set<Face> outsideFaces = new HashSet<>();
+        for(Face face : bmesh.faces())
+            outsideFaces.add(face);
+
+        // Move small sphere, the dirty region contains both old and new position
+        field.setSmall(new Vector3f(0.95f, -0.2f, 0.3f));
+        BoundingBox dirty = new BoundingBox(new Vector3f(0.68f, -0.48f, -0.22f), new Vector3f(1.27f, 0.37f, 0.57f));
+        builder.update(dirty);
+
+        BMesh expected = MarchingCubeBuilder.build(null, field, CELL_SIZE, false);
+        assertEquals(expected.vertices().size(), bmesh.vertices().size());
+        assertEquals(expected.edges().size(), bmesh.edges().size());
+        assertEquals(expected.faces().size(), bmesh.faces().size());
+
+        // Stitched seamlessly: Closed manifold
+        for(Edge edge : bmesh.edges()) {
+            assertNotEquals(edge.loop, edge.loop.nextEdgeLoop);
+            assertEquals(edge.loop, edge.loop.nextEdgeLoop.nextEdgeLoop);
+        }
+
+        // Faces far from the edit are kept
+        int kept = 0;
+        for(Face face : bmesh.faces()) {
+            if(outsideFaces.contains(face))
+                kept++;
+        }
+        assertTrue(kept > bmesh.faces().size() / 2);
+        assertTrue(kept < bmesh.faces().size());
+
+        assertNotNull(IntAttribute.get(IncrementalMarchingCubeBuilder.ATTRIBUTE_CELL, bmesh.faces()));
+    }
+
+
+    @Test
+    public void testRebuild() {
+        EditableField field = new EditableField();
+        field.setSmall(new Vector3f(1.0f, 0.1f, 0.05f));
+
+        IncrementalMarchingCubeBuilder builder = new IncrementalMarchingCubeBuilder(null, field, CELL_SIZE, false);
+        builder.build();
+        int numFaces = builder.getMesh().faces().size();
+        int numVertices = builder.getMesh().vertices().size();
+
+        builder.build();
+        assertEquals(numFaces, builder.getMesh().faces().size());
+        assertEquals(numVertices, builder.getMesh().vertices().size());
+    }
+
+
+    @Test
+    public void testExternalRemoval() {
+        EditableField field = new EditableField();
+        field.setSmall(new Vector3f(1.0f, 0.1f, 0.05f));
+
+        IncrementalMarchingCubeBuilder builder = new IncrementalMarchingCubeBuilder(null, field, CELL_SIZE, false);
+        builder.build();
+        BMesh bmesh = builder.getMesh();
+
+        // Remove some vertices of the small sphere outside of the builder
+        BoundingBox dirty = new BoundingBox(new Vector3f(1.0f, 0.1f, 0.05f), 0.3f, 0.3f, 0.3f);
+        Vec3Attribute<Vertex> positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+        for(Vertex vertex : bmesh.vertices().getAll()) {
+            if(positions.get(vertex).x > 1.2f)
+                bmesh.removeVertex(vertex);
+        }
+
+        builder.update(dirty);
+
+        BMesh expected = MarchingCubeBuilder.build(null, field, CELL_SIZE, false);
+        assertEquals(expected.vertices().size(), bmesh.vertices().size());
+        assertEquals(expected.edges().size(), bmesh.edges().size());
+        assertEquals(expected.faces().size(), bmesh.faces().size());
+
+        for(Face face : bmesh.faces()) {
+            for(Vertex vertex : face.vertices())
+                assertTrue(vertex.isAlive());
+        }
+    }
+}
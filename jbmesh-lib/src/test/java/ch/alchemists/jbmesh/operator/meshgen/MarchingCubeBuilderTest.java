@@ -0,0 +1,139 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.meshgen;
+
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.structure.BMesh;
+import ch.alchemists.jbmesh.structure.Edge;
+import ch.alchemists.jbmesh.structure.Face;
+import ch.alchemists.jbmesh.structure.Vertex;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Vector3f;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class MarchingCubeBuilderTest {
+    @Test
+    public void testBuild() {
+        AtomicInteger evaluations = new AtomicInteger();
+        DistanceFunction dfunc = new DistanceFunction.Sphere(new Vector3f(0.013f, 0.021f, 0.034f), 1.0f) {
+            @Override
+            public float dist(Vector3f v) {
+                evaluations.incrementAndGet();
+                return super.dist(v);
+            }
+
+            @Override
+            public void dist(float[] x, float[] y, float[] z, float[] store, int count) {
+                evaluations.addAndGet(count);
+                super.dist(x, y, z, store, count);
+            }
+
+            @Override
+            public BoundingBox getBounds() {
+                return new BoundingBox(Vector3f.ZERO, 1.3f, 1.2f, 1.1f);
+            }
+        };
+
+        BMesh bmesh = MarchingCubeBuilder.build(null, dfunc, 0.1f, false);
+        assertTrue(bmesh.faces().size() > 0);
+
+        int numX = MarchingCubeBuilder.getNumCells(2.6f, 0.1f) + 1;
+        int numY = MarchingCubeBuilder.getNumCells(2.4f, 0.1f) + 1;
+        int numZ = MarchingCubeBuilder.getNumCells(2.2f, 0.1f) + 1;
+        assertEquals(numX * numY * numZ, evaluations.get());
+
+        // Vertices are shared exactly by lattice edge
+        for(Edge edge : bmesh.edges()) {
+            assertNotEquals(edge.loop, edge.loop.nextEdgeLoop);
+            assertEquals(edge.loop, edge.loop.nextEdgeLoop.nextEdgeLoop);
+        }
+    }
+
+
+    @Test
+    public void testFollowSurfaceEvaluations() {
+        final float cellSize = 0.1f;
+        Set<String> latticePoints = new HashSet<>();
+        AtomicInteger evaluations = new AtomicInteger();
+        DistanceFunction dfunc = new DistanceFunction.Sphere(Vector3f.ZERO, 1.0f) {
+            @Override
+            public float dist(Vector3f v) {
+                evaluations.incrementAndGet();
+                latticePoints.add(Math.round(v.x / cellSize) + " " + Math.round(v.y / cellSize) + " " + Math.round(v.z / cellSize));
+                return super.dist(v);
+            }
+
+            @Override
+            public BoundingBox getBounds() {
+                return new BoundingBox(Vector3f.ZERO, 1.5f, 1.5f, 1.5f);
+            }
+        };
+
+        // Seed cell on the surface
+        Iterator<Vector3f> seed = Collections.singletonList(new Vector3f(0.9f, 0, 0)).iterator();
+        BMesh bmesh = MarchingCubeBuilder.buildFollowSurface(null, dfunc, cellSize, false, seed);
+        assertTrue(bmesh.faces().size() > 0);
+
+        // Only the corners of the seed cell are evaluated twice
+        assertTrue(evaluations.get() <= latticePoints.size() + 8);
+
+        // Closed surface
+        for(Edge edge : bmesh.edges())
+            assertEquals(edge.loop, edge.loop.nextEdgeLoop.nextEdgeLoop);
+    }
+
+
+    @Test
+    public void testLatticePoints() {
+        // Surface passes exactly through the lattice points on the axes
+        DistanceFunction dfunc = new DistanceFunction.Sphere(Vector3f.ZERO, 2.0f) {
+            @Override
+            public BoundingBox getBounds() {
+                return new BoundingBox(Vector3f.ZERO, 2.5f, 2.5f, 2.5f);
+            }
+        };
+
+        assertNoDuplicates(MarchingCubeBuilder.build(null, dfunc, 0.5f, false));
+        assertNoDuplicates(ParallelMarchingCubeBuilder.build(null, dfunc, 0.5f, false, 2));
+        assertNoDuplicates(SparseMarchingCubeBuilder.build(null, dfunc, 0.5f));
+
+        IncrementalMarchingCubeBuilder incremental = new IncrementalMarchingCubeBuilder(null, dfunc, 0.5f, false);
+        incremental.build();
+        incremental.update(new BoundingBox(new Vector3f(2.0f, 0, 0), 0.6f, 0.6f, 0.6f));
+        assertNoDuplicates(incremental.getMesh());
+    }
+
+
+    private static void assertNoDuplicates(BMesh bmesh) {
+        Vec3Attribute<Vertex> positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+
+        Set<Vector3f> uniquePositions = new HashSet<>();
+        for(Vertex vertex : bmesh.vertices())
+            assertTrue(uniquePositions.add(positions.get(vertex)), "Duplicate vertex at " + positions.get(vertex));
+
+        for(Face face : bmesh.faces()) {
+            List<Vertex> vertices = face.getVertices();
+            Vector3f p0 = positions.get(vertices.get(0));
+            Vector3f e1 = positions.get(vertices.get(1)).subtractLocal(p0);
+            Vector3f e2 = positions.get(vertices.get(2)).subtractLocal(p0);
+            assertTrue(e1.cross(e2).lengthSquared() > 0, "Degenerate face");
+        }
+
+        for(Edge edge : bmesh.edges())
+            assertEquals(edge.loop, edge.loop.nextEdgeLoop.nextEdgeLoop);
+    }
+}
@@ -0,0 +1,62 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.meshgen;
+
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.structure.BMesh;
+import ch.alchemists.jbmesh.structure.Edge;
+import ch.alchemists.jbmesh.structure.Vertex;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Vector3f;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class ParallelMarchingCubeBuilderTest {
+    private static final float CELL_SIZE = 0.1f;
+
+    // Sphere with bounds that contain the whole surface
+    private static final DistanceFunction SPHERE = new DistanceFunction.Sphere(new Vector3f(0.013f, 0.021f, 0.034f), 1.0f) {
+        @Override
+        public BoundingBox getBounds() {
+            return new BoundingBox(Vector3f.ZERO, 1.3f, 1.3f, 1.3f);
+        }
+    };
+
+
+    @Test
+    public void testSphere() {
+        BMesh bmesh = ParallelMarchingCubeBuilder.build(null, SPHERE, CELL_SIZE, false, 5);
+        assertTrue(bmesh.faces().size() > 0);
+        assertClosed(bmesh);
+
+        Vec3Attribute<Vertex> positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+        for(Vertex vertex : bmesh.vertices())
+            assertEquals(0.0f, SPHERE.dist(positions.get(vertex)), 0.01f);
+    }
+
+
+    @Test
+    public void testBlockSizes() {
+        BMesh a = ParallelMarchingCubeBuilder.build(null, SPHERE, CELL_SIZE, true, 1);
+        BMesh b = ParallelMarchingCubeBuilder.build(null, SPHERE, CELL_SIZE, true, 1000);
+
+        assertEquals(a.faces().size(), b.faces().size());
+        assertEquals(a.vertices().size(), b.vertices().size());
+        assertClosed(a);
+    }
+
+
+    private static void assertClosed(BMesh bmesh) {
+        for(Edge edge : bmesh.edges()) {
+            assertNotEquals(edge.loop, edge.loop.nextEdgeLoop);
+            assertEquals(edge.loop, edge.loop.nextEdgeLoop.nextEdgeLoop);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.meshgen;
+
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.structure.BMesh;
+import ch.alchemists.jbmesh.structure.Vertex;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Vector3f;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SampledDistanceFunctionTest {
+    private static final float RADIUS = 0.8f;
+    private static final float SPACING = 0.05f;
+
+    private final Vector3f center = new Vector3f(0.1f, -0.05f, 0.02f);
+    private final DistanceFunction sphere = new DistanceFunction.Sphere(center, RADIUS);
+    private final BoundingBox bounds = new BoundingBox(Vector3f.ZERO, 1.0f, 1.0f, 1.0f);
+
+    @TempDir
+    Path tempDir;
+
+
+    @Test
+    public void testFloat() throws IOException {
+        try(SampledDistanceFunction sampled = SampledDistanceFunction.create(tempDir.resolve("sphere.sdf"), sphere, bounds, SPACING, 0)) {
+            assertEquals(false, sampled.isQuantized());
+            assertSampled(sampled, 0.002f);
+        }
+    }
+
+
+    @Test
+    public void testQuantized() throws IOException {
+        try(SampledDistanceFunction sampled = SampledDistanceFunction.create(tempDir.resolve("sphere.sdf"), sphere, bounds, SPACING, 2.0f)) {
+            assertTrue(sampled.isQuantized());
+            assertSampled(sampled, 0.002f);
+        }
+
+        // Reopen
+        try(SampledDistanceFunction sampled = SampledDistanceFunction.open(tempDir.resolve("sphere.sdf"))) {
+            assertTrue(sampled.isQuantized());
+            assertEquals(SPACING, sampled.getSpacing());
+            assertSampled(sampled, 0.002f);
+        }
+    }
+
+
+    @Test
+    public void testMarchingCubes() throws IOException {
+        try(SampledDistanceFunction sampled = SampledDistanceFunction.create(tempDir.resolve("sphere.sdf"), sphere, bounds, SPACING, 0)) {
+            BMesh bmesh = MarchingCubeBuilder.build(null, sampled, 0.07f);
+            assertTrue(bmesh.faces().size() > 0);
+
+            Vec3Attribute<Vertex> positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+            Vector3f p = new Vector3f();
+            for(Vertex vertex : bmesh.vertices()) {
+                positions.get(vertex, p);
+                assertEquals(RADIUS, p.distance(center), 0.005f);
+            }
+        }
+    }
+
+
+    private void assertSampled(SampledDistanceFunction sampled, float tolerance) {
+        Random rand = new Random(1);
+        Vector3f p = new Vector3f();
+        Vector3f normal = new Vector3f();
+        Vector3f expectedNormal = new Vector3f();
+
+        for(int i=0; i<200; ++i) {
+            p.set(rand.nextFloat()*1.8f - 0.9f, rand.nextFloat()*1.8f - 0.9f, rand.nextFloat()*1.8f - 0.9f);
+            assertEquals(sphere.dist(p), sampled.dist(p), tolerance);
+
+            sampled.normal(p, normal);
+            sphere.normal(p, expectedNormal);
+            assertTrue(normal.dot(expectedNormal) > 0.99f);
+        }
+
+        // Outside of the grid
+        p.set(3, 0, 0);
+        assertEquals(sphere.dist(p), sampled.dist(p), 0.01f);
+    }
+}
@@ -0,0 +1,59 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.meshgen;
+
+import ch.alchemists.jbmesh.structure.BMesh;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Vector3f;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class SparseMarchingCubeBuilderTest {
+    private static class CountingSphere extends DistanceFunction.Sphere {
+        private final AtomicInteger evaluations = new AtomicInteger();
+
+        public CountingSphere() {
+            super(new Vector3f(0.013f, 0.021f, 0.034f), 1.0f);
+        }
+
+        @Override
+        public float dist(Vector3f v) {
+            evaluations.incrementAndGet();
+            return super.dist(v);
+        }
+
+        @Override
+        public void dist(float[] x, float[] y, float[] z, float[] store, int count) {
+            evaluations.addAndGet(count);
+            super.dist(x, y, z, store, count);
+        }
+
+        @Override
+        public BoundingBox getBounds() {
+            return new BoundingBox(Vector3f.ZERO, 4.0f, 4.0f, 4.0f);
+        }
+    }
+
+
+    @Test
+    public void testSameAsFull() {
+        CountingSphere full = new CountingSphere();
+        BMesh expected = MarchingCubeBuilder.build(null, full, 0.1f, false);
+
+        CountingSphere sparse = new CountingSphere();
+        BMesh actual = SparseMarchingCubeBuilder.build(null, sparse, 0.1f, false, SparseMarchingCubeBuilder.DEFAULT_LIPSCHITZ);
+
+        assertTrue(expected.faces().size() > 0);
+        assertEquals(expected.faces().size(), actual.faces().size());
+        assertEquals(expected.vertices().size(), actual.vertices().size());
+        assertEquals(expected.edges().size(), actual.edges().size());
+
+        assertTrue(sparse.evaluations.get() * 10 < full.evaluations.get());
+    }
+}
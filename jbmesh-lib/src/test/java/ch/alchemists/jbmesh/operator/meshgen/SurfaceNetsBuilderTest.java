@@ -0,0 +1,95 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.meshgen;
+
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.operator.FaceOps;
+import ch.alchemists.jbmesh.structure.BMesh;
+import ch.alchemists.jbmesh.structure.Edge;
+import ch.alchemists.jbmesh.structure.Face;
+import ch.alchemists.jbmesh.structure.Vertex;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Vector3f;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class SurfaceNetsBuilderTest {
+    private static final float CELL_SIZE = 0.1f;
+
+
+    private static void assertQuadSurface(BMesh bmesh, DistanceFunction dfunc, float maxDist) {
+        assertTrue(bmesh.faces().size() > 0);
+
+        FaceOps faceOps = new FaceOps(bmesh);
+        Vector3f centroid = new Vector3f();
+        Vector3f expectedNormal = new Vector3f();
+        for(Face face : bmesh.faces()) {
+            assertEquals(4, face.getVertices().size());
+
+            // Faces point outwards
+            faceOps.centroid(face, centroid);
+            dfunc.normal(centroid, expectedNormal);
+            assertTrue(faceOps.normal(face).dot(expectedNormal) > 0.5f);
+        }
+
+        for(Edge edge : bmesh.edges()) {
+            assertNotEquals(edge.loop, edge.loop.nextEdgeLoop);
+            assertEquals(edge.loop, edge.loop.nextEdgeLoop.nextEdgeLoop);
+        }
+
+        Vec3Attribute<Vertex> positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+        for(Vertex vertex : bmesh.vertices())
+            assertEquals(0.0f, dfunc.dist(positions.get(vertex)), maxDist);
+    }
+
+
+    @Test
+    public void testSphere() {
+        DistanceFunction sphere = new DistanceFunction.Sphere(new Vector3f(0.013f, 0.021f, 0.034f), 1.0f) {
+            @Override
+            public BoundingBox getBounds() {
+                return new BoundingBox(Vector3f.ZERO, 1.3f, 1.3f, 1.3f);
+            }
+        };
+
+        BMesh nets = SurfaceNetsBuilder.build(null, sphere, CELL_SIZE, false, false);
+        assertQuadSurface(nets, sphere, CELL_SIZE * 0.5f);
+
+        BMesh cubes = MarchingCubeBuilder.build(null, sphere, CELL_SIZE, false);
+        assertTrue(nets.faces().size() < cubes.faces().size());
+    }
+
+
+    @Test
+    public void testDualContouringBox() {
+        DistanceFunction box = new DistanceFunction.Box(new Vector3f(0.013f, 0.021f, 0.034f), new Vector3f(0.73f, 0.52f, 0.61f)) {
+            @Override
+            public BoundingBox getBounds() {
+                return new BoundingBox(Vector3f.ZERO, 1.2f, 1.2f, 1.2f);
+            }
+        };
+
+        BMesh nets = SurfaceNetsBuilder.build(null, box, CELL_SIZE, false, false);
+        BMesh dc = SurfaceNetsBuilder.build(null, box, CELL_SIZE, true, true);
+        assertQuadSurface(dc, box, 0.02f);
+
+        // Vertices at edges and corners of the box are placed on the sharp features
+        assertTrue(getMaxDistance(dc, box) < getMaxDistance(nets, box));
+    }
+
+
+    private static float getMaxDistance(BMesh bmesh, DistanceFunction dfunc) {
+        Vec3Attribute<Vertex> positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+        float max = 0;
+        for(Vertex vertex : bmesh.vertices())
+            max = Math.max(max, Math.abs(dfunc.dist(positions.get(vertex))));
+        return max;
+    }
+}
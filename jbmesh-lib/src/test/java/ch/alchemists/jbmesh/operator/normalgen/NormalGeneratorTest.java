@@ -0,0 +1,149 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.normalgen;
+
+import ch.alchemists.jbmesh.TestUtil;
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.structure.BMesh;
+import ch.alchemists.jbmesh.structure.Loop;
+import ch.alchemists.jbmesh.structure.Vertex;
+import ch.alchemists.jbmesh.util.TimeSlicedTask;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class NormalGeneratorTest {
+    // Grid of quads with a ridge along the y axis. The ridge produces hard edges with a crease angle of 40°.
+    private static BMesh createGrid(int size) {
+        BMesh bmesh = new BMesh();
+        Vertex[][] vertices = new Vertex[size+1][size+1];
+
+        for(int x=0; x<=size; ++x) {
+            for(int y=0; y<=size; ++y) {
+                float z = Math.abs(x - size/2) * 0.8f + (float) Math.sin(y * 0.3f) * 0.1f;
+                vertices[x][y] = bmesh.createVertex(x, y, z);
+            }
+        }
+
+        for(int x=0; x<size; ++x) {
+            for(int y=0; y<size; ++y)
+                bmesh.createFace(vertices[x][y], vertices[x+1][y], vertices[x+1][y+1], vertices[x][y+1]);
+        }
+
+        return bmesh;
+    }
+
+
+    @Test
+    public void testFlat() {
+        BMesh bmesh = new BMesh();
+        Vertex v0 = bmesh.createVertex(0, 0, 0);
+        Vertex v1 = bmesh.createVertex(1, 0, 0);
+        Vertex v2 = bmesh.createVertex(1, 1, 0);
+        Vertex v3 = bmesh.createVertex(0, 1, 0);
+        bmesh.createFace(v0, v1, v2, v3);
+
+        NormalGenerator normalGenerator = new NormalGenerator(bmesh, 40);
+        normalGenerator.apply();
+
+        Vec3Attribute<Loop> loopNormals = Vec3Attribute.get(BMeshAttribute.Normal, bmesh.loops());
+        for(Loop loop : bmesh.loops())
+            TestUtil.assertVec3Similar(0, 0, 1, loopNormals.get(loop));
+
+        // Temporary attributes are removed
+        assertEquals(null, bmesh.edges().getAttribute("AngleNormalCalculator_EdgeCrease"));
+        assertEquals(null, bmesh.faces().getAttribute("AngleNormalCalculator_FaceNormal"));
+    }
+
+
+    @Test
+    public void testParallelEqualsSequential() {
+        BMesh sequential = createGrid(120);
+        BMesh parallel = createGrid(120);
+
+        new NormalGenerator(sequential, 40).apply();
+
+        NormalGenerator normalGenerator = new NormalGenerator(parallel, 40);
+        normalGenerator.setParallel(true);
+        normalGenerator.apply();
+
+        Vec3Attribute<Loop> normalsSeq = Vec3Attribute.get(BMeshAttribute.Normal, sequential.loops());
+        Vec3Attribute<Loop> normalsPar = Vec3Attribute.get(BMeshAttribute.Normal, parallel.loops());
+        Vector3f expected = new Vector3f();
+        Vector3f actual = new Vector3f();
+
+        assertEquals(sequential.loops().size(), parallel.loops().size());
+        for(int i=0; i<sequential.loops().size(); ++i) {
+            normalsSeq.get(sequential.loops().get(i), expected);
+            normalsPar.get(parallel.loops().get(i), actual);
+            TestUtil.assertVec3Similar(expected, actual);
+            TestUtil.assertFloat(1.0f, actual.length());
+        }
+    }
+
+
+    @Test
+    public void testIncrementalEqualsFull() {
+        BMesh incremental = createGrid(30);
+        BMesh full = createGrid(30);
+
+        NormalGenerator normalGenerator = new NormalGenerator(incremental, 40);
+        normalGenerator.setKeepIncrementalData(true);
+        normalGenerator.apply();
+
+        // Lift a few vertices in both meshes
+        Vec3Attribute<Vertex> posIncremental = Vec3Attribute.get(BMeshAttribute.Position, incremental.vertices());
+        Vec3Attribute<Vertex> posFull = Vec3Attribute.get(BMeshAttribute.Position, full.vertices());
+        List<Vertex> dirty = new ArrayList<>();
+        for(int i : new int[] {40, 41, 72, 500, 501}) {
+            Vertex vertex = incremental.vertices().get(i);
+            posIncremental.setZ(vertex, posIncremental.getZ(vertex) + 1.5f);
+            dirty.add(vertex);
+
+            Vertex vertexFull = full.vertices().get(i);
+            posFull.setZ(vertexFull, posFull.getZ(vertexFull) + 1.5f);
+        }
+
+        normalGenerator.applyVertices(dirty);
+        new NormalGenerator(full, 40).apply();
+
+        Vec3Attribute<Loop> normalsIncremental = Vec3Attribute.get(BMeshAttribute.Normal, incremental.loops());
+        Vec3Attribute<Loop> normalsFull = Vec3Attribute.get(BMeshAttribute.Normal, full.loops());
+        for(int i=0; i<full.loops().size(); ++i)
+            TestUtil.assertVec3Similar(normalsFull.get(full.loops().get(i)), normalsIncremental.get(incremental.loops().get(i)));
+        // Data for incremental updates is kept until release
+        assertNotNull(incremental.edges().getAttribute("AngleNormalCalculator_EdgeCrease"));
+        normalGenerator.release();
+        assertEquals(null, incremental.edges().getAttribute("AngleNormalCalculator_EdgeCrease"));
+    }
+
+
+    @Test
+    public void testTaskEqualsApply() {
+        BMesh sliced = createGrid(30);
+        BMesh full = createGrid(30);
+
+        new NormalGenerator(full, 40).apply();
+
+        // The faces are prepared in chunks, so edges between chunks are updated with both of their faces
+        TimeSlicedTask task = new NormalGenerator(sliced, 40).applyTask();
+        int calls = 0;
+        while(!task.run(0))
+            calls++;
+        assertTrue(calls > sliced.faces().size() / 16);
+
+        Vec3Attribute<Loop> normalsSliced = Vec3Attribute.get(BMeshAttribute.Normal, sliced.loops());
+        Vec3Attribute<Loop> normalsFull = Vec3Attribute.get(BMeshAttribute.Normal, full.loops());
+        for(int i=0; i<full.loops().size(); ++i)
+            TestUtil.assertVec3Similar(normalsFull.get(full.loops().get(i)), normalsSliced.get(sliced.loops().get(i)));
+    }
+}
@@ -0,0 +1,126 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.normalgen;
+
+import ch.alchemists.jbmesh.TestUtil;
+import ch.alchemists.jbmesh.conversion.BMeshJmeExport;
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.property.Vec2Attribute;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.data.property.Vec4Attribute;
+import ch.alchemists.jbmesh.structure.BMesh;
+import ch.alchemists.jbmesh.structure.Face;
+import ch.alchemists.jbmesh.structure.Loop;
+import ch.alchemists.jbmesh.structure.Vertex;
+import com.jme3.math.Vector4f;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import org.junit.jupiter.api.Test;
+
+public class TangentGeneratorTest {
+    /**
+     * Two quads in the XY plane that share the edge at x=1.
+     * With a seam, the texture coordinates of the right quad restart at u=0 and the V direction is flipped.
+     */
+    private static BMesh createQuads(boolean seam) {
+        BMesh bmesh = new BMesh();
+        Vertex[] v = new Vertex[6];
+        for(int x=0; x<3; ++x) {
+            v[x*2]   = bmesh.createVertex(x, 0, 0);
+            v[x*2+1] = bmesh.createVertex(x, 1, 0);
+        }
+
+        Face left  = bmesh.createFace(v[0], v[2], v[3], v[1]);
+        Face right = bmesh.createFace(v[2], v[4], v[5], v[3]);
+
+        Vec2Attribute<Loop> texCoords = Vec2Attribute.getOrCreate(BMeshAttribute.TexCoord, bmesh.loops());
+        Vec3Attribute<Vertex> positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+        for(Loop loop : left.loops())
+            texCoords.set(loop, positions.getX(loop.vertex), positions.getY(loop.vertex));
+
+        for(Loop loop : right.loops()) {
+            if(seam)
+                texCoords.set(loop, positions.getX(loop.vertex) - 1, 1 - positions.getY(loop.vertex));
+            else
+                texCoords.set(loop, positions.getX(loop.vertex), positions.getY(loop.vertex));
+        }
+
+        new NormalGenerator(bmesh, 40).apply();
+        return bmesh;
+    }
+
+
+    @Test
+    public void testContinuous() {
+        BMesh bmesh = createQuads(false);
+        TangentGenerator tangentGenerator = new TangentGenerator(bmesh);
+        tangentGenerator.setGenerateBinormals(true);
+        tangentGenerator.apply();
+
+        Vec4Attribute<Loop> tangents = Vec4Attribute.get(BMeshAttribute.Tangent, bmesh.loops());
+        Vec3Attribute<Loop> binormals = Vec3Attribute.get(BMeshAttribute.Binormal, bmesh.loops());
+        for(Loop loop : bmesh.loops()) {
+            Vector4f t = tangents.get(loop);
+            TestUtil.assertFloat(1, t.x);
+            TestUtil.assertFloat(0, t.y);
+            TestUtil.assertFloat(0, t.z);
+            TestUtil.assertFloat(1, t.w);
+            TestUtil.assertVec3Similar(0, 1, 0, binormals.get(loop));
+        }
+
+        Mesh mesh = BMeshJmeExport.exportTriangles(bmesh);
+        assertEquals(6, mesh.getVertexCount());
+
+        VertexBuffer tangentBuffer = mesh.getBuffer(VertexBuffer.Type.Tangent);
+        assertNotNull(tangentBuffer);
+        assertEquals(4, tangentBuffer.getNumComponents());
+    }
+
+
+    @Test
+    public void testSmallUvScale() {
+        BMesh bmesh = createQuads(false);
+
+        // About one texel per edge on a 4096 texture
+        Vec2Attribute<Loop> texCoords = Vec2Attribute.get(BMeshAttribute.TexCoord, bmesh.loops());
+        for(Loop loop : bmesh.loops())
+            texCoords.set(loop, texCoords.getX(loop) / 4096, texCoords.getY(loop) / 4096);
+
+        new TangentGenerator(bmesh).apply();
+
+        Vec4Attribute<Loop> tangents = Vec4Attribute.get(BMeshAttribute.Tangent, bmesh.loops());
+        for(Loop loop : bmesh.loops()) {
+            Vector4f t = tangents.get(loop);
+            TestUtil.assertFloat(1, t.x);
+            TestUtil.assertFloat(0, t.y);
+            TestUtil.assertFloat(1, t.w);
+        }
+    }
+
+
+    @Test
+    public void testSeam() {
+        BMesh bmesh = createQuads(true);
+        TangentGenerator tangentGenerator = new TangentGenerator(bmesh);
+        tangentGenerator.setParallel(true);
+        tangentGenerator.apply();
+
+        // Flipped V on the right quad changes handedness
+        Vec4Attribute<Loop> tangents = Vec4Attribute.get(BMeshAttribute.Tangent, bmesh.loops());
+        for(Loop loop : bmesh.loops()) {
+            float expectedW = (loop.face == bmesh.faces().get(0)) ? 1 : -1;
+            TestUtil.assertFloat(1, tangents.getX(loop));
+            TestUtil.assertFloat(expectedW, tangents.getW(loop));
+        }
+
+        // Vertices along seam are duplicated
+        Mesh mesh = BMeshJmeExport.exportTriangles(bmesh);
+        assertEquals(8, mesh.getVertexCount());
+    }
+}
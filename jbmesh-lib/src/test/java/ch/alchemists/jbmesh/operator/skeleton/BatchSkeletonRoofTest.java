@@ -0,0 +1,139 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.skeleton;
+
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.operator.FaceHoles;
+import ch.alchemists.jbmesh.structure.BMesh;
+import ch.alchemists.jbmesh.structure.Face;
+import ch.alchemists.jbmesh.structure.Vertex;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+public class BatchSkeletonRoofTest {
+    private static Face createRect(BMesh bmesh, float x0, float y0, float x1, float y1) {
+        return bmesh.createFace(
+            bmesh.createVertex(x0, y0, 0),
+            bmesh.createVertex(x1, y0, 0),
+            bmesh.createVertex(x1, y1, 0),
+            bmesh.createVertex(x0, y1, 0)
+        );
+    }
+
+
+    /**
+     * @return Area of the faces projected onto the xy-plane. Also checks the height range.
+     */
+    private static float projectedArea(Vec3Attribute<Vertex> positions, List<Face> faces, int start, int end, float maxHeight) {
+        float area = 0;
+        for(int i=start; i<end; ++i) {
+            List<Vertex> vertices = faces.get(i).getVertices();
+            for(int v=0; v<vertices.size(); ++v) {
+                Vector3f p0 = positions.get(vertices.get(v));
+                Vector3f p1 = positions.get(vertices.get((v+1) % vertices.size()));
+                area += (p0.x*p1.y - p1.x*p0.y) * 0.5f;
+
+                assertTrue(p0.z > -0.0001f && p0.z < maxHeight + 0.0001f, "height: " + p0.z);
+            }
+        }
+        return area;
+    }
+
+
+    @Test
+    public void testRectangle() {
+        BMesh bmesh = new BMesh();
+        Face face = createRect(bmesh, 0, 0, 4, 2);
+
+        StraightSkeleton skeleton = new StraightSkeleton(bmesh);
+        skeleton.setRecordHistory(true);
+        skeleton.apply(face);
+
+        BMesh roof = new BMesh();
+        Vec3Attribute<Vertex> positions = Vec3Attribute.get(BMeshAttribute.Position, roof.vertices());
+        List<Face> faces = skeleton.createRoof(roof, 1.0f);
+
+        // Two trapezoids, two triangles, ridge at height 1
+        assertEquals(4, faces.size());
+        assertEquals(6, roof.vertices().size());
+        assertEquals(8.0f, projectedArea(positions, faces, 0, faces.size(), 1.0f), 0.001f);
+
+        int ridgeVertices = 0;
+        for(Vertex vertex : roof.vertices()) {
+            if(Math.abs(positions.get(vertex).z - 1.0f) < 0.0001f)
+                ridgeVertices++;
+        }
+        assertEquals(2, ridgeVertices);
+
+        assertThrows(IllegalStateException.class, () -> new StraightSkeleton(bmesh).createRoof(roof, 1.0f));
+    }
+
+
+    @Test
+    public void testBatch() {
+        BMesh bmesh = new BMesh();
+        Vec3Attribute<Vertex> positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+
+        List<Face> footprints = new ArrayList<>();
+        for(int i=0; i<100; ++i) {
+            float x = (i % 10) * 20;
+            float y = (i / 10) * 20;
+            footprints.add(createRect(bmesh, x, y, x + 4 + (i % 7), y + 2 + (i % 5)));
+        }
+
+        // Hole is skipped
+        Face hole = createRect(bmesh, 1, 1, 2, 2);
+        new FaceHoles(bmesh).addHole(footprints.get(0), hole);
+        footprints.add(hole);
+
+        BatchSkeletonRoof batch = new BatchSkeletonRoof(bmesh);
+        batch.setMinChunkSize(4);
+        batch.setSlope(0.5f);
+        assertThrows(IllegalArgumentException.class, () -> batch.setMinChunkSize(0));
+
+        int numFaces = bmesh.faces().size();
+        List<Face> roofs = batch.createRoofs(footprints, bmesh);
+        assertEquals(numFaces + roofs.size(), bmesh.faces().size());
+
+        // Roofs are in order of the footprints
+        int start = 0;
+        for(int i=0; i<100; ++i) {
+            float w = 4 + (i % 7);
+            float h = 2 + (i % 5);
+
+            int end = start;
+            while(end < roofs.size() && isAbove(positions, roofs.get(end), footprints.get(i)))
+                end++;
+
+            assertTrue(end - start >= 2);
+            assertEquals(w*h, projectedArea(positions, roofs, start, end, Math.min(w, h) * 0.25f), 0.01f);
+            start = end;
+        }
+        assertEquals(roofs.size(), start);
+    }
+
+
+    private static boolean isAbove(Vec3Attribute<Vertex> positions, Face roof, Face footprint) {
+        Vector3f min = new Vector3f(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, 0);
+        Vector3f max = new Vector3f(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, 0);
+        for(Vertex vertex : footprint.vertices()) {
+            min.minLocal(positions.get(vertex));
+            max.maxLocal(positions.get(vertex));
+        }
+
+        for(Vertex vertex : roof.vertices()) {
+            Vector3f p = positions.get(vertex);
+            if(p.x < min.x - 0.001f || p.x > max.x + 0.001f || p.y < min.y - 0.001f || p.y > max.y + 0.001f)
+                return false;
+        }
+        return true;
+    }
+}
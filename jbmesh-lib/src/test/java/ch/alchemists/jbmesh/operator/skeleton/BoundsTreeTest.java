@@ -0,0 +1,80 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.skeleton;
+
+import java.util.*;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+public class BoundsTreeTest {
+    private static boolean overlaps(float[] a, float[] b) {
+        return a[0] <= b[2] && a[2] >= b[0] && a[1] <= b[3] && a[3] >= b[1];
+    }
+
+
+    private static float[] randomBox(Random rnd) {
+        float x = rnd.nextFloat() * 100f;
+        float y = rnd.nextFloat() * 100f;
+        return new float[] { x, y, x + rnd.nextFloat() * 10f, y + rnd.nextFloat() * 10f };
+    }
+
+
+    @Test
+    public void testQuery() {
+        Random rnd = new Random(46);
+        BoundsTree<Integer> tree = new BoundsTree<>();
+        Map<Integer, float[]> boxes = new HashMap<>();
+        Map<Integer, Integer> proxies = new HashMap<>();
+
+        for(int i=0; i<1000; ++i) {
+            float[] box = randomBox(rnd);
+            boxes.put(i, box);
+            proxies.put(i, tree.insert(i, box[0], box[1], box[2], box[3]));
+        }
+
+        // Remove and reinsert some
+        for(int i=0; i<1000; i+=3) {
+            tree.remove(proxies.remove(i));
+            boxes.remove(i);
+        }
+
+        for(int i=0; i<1000; i+=6) {
+            float[] box = randomBox(rnd);
+            boxes.put(i, box);
+            proxies.put(i, tree.insert(i, box[0], box[1], box[2], box[3]));
+        }
+
+        // Infinite box
+        boxes.put(1000, new float[] { Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY });
+        tree.insert(1000, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+
+        // Balanced
+        assertTrue(tree.getHeight() < 20, "height: " + tree.getHeight());
+
+        List<Integer> result = new ArrayList<>();
+        for(int q=0; q<100; ++q) {
+            float[] query = randomBox(rnd);
+            result.clear();
+            tree.query(query[0], query[1], query[2], query[3], result);
+
+            Set<Integer> expected = new HashSet<>();
+            for(Map.Entry<Integer, float[]> entry : boxes.entrySet()) {
+                if(overlaps(entry.getValue(), query))
+                    expected.add(entry.getKey());
+            }
+
+            assertEquals(expected.size(), result.size());
+            assertEquals(expected, new HashSet<>(result));
+        }
+
+        tree.clear();
+        result.clear();
+        tree.query(0, 0, 100, 100, result);
+        assertTrue(result.isEmpty());
+        assertEquals(0, tree.getHeight());
+    }
+}
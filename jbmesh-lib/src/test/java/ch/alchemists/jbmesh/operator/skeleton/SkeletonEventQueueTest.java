@@ -0,0 +1,97 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.skeleton;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+public class SkeletonEventQueueTest {
+    private static List<SkeletonEvent> createEvents(int count, Random rnd) {
+        SkeletonContext ctx = new SkeletonContext();
+        MovingNode n0 = ctx.createMovingNode();
+        MovingNode n1 = ctx.createMovingNode();
+        MovingNode n2 = ctx.createMovingNode();
+        n0.next = n1;
+        n1.next = n2;
+        n2.next = n0;
+
+        List<SkeletonEvent> events = new ArrayList<>(count);
+        for(int i=0; i<count; ++i) {
+            float time = rnd.nextInt(200) * 0.5f; // Many equal times
+            if(rnd.nextBoolean())
+                events.add(new EdgeEvent(n0, n1, time));
+            else
+                events.add(new SplitEvent(n0, n1, n2, time));
+        }
+
+        return events;
+    }
+
+
+    @Test
+    public void testOrder() {
+        Random rnd = new Random(45);
+        List<SkeletonEvent> events = createEvents(2000, rnd);
+        SkeletonEventQueue queue = new SkeletonEventQueue();
+        for(SkeletonEvent event : events)
+            queue.add(event);
+
+        assertThrows(IllegalArgumentException.class, () -> queue.add(events.get(0)));
+
+        // Remove random events through their handle
+        List<SkeletonEvent> expected = new ArrayList<>();
+        for(SkeletonEvent event : events) {
+            if(rnd.nextInt(3) == 0) {
+                assertTrue(queue.remove(event));
+                assertFalse(queue.remove(event));
+            }
+            else
+                expected.add(event);
+        }
+
+        Collections.sort(expected);
+        assertEquals(expected.size(), queue.size());
+
+        SkeletonEvent prev = null;
+        for(SkeletonEvent event : expected) {
+            SkeletonEvent polled = queue.poll();
+            assertEquals(event.time, polled.time);
+            assertFalse(queue.contains(polled));
+
+            // Edge events first
+            if(prev != null)
+                assertTrue(prev.compareTo(polled) <= 0);
+            prev = polled;
+        }
+
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+
+
+    @Test
+    public void testClear() {
+        List<SkeletonEvent> events = createEvents(100, new Random(46));
+        SkeletonEventQueue queue = new SkeletonEventQueue();
+        for(SkeletonEvent event : events)
+            queue.add(event);
+
+        queue.clear();
+        assertEquals(0, queue.size());
+
+        // Events can be queued again
+        for(SkeletonEvent event : events) {
+            assertFalse(queue.contains(event));
+            queue.add(event);
+        }
+        assertEquals(events.size(), queue.size());
+    }
+}
@@ -0,0 +1,222 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.skeleton;
+
+import ch.alchemists.jbmesh.structure.BMesh;
+import ch.alchemists.jbmesh.structure.Face;
+import ch.alchemists.jbmesh.structure.Vertex;
+import com.jme3.math.Vector3f;
+import java.util.List;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+public class StraightSkeletonTest {
+    private static Face createStar(BMesh bmesh, Random rnd, int numVertices, float radius) {
+        return createStar(bmesh, rnd, numVertices, radius, 0.6f);
+    }
+
+    /**
+     * @param minFactor Minimum radius relative to 'radius'.
+     */
+    private static Face createStar(BMesh bmesh, Random rnd, int numVertices, float radius, float minFactor) {
+        Vertex[] vertices = new Vertex[numVertices];
+        for(int i=0; i<numVertices; ++i) {
+            double angle = Math.PI * 2 * i / numVertices;
+            float r = radius * (minFactor + (1f - minFactor) * rnd.nextFloat());
+            vertices[i] = bmesh.createVertex((float) Math.cos(angle) * r, (float) Math.sin(angle) * r, 0);
+        }
+
+        return bmesh.createFace(vertices);
+    }
+
+
+    private static Face createDumbbell(BMesh bmesh) {
+        // Two squares connected by a thin bridge
+        float[] coords = { 0,0,  10,0,  10,4,  20,4,  20,0,  30,0,  30,10,  20,10,  20,6,  10,6,  10,10,  0,10 };
+        Vertex[] vertices = new Vertex[coords.length / 2];
+        for(int i=0; i<vertices.length; ++i)
+            vertices[i] = bmesh.createVertex(coords[i*2], coords[i*2+1], 0);
+
+        return bmesh.createFace(vertices);
+    }
+
+
+    @Test
+    public void testRectangle() {
+        BMesh bmesh = new BMesh();
+        Face face = bmesh.createFace(
+            bmesh.createVertex(0, 0, 0),
+            bmesh.createVertex(4, 0, 0),
+            bmesh.createVertex(4, 2, 0),
+            bmesh.createVertex(0, 2, 0)
+        );
+
+        StraightSkeleton skeleton = new StraightSkeleton(bmesh);
+        skeleton.setDistance(-0.5f);
+        skeleton.apply(face);
+
+        List<List<SkeletonNode>> loops = skeleton.getNodeLoops();
+        assertEquals(1, loops.size());
+        assertEquals(4, loops.get(0).size());
+
+        for(SkeletonNode node : loops.get(0)) {
+            Vector3f p = skeleton.getPosition(node);
+            assertEquals(0.5f, Math.min(p.x, 4-p.x), 0.0001f);
+            assertEquals(0.5f, Math.min(p.y, 2-p.y), 0.0001f);
+        }
+
+        // Shrinks to a line
+        skeleton.setDistance(-5f);
+        skeleton.apply(face);
+        assertTrue(skeleton.getEndNodes().isEmpty());
+    }
+
+
+    @Test
+    public void testSplit() {
+        BMesh bmesh = new BMesh();
+        Face face = createDumbbell(bmesh);
+
+        StraightSkeleton skeleton = new StraightSkeleton(bmesh);
+        skeleton.setDistance(-2f);
+        skeleton.apply(face);
+
+        // Bridge vanishes, two squares remain
+        List<List<SkeletonNode>> loops = skeleton.getNodeLoops();
+        assertEquals(2, loops.size());
+
+        // Nodes lie on the border of the shrunk squares (split may leave an additional node on an edge)
+        for(List<SkeletonNode> loop : loops) {
+            assertTrue(loop.size() >= 4);
+            for(SkeletonNode node : loop) {
+                Vector3f p = skeleton.getPosition(node);
+                float localX = (p.x < 15) ? p.x : p.x - 20;
+                float borderX = Math.min(localX, 10-localX);
+                float borderY = Math.min(p.y, 10-p.y);
+                assertEquals(2f, Math.min(borderX, borderY), 0.0001f);
+                assertTrue(borderX > 1.9999f && borderY > 1.9999f);
+            }
+        }
+    }
+
+
+    @Test
+    public void testStar() {
+        BMesh bmesh = new BMesh();
+        Face face = createStar(bmesh, new Random(47), 60, 100);
+
+        StraightSkeleton skeleton = new StraightSkeleton(bmesh);
+        skeleton.setDistance(-30f);
+        skeleton.apply(face);
+
+        int numNodes = 0;
+        for(List<SkeletonNode> loop : skeleton.getNodeLoops()) {
+            assertTrue(loop.size() >= 3);
+            numNodes += loop.size();
+        }
+        assertEquals(skeleton.getEndNodes().size(), numNodes);
+        assertTrue(numNodes > 0);
+    }
+
+
+    @Test
+    public void testAbortedEdgeCollapse() {
+        // Reflex nodes whose adjacent edge collapse is aborted and queued again must still be found by new edges
+        assertPositiveLoops(new Random(158), 100, -1.5f, 7);
+        assertPositiveLoops(new Random(114), 40, -4f, 1);
+    }
+
+
+    private static void assertPositiveLoops(Random rnd, int numVertices, float distance, int expectedLoops) {
+        BMesh bmesh = new BMesh();
+        Face face = createStar(bmesh, rnd, numVertices, 10, 0.5f);
+
+        StraightSkeleton skeleton = new StraightSkeleton(bmesh);
+        skeleton.setDistance(distance);
+        skeleton.apply(face);
+
+        List<List<SkeletonNode>> loops = skeleton.getNodeLoops();
+        assertEquals(expectedLoops, loops.size());
+
+        // Counterclockwise like the input, no inverted loops
+        for(List<SkeletonNode> loop : loops) {
+            float area = 0;
+            for(int i=0; i<loop.size(); ++i) {
+                Vector3f p0 = skeleton.getPosition(loop.get(i));
+                Vector3f p1 = skeleton.getPosition(loop.get((i+1) % loop.size()));
+                area += p0.x*p1.y - p1.x*p0.y;
+            }
+            assertTrue(area > 0);
+        }
+    }
+
+
+    @Test
+    public void testOffsetLoops() {
+        BMesh bmesh = new BMesh();
+        Face dumbbell = createDumbbell(bmesh);
+        Face star = createStar(bmesh, new Random(48), 60, 100);
+
+        StraightSkeleton recorded = new StraightSkeleton(bmesh);
+        recorded.setRecordHistory(true);
+        StraightSkeleton single = new StraightSkeleton(bmesh);
+
+        assertOffsetLoops(recorded, single, dumbbell, new float[] { 0, -0.5f, -1.9f, -2f, -3f, -4.9f, -6f });
+        assertOffsetLoops(recorded, single, star, new float[] { -1f, -10f, -25f, -40f, -80f });
+
+        recorded.setDistance(3f);
+        recorded.apply(star);
+        assertOffsetLoops(recorded, single, star, new float[] { 0.5f, 3f });
+        assertThrows(IllegalArgumentException.class, () -> recorded.getOffsetLoops(4f));
+        assertThrows(IllegalArgumentException.class, () -> recorded.getOffsetLoops(-1f));
+
+        assertThrows(IllegalStateException.class, () -> single.getOffsetLoops(-1f));
+    }
+
+
+    private static void assertOffsetLoops(StraightSkeleton recorded, StraightSkeleton single, Face face, float[] distances) {
+        recorded.apply(face);
+
+        for(float distance : distances) {
+            List<List<Vector3f>> loops = recorded.getOffsetLoops(distance);
+
+            single.setDistance(distance);
+            single.apply(face);
+            List<List<SkeletonNode>> expectedLoops = single.getNodeLoops();
+            assertEquals(expectedLoops.size(), loops.size(), "distance " + distance);
+
+            // Compare positions of each loop with the loop that contains its first position
+            for(List<Vector3f> loop : loops) {
+                List<SkeletonNode> expected = findLoop(single, expectedLoops, loop.get(0));
+                assertNotNull(expected, "distance " + distance);
+                assertEquals(expected.size(), loop.size());
+
+                for(Vector3f p : loop)
+                    assertNotNull(findNode(single, expected, p), "distance " + distance);
+            }
+        }
+    }
+
+
+    private static List<SkeletonNode> findLoop(StraightSkeleton skeleton, List<List<SkeletonNode>> loops, Vector3f p) {
+        for(List<SkeletonNode> loop : loops) {
+            if(findNode(skeleton, loop, p) != null)
+                return loop;
+        }
+        return null;
+    }
+
+
+    private static SkeletonNode findNode(StraightSkeleton skeleton, List<SkeletonNode> loop, Vector3f p) {
+        for(SkeletonNode node : loop) {
+            if(skeleton.getPosition(node).distance(p) < 0.001f)
+                return node;
+        }
+        return null;
+    }
+}
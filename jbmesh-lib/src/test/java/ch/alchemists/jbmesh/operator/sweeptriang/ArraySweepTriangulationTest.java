@@ -0,0 +1,151 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.sweeptriang;
+
+import ch.alchemists.jbmesh.TestUtil;
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.structure.BMesh;
+import ch.alchemists.jbmesh.structure.Face;
+import ch.alchemists.jbmesh.structure.Vertex;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class ArraySweepTriangulationTest {
+    // Sums the area of triangles in the X/Y plane
+    private static class AreaSum implements ArraySweepTriangulation.TriangleCallback {
+        private final float[] xy;
+        public int numTriangles = 0;
+        public float area = 0;
+
+        public AreaSum(float[]... faces) {
+            int size = 0;
+            for(float[] face : faces)
+                size += face.length / 3 * 2;
+
+            xy = new float[size];
+            int i = 0;
+            for(float[] face : faces) {
+                for(int p=0; p<face.length; p+=3) {
+                    xy[i++] = face[p];
+                    xy[i++] = face[p+1];
+                }
+            }
+        }
+
+        @Override
+        public void handleTriangle(int v1, int v2, int v3) {
+            float ax = xy[v2*2] - xy[v1*2];
+            float ay = xy[v2*2+1] - xy[v1*2+1];
+            float bx = xy[v3*2] - xy[v1*2];
+            float by = xy[v3*2+1] - xy[v1*2+1];
+
+            float doubleArea = ax*by - ay*bx;
+            assertTrue(doubleArea > 0, "Triangle not counterclockwise");
+
+            area += doubleArea * 0.5f;
+            numTriangles++;
+        }
+    }
+
+
+    // U-shape, counterclockwise
+    private static final float[] CONCAVE = {
+        0, 0, 0,    3, 0, 0,    3, 3, 0,    2, 3, 0,
+        2, 1, 0,    1, 1, 0,    1, 3, 0,    0, 3, 0
+    };
+
+    private static final float[] SQUARE = {
+        0, 0, 0,    4, 0, 0,    4, 4, 0,    0, 4, 0
+    };
+
+    // Clockwise
+    private static final float[] HOLE = {
+        1, 1, 0,    1, 3, 0,    3, 2, 0
+    };
+
+
+    @Test
+    public void testConcave() {
+        AreaSum areaSum = new AreaSum(CONCAVE);
+        ArraySweepTriangulation triangulation = new ArraySweepTriangulation(areaSum);
+        triangulation.addFaceWithPositions(CONCAVE, 8);
+        triangulation.triangulate();
+
+        assertEquals(6, areaSum.numTriangles);
+        TestUtil.assertFloat(7.0f, areaSum.area);
+    }
+
+
+    @Test
+    public void testHole() {
+        AreaSum areaSum = new AreaSum(SQUARE, HOLE);
+        ArraySweepTriangulation triangulation = new ArraySweepTriangulation(areaSum);
+        triangulation.addFaceWithPositions(SQUARE, 4);
+        triangulation.addFaceWithPositions(HOLE, 3);
+
+        assertEquals(0, triangulation.getFace(3));
+        assertEquals(1, triangulation.getFace(4));
+        assertEquals(2, triangulation.getFaceVertexIndex(6));
+        triangulation.triangulate();
+
+        // n + 2h - 2
+        assertEquals(7, areaSum.numTriangles);
+        TestUtil.assertFloat(16.0f - 2.0f, areaSum.area);
+    }
+
+
+    @Test
+    public void testReuse() {
+        ArraySweepTriangulation triangulation = new ArraySweepTriangulation();
+
+        for(int i=0; i<3; ++i) {
+            AreaSum concave = new AreaSum(CONCAVE);
+            triangulation.setTriangleCallback(concave);
+            triangulation.addFaceWithPositions(CONCAVE, 8);
+            triangulation.triangulate();
+            TestUtil.assertFloat(7.0f, concave.area);
+
+            AreaSum square = new AreaSum(SQUARE);
+            triangulation.setTriangleCallback(square);
+            triangulation.addFaceWithPositions(SQUARE, 4);
+            triangulation.triangulate();
+            assertEquals(2, square.numTriangles);
+            TestUtil.assertFloat(16.0f, square.area);
+        }
+
+        // State is reset after failure
+        triangulation.addFaceWithPositions(SQUARE, 4);
+        triangulation.setTriangleCallback(null);
+        assertThrows(IllegalStateException.class, triangulation::triangulate);
+        assertThrows(IllegalArgumentException.class, () -> triangulation.addFaceWithPositions(new float[] {0,0,0, 1,0,0, 2,0,0}, 3));
+    }
+
+
+    @Test
+    public void testFace() {
+        BMesh bmesh = new BMesh();
+        Vertex[] vertices = new Vertex[8];
+        for(int i=0; i<8; ++i)
+            vertices[i] = bmesh.createVertex(CONCAVE[i*3], CONCAVE[i*3+1], CONCAVE[i*3+2]);
+        Face face = bmesh.createFace(vertices);
+
+        AreaSum areaSum = new AreaSum(CONCAVE);
+        ArraySweepTriangulation triangulation = new ArraySweepTriangulation(areaSum);
+        triangulation.addFace(Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices()), face);
+
+        for(int i=0; i<8; ++i)
+            assertSame(vertices[i], triangulation.getVertex(i));
+
+        triangulation.triangulate();
+        assertEquals(6, areaSum.numTriangles);
+        TestUtil.assertFloat(7.0f, areaSum.area);
+    }
+}
@@ -0,0 +1,166 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.sweeptriang;
+
+import ch.alchemists.jbmesh.TestUtil;
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.operator.FaceHoles;
+import ch.alchemists.jbmesh.structure.BMesh;
+import ch.alchemists.jbmesh.structure.Face;
+import ch.alchemists.jbmesh.structure.Loop;
+import ch.alchemists.jbmesh.structure.Vertex;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+public class BatchTriangulationTest {
+    private static Face createRect(BMesh bmesh, float x0, float y0, float x1, float y1, boolean clockwise) {
+        Vertex v0 = bmesh.createVertex(x0, y0, 0);
+        Vertex v1 = bmesh.createVertex(x1, y0, 0);
+        Vertex v2 = bmesh.createVertex(x1, y1, 0);
+        Vertex v3 = bmesh.createVertex(x0, y1, 0);
+        return clockwise ? bmesh.createFace(v0, v3, v2, v1) : bmesh.createFace(v0, v1, v2, v3);
+    }
+
+
+    private static float sumArea(Vec3Attribute<Vertex> positions, Loop[] triangles, int start, int end) {
+        float area = 0;
+        for(int i=start; i<end; i+=3) {
+            Vector3f p0 = positions.get(triangles[i].vertex);
+            Vector3f ab = positions.get(triangles[i+1].vertex).subtractLocal(p0);
+            Vector3f ac = positions.get(triangles[i+2].vertex).subtractLocal(p0);
+            float doubleArea = ab.x*ac.y - ab.y*ac.x;
+            assertTrue(doubleArea > 0, "Triangle not counterclockwise");
+            area += doubleArea * 0.5f;
+        }
+        return area;
+    }
+
+
+    @Test
+    public void testFacade() {
+        BMesh bmesh = new BMesh();
+        Vec3Attribute<Vertex> positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+
+        Face wall = createRect(bmesh, 0, 0, 10, 10, false);
+        Face window1 = createRect(bmesh, 1, 1, 3, 3, false);  // Same winding
+        Face window2 = createRect(bmesh, 5, 5, 7, 7, true);   // Opposite winding
+
+        FaceHoles holes = new FaceHoles(bmesh);
+        holes.addHole(wall, window1);
+        holes.addHole(wall, window2);
+
+        assertTrue(holes.hasHoles(wall));
+        assertTrue(holes.isHole(window1));
+        assertSame(wall, holes.getOutline(window2));
+        assertEquals(2, holes.getHoles(wall, new ArrayList<>()).size());
+        assertThrows(IllegalArgumentException.class, () -> holes.addHole(window1, wall));
+
+        List<Face> faces = bmesh.faces().getAll();
+        Loop[] triangles = new BatchTriangulation(bmesh).triangulate(faces);
+
+        // n + 2h - 2
+        assertEquals(14 * 3, triangles.length);
+        TestUtil.assertFloat(100.0f - 8.0f, sumArea(positions, triangles, 0, triangles.length));
+
+        for(Loop loop : triangles)
+            assertTrue(loop.face == wall || loop.face == window1 || loop.face == window2);
+
+        // Unlinked hole is triangulated as normal face
+        holes.removeHole(window1);
+        assertFalse(holes.isHole(window1));
+        triangles = new BatchTriangulation(bmesh).triangulate(faces);
+        assertEquals((8 + 2) * 3, triangles.length);
+    }
+
+
+    @Test
+    public void testParallel() {
+        BMesh bmesh = new BMesh();
+        Vec3Attribute<Vertex> positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+        FaceHoles holes = new FaceHoles(bmesh);
+
+        final int numFaces = 1000;
+        List<Face> outlines = new ArrayList<>();
+        for(int i=0; i<numFaces; ++i) {
+            float x = (i % 40) * 20;
+            float y = (i / 40) * 20;
+
+            // Pentagon with hole
+            Vertex[] vertices = new Vertex[5];
+            for(int k=0; k<5; ++k) {
+                double angle = Math.PI * 2 * k / 5;
+                vertices[k] = bmesh.createVertex(x + (float) Math.cos(angle) * 8, y + (float) Math.sin(angle) * 8, 0);
+            }
+
+            Face outline = bmesh.createFace(vertices);
+            holes.addHole(outline, createRect(bmesh, x-1, y-1, x+1, y+1, true));
+            outlines.add(outline);
+        }
+
+        BatchTriangulation triangulation = new BatchTriangulation(bmesh);
+        triangulation.setMinChunkSize(16);
+        Loop[] triangles = triangulation.triangulate(bmesh.faces().getAll());
+
+        // Grouped by outline in input order: (5 + 4) + 2 - 2 triangles each
+        final int perFace = 9 * 3;
+        assertEquals(numFaces * perFace, triangles.length);
+
+        float pentagon = 0.5f * 5 * 64 * (float) Math.sin(Math.PI * 2 / 5);
+        for(int i=0; i<numFaces; ++i) {
+            Face outline = outlines.get(i);
+            for(int k=i*perFace; k<(i+1)*perFace; ++k)
+                assertTrue(triangles[k].face == outline || holes.getOutline(triangles[k].face) == outline);
+
+            TestUtil.assertFloat(pentagon - 4.0f, sumArea(positions, triangles, i*perFace, (i+1)*perFace));
+        }
+    }
+
+
+    @Test
+    public void testRemovedOutline() {
+        BMesh bmesh = new BMesh();
+        Face wall = createRect(bmesh, 0, 0, 10, 10, false);
+        Face window = createRect(bmesh, 1, 1, 3, 3, true);
+
+        FaceHoles holes = new FaceHoles(bmesh);
+        holes.addHole(wall, window);
+
+        // Stale attribute values of removed faces are ignored
+        bmesh.removeFace(wall);
+        assertFalse(holes.isHole(window));
+        assertNull(holes.getOutline(window));
+
+        Face other = createRect(bmesh, 20, 0, 30, 10, false);
+        assertFalse(holes.hasHoles(other));
+        assertFalse(holes.isHole(other));
+    }
+
+
+    @Test
+    public void testRemovedHole() {
+        BMesh bmesh = new BMesh();
+        Face wall = createRect(bmesh, 0, 0, 10, 10, false);
+        Face h1 = createRect(bmesh, 1, 1, 2, 2, true);
+        Face h2 = createRect(bmesh, 3, 1, 4, 2, true);
+        Face h3 = createRect(bmesh, 5, 1, 6, 2, true);
+
+        FaceHoles holes = new FaceHoles(bmesh);
+        holes.addHole(wall, h1);
+        holes.addHole(wall, h2);
+        holes.addHole(wall, h3);
+
+        // Removed hole in the middle of the list is skipped
+        bmesh.removeFace(h2);
+        assertTrue(holes.isHole(h1));
+        assertTrue(holes.isHole(h3));
+        assertEquals(2, holes.getHoles(wall, new ArrayList<>()).size());
+    }
+}
@@ -0,0 +1,244 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.triangulation;
+
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.structure.BMesh;
+import ch.alchemists.jbmesh.structure.Face;
+import ch.alchemists.jbmesh.structure.Vertex;
+import ch.alchemists.jbmesh.util.PlanarCoordinateSystem;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class ConstrainedDelaunayTest {
+    private static float[] star(Random rnd, int numVertices, float radius) {
+        float[] face = new float[numVertices*3];
+        for(int i=0; i<numVertices; ++i) {
+            double angle = Math.PI * 2 * i / numVertices;
+            float r = radius * (0.5f + 0.5f * rnd.nextFloat());
+            face[i*3]   = (float) Math.cos(angle) * r;
+            face[i*3+1] = (float) Math.sin(angle) * r;
+        }
+        return face;
+    }
+
+
+    private static Vector3f[] getTriangle(Vec3Attribute<Vertex> positions, Face face) {
+        Vector3f[] p = new Vector3f[3];
+        int i = 0;
+        for(Vertex v : face.vertices())
+            p[i++] = positions.get(v);
+
+        assertEquals(3, i);
+        return p;
+    }
+
+
+    private static double doubleArea(Vector3f[] p) {
+        return (double)(p[1].x - p[0].x) * (p[2].y - p[0].y) - (double)(p[1].y - p[0].y) * (p[2].x - p[0].x);
+    }
+
+
+    private static double minAngle(Vector3f[] p) {
+        double min = Math.PI;
+        for(int i=0; i<3; ++i) {
+            Vector3f a = p[(i+1)%3].subtract(p[i]).normalizeLocal();
+            Vector3f b = p[(i+2)%3].subtract(p[i]).normalizeLocal();
+            min = Math.min(min, a.angleBetween(b));
+        }
+        return Math.toDegrees(min);
+    }
+
+
+    private static double sumArea(Vec3Attribute<Vertex> positions, List<Face> faces) {
+        double area = 0;
+        for(Face face : faces) {
+            double doubleArea = doubleArea(getTriangle(positions, face));
+            assertTrue(doubleArea > 0, "Triangle not counterclockwise");
+            area += doubleArea * 0.5;
+        }
+        return area;
+    }
+
+
+    private static void assertDelaunay(Vec3Attribute<Vertex> positions, List<Face> faces) {
+        List<Vector3f> points = new ArrayList<>();
+        for(Face face : faces) {
+            for(Vertex v : face.vertices())
+                points.add(positions.get(v));
+        }
+
+        // Triangles in a convex polygon have empty circumcircles
+        for(Face face : faces) {
+            Vector3f[] p = getTriangle(positions, face);
+            for(Vector3f d : points) {
+                double adx = p[0].x - d.x, ady = p[0].y - d.y;
+                double bdx = p[1].x - d.x, bdy = p[1].y - d.y;
+                double cdx = p[2].x - d.x, cdy = p[2].y - d.y;
+                double det = (adx*adx + ady*ady) * (bdx*cdy - cdx*bdy)
+                           - (bdx*bdx + bdy*bdy) * (adx*cdy - cdx*ady)
+                           + (cdx*cdx + cdy*cdy) * (adx*bdy - bdx*ady);
+                assertTrue(det < 0.001, "Not Delaunay");
+            }
+        }
+    }
+
+
+    @Test
+    public void testConvexDelaunay() {
+        Random rnd = new Random(50);
+        for(int i=0; i<20; ++i) {
+            // Regular polygon with many vertices is convex but long and thin when scaled
+            int n = 5 + rnd.nextInt(40);
+            float[] face = new float[n*3];
+            for(int k=0; k<n; ++k) {
+                double angle = Math.PI * 2 * k / n;
+                face[k*3]   = (float) Math.cos(angle) * 20;
+                face[k*3+1] = (float) Math.sin(angle) * 2;
+            }
+
+            BMesh bmesh = new BMesh();
+            Vec3Attribute<Vertex> positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+            ConstrainedDelaunay cdt = new ConstrainedDelaunay(bmesh);
+            cdt.setCoordinateSystem(PlanarCoordinateSystem.XY());
+
+            List<Face> faces = new ArrayList<>();
+            cdt.addFaceWithPositions(face, n);
+            cdt.triangulate(faces);
+
+            assertEquals(n-2, faces.size());
+            assertEquals(n, bmesh.vertices().size());
+            assertDelaunay(positions, faces);
+        }
+    }
+
+
+    @Test
+    public void testRefinement() {
+        Random rnd = new Random(51);
+        for(int i=0; i<20; ++i) {
+            int n = 3 + rnd.nextInt(30);
+            float[] face = star(rnd, n, 10);
+
+            BMesh bmesh = new BMesh();
+            Vec3Attribute<Vertex> positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+            ConstrainedDelaunay cdt = new ConstrainedDelaunay(bmesh);
+            cdt.setCoordinateSystem(PlanarCoordinateSystem.XY());
+            cdt.setMaxArea(2.0f);
+
+            List<Face> faces = new ArrayList<>();
+            cdt.addFaceWithPositions(face, n);
+            cdt.triangulate(faces);
+
+            double area = 0;
+            for(int k=0, j=n-1; k<n; j=k++)
+                area += (double)face[j*3] * face[k*3+1] - (double)face[k*3] * face[j*3+1];
+            area *= 0.5;
+
+            assertEquals(area, sumArea(positions, faces), area * 0.0001);
+            for(Face f : faces)
+                assertTrue(doubleArea(getTriangle(positions, f)) * 0.5 <= 2.0001);
+        }
+    }
+
+
+    @Test
+    public void testMinAngle() {
+        // Long rectangle with a hole
+        float[] outline = { 0, 0, 0,    40, 0, 0,    40, 4, 0,    0, 4, 0 };
+        float[] hole    = { 10, 1, 0,   10, 3, 0,    30, 3, 0,    30, 1, 0 };
+
+        BMesh bmesh = new BMesh();
+        Vec3Attribute<Vertex> positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+        ConstrainedDelaunay cdt = new ConstrainedDelaunay(bmesh);
+        cdt.setMinAngle(25);
+
+        List<Face> faces = new ArrayList<>();
+        cdt.addFaceWithPositions(outline, 4);
+        cdt.addFaceWithPositions(hole, 4);
+        cdt.triangulate(faces);
+
+        assertEquals(160.0 - 40.0, sumArea(positions, faces), 0.01);
+        for(Face f : faces)
+            assertTrue(minAngle(getTriangle(positions, f)) >= 24.99, "Angle too small");
+
+        assertThrows(IllegalArgumentException.class, () -> cdt.setMinAngle(40));
+    }
+
+
+    @Test
+    public void testAdjacentFace() {
+        BMesh bmesh = new BMesh();
+        Vec3Attribute<Vertex> positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+        Vertex v0 = bmesh.createVertex(0, 0, 0);
+        Vertex v1 = bmesh.createVertex(1, 0, 0);   // Collinear
+        Vertex v2 = bmesh.createVertex(2, 0, 0);
+        Vertex v3 = bmesh.createVertex(2, 2, 0);
+        Vertex v4 = bmesh.createVertex(0, 2, 0);
+        Vertex v5 = bmesh.createVertex(-2, 1, 0);
+
+        Face face = bmesh.createFace(v0, v1, v2, v3, v4);
+        Face neighbor = bmesh.createFace(v5, v0, v4);
+
+        ConstrainedDelaunay cdt = new ConstrainedDelaunay(bmesh);
+        cdt.setMaxArea(0.1f);
+
+        List<Face> faces = new ArrayList<>();
+        cdt.addFace(face);
+        cdt.triangulate(faces);
+        bmesh.removeFace(face);
+
+        assertEquals(4.0, sumArea(positions, faces), 0.0001);
+
+        // Collinear vertex is used
+        boolean found = false;
+        for(Face f : faces) {
+            for(Vertex v : f.vertices())
+                found |= (v == v1);
+        }
+        assertTrue(found);
+
+        // Shared edge was split: The neighbor received the new vertices and all its edges are shared with triangles
+        int neighborVertices = 0;
+        for(Vertex v : neighbor.vertices()) {
+            neighborVertices++;
+            if(v != v5)
+                assertTrue(v.getCommonFace(v5) == neighbor);
+        }
+        assertTrue(neighborVertices > 3);
+    }
+
+
+    @Test
+    public void testLarge() {
+        final int n = 100_000;
+        float[] face = star(new Random(52), n, 1000);
+
+        BMesh bmesh = new BMesh();
+        ConstrainedDelaunay cdt = new ConstrainedDelaunay(bmesh);
+
+        List<Face> faces = new ArrayList<>(n);
+        cdt.addFaceWithPositions(face, n);
+        cdt.triangulate(faces);
+        assertEquals(n-2, faces.size());
+    }
+
+
+    @Test
+    public void testInvalid() {
+        ConstrainedDelaunay cdt = new ConstrainedDelaunay(new BMesh());
+        assertThrows(IllegalStateException.class, () -> cdt.triangulate(null));
+        assertThrows(IllegalArgumentException.class, () -> cdt.addFaceWithPositions(new float[] {0, 0, 0, 1, 0, 0}, 2));
+    }
+}
@@ -0,0 +1,232 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.operator.triangulation;
+
+import ch.alchemists.jbmesh.operator.sweeptriang.SweepTriangulation;
+import ch.alchemists.jbmesh.operator.sweeptriang.SweepVertex;
+import ch.alchemists.jbmesh.structure.BMesh;
+import ch.alchemists.jbmesh.structure.Face;
+import ch.alchemists.jbmesh.structure.Vertex;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class SeidelTriangulationTest {
+    // Checks orientation and sums up the area of triangles
+    private static class TriangleCheck implements SweepTriangulation.TriangleCallback {
+        private final List<List<Vector3f>> faces;
+        public int numTriangles = 0;
+        public double area = 0;
+
+        public TriangleCheck(List<List<Vector3f>> faces) {
+            this.faces = faces;
+        }
+
+        @Override
+        public void handleTriangle(SweepVertex v1, SweepVertex v2, SweepVertex v3) {
+            Vector3f p1 = faces.get(v1.face).get(v1.index);
+            Vector3f p2 = faces.get(v2.face).get(v2.index);
+            Vector3f p3 = faces.get(v3.face).get(v3.index);
+
+            double doubleArea = cross(p1, p2, p3);
+            assertTrue(doubleArea >= -0.0001, "Triangle not counterclockwise");
+
+            if(doubleArea > 0.0001) {
+                float cx = (p1.x + p2.x + p3.x) / 3;
+                float cy = (p1.y + p2.y + p3.y) / 3;
+                assertTrue(isInside(cx, cy), "Triangle outside of polygon");
+            }
+
+            area += doubleArea * 0.5;
+            numTriangles++;
+        }
+
+        private boolean isInside(float px, float py) {
+            boolean inside = false;
+            for(List<Vector3f> face : faces) {
+                for(int i=0, j=face.size()-1; i<face.size(); j=i++) {
+                    Vector3f a = face.get(i);
+                    Vector3f b = face.get(j);
+                    if((a.y > py) != (b.y > py) && px < (b.x - a.x) * (py - a.y) / (b.y - a.y) + a.x)
+                        inside = !inside;
+                }
+            }
+            return inside;
+        }
+    }
+
+
+    private static double cross(Vector3f a, Vector3f b, Vector3f c) {
+        return (double)(b.x - a.x) * (c.y - a.y) - (double)(b.y - a.y) * (c.x - a.x);
+    }
+
+    private static double signedArea(List<Vector3f> face) {
+        double area = 0;
+        for(int i=0, j=face.size()-1; i<face.size(); j=i++)
+            area += (double)face.get(j).x * face.get(i).y - (double)face.get(i).x * face.get(j).y;
+        return area * 0.5;
+    }
+
+
+    private static TriangleCheck triangulate(List<List<Vector3f>> faces, long seed) {
+        TriangleCheck check = new TriangleCheck(faces);
+        SeidelTriangulation triangulation = new SeidelTriangulation(check);
+        triangulation.setSeed(seed);
+
+        for(List<Vector3f> face : faces)
+            triangulation.addFaceWithPositions(face);
+        triangulation.triangulate();
+
+        int numVertices = 0;
+        double area = 0;
+        for(List<Vector3f> face : faces) {
+            numVertices += face.size();
+            area += signedArea(face);
+        }
+
+        assertEquals(numVertices + 2*(faces.size()-1) - 2, check.numTriangles);
+        assertEquals(area, check.area, area * 0.0001);
+        return check;
+    }
+
+
+    private static List<Vector3f> star(Random rnd, int numVertices, float cx, float cy, float radius, boolean clockwise) {
+        List<Vector3f> face = new ArrayList<>(numVertices);
+        for(int i=0; i<numVertices; ++i) {
+            float angle = (float) (Math.PI * 2 * i / numVertices);
+            if(clockwise)
+                angle = -angle;
+
+            float r = radius * (0.3f + 0.7f * rnd.nextFloat());
+            face.add(new Vector3f(cx + (float) Math.cos(angle) * r, cy + (float) Math.sin(angle) * r, 0));
+        }
+        return face;
+    }
+
+
+    /**
+     * Rectilinear outline with many vertices at the same height.
+     */
+    private static List<Vector3f> skyline(Random rnd, int width) {
+        List<Vector3f> face = new ArrayList<>();
+        face.add(new Vector3f(0, 0, 0));
+        face.add(new Vector3f(width, 0, 0));
+
+        int lastHeight = -1;
+        for(int i=width-1; i>=0; --i) {
+            int height;
+            do {
+                height = 1 + rnd.nextInt(5);
+            } while(height == lastHeight);
+            lastHeight = height;
+
+            face.add(new Vector3f(i+1, height, 0));
+            face.add(new Vector3f(i, height, 0));
+        }
+        return face;
+    }
+
+
+    @Test
+    public void testSquare() {
+        List<List<Vector3f>> faces = new ArrayList<>();
+        faces.add(List.of(new Vector3f(0, 0, 0), new Vector3f(1, 0, 0), new Vector3f(1, 1, 0), new Vector3f(0, 1, 0)));
+
+        for(long seed=0; seed<10; ++seed)
+            triangulate(faces, seed);
+    }
+
+
+    @Test
+    public void testStar() {
+        Random rnd = new Random(42);
+        for(int i=0; i<200; ++i) {
+            List<List<Vector3f>> faces = new ArrayList<>();
+            faces.add(star(rnd, 3 + rnd.nextInt(60), 0, 0, 10, false));
+            triangulate(faces, i);
+        }
+    }
+
+
+    @Test
+    public void testSkyline() {
+        Random rnd = new Random(43);
+        for(int i=0; i<100; ++i) {
+            List<List<Vector3f>> faces = new ArrayList<>();
+            faces.add(skyline(rnd, 1 + rnd.nextInt(30)));
+            triangulate(faces, i);
+        }
+    }
+
+
+    @Test
+    public void testHoles() {
+        Random rnd = new Random(44);
+        for(int i=0; i<100; ++i) {
+            List<List<Vector3f>> faces = new ArrayList<>();
+            faces.add(List.of(new Vector3f(-10, -10, 0), new Vector3f(10, -10, 0), new Vector3f(10, 10, 0), new Vector3f(-10, 10, 0)));
+            faces.add(star(rnd, 3 + rnd.nextInt(20), -5, -5, 4, true));
+            faces.add(star(rnd, 3 + rnd.nextInt(20), 5, 5, 4, true));
+            faces.add(star(rnd, 3 + rnd.nextInt(20), 5, -5, 4, true));
+            triangulate(faces, i);
+        }
+    }
+
+
+    @Test
+    public void testLarge() {
+        List<List<Vector3f>> faces = new ArrayList<>();
+        faces.add(star(new Random(45), 20000, 0, 0, 100, false));
+        triangulate(faces, 1);
+    }
+
+
+    @Test
+    public void testFace() {
+        BMesh bmesh = new BMesh();
+        Vertex v0 = bmesh.createVertex(0, 0, 0);
+        Vertex v1 = bmesh.createVertex(2, 0, 0);
+        Vertex v2 = bmesh.createVertex(2, 2, 0);
+        Vertex v3 = bmesh.createVertex(1, 1, 0);
+        Vertex v4 = bmesh.createVertex(0, 2, 0);
+        Face face = bmesh.createFace(v0, v1, v2, v3, v4);
+
+        List<Vertex> vertices = new ArrayList<>();
+        SeidelTriangulation triangulation = new SeidelTriangulation((a, b, c) -> {
+            vertices.add(a.vertex);
+            vertices.add(b.vertex);
+            vertices.add(c.vertex);
+        });
+
+        triangulation.addFace(bmesh, face);
+        triangulation.triangulate();
+        assertEquals(9, vertices.size());
+        assertTrue(vertices.contains(v3));
+
+        // Reusable after triangulation
+        vertices.clear();
+        triangulation.addFace(bmesh, face);
+        triangulation.triangulate();
+        assertEquals(9, vertices.size());
+        assertSame(v0, vertices.contains(v0) ? v0 : null);
+    }
+
+
+    @Test
+    public void testInvalid() {
+        SeidelTriangulation triangulation = new SeidelTriangulation();
+        List<Vector3f> line = List.of(new Vector3f(0, 0, 0), new Vector3f(1, 0, 0), new Vector3f(2, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> triangulation.addFaceWithPositions(line));
+        assertThrows(IllegalStateException.class, triangulation::triangulate);
+    }
+}
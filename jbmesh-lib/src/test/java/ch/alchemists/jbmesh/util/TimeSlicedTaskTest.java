@@ -0,0 +1,147 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.util;
+
+import ch.alchemists.jbmesh.TestUtil;
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
+import ch.alchemists.jbmesh.operator.Smooth;
+import ch.alchemists.jbmesh.operator.meshgen.DistanceFunction;
+import ch.alchemists.jbmesh.operator.meshgen.MarchingCubeBuilder;
+import ch.alchemists.jbmesh.operator.normalgen.NormalGenerator;
+import ch.alchemists.jbmesh.structure.BMesh;
+import ch.alchemists.jbmesh.structure.Face;
+import ch.alchemists.jbmesh.structure.Loop;
+import ch.alchemists.jbmesh.structure.Vertex;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class TimeSlicedTaskTest {
+    private static final DistanceFunction SPHERE = new DistanceFunction.Sphere(new Vector3f(0.013f, 0.021f, 0.034f), 1.0f) {
+        @Override
+        public BoundingBox getBounds() {
+            return new BoundingBox(Vector3f.ZERO, 1.2f, 1.2f, 1.2f);
+        }
+    };
+
+
+    private static BMesh createCube() {
+        BMesh bmesh = new BMesh();
+        Vertex[] v = new Vertex[8];
+        for(int i=0; i<8; ++i)
+            v[i] = bmesh.createVertex(i & 1, (i >> 1) & 1, (i >> 2) & 1);
+
+        bmesh.createFace(v[0], v[2], v[3], v[1]);
+        bmesh.createFace(v[4], v[5], v[7], v[6]);
+        bmesh.createFace(v[0], v[1], v[5], v[4]);
+        bmesh.createFace(v[2], v[6], v[7], v[3]);
+        bmesh.createFace(v[0], v[4], v[6], v[2]);
+        bmesh.createFace(v[1], v[3], v[7], v[5]);
+        return bmesh;
+    }
+
+
+    /**
+     * Runs with a budget of zero, which does one step per call.
+     * @return Number of calls.
+     */
+    private static int runSliced(TimeSlicedTask task) {
+        int calls = 0;
+
+        do {
+            calls++;
+            float progress = task.getProgress();
+            assertTrue(progress >= 0.0f && progress <= 1.0f);
+        } while(!task.run(0));
+
+        assertEquals(TimeSlicedTask.State.Finished, task.getState());
+        TestUtil.assertFloat(1.0f, task.getProgress());
+        return calls;
+    }
+
+
+    @Test
+    public void testFollowSurface() {
+        BMesh expected = MarchingCubeBuilder.buildFollowSurface(null, SPHERE, 0.2f, false);
+
+        MarchingCubeBuilder.FollowSurfaceTask task = MarchingCubeBuilder.buildFollowSurfaceTask(null, SPHERE, 0.2f, false);
+        assertTrue(runSliced(task) > 1);
+
+        BMesh result = task.getMesh();
+        assertEquals(expected.vertices().size(), result.vertices().size());
+        assertEquals(expected.faces().size(), result.faces().size());
+    }
+
+
+    @Test
+    public void testSmooth() {
+        BMesh expected = createCube();
+        new Smooth(expected).apply(expected.faces().getAll());
+
+        BMesh result = createCube();
+        assertTrue(runSliced(new Smooth(result).applyTask(result.faces().getAll())) > 1);
+
+        assertEquals(expected.vertices().size(), result.vertices().size());
+        assertEquals(expected.faces().size(), result.faces().size());
+
+        // Creation order depends on set iteration order
+        List<Vector3f> expectedPositions = getSortedPositions(expected);
+        List<Vector3f> resultPositions = getSortedPositions(result);
+        for(int i=0; i<expectedPositions.size(); ++i)
+            TestUtil.assertVec3Similar(expectedPositions.get(i), resultPositions.get(i));
+    }
+
+
+    private static List<Vector3f> getSortedPositions(BMesh bmesh) {
+        Vec3Attribute<Vertex> positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+        List<Vector3f> sorted = new ArrayList<>();
+        for(Vertex vertex : bmesh.vertices())
+            sorted.add(positions.get(vertex));
+
+        sorted.sort(Comparator.comparingDouble((Vector3f v) -> v.x).thenComparingDouble(v -> v.y).thenComparingDouble(v -> v.z));
+        return sorted;
+    }
+
+
+    @Test
+    public void testNormals() {
+        BMesh bmesh = createCube();
+        TimeSlicedTask task = new NormalGenerator(bmesh, 60.0f).applyTask();
+        runSliced(task);
+
+        Vec3Attribute<Loop> normals = Vec3Attribute.get(BMeshAttribute.Normal, bmesh.loops());
+        for(Face face : bmesh.faces()) {
+            for(Loop loop : face.loops())
+                TestUtil.assertFloat(1.0f, normals.get(loop).length());
+        }
+    }
+
+
+    @Test
+    public void testCancel() {
+        MarchingCubeBuilder.FollowSurfaceTask task = MarchingCubeBuilder.buildFollowSurfaceTask(null, SPHERE, 0.1f, false);
+        for(int i=0; i<20; ++i)
+            assertFalse(task.run(0));
+
+        task.cancel();
+        assertTrue(task.run(100));
+        assertEquals(TimeSlicedTask.State.Cancelled, task.getState());
+        assertTrue(task.getProgress() < 1.0f);
+
+        // Stays cancelled
+        int numFaces = task.getMesh().faces().size();
+        assertTrue(task.run(100));
+        assertEquals(numFaces, task.getMesh().faces().size());
+    }
+}
@@ -0,0 +1,130 @@
+// Copyright (c) 2020-2021 Rolf Müri
+//
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+
+package ch.alchemists.jbmesh.benchmarks;
+
+import ch.alchemists.jbmesh.operator.sweeptriang.SweepTriangulation;
+import ch.alchemists.jbmesh.operator.triangulation.SeidelTriangulation;
+import ch.alchemists.jbmesh.util.Profiler;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Compares SweepTriangulation with SeidelTriangulation on large polygons.
+ */
+public class TriangulationBenchmark {
+    private static final int[] SIZES = { 10_000, 100_000, 1_000_000 };
+
+    private static final List<List<Vector3f>> footprints = new ArrayList<>();
+    private static final List<List<Vector3f>> outlines = new ArrayList<>();
+
+    static {
+        for(int size : SIZES) {
+            footprints.add(createFootprint(size, new Random(size)));
+            outlines.add(createOutline(size, new Random(size)));
+        }
+    }
+
+
+    /**
+     * Rectilinear outline like a building footprint. Many vertices are at the same height.
+     */
+    private static List<Vector3f> createFootprint(int numVertices, Random rnd) {
+        int width = (numVertices - 2) / 2;
+        List<Vector3f> face = new ArrayList<>(numVertices);
+        face.add(new Vector3f(0, 0, 0));
+        face.add(new Vector3f(width, 0, 0));
+
+        int lastHeight = -1;
+        for(int i=width-1; i>=0; --i) {
+            int height;
+            do {
+                height = 1 + rnd.nextInt(20);
+            } while(height == lastHeight);
+            lastHeight = height;
+
+            face.add(new Vector3f(i+1, height, 0));
+            face.add(new Vector3f(i, height, 0));
+        }
+
+        return face;
+    }
+
+
+    /**
+     * Star shaped outline with a noisy radius, like a coastline.
+     */
+    private static List<Vector3f> createOutline(int numVertices, Random rnd) {
+        List<Vector3f> face = new ArrayList<>(numVertices);
+        float radius = 1000;
+
+        for(int i=0; i<numVertices; ++i) {
+            radius += (rnd.nextFloat() - 0.5f) * 20.0f;
+            radius = Math.max(100, Math.min(2000, radius));
+            float r = radius * (0.8f + 0.2f * rnd.nextFloat());
+
+            double angle = Math.PI * 2.0 * i / numVertices;
+            face.add(new Vector3f((float) Math.cos(angle) * r, (float) Math.sin(angle) * r, 0));
+        }
+
+        return face;
+    }
+
+
+    private static void run(String name, Consumer<List<Vector3f>> func) {
+        try(Profiler p0 = Profiler.start(name)) {
+            for(int i=0; i<SIZES.length; ++i) {
+                try(Profiler p = Profiler.start("Footprint " + SIZES[i])) {
+                    func.accept(footprints.get(i));
+                }
+            }
+
+            for(int i=0; i<SIZES.length; ++i) {
+                try(Profiler p = Profiler.start("Outline " + SIZES[i])) {
+                    func.accept(outlines.get(i));
+                }
+            }
+        }
+    }
+
+
+    public static void main(String[] args) {
+        final int runs = 10;
+
+        SweepTriangulation sweep = new SweepTriangulation((v1, v2, v3) -> {});
+        Consumer<List<Vector3f>> sweepFunc = face -> {
+            sweep.addFaceWithPositions(face);
+            sweep.triangulate();
+        };
+
+        SeidelTriangulation seidel = new SeidelTriangulation((v1, v2, v3) -> {});
+        Consumer<List<Vector3f>> seidelFunc = face -> {
+            seidel.addFaceWithPositions(face);
+            seidel.triangulate();
+        };
+
+        // Warmup
+        try(Profiler p0 = Profiler.start("Warmup")) {
+            for(int i=0; i<3; ++i) {
+                run("SweepTriangulation", sweepFunc);
+                run("SeidelTriangulation", seidelFunc);
+            }
+        }
+
+        Profiler.printAndClear();
+
+        for(int i=0; i<runs; ++i)
+            run("SweepTriangulation", sweepFunc);
+
+        for(int i=0; i<runs; ++i)
+            run("SeidelTriangulation", seidelFunc);
+
+        Profiler.printAndClear();
+    }
+}
@@ -6,10 +6,14 @@
 
 package ch.alchemists.jbmesh.tools;
 
+import ch.alchemists.jbmesh.data.BMeshAttribute;
+import ch.alchemists.jbmesh.data.property.Vec3Attribute;
 import ch.alchemists.jbmesh.operator.triangulation.SeidelTriangulation;
 import ch.alchemists.jbmesh.structure.BMesh;
 import ch.alchemists.jbmesh.structure.Face;
+import ch.alchemists.jbmesh.structure.Vertex;
 import ch.alchemists.jbmesh.tools.polygoneditor.PolygonEditorState;
+import ch.alchemists.jbmesh.util.DebugVisual;
 import ch.alchemists.jbmesh.util.DebugVisualState;
 import ch.alchemists.jbmesh.util.Profiler;
 import com.jme3.app.SimpleApplication;
@@ -17,11 +21,13 @@ import com.jme3.input.KeyInput;
 import com.jme3.input.controls.ActionListener;
 import com.jme3.input.controls.KeyTrigger;
 import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
 import com.jme3.scene.Node;
 import com.jme3.system.AppSettings;
 import com.simsilica.lemur.GuiGlobals;
 import com.simsilica.lemur.style.BaseStyles;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 public class TriangulationEditor extends SimpleApplication {
@@ -44,7 +50,7 @@ public class TriangulationEditor extends SimpleApplication {
         polygonEditor.setStoragePath(STORAGE_PATH);
         stateManager.attach(polygonEditor);
 
-        debugVisualState = new DebugVisualState("Seidel");
+        debugVisualState = new DebugVisualState("Triangles");
         stateManager.attach(debugVisualState);
 
         polygonEditor.importFromDefaultFile();
@@ -69,42 +75,71 @@ public class TriangulationEditor extends SimpleApplication {
     private void updateTriangulation() {
         node.detachAllChildren();
 
+        DebugVisual.clear("Triangles");
+        DebugVisual dbg = DebugVisual.get("Triangles");
+
         BMesh bmesh = new BMesh();
-        Face face = polygonEditor.createBMeshFace(bmesh);
+        Vec3Attribute<Vertex> positions = Vec3Attribute.get(BMeshAttribute.Position, bmesh.vertices());
+
+        SeidelTriangulation triangulation = new SeidelTriangulation((v1, v2, v3) -> {
+            Vector3f p1 = positions.get(v1.vertex);
+            Vector3f p2 = positions.get(v2.vertex);
+            Vector3f p3 = positions.get(v3.vertex);
+            dbg.addFace(p1, p2, p3);
+        });
+
+        try {
+            boolean hasFaces = false;
+            for(List<Vector2f> points : polygonEditor.getAllPoints()) {
+                Face face = polygonEditor.createBMeshFace(bmesh, points);
+                if(face != null) {
+                    triangulation.addFace(positions, face);
+                    hasFaces = true;
+                }
+            }
 
-        if(face != null) {
-            SeidelTriangulation triangulation = new SeidelTriangulation(bmesh);
-            try(Profiler p = Profiler.start("SeidelTriangulation.apply")) {
-                triangulation.apply(face);
+            if(hasFaces) {
+                try(Profiler p = Profiler.start("SeidelTriangulation.triangulate")) {
+                    triangulation.triangulate();
+                }
             }
 
-            debugVisualState.setEnabled(true);
+            debugVisualState.setEnabled(hasFaces);
         }
-        else {
-            debugVisualState.setEnabled(false);
+        catch(Throwable ex) {
+            ex.printStackTrace();
         }
+
+        debugVisualState.updateVis();
     }
 
 
     private void benchmark() {
+        final int runs = 100000;
+
         BMesh bmesh = new BMesh();
         Face face = polygonEditor.createBMeshFace(bmesh);
+        if(face == null)
+            return;
 
-        SeidelTriangulation triangulation = new SeidelTriangulation(bmesh);
+        SeidelTriangulation triangulation = new SeidelTriangulation();
+        triangulation.setTriangleCallback((v1, v2, v3) -> {});
 
-        for(int i=0; i<200; ++i) {
-            triangulation.apply(face);
+        for(int i=runs/15; i>=0; --i) {
+            triangulation.addFace(bmesh, face);
+            triangulation.triangulate();
         }
 
         try(Profiler p0 = Profiler.start("SeidelTriangulation Benchmark")) {
-            for(int i = 0; i < 1000; ++i) {
-                try(Profiler p = Profiler.start("SeidelTriangulation.apply")) {
-                    triangulation.apply(face);
+            for(int i = 0; i < runs; ++i) {
+                try(Profiler p = Profiler.start("SeidelTriangulation.triangulate")) {
+                    triangulation.addFace(bmesh, face);
+                    triangulation.triangulate();
                 }
-                System.gc();
             }
         }
 
+        Profiler.printAndClear();
         updateTriangulation();
     }
 